@@ -0,0 +1,104 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the <code>BaseFileSink</code> configuration options
+ * on the recording thread: synchronous and asynchronous writes, immediate
+ * flush, compression of rolled files and the writer engine. The maximum file
+ * size is small so that files roll, and are compressed, during measurement.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar BaseFileSinkBenchmark
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BaseFileSinkBenchmark {
+
+    @Param({"false", "true"})
+    private boolean _async;
+
+    @Param({"false", "true"})
+    private boolean _immediateFlush;
+
+    @Param({"false", "true"})
+    private boolean _compress;
+
+    @Param({"LOGBACK", "FILE_CHANNEL", "MEMORY_MAPPED"})
+    private WriterEngine _writerEngine;
+
+    private Sink _sink;
+    private Event _event;
+
+    /**
+     * Create the sink and the event to record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "BaseFileSinkBenchmark");
+        _sink = new FileSink.Builder()
+                .setDirectory(directory.toFile())
+                .setName("query")
+                .setAsync(_async)
+                .setImmediateFlush(_immediateFlush)
+                .setCompress(_compress)
+                .setWriterEngine(_writerEngine)
+                .setMaxFileSize("16MB")
+                .setMaxHistory(2)
+                .build();
+        _event = Events.create(EventSize.MEDIUM);
+    }
+
+    /**
+     * Record the event.
+     */
+    @Benchmark
+    public void record() {
+        _sink.record(_event);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares recording events to <code>FileSink</code>, which encodes them as
+ * "2f" JSON, against <code>BinaryFileSink</code>. Both sinks are synchronous
+ * and use the file channel writer engine so that the cost of encoding and
+ * appending is attributed to the recording thread. The size of each record
+ * is the <code>recordBytes</code> counter divided by the number of
+ * operations.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar BinaryFileSinkBenchmark -prof gc
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BinaryFileSinkBenchmark {
+
+    @Param({"JSON", "BINARY"})
+    private String _format;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private EventSize _size;
+
+    private BaseFileSink _sink;
+    private Event _event;
+    private long _recordBytes;
+
+    /**
+     * Create the sink and the event to record and measure the size of its
+     * record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "BinaryFileSinkBenchmark");
+        final BaseFileSink.Builder<? extends BaseFileSink, ?> builder;
+        if ("BINARY".equals(_format)) {
+            builder = new BinaryFileSink.Builder();
+        } else {
+            builder = new FileSink.Builder();
+        }
+        _sink = (BaseFileSink) builder
+                .setDirectory(directory.toFile())
+                .setName("query-" + _size)
+                .setAsync(false)
+                .setImmediateFlush(false)
+                .setCompress(false)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+        _event = Events.create(_size);
+        _sink.record(_event);
+        _recordBytes = _sink.getStatistics().getBytes();
+    }
+
+    /**
+     * Record the event.
+     *
+     * @param sizes The record size counters.
+     */
+    @Benchmark
+    public void record(final Sizes sizes) {
+        _sink.record(_event);
+        sizes.recordBytes += _recordBytes;
+    }
+
+    /**
+     * Record size counters reported with the results.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+
+        /**
+         * Reset the counters before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            recordBytes = 0;
+        }
+
+        // CHECKSTYLE.OFF: VisibilityModifier - JMH reads public counter fields
+        public long recordBytes;
+        // CHECKSTYLE.ON: VisibilityModifier
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compression ratio and CPU cost of the compression codecs on
+ * <code>FileSink</code> output. The input is a file of events written by a
+ * <code>FileSink</code> which is compressed in full on each invocation; the
+ * dictionary for the deflate codec is taken from a separately written file
+ * and the dictionary for the Zstandard codec is trained on the records of
+ * another file. The ratio is the <code>inputBytes</code> counter divided by the
+ * <code>compressedBytes</code> counter and the CPU cost is the time per
+ * operation.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar CompressionCodecBenchmark
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionCodecBenchmark {
+
+    @Param({
+            "GZIP_DEFAULT",
+            "GZIP_1",
+            "GZIP_9",
+            "DEFLATE_1",
+            "DEFLATE_1_DICTIONARY",
+            "DEFLATE_6_DICTIONARY",
+            "LZ4_FAST",
+            "LZ4_9",
+            "ZSTD_1",
+            "ZSTD_3",
+            "ZSTD_1_DICTIONARY",
+            "ZSTD_3_DICTIONARY"})
+    private String _codecName;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private EventSize _size;
+
+    private CompressionCodec _codec;
+    private byte[] _input;
+    private final ByteArrayOutputStream _outputStream = new ByteArrayOutputStream(INPUT_SIZE);
+
+    /**
+     * Write the events to compress and create the codec.
+     *
+     * @throws IOException if the events cannot be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "CompressionCodecBenchmark");
+        _input = writeEvents(directory, "input", INPUT_SIZE);
+        final byte[] sample = writeEvents(directory, "sample", DICTIONARY_SIZE);
+        final byte[] dictionary = Arrays.copyOf(sample, DICTIONARY_SIZE);
+        switch (_codecName) {
+            case "GZIP_DEFAULT":
+                _codec = new GzipCompressionCodec();
+                break;
+            case "GZIP_1":
+                _codec = new GzipCompressionCodec(1);
+                break;
+            case "GZIP_9":
+                _codec = new GzipCompressionCodec(9);
+                break;
+            case "DEFLATE_1":
+                _codec = new DeflateCompressionCodec(1, null);
+                break;
+            case "DEFLATE_1_DICTIONARY":
+                _codec = new DeflateCompressionCodec(1, dictionary);
+                break;
+            case "DEFLATE_6_DICTIONARY":
+                _codec = new DeflateCompressionCodec(6, dictionary);
+                break;
+            case "LZ4_FAST":
+                _codec = new Lz4CompressionCodec();
+                break;
+            case "LZ4_9":
+                _codec = new Lz4CompressionCodec(9);
+                break;
+            case "ZSTD_1":
+                _codec = new ZstdCompressionCodec(1, null);
+                break;
+            case "ZSTD_3":
+                _codec = new ZstdCompressionCodec(3, null);
+                break;
+            case "ZSTD_1_DICTIONARY":
+                _codec = new ZstdCompressionCodec(1, trainDictionary(directory));
+                break;
+            case "ZSTD_3_DICTIONARY":
+                _codec = new ZstdCompressionCodec(3, trainDictionary(directory));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + _codecName);
+        }
+    }
+
+    /**
+     * Compress the events.
+     *
+     * @param sizes The input and compressed byte counters.
+     * @return The compressed size in bytes.
+     * @throws IOException if the events cannot be compressed.
+     */
+    @Benchmark
+    public int compress(final Sizes sizes) throws IOException {
+        _outputStream.reset();
+        try (OutputStream outputStream = _codec.compress(_outputStream)) {
+            outputStream.write(_input);
+        }
+        sizes.inputBytes += _input.length;
+        sizes.compressedBytes += _outputStream.size();
+        return _outputStream.size();
+    }
+
+    private byte[] trainDictionary(final Path directory) throws IOException {
+        final byte[] training = writeEvents(directory, "training", TRAINING_SIZE);
+        final List<byte[]> samples = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < training.length; ++i) {
+            if (training[i] == '\n') {
+                samples.add(Arrays.copyOfRange(training, start, i + 1));
+                start = i + 1;
+            }
+        }
+        return ZstdCompressionCodec.trainDictionary(samples, DICTIONARY_SIZE);
+    }
+
+    private byte[] writeEvents(final Path directory, final String name, final int minimumSize) throws IOException {
+        final Sink sink = new FileSink.Builder()
+                .setDirectory(directory.toFile())
+                .setName(name)
+                .setAsync(false)
+                .setImmediateFlush(true)
+                .setCompress(false)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+        final Path file = directory.resolve(name + ".log");
+        while (!Files.exists(file) || Files.size(file) < minimumSize) {
+            sink.record(Events.create(_size));
+        }
+        return Files.readAllBytes(file);
+    }
+
+    private static final int INPUT_SIZE = 4 * 1024 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int TRAINING_SIZE = 100 * DICTIONARY_SIZE;
+
+    /**
+     * Byte counters from which the compression ratio is derived.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+
+        /**
+         * Reset the counters before each iteration.
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            inputBytes = 0;
+            compressedBytes = 0;
+        }
+
+        // CHECKSTYLE.OFF: VisibilityModifier - JMH reads public counter fields
+        public long inputBytes;
+        public long compressedBytes;
+        // CHECKSTYLE.ON: VisibilityModifier
+    }
+}
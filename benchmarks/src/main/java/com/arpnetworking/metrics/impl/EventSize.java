@@ -0,0 +1,52 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * The size of a benchmark <code>Event</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum EventSize {
+    /**
+     * A handful of metrics with a single sample each.
+     */
+    SMALL(3, 1),
+    /**
+     * Tens of metrics with tens of samples each.
+     */
+    MEDIUM(20, 20),
+    /**
+     * Hundreds of metrics with a thousand samples each.
+     */
+    LARGE(100, 1000);
+
+    /* package private */ int getMetrics() {
+        return _metrics;
+    }
+
+    /* package private */ int getSamples() {
+        return _samples;
+    }
+
+    EventSize(final int metrics, final int samples) {
+        _metrics = metrics;
+        _samples = samples;
+    }
+
+    private final int _metrics;
+    private final int _samples;
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Factory for representative <code>Event</code> instances used by the
+ * benchmarks.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class Events {
+
+    /**
+     * Create an event of the specified size.
+     *
+     * @param size The size of event to create.
+     * @return New instance of <code>Event</code>.
+     */
+    /* package private */ static Event create(final EventSize size) {
+        return create(size, false);
+    }
+
+    /**
+     * Create an event of the specified size. With many units each sample
+     * takes one of over a hundred distinct compound units instead of one of
+     * a handful of common units.
+     *
+     * @param size The size of event to create.
+     * @param manyUnits Whether to use many distinct units.
+     * @return New instance of <code>Event</code>.
+     */
+    /* package private */ static Event create(final EventSize size, final boolean manyUnits) {
+        final Unit[] units = manyUnits ? MANY_UNITS : UNITS;
+        return new TsdEvent(
+                createAnnotations(),
+                createSamples("timer", size.getMetrics(), size.getSamples(), true, units),
+                createSamples("counter", size.getMetrics(), size.getSamples(), false, units),
+                createSamples("gauge", size.getMetrics(), size.getSamples(), true, units));
+    }
+
+    private static Map<String, String> createAnnotations() {
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        // CHECKSTYLE.ON: IllegalInstantiation
+        annotations.put("_start", "1997-07-16T19:20:30Z");
+        annotations.put("_end", "1997-07-16T19:20:31Z");
+        annotations.put("_id", UUID.randomUUID().toString());
+        annotations.put("_host", "my-host.example.com");
+        annotations.put("_service", "MyService");
+        annotations.put("_cluster", "MyCluster");
+        return annotations;
+    }
+
+    private static Map<String, List<Quantity>> createSamples(
+            final String prefix,
+            final int metrics,
+            final int samples,
+            final boolean floatingPoint,
+            final Unit[] units) {
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, List<Quantity>> map = new LinkedHashMap<>();
+        // CHECKSTYLE.ON: IllegalInstantiation
+        for (int i = 0; i < metrics; ++i) {
+            final List<Quantity> quantities = new ArrayList<>(samples);
+            for (int j = 0; j < samples; ++j) {
+                final Number value = floatingPoint ? (Number) (j * 1.618033988749895 + i) : (Number) (long) (j + i);
+                quantities.add(TsdQuantity.newInstance(value, units[(i + j) % units.length]));
+            }
+            map.put(prefix + "/metric_" + i, quantities);
+        }
+        return map;
+    }
+
+    private static Unit[] createManyUnits() {
+        final List<Unit> units = new ArrayList<>();
+        for (final Unit numerator : BASE_UNITS) {
+            for (final Unit denominator : BASE_UNITS) {
+                if (numerator != denominator) {
+                    units.add(new TsdCompoundUnit.Builder()
+                            .addNumeratorUnit(numerator)
+                            .addDenominatorUnit(denominator)
+                            .build());
+                }
+            }
+        }
+        return units.toArray(new Unit[units.size()]);
+    }
+
+    private Events() {}
+
+    private static final Unit[] UNITS = new Unit[] {
+            Units.MILLISECOND,
+            Units.SECOND,
+            Units.BYTE,
+            Units.KILOBYTES_PER_SECOND,
+            null
+    };
+    private static final List<Unit> BASE_UNITS = Arrays.asList(
+            Units.NANOSECOND,
+            Units.MICROSECOND,
+            Units.MILLISECOND,
+            Units.SECOND,
+            Units.MINUTE,
+            Units.HOUR,
+            Units.BIT,
+            Units.BYTE,
+            Units.KILOBYTE,
+            Units.MEGABYTE,
+            Units.GIGABYTE,
+            Units.ROTATION);
+    private static final Unit[] MANY_UNITS = createManyUnits();
+}
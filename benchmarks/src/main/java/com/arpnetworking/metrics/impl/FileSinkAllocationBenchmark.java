@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady state allocation of recording an event with direct
+ * encoding to <code>FileSink</code> and <code>StenoFileSink</code>. The sink
+ * is synchronous and uses the file channel writer engine so that the
+ * allocations of the recording thread are those of encoding and appending
+ * only. The encoded record itself is handed to the writer and accounts for
+ * nearly all of the remaining bytes per operation; compare
+ * <code>gc.alloc.rate.norm</code> against the record size printed at setup.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar FileSinkAllocationBenchmark -prof gc
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FileSinkAllocationBenchmark {
+
+    @Param({"FileSink", "StenoFileSink"})
+    private String _sinkType;
+
+    @Param({"SMALL", "MEDIUM"})
+    private EventSize _size;
+
+    private Sink _sink;
+    private Event _event;
+
+    /**
+     * Create the sink and the event to record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "FileSinkAllocationBenchmark");
+        _event = Events.create(_size);
+
+        createSink(directory, "size", true).record(_event);
+        final long recordSize = Files.size(directory.resolve("size.log"));
+        System.out.println(String.format("Record size; sinkType=%s, size=%s, bytes=%d", _sinkType, _size, recordSize));
+
+        _sink = createSink(directory, "query", false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private Sink createSink(final Path directory, final String name, final boolean immediateFlush) {
+        final BaseFileSink.Builder<?, ?> builder;
+        if ("StenoFileSink".equals(_sinkType)) {
+            builder = new StenoFileSink.Builder().setDirectEncoding(true);
+        } else {
+            builder = new FileSink.Builder().setDirectEncoding(true);
+        }
+        return builder
+                .setDirectory(directory.toFile())
+                .setName(name)
+                .setAsync(false)
+                .setImmediateFlush(immediateFlush)
+                .setCompress(false)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+    }
+
+    /**
+     * Record the event.
+     */
+    @Benchmark
+    public void record() {
+        _sink.record(_event);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures contention between threads recording to a single shared
+ * <code>FileSink</code> with 1 to 64 producers. The throughput reported is
+ * the aggregate across all producers. When asynchronous the queue drops
+ * records once full so producers are not throttled by the disk.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar FileSinkContentionBenchmark
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FileSinkContentionBenchmark {
+
+    @Param({"false", "true"})
+    private boolean _async;
+
+    @Param({"LOGBACK", "FILE_CHANNEL"})
+    private WriterEngine _writerEngine;
+
+    private Sink _sink;
+    private Event _event;
+
+    /**
+     * Create the shared sink and the event to record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "FileSinkContentionBenchmark");
+        _sink = new FileSink.Builder()
+                .setDirectory(directory.toFile())
+                .setName("query")
+                .setAsync(_async)
+                .setDropWhenQueueFull(true)
+                .setImmediateFlush(false)
+                .setCompress(false)
+                .setWriterEngine(_writerEngine)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .build();
+        _event = Events.create(EventSize.SMALL);
+    }
+
+    /**
+     * Record the event from a single producer.
+     */
+    @Benchmark
+    @Threads(1)
+    public void record01() {
+        _sink.record(_event);
+    }
+
+    /**
+     * Record the event from 4 producers.
+     */
+    @Benchmark
+    @Threads(4)
+    public void record04() {
+        _sink.record(_event);
+    }
+
+    /**
+     * Record the event from 16 producers.
+     */
+    @Benchmark
+    @Threads(16)
+    public void record16() {
+        _sink.record(_event);
+    }
+
+    /**
+     * Record the event from 64 producers.
+     */
+    @Benchmark
+    @Threads(64)
+    public void record64() {
+        _sink.record(_event);
+    }
+}
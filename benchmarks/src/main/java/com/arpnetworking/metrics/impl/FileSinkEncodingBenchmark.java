@@ -0,0 +1,97 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the <code>String</code> based encoding path of <code>FileSink</code>
+ * against direct encoding to bytes. The sink is synchronous so that the cost
+ * of encoding and appending is attributed to the recording thread.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar FileSinkEncodingBenchmark -prof gc
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FileSinkEncodingBenchmark {
+
+    @Param({"false", "true"})
+    private boolean _directEncoding;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private EventSize _size;
+
+    private Sink _sink;
+    private Event _event;
+
+    /**
+     * Create the sink and the event to record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "FileSinkEncodingBenchmark");
+        _sink = new FileSink.Builder()
+                .setDirectory(directory.toFile())
+                .setName("query-" + _directEncoding + "-" + _size)
+                .setAsync(false)
+                .setImmediateFlush(false)
+                .setCompress(false)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .setDirectEncoding(_directEncoding)
+                .build();
+        _event = Events.create(_size);
+    }
+
+    /**
+     * Record the event.
+     */
+    @Benchmark
+    public void record() {
+        _sink.record(_event);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and latency distribution of recording events of
+ * varying size and unit variety with <code>FileSink</code> and
+ * <code>StenoFileSink</code>. The sink is synchronous so that the cost of
+ * encoding and appending is attributed to the recording thread.
+ *
+ * Run with:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar FileSinkRecordBenchmark -prof gc
+ * </pre>
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FileSinkRecordBenchmark {
+
+    @Param({"FileSink", "StenoFileSink"})
+    private String _sinkType;
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private EventSize _size;
+
+    @Param({"false", "true"})
+    private boolean _manyUnits;
+
+    private Sink _sink;
+    private Event _event;
+
+    /**
+     * Create the sink and the event to record.
+     *
+     * @throws IOException if the output directory cannot be created.
+     */
+    @Setup(Level.Trial)
+    @SuppressWarnings("deprecation")
+    public void setUp() throws IOException {
+        final Path directory = Files.createTempDirectory(Paths.get("./target"), "FileSinkRecordBenchmark");
+        final BaseFileSink.Builder<?, ?> builder = "StenoFileSink".equals(_sinkType)
+                ? new StenoFileSink.Builder()
+                : new FileSink.Builder();
+        _sink = builder
+                .setDirectory(directory.toFile())
+                .setName("query-" + _size + "-" + _manyUnits)
+                .setAsync(false)
+                .setImmediateFlush(false)
+                .setCompress(false)
+                .setMaxFileSize("1GB")
+                .setMaxHistory(1)
+                .build();
+        _event = Events.create(_size, _manyUnits);
+    }
+
+    /**
+     * Record the event.
+     */
+    @Benchmark
+    public void record() {
+        _sink.record(_event);
+    }
+}
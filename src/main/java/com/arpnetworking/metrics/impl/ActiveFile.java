@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Interface for appending records to the active file of a
+ * <code>RollingFileRecordWriter</code>.
+ *
+ * Implementations need not be thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ interface ActiveFile {
+
+    /**
+     * Append a record.
+     *
+     * @param record The encoded record.
+     * @throws IOException if the record cannot be appended.
+     */
+    void append(byte[] record) throws IOException;
+
+    /**
+     * Make appended records visible to readers of the file.
+     *
+     * @throws IOException if the records cannot be flushed.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush appended records and force them to disk.
+     *
+     * @throws IOException if the records cannot be forced to disk.
+     */
+    void force() throws IOException;
+
+    /**
+     * Accessor for the number of bytes of records in the file.
+     *
+     * @return The number of bytes of records in the file.
+     */
+    long size();
+
+    /**
+     * Flush appended records and close the file. The file contains exactly
+     * the appended records once closed.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    void close() throws IOException;
+
+    /**
+     * Opens the <code>ActiveFile</code> for a path.
+     */
+    @FunctionalInterface
+    /* package private */ interface Opener {
+
+        /**
+         * Open the file for appending.
+         *
+         * @param file The file to append to.
+         * @return The <code>ActiveFile</code>.
+         * @throws IOException if the file cannot be opened.
+         */
+        ActiveFile open(Path file) throws IOException;
+    }
+}
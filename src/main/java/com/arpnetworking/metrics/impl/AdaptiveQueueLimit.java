@@ -0,0 +1,169 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive limit on the number of records in an asynchronous queue. The
+ * writer thread measures the drain rate and the average size of the records
+ * it takes from the queue once per interval and turns the byte budget into a
+ * number of records. Producers which find the queue at its limit double the
+ * limit up to that budget, so the queue grows while the writer is stalled
+ * rather than after. Once the queue has stayed mostly empty for a number of
+ * intervals the writer halves the limit, but never below the initial limit
+ * or below what the drain rate requires to absorb a writer stall of one
+ * second.
+ *
+ * This class is thread safe for any number of producers calling
+ * <code>grow</code> and a single writer thread calling <code>update</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AdaptiveQueueLimit {
+
+    /**
+     * Accessor for the current limit.
+     *
+     * @return The current limit.
+     */
+    /* package private */ int getLimit() {
+        return _limit.get();
+    }
+
+    /**
+     * Grow the limit after a producer found the queue at the limit.
+     *
+     * @param observed The limit the producer found the queue at.
+     * @return True if and only if the limit is now above the observed limit.
+     */
+    /* package private */ boolean grow(final int observed) {
+        _saturated = true;
+        final long grown = Math.min(_budget, Math.max(_required, 2L * observed));
+        if (grown > observed) {
+            _limit.compareAndSet(observed, (int) grown);
+        }
+        return _limit.get() > observed;
+    }
+
+    /**
+     * Update the measurements at the end of an interval and shrink the
+     * limit if the queue has been idle. Must only be called by the writer
+     * thread.
+     *
+     * @param elapsedInNanos The length of the interval.
+     * @param records The number of records drained in the interval.
+     * @param bytes The number of bytes drained in the interval.
+     * @param depth The number of records in the queue.
+     */
+    /* package private */ void update(final long elapsedInNanos, final long records, final long bytes, final int depth) {
+        if (records > 0) {
+            final double recordBytes = (double) bytes / records;
+            _averageRecordBytes = _averageRecordBytes == 0 ? recordBytes : ewma(_averageRecordBytes, recordBytes);
+        }
+        _drainRate = ewma(_drainRate, records * (double) NANOS_PER_SECOND / Math.max(1, elapsedInNanos));
+
+        final int budget = getBudget();
+        final int required = (int) Math.min(budget, _drainRate * STALL_IN_SECONDS);
+        _budget = budget;
+        _required = required;
+        final boolean saturated = _saturated;
+        _saturated = false;
+        if (saturated || depth > _limit.get() / IDLE_FRACTION) {
+            _idleIntervals = 0;
+        } else if (++_idleIntervals >= IDLE_INTERVALS) {
+            _idleIntervals = 0;
+            _limit.updateAndGet(limit -> Math.min(limit, Math.max(_minLimit, Math.max(limit / 2, required))));
+        }
+        _limit.updateAndGet(limit -> Math.min(limit, budget));
+    }
+
+    /**
+     * Accessor for the number of records the byte budget allows.
+     *
+     * @return The number of records the byte budget allows.
+     */
+    /* package private */ int getBudget() {
+        if (_averageRecordBytes == 0) {
+            // NOTE: Nothing is known about the records so stay at the initial limit
+            return _minLimit;
+        }
+        return (int) Math.max(1, Math.min(_maxLimit, _maxBytes / _averageRecordBytes));
+    }
+
+    /**
+     * Accessor for the average size of the drained records in bytes.
+     *
+     * @return The average record size or zero if no record was drained.
+     */
+    /* package private */ double getAverageRecordBytes() {
+        return _averageRecordBytes;
+    }
+
+    /**
+     * Accessor for the average drain rate in records per second.
+     *
+     * @return The average drain rate.
+     */
+    /* package private */ double getDrainRate() {
+        return _drainRate;
+    }
+
+    private static double ewma(final double average, final double sample) {
+        return average + WEIGHT * (sample - average);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param minLimit The initial limit below which it never shrinks.
+     * @param maxLimit The limit above which it never grows, typically the
+     * capacity of the queue.
+     * @param maxBytes The byte budget of the queued records.
+     */
+    /* package private */ AdaptiveQueueLimit(final int minLimit, final int maxLimit, final long maxBytes) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(String.format("Invalid limits; minLimit=%d, maxLimit=%d", minLimit, maxLimit));
+        }
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(String.format("Invalid max bytes; maxBytes=%d", maxBytes));
+        }
+        _minLimit = minLimit;
+        _maxLimit = maxLimit;
+        _maxBytes = maxBytes;
+        _limit = new AtomicInteger(minLimit);
+        _budget = minLimit;
+    }
+
+    private final int _minLimit;
+    private final int _maxLimit;
+    private final long _maxBytes;
+    private final AtomicInteger _limit;
+    private volatile int _budget;
+    private volatile int _required;
+    private volatile boolean _saturated;
+    // NOTE: Only accessed by the writer thread
+    private int _idleIntervals;
+    private double _averageRecordBytes;
+    private double _drainRate;
+
+    private static final double WEIGHT = 0.25;
+    private static final long STALL_IN_SECONDS = 1;
+    private static final int IDLE_FRACTION = 4;
+    private static final int IDLE_INTERVALS = 50;
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+}
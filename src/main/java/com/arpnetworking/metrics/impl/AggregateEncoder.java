@@ -0,0 +1,132 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes an <code>AggregatedSeries</code> as a query log "2f-aggregate"
+ * record. The record carries the annotations of the series with the
+ * <code>_start</code> and <code>_end</code> of the period, the type, name
+ * and unit of the metric, the count, sum, minimum and maximum of its samples
+ * and, for timers, the non-empty buckets of its histogram as pairs of the
+ * value of smallest magnitude in the bucket and the bucket's count:
+ *
+ * <pre>
+ * {"version":"2f-aggregate","annotations":{"_start":"2019-01-01T00:00:00Z","_end":"2019-01-01T00:01:00Z","_host":"h"},
+ *  "type":"timer","name":"t","unitNumerators":["millisecond"],"count":2,"sum":3.0,"min":1.0,"max":2.0,
+ *  "histogram":[[1.0,1],[2.0,1]]}
+ * </pre>
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AggregateEncoder {
+
+    /**
+     * Encode a series.
+     *
+     * @param series The series to encode.
+     * @param startInMillis The start of the period in milliseconds since the epoch.
+     * @param endInMillis The end of the period in milliseconds since the epoch.
+     * @param jsonGenerator The <code>JsonGenerator</code> to write to.
+     * @throws IOException if the series cannot be written.
+     */
+    /* package private */ void encode(
+            final AggregatedSeries series,
+            final long startInMillis,
+            final long endInMillis,
+            final JsonGenerator jsonGenerator)
+            throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeFieldName(VERSION_FIELD);
+        jsonGenerator.writeString(VERSION);
+        encodeAnnotations(series.getAnnotations(), startInMillis, endInMillis, jsonGenerator);
+        jsonGenerator.writeFieldName(TYPE_FIELD);
+        jsonGenerator.writeString(series.getType().getKey());
+        jsonGenerator.writeFieldName(NAME_FIELD);
+        jsonGenerator.writeString(series.getName());
+        @Nullable final UnitCache.SerializedUnit unit = series.getUnit();
+        if (unit != null) {
+            unit.serialize(jsonGenerator);
+        }
+        jsonGenerator.writeFieldName(COUNT_FIELD);
+        jsonGenerator.writeNumber(series.getCount());
+        jsonGenerator.writeFieldName(SUM_FIELD);
+        jsonGenerator.writeNumber(series.getSum());
+        jsonGenerator.writeFieldName(MIN_FIELD);
+        jsonGenerator.writeNumber(series.getMin());
+        jsonGenerator.writeFieldName(MAX_FIELD);
+        jsonGenerator.writeNumber(series.getMax());
+        @Nullable final SparseHistogram histogram = series.getHistogram();
+        if (histogram != null) {
+            encodeHistogram(histogram, jsonGenerator);
+        }
+        jsonGenerator.writeEndObject();
+    }
+
+    private static void encodeAnnotations(
+            final Map<String, String> annotations,
+            final long startInMillis,
+            final long endInMillis,
+            final JsonGenerator jsonGenerator)
+            throws IOException {
+        jsonGenerator.writeFieldName(ANNOTATIONS_FIELD);
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeFieldName(START_FIELD);
+        jsonGenerator.writeString(Instant.ofEpochMilli(startInMillis).toString());
+        jsonGenerator.writeFieldName(END_FIELD);
+        jsonGenerator.writeString(Instant.ofEpochMilli(endInMillis).toString());
+        for (final Map.Entry<String, String> annotation : annotations.entrySet()) {
+            jsonGenerator.writeFieldName(annotation.getKey());
+            jsonGenerator.writeString(annotation.getValue());
+        }
+        jsonGenerator.writeEndObject();
+    }
+
+    private static void encodeHistogram(final SparseHistogram histogram, final JsonGenerator jsonGenerator) throws IOException {
+        jsonGenerator.writeFieldName(HISTOGRAM_FIELD);
+        jsonGenerator.writeStartArray();
+        for (final Map.Entry<Double, Long> bucket : histogram.getBuckets().entrySet()) {
+            jsonGenerator.writeStartArray();
+            jsonGenerator.writeNumber(bucket.getKey());
+            jsonGenerator.writeNumber(bucket.getValue());
+            jsonGenerator.writeEndArray();
+        }
+        jsonGenerator.writeEndArray();
+    }
+
+    private static final SerializableString VERSION = new SerializedString("2f-aggregate");
+    private static final SerializableString VERSION_FIELD = new SerializedString("version");
+    private static final SerializableString ANNOTATIONS_FIELD = new SerializedString("annotations");
+    private static final SerializableString START_FIELD = new SerializedString("_start");
+    private static final SerializableString END_FIELD = new SerializedString("_end");
+    private static final SerializableString TYPE_FIELD = new SerializedString("type");
+    private static final SerializableString NAME_FIELD = new SerializedString("name");
+    private static final SerializableString COUNT_FIELD = new SerializedString("count");
+    private static final SerializableString SUM_FIELD = new SerializedString("sum");
+    private static final SerializableString MIN_FIELD = new SerializedString("min");
+    private static final SerializableString MAX_FIELD = new SerializedString("max");
+    private static final SerializableString HISTOGRAM_FIELD = new SerializedString("histogram");
+}
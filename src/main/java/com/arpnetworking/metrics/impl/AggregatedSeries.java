@@ -0,0 +1,208 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Aggregate of the samples of one metric with one set of annotations over
+ * one period. The count, sum, minimum and maximum are kept for every type of
+ * metric and timers additionally keep a <code>SparseHistogram</code> of their
+ * samples. A sample may be weighted to stand for several samples, in which
+ * case it counts that many times towards the count, sum and histogram.
+ * Recording is lock free.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AggregatedSeries {
+
+    /**
+     * Record a finite sample.
+     *
+     * @param value The value of the sample.
+     */
+    /* package private */ void record(final double value) {
+        record(value, 1.0);
+    }
+
+    /**
+     * Record a finite sample which stands for a number of samples.
+     *
+     * @param value The value of the sample.
+     * @param weight The number of samples the sample stands for.
+     */
+    /* package private */ void record(final double value, final double weight) {
+        _count.add(weight);
+        _sum.add(value * weight);
+        _min.accumulate(value);
+        _max.accumulate(value);
+        if (_histogram != null) {
+            _histogram.record(value, weight);
+        }
+    }
+
+    /**
+     * Accessor for the annotations shared by the samples.
+     *
+     * @return The annotations.
+     */
+    /* package private */ Map<String, String> getAnnotations() {
+        return _annotations;
+    }
+
+    /**
+     * Accessor for the type of the metric.
+     *
+     * @return The type of the metric.
+     */
+    /* package private */ Type getType() {
+        return _type;
+    }
+
+    /**
+     * Accessor for the name of the metric.
+     *
+     * @return The name of the metric.
+     */
+    /* package private */ String getName() {
+        return _name;
+    }
+
+    /**
+     * Accessor for the unit of the samples.
+     *
+     * @return The unit of the samples; <code>null</code> if they have none.
+     */
+    @Nullable
+    /* package private */ UnitCache.SerializedUnit getUnit() {
+        return _unit;
+    }
+
+    /**
+     * Accessor for the number of samples, rounded to the nearest integer
+     * for weighted samples.
+     *
+     * @return The number of samples.
+     */
+    /* package private */ long getCount() {
+        return Math.round(_count.sum());
+    }
+
+    /**
+     * Accessor for the sum of the samples.
+     *
+     * @return The sum of the samples.
+     */
+    /* package private */ double getSum() {
+        return _sum.sum();
+    }
+
+    /**
+     * Accessor for the smallest sample.
+     *
+     * @return The smallest sample.
+     */
+    /* package private */ double getMin() {
+        return _min.get();
+    }
+
+    /**
+     * Accessor for the largest sample.
+     *
+     * @return The largest sample.
+     */
+    /* package private */ double getMax() {
+        return _max.get();
+    }
+
+    /**
+     * Accessor for the histogram of the samples.
+     *
+     * @return The histogram of the samples; <code>null</code> unless the
+     * metric is a timer.
+     */
+    @Nullable
+    /* package private */ SparseHistogram getHistogram() {
+        return _histogram;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param annotations The annotations shared by the samples.
+     * @param type The type of the metric.
+     * @param name The name of the metric.
+     * @param unit The unit of the samples; <code>null</code> if they have none.
+     */
+    /* package private */ AggregatedSeries(
+            final Map<String, String> annotations,
+            final Type type,
+            final String name,
+            @Nullable final UnitCache.SerializedUnit unit) {
+        _annotations = annotations;
+        _type = type;
+        _name = name;
+        _unit = unit;
+        _histogram = type == Type.TIMER ? new SparseHistogram() : null;
+    }
+
+    private final Map<String, String> _annotations;
+    private final Type _type;
+    private final String _name;
+    @Nullable
+    private final UnitCache.SerializedUnit _unit;
+    @Nullable
+    private final SparseHistogram _histogram;
+    private final DoubleAdder _count = new DoubleAdder();
+    private final DoubleAdder _sum = new DoubleAdder();
+    private final DoubleAccumulator _min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+    private final DoubleAccumulator _max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+    /**
+     * The type of an aggregated metric.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    /* package private */ enum Type {
+        /**
+         * Counter samples.
+         */
+        COUNTER("counter"),
+        /**
+         * Gauge samples.
+         */
+        GAUGE("gauge"),
+        /**
+         * Timer samples.
+         */
+        TIMER("timer");
+
+        /* package private */ String getKey() {
+            return _key;
+        }
+
+        Type(final String key) {
+            _key = key;
+        }
+
+        private final String _key;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.encoder.Encoder;
+import com.arpnetworking.metrics.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>Sink</code> for the query log file which
+ * aggregates samples in the sink instead of writing each event. Samples are
+ * merged per metric and set of annotations into an
+ * <code>AggregatedSeries</code> over a fixed period aligned to the epoch,
+ * and one "2f-aggregate" record is written per series at the end of each
+ * period; see <code>AggregateEncoder</code>. Timers are kept as sparse
+ * log-linear histograms, so the volume written depends on the number of
+ * series rather than on the number of events.
+ *
+ * The annotations which identify a single unit of work, <code>_id</code>,
+ * <code>_start</code> and <code>_end</code>, are replaced by the bounds of
+ * the period. Events sampled by an <code>EventSampler</code> are weighted by
+ * the inverse of their sample rate instead of being kept apart by their
+ * <code>_sampleRate</code> annotation. The current period is written when
+ * the JVM shuts down.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AggregatingFileSink extends BaseFileSink {
+
+    @Override
+    public void record(final Event event) {
+        @Nullable final Event sampled = sample(event);
+        if (sampled == null) {
+            return;
+        }
+        aggregate(sampled);
+    }
+
+    @Override
+    protected RecordOutcome tryRecordSampled(final Event event, final long timeoutInNanos) {
+        // NOTE: Only the aggregates are queued, at the end of each period
+        aggregate(event);
+        return RecordOutcome.ACCEPTED;
+    }
+
+    private void aggregate(final Event event) {
+        final long start = System.nanoTime();
+        final AggregationPeriod period = AggregationPeriod.enter(_period::get);
+        try {
+            period.add(event);
+        } finally {
+            period.exit();
+        }
+        recordSerialization(System.nanoTime() - start);
+    }
+
+    @Override
+    protected void onShutdown() {
+        flush();
+    }
+
+    /**
+     * Replace the current period with the one following it and write its
+     * series. The next period starts where the current one ends, unless the
+     * clock has already passed that, so a flush which runs before the end of
+     * the period does not create the same period again.
+     */
+    /* package private */ void flush() {
+        final AggregationPeriod period = _period.getAndUpdate(
+                current -> createPeriod(Math.max(current.getEndInMillis(), System.currentTimeMillis())));
+        period.awaitWriters();
+        for (final AggregatedSeries series : period.getSeries()) {
+            try {
+                write(encode(series, period));
+            } catch (final IOException e) {
+                _logger.warn("Exception writing aggregated series", e);
+            }
+        }
+    }
+
+    private byte[] encode(final AggregatedSeries series, final AggregationPeriod period) throws IOException {
+        final ByteArrayBuilder buffer = new ByteArrayBuilder();
+        try (JsonGenerator jsonGenerator = _jsonFactory.createGenerator(buffer)) {
+            ENCODER.encode(series, period.getStartInMillis(), period.getEndInMillis(), jsonGenerator);
+        }
+        buffer.write(LINE_SEPARATOR);
+        return buffer.toByteArray();
+    }
+
+    private AggregationPeriod createPeriod(final long nowInMillis) {
+        final long startInMillis = nowInMillis - Math.floorMod(nowInMillis, _periodInMillis);
+        return new AggregationPeriod(startInMillis, startInMillis + _periodInMillis, UNIT_CACHE);
+    }
+
+    private void startFlusher() {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-file-sink-aggregation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(
+                this::flush,
+                _period.get().getEndInMillis() - System.currentTimeMillis(),
+                _periodInMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private static Encoder<ILoggingEvent> createEncoder() {
+        return new RawBytesEncoder();
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param builder Instance of <code>Builder</code>.
+     */
+    protected AggregatingFileSink(final Builder builder) {
+        this(builder, JSON_FACTORY, LOGGER);
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ AggregatingFileSink(
+            final Builder builder,
+            final JsonFactory jsonFactory,
+            final org.slf4j.Logger logger) {
+        super(builder, createEncoder());
+        _periodInMillis = builder._periodInMillis;
+        _jsonFactory = jsonFactory;
+        _logger = logger;
+        _period.set(createPeriod(System.currentTimeMillis()));
+        startFlusher();
+    }
+
+    private final long _periodInMillis;
+    private final JsonFactory _jsonFactory;
+    private final org.slf4j.Logger _logger;
+    private final AtomicReference<AggregationPeriod> _period = new AtomicReference<>();
+
+    private static final int MAX_UNIT_CACHE_SIZE = 1024;
+    private static final UnitCache UNIT_CACHE = new UnitCache(MAX_UNIT_CACHE_SIZE);
+    private static final AggregateEncoder ENCODER = new AggregateEncoder();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AggregatingFileSink.class);
+    private static final byte[] LINE_SEPARATOR = CoreConstants.LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Builder for <code>AggregatingFileSink</code>.
+     *
+     * This class is thread safe.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    public static class Builder extends BaseFileSink.Builder<AggregatingFileSink, Builder> {
+
+        /**
+         * Set the period over which samples are aggregated. Periods are
+         * aligned to the epoch. Optional; default is one minute.
+         *
+         * @param value The period in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setPeriodInMillis(@Nullable final Long value) {
+            _periodInMillis = value;
+            return self();
+        }
+
+        @Override
+        protected void applyDefaults() {
+            super.applyDefaults();
+            if (_periodInMillis == null) {
+                _periodInMillis = DEFAULT_PERIOD_IN_MILLIS;
+                LOGGER.info(String.format("Defaulted null period; periodInMillis=%d", _periodInMillis));
+            }
+        }
+
+        @Override
+        protected void validate(final List<String> failures) {
+            super.validate(failures);
+            if (_periodInMillis < 1) {
+                failures.add(String.format("Period must be positive; periodInMillis=%d", _periodInMillis));
+            }
+        }
+
+        @Override
+        protected AggregatingFileSink createSink() {
+            return new AggregatingFileSink(this);
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        private Long _periodInMillis = DEFAULT_PERIOD_IN_MILLIS;
+
+        private static final Long DEFAULT_PERIOD_IN_MILLIS = 60000L;
+    }
+}
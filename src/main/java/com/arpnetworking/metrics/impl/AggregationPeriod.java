@@ -0,0 +1,254 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * The series aggregated over one period. Samples are grouped by the
+ * annotations of their event, excluding the annotations which identify a
+ * single unit of work (<code>_id</code>, <code>_start</code> and
+ * <code>_end</code>), and then by the type, name and unit of their metric.
+ * Samples without a finite value are ignored. The sample rate annotation of
+ * sampled events is not part of the series either; instead each sample is
+ * weighted by the inverse of the sample rate of its event.
+ *
+ * Adding events is lock free. Writers bracket each event with
+ * <code>enter</code> and <code>exit</code> so that a period can be drained
+ * once it has been replaced: after <code>awaitWriters</code> returns no
+ * further samples are added to it.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AggregationPeriod {
+
+    /**
+     * Enter the current period as a writer. If the period is replaced while
+     * entering, the writer exits it and enters its replacement instead.
+     *
+     * @param current Supplier of the current period.
+     * @return The period entered.
+     */
+    /* package private */ static AggregationPeriod enter(final Supplier<AggregationPeriod> current) {
+        while (true) {
+            final AggregationPeriod period = current.get();
+            period._writers.incrementAndGet();
+            if (current.get() == period) {
+                return period;
+            }
+            period.exit();
+        }
+    }
+
+    /**
+     * Exit a period entered as a writer.
+     */
+    /* package private */ void exit() {
+        _writers.decrementAndGet();
+    }
+
+    /**
+     * Wait for registered writers to exit. The caller must have replaced
+     * this period so that no further writers enter it.
+     */
+    /* package private */ void awaitWriters() {
+        while (_writers.get() != 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Add the samples of an event.
+     *
+     * @param event The event.
+     */
+    /* package private */ void add(final Event event) {
+        final Map<String, String> annotations = new LinkedHashMap<>(event.getAnnotations());
+        for (final String key : EXCLUDED_ANNOTATIONS) {
+            annotations.remove(key);
+        }
+        final double weight = weight(annotations.remove(EventSampler.SAMPLE_RATE_ANNOTATION));
+        @Nullable ConcurrentMap<SeriesKey, AggregatedSeries> series = _series.get(annotations);
+        if (series == null) {
+            series = _series.computeIfAbsent(annotations, key -> new ConcurrentHashMap<>());
+        }
+        addSamples(annotations, series, AggregatedSeries.Type.COUNTER, event.getCounterSamples(), weight);
+        addSamples(annotations, series, AggregatedSeries.Type.GAUGE, event.getGaugeSamples(), weight);
+        addSamples(annotations, series, AggregatedSeries.Type.TIMER, event.getTimerSamples(), weight);
+    }
+
+    /**
+     * The weight of the samples of an event with a sample rate annotation.
+     *
+     * @param sampleRate The value of the sample rate annotation, if any.
+     * @return The inverse of the sample rate; one if the sample rate is
+     * absent or not in <code>(0, 1]</code>.
+     */
+    /* package private */ static double weight(@Nullable final String sampleRate) {
+        if (sampleRate == null) {
+            return 1.0;
+        }
+        try {
+            final double rate = Double.parseDouble(sampleRate);
+            return rate > 0.0 && rate <= 1.0 ? 1.0 / rate : 1.0;
+        } catch (final NumberFormatException e) {
+            return 1.0;
+        }
+    }
+
+    /**
+     * Accessor for the aggregated series. Only consistent once
+     * <code>awaitWriters</code> has returned.
+     *
+     * @return The aggregated series.
+     */
+    /* package private */ List<AggregatedSeries> getSeries() {
+        final List<AggregatedSeries> series = new ArrayList<>();
+        for (final ConcurrentMap<SeriesKey, AggregatedSeries> group : _series.values()) {
+            series.addAll(group.values());
+        }
+        return series;
+    }
+
+    /**
+     * Accessor for the start of the period.
+     *
+     * @return The start of the period in milliseconds since the epoch.
+     */
+    /* package private */ long getStartInMillis() {
+        return _startInMillis;
+    }
+
+    /**
+     * Accessor for the end of the period.
+     *
+     * @return The end of the period in milliseconds since the epoch.
+     */
+    /* package private */ long getEndInMillis() {
+        return _endInMillis;
+    }
+
+    private void addSamples(
+            final Map<String, String> annotations,
+            final ConcurrentMap<SeriesKey, AggregatedSeries> series,
+            final AggregatedSeries.Type type,
+            final Map<String, ? extends Collection<? extends Quantity>> samples,
+            final double weight) {
+        for (final Map.Entry<String, ? extends Collection<? extends Quantity>> entry : samples.entrySet()) {
+            for (final Quantity quantity : entry.getValue()) {
+                @Nullable final Number value = quantity.getValue();
+                if (value == null || !Double.isFinite(value.doubleValue())) {
+                    continue;
+                }
+                @Nullable final Unit unit = quantity.getUnit();
+                @Nullable final UnitCache.SerializedUnit serializedUnit = unit == null ? null : _unitCache.get(unit);
+                final SeriesKey key = new SeriesKey(type, entry.getKey(), serializedUnit);
+                @Nullable AggregatedSeries aggregate = series.get(key);
+                if (aggregate == null) {
+                    aggregate = series.computeIfAbsent(
+                            key,
+                            k -> new AggregatedSeries(annotations, type, entry.getKey(), serializedUnit));
+                }
+                aggregate.record(value.doubleValue(), weight);
+            }
+        }
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param startInMillis The start of the period in milliseconds since the epoch.
+     * @param endInMillis The end of the period in milliseconds since the epoch.
+     * @param unitCache The cache of serialized units.
+     */
+    /* package private */ AggregationPeriod(final long startInMillis, final long endInMillis, final UnitCache unitCache) {
+        _startInMillis = startInMillis;
+        _endInMillis = endInMillis;
+        _unitCache = unitCache;
+    }
+
+    private final long _startInMillis;
+    private final long _endInMillis;
+    private final UnitCache _unitCache;
+    private final ConcurrentMap<Map<String, String>, ConcurrentMap<SeriesKey, AggregatedSeries>> _series =
+            new ConcurrentHashMap<>();
+    private final AtomicInteger _writers = new AtomicInteger();
+
+    private static final List<String> EXCLUDED_ANNOTATIONS = Arrays.asList("_id", "_start", "_end");
+
+    /**
+     * Identifies a series within a set of annotations.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    /* package private */ static final class SeriesKey {
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SeriesKey)) {
+                return false;
+            }
+            final SeriesKey otherKey = (SeriesKey) other;
+            return _type == otherKey._type
+                    && _name.equals(otherKey._name)
+                    && _numerators.equals(otherKey._numerators)
+                    && _denominators.equals(otherKey._denominators);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hashCode;
+        }
+
+        /* package private */ SeriesKey(
+                final AggregatedSeries.Type type,
+                final String name,
+                @Nullable final UnitCache.SerializedUnit unit) {
+            _type = type;
+            _name = name;
+            _numerators = unit == null ? Collections.emptyList() : unit.getNumeratorNames();
+            _denominators = unit == null ? Collections.emptyList() : unit.getDenominatorNames();
+            _hashCode = Objects.hash(_type, _name, _numerators, _denominators);
+        }
+
+        private final AggregatedSeries.Type _type;
+        private final String _name;
+        private final List<String> _numerators;
+        private final List<String> _denominators;
+        private final int _hashCode;
+    }
+}
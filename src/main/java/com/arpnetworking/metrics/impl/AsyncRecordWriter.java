@@ -0,0 +1,499 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>RecordWriter</code> which queues records on a
+ * lock-free ring buffer and writes them to a delegate <code>RecordWriter</code>
+ * on a dedicated thread. When the ring buffer is full records are either
+ * dropped or the caller waits for space using the configured
+ * <code>WaitStrategy</code>. Callers may instead try to queue a record
+ * within a timeout and register callbacks which the writer thread runs once
+ * it has taken records from a full ring buffer.
+ *
+ * With a byte budget the queue is also full once the queued records reach
+ * the budget; see <code>QueueByteBudget</code>. An adaptive queue further
+ * adapts its capacity to the drain rate and record size observed by the
+ * writer thread; see <code>AdaptiveQueueLimit</code>. The records are then
+ * queued on a <code>MpscChunkedQueue</code> which allocates slots in chunks
+ * of <code>ADAPTIVE_CHUNK_SLOTS</code> only while records are queued. It
+ * holds at most one slot per <code>ADAPTIVE_MIN_RECORD_BYTES</code> of the
+ * byte budget, so the queue can only reach the budget when records average
+ * at least that size; smaller records are bounded by the number of slots.
+ * The number of records queued is bounded by the current limit.
+ *
+ * The writer thread drains the ring buffer into batches which are written to
+ * the delegate together. A batch is written when it reaches the maximum
+ * number of records or bytes, or when the ring buffer is empty and the first
+ * record in the batch has waited for the maximum linger time. Records which
+ * the delegate fails to write are counted as dropped and the writer thread
+ * continues with the next batch.
+ *
+ * Closing the writer rejects further records and waits for the writer
+ * thread to write the queued records. The writer thread closes the
+ * delegate once it has written them, so records still queued when closing
+ * times out are written and the delegate is closed afterwards.
+ *
+ * Callers waiting for durability first wait for the writer thread to hand
+ * every record queued before the call to the delegate and then wait on the
+ * delegate.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class AsyncRecordWriter implements RecordWriter {
+
+    @Override
+    public boolean write(final byte[] record) {
+        if (!_running) {
+            return false;
+        }
+        while (!offer(record)) {
+            if (_dropWhenQueueFull) {
+                _dropped.incrementAndGet();
+                return false;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                _dropped.incrementAndGet();
+                LOGGER.warn("Interrupted while waiting to queue record; record dropped");
+                return false;
+            }
+            _waitStrategy.idle();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryWrite(final byte[] record, final long timeoutInNanos) {
+        if (!_running) {
+            return false;
+        }
+        if (offer(record)) {
+            return true;
+        }
+        final long start = System.nanoTime();
+        while (System.nanoTime() - start < timeoutInNanos) {
+            _waitStrategy.idle();
+            if (offer(record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean awaitCapacity(final long timeoutInNanos) {
+        final long start = System.nanoTime();
+        while (!hasCapacity()) {
+            if (System.nanoTime() - start >= timeoutInNanos) {
+                return false;
+            }
+            _waitStrategy.idle();
+        }
+        return true;
+    }
+
+    @Override
+    public void onCapacityAvailable(final Runnable callback) {
+        _callbacks.add(callback);
+        // NOTE: The writer thread signals after polling so check here for
+        // capacity freed before the callback was registered
+        if (hasCapacity()) {
+            _callbacks.signal();
+        }
+    }
+
+    @Override
+    public void awaitDurable() {
+        final long target = _queue.getOfferedCount();
+        while (_written.get() + _failed.get() < target && _thread.isAlive()) {
+            _waitStrategy.idle();
+        }
+        _delegate.awaitDurable();
+    }
+
+    @Override
+    public CommitStatistics getCommitStatistics() {
+        return _delegate.getCommitStatistics();
+    }
+
+    @Override
+    public void close() {
+        _running = false;
+        try {
+            _thread.join(MAX_FLUSH_TIME_IN_MILLIS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (_thread.isAlive()) {
+            LOGGER.warn(String.format(
+                    "Timed out flushing queued records; closing once written; remaining=%d",
+                    _queue.size()));
+        }
+    }
+
+    @Override
+    public long getDropped() {
+        return _dropped.get();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return _queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return getLimit();
+    }
+
+    @Override
+    public long getCompressionBacklogFiles() {
+        return _delegate.getCompressionBacklogFiles();
+    }
+
+    @Override
+    public long getCompressionBacklogBytes() {
+        return _delegate.getCompressionBacklogBytes();
+    }
+
+    private boolean offer(final byte[] record) {
+        if (_adaptiveLimit != null) {
+            final int limit = _adaptiveLimit.getLimit();
+            if (_queue.size() >= limit && !_adaptiveLimit.grow(limit)) {
+                return false;
+            }
+        }
+        if (_byteBudget == null) {
+            return _queue.offer(record);
+        }
+        if (!_byteBudget.tryAcquire(record.length)) {
+            return false;
+        }
+        if (!_queue.offer(record)) {
+            _byteBudget.release(record.length);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean hasCapacity() {
+        return _queue.size() < getLimit() && (_byteBudget == null || _byteBudget.hasCapacity());
+    }
+
+    private int getLimit() {
+        return _adaptiveLimit == null ? _queue.capacity() : _adaptiveLimit.getLimit();
+    }
+
+    private void run() {
+        final List<byte[]> batch = new ArrayList<>(_maxBatchSize);
+        long batchBytes = 0;
+        long batchStart = 0;
+        while (true) {
+            // NOTE: Read the flag before polling so records queued before close are drained
+            final boolean running = _running;
+            @Nullable final byte[] record = _queue.poll();
+            if (_adaptiveLimit != null) {
+                adapt(_adaptiveLimit, record);
+            }
+            if (record != null) {
+                if (_byteBudget != null) {
+                    _byteBudget.release(record.length);
+                }
+                if (_callbacks.isPending()) {
+                    _callbacks.signal();
+                }
+                if (batch.isEmpty()) {
+                    batchStart = System.nanoTime();
+                }
+                batch.add(record);
+                batchBytes += record.length;
+                if (batch.size() >= _maxBatchSize || batchBytes >= _maxBatchBytes) {
+                    writeBatch(batch);
+                    batchBytes = 0;
+                }
+            } else if (!batch.isEmpty() && (!running || System.nanoTime() - batchStart >= _maxBatchLingerInNanos)) {
+                writeBatch(batch);
+                batchBytes = 0;
+            } else if (!running) {
+                closeDelegate();
+                return;
+            } else {
+                _waitStrategy.idle();
+            }
+        }
+    }
+
+    private void adapt(final AdaptiveQueueLimit adaptiveLimit, @Nullable final byte[] record) {
+        if (record != null) {
+            ++_intervalRecords;
+            _intervalBytes += record.length;
+            if (_intervalRecords % ADAPT_CHECK_RECORDS != 0) {
+                return;
+            }
+        }
+        final long now = System.nanoTime();
+        final long elapsed = now - _intervalStart;
+        if (elapsed >= ADAPT_INTERVAL_IN_NANOS) {
+            adaptiveLimit.update(elapsed, _intervalRecords, _intervalBytes, _queue.size());
+            _intervalStart = now;
+            _intervalRecords = 0;
+            _intervalBytes = 0;
+        }
+    }
+
+    private void writeBatch(final List<byte[]> batch) {
+        int written = 0;
+        // CHECKSTYLE.OFF: IllegalCatch - A failing delegate must not stop the writer thread.
+        try {
+            written = _delegate.write(batch);
+        } catch (final RuntimeException e) {
+            LOGGER.warn(String.format("Unable to write records; records dropped; records=%d", batch.size()), e);
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+        final int failed = batch.size() - written;
+        if (failed > 0) {
+            _dropped.addAndGet(failed);
+            _failed.addAndGet(failed);
+        }
+        _written.addAndGet(written);
+        batch.clear();
+    }
+
+    private void closeDelegate() {
+        // CHECKSTYLE.OFF: IllegalCatch - The writer thread must exit even if the delegate fails to close.
+        try {
+            _delegate.close();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Unable to close writer", e);
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+    }
+
+    /**
+     * The maximum number of slots of an adaptive queue for a byte budget: one
+     * per <code>ADAPTIVE_MIN_RECORD_BYTES</code> of the budget,
+     * at least <code>ADAPTIVE_MIN_SLOTS</code> and at most
+     * <code>ADAPTIVE_MAX_SLOTS</code>.
+     *
+     * @param maxQueueBytes The byte budget of the queue.
+     * @return The maximum number of slots.
+     */
+    /* package private */ static int getAdaptiveSlots(final long maxQueueBytes) {
+        final long slots = (maxQueueBytes + ADAPTIVE_MIN_RECORD_BYTES - 1) / ADAPTIVE_MIN_RECORD_BYTES;
+        return (int) Math.min(ADAPTIVE_MAX_SLOTS, Math.max(ADAPTIVE_MIN_SLOTS, slots));
+    }
+
+    private AsyncRecordWriter(final Builder builder) {
+        _delegate = builder._delegate;
+        _dropWhenQueueFull = builder._dropWhenQueueFull;
+        _waitStrategy = builder._waitStrategy;
+        _maxBatchSize = builder._maxBatchSize;
+        _maxBatchBytes = builder._maxBatchBytes;
+        _maxBatchLingerInNanos = TimeUnit.MILLISECONDS.toNanos(builder._maxBatchLingerInMillis);
+        if (builder._adaptiveQueue) {
+            // NOTE: Slots for the largest limit are only allocated as records
+            // are queued and the records are bounded by the adaptive limit
+            _queue = new MpscChunkedQueue<>(
+                    Math.max(builder._maxQueueSize, getAdaptiveSlots(builder._maxQueueBytes)),
+                    ADAPTIVE_CHUNK_SLOTS);
+            _adaptiveLimit = new AdaptiveQueueLimit(
+                    Math.max(1, Math.min(builder._maxQueueSize, _queue.capacity())),
+                    _queue.capacity(),
+                    builder._maxQueueBytes);
+        } else {
+            _queue = new MpscRingBuffer<>(builder._maxQueueSize);
+            _adaptiveLimit = null;
+        }
+        _byteBudget = builder._maxQueueBytes > 0 ? new QueueByteBudget(builder._maxQueueBytes) : null;
+        _intervalStart = System.nanoTime();
+        _thread = new Thread(this::run, "metrics-file-sink-writer");
+        _thread.setDaemon(true);
+        _thread.start();
+    }
+
+    private final RecordWriter _delegate;
+    private final boolean _dropWhenQueueFull;
+    private final WaitStrategy _waitStrategy;
+    private final int _maxBatchSize;
+    private final long _maxBatchBytes;
+    private final long _maxBatchLingerInNanos;
+    private final MpscQueue<byte[]> _queue;
+    @Nullable
+    private final AdaptiveQueueLimit _adaptiveLimit;
+    @Nullable
+    private final QueueByteBudget _byteBudget;
+    private final Thread _thread;
+    private final CapacityCallbacks _callbacks = new CapacityCallbacks();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _failed = new AtomicLong();
+    private volatile boolean _running = true;
+    // NOTE: Only accessed by the writer thread
+    private long _intervalStart;
+    private long _intervalRecords;
+    private long _intervalBytes;
+
+    private static final long MAX_FLUSH_TIME_IN_MILLIS = 1000;
+    /* package private */ static final int ADAPTIVE_MIN_RECORD_BYTES = 256;
+    /* package private */ static final int ADAPTIVE_MIN_SLOTS = 1 << 10;
+    /* package private */ static final int ADAPTIVE_MAX_SLOTS = 1 << 24;
+    /* package private */ static final int ADAPTIVE_CHUNK_SLOTS = 1 << 10;
+    private static final long ADAPT_CHECK_RECORDS = 64;
+    private static final long ADAPT_INTERVAL_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(AsyncRecordWriter.class);
+
+    /**
+     * Builder for <code>AsyncRecordWriter</code>.
+     */
+    /* package private */ static final class Builder {
+
+        /**
+         * Set the <code>RecordWriter</code> to write records to.
+         *
+         * @param value The <code>RecordWriter</code> to write records to.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setDelegate(final RecordWriter value) {
+            _delegate = value;
+            return this;
+        }
+
+        /**
+         * Set the minimum capacity of the ring buffer. Optional; default is 500.
+         *
+         * @param value The minimum capacity of the ring buffer.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxQueueSize(final int value) {
+            _maxQueueSize = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of bytes of queued records. Optional;
+         * default is zero which leaves the bytes unbounded.
+         *
+         * @param value The maximum number of bytes of queued records.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxQueueBytes(final long value) {
+            _maxQueueBytes = value;
+            return this;
+        }
+
+        /**
+         * Set whether the queue adapts its capacity. The queue starts with
+         * the maximum queue size, grows up to the maximum queue bytes while
+         * the writer falls behind and shrinks back once idle. Requires the
+         * maximum queue bytes. Optional; default is false.
+         *
+         * @param value Whether the queue adapts its capacity.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setAdaptiveQueue(final boolean value) {
+            _adaptiveQueue = value;
+            return this;
+        }
+
+        /**
+         * Set whether to drop records when the queue is full. Optional;
+         * default is false.
+         *
+         * @param value Whether to drop records when the queue is full.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setDropWhenQueueFull(final boolean value) {
+            _dropWhenQueueFull = value;
+            return this;
+        }
+
+        /**
+         * Set the <code>WaitStrategy</code> used while idle. Optional; default
+         * is <code>PARK</code>.
+         *
+         * @param value The <code>WaitStrategy</code> used while idle.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setWaitStrategy(final WaitStrategy value) {
+            _waitStrategy = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of records in a batch. Optional; default is 1.
+         *
+         * @param value The maximum number of records in a batch.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxBatchSize(final int value) {
+            _maxBatchSize = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of bytes in a batch. A batch is written once
+         * it reaches this size. Optional; default is unbounded.
+         *
+         * @param value The maximum number of bytes in a batch.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxBatchBytes(final long value) {
+            _maxBatchBytes = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum time in milliseconds a partial batch waits for more
+         * records once the queue is empty. Optional; default is zero.
+         *
+         * @param value The maximum linger time in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxBatchLingerInMillis(final long value) {
+            _maxBatchLingerInMillis = value;
+            return this;
+        }
+
+        /**
+         * Create an instance of <code>AsyncRecordWriter</code>.
+         *
+         * @return Instance of <code>AsyncRecordWriter</code>.
+         */
+        /* package private */ AsyncRecordWriter build() {
+            return new AsyncRecordWriter(this);
+        }
+
+        private RecordWriter _delegate;
+        private int _maxQueueSize = 500;
+        private long _maxQueueBytes;
+        private boolean _adaptiveQueue;
+        private boolean _dropWhenQueueFull;
+        private WaitStrategy _waitStrategy = WaitStrategy.PARK;
+        private int _maxBatchSize = 1;
+        private long _maxBatchBytes = Long.MAX_VALUE;
+        private long _maxBatchLingerInMillis;
+    }
+}
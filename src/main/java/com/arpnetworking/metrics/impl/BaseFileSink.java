@@ -15,113 +15,329 @@
  */
 package com.arpnetworking.metrics.impl;
 
-import ch.qos.logback.classic.AsyncAppender;
-import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.Appender;
-import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.encoder.Encoder;
-import ch.qos.logback.core.rolling.RollingFileAppender;
-import ch.qos.logback.core.rolling.RollingPolicy;
-import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
-import ch.qos.logback.core.util.FileSize;
-import com.arpnetworking.logback.SizeAndRandomizedTimeBasedFNATP;
+import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Sink;
 import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 /**
- * Base class for <code>Sink</code> implementations which write to files. This
- * implementation uses Logback as the underlying implementation to write events
- * to disk. It is designed not to interfere with Logback or SLF4J usage for
- * application logging.
+ * Base class for <code>Sink</code> implementations which write to files. By
+ * default this implementation uses Logback as the underlying implementation to
+ * write events to disk. It is designed not to interfere with Logback or SLF4J
+ * usage for application logging. Alternatively, records may be written
+ * directly to a <code>FileChannel</code> or a memory mapped file; see
+ * <code>WriterEngine</code>. The direct engines may spread records across
+ * several sharded files; see <code>ShardSelection</code>.
+ *
+ * Each sink collects statistics on the records it writes, the records it
+ * drops and its queue; see <code>SinkStatistics</code>. The statistics may
+ * be polled, pushed to a listener periodically and exposed through JMX.
+ *
+ * Events may be sampled and rate limited before they are encoded; see
+ * <code>EventSampler</code>.
+ *
+ * Callers which apply their own load shedding may offer events without
+ * blocking on a full queue through <code>tryRecord</code>; see
+ * <code>RecordOutcome</code>.
  *
  * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
  */
 /* package private */ abstract class BaseFileSink implements Sink {
 
     /**
-     * Accessor for the <code>Logger</code> instance to write to.
+     * Accessor for the <code>Logger</code> instance to write to. The
+     * <code>Logger</code> is only available with the Logback writer engine.
      *
      * @return The <code>Logger</code> instance to write to.
      */
     protected Logger getMetricsLogger() {
+        if (_metricsLogger == null) {
+            throw new IllegalStateException("Metrics logger is only available with the Logback writer engine");
+        }
         return _metricsLogger;
     }
 
-    private TimeBasedRollingPolicy<ILoggingEvent> createRollingPolicy(
-            final String extension,
-            final String fileNameWithoutExtension,
-            final int maxHistory,
-            final String maxFileSizeAsString,
-            final boolean compress) {
-
-        final FileSize maxFileSize = FileSize.valueOf(maxFileSizeAsString);
-        final FileSize totalSizeCap = FileSize.valueOf(String.valueOf(maxHistory * maxFileSize.getSize()));
-
-        final SizeAndRandomizedTimeBasedFNATP<ILoggingEvent> triggeringPolicy = new SizeAndRandomizedTimeBasedFNATP<>();
-        triggeringPolicy.setContext(_loggerContext);
-        triggeringPolicy.setMaxOffsetInMillis(MAX_RANDOM_OFFSET_IN_MILLIS);
-        triggeringPolicy.setMaxFileSize(maxFileSize);
-
-        final TimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = new TimeBasedRollingPolicy<>();
-        rollingPolicy.setTimeBasedFileNamingAndTriggeringPolicy(triggeringPolicy);
-        rollingPolicy.setContext(_loggerContext);
-        rollingPolicy.setMaxHistory(maxHistory);
-        rollingPolicy.setTotalSizeCap(totalSizeCap);
-        rollingPolicy.setCleanHistoryOnStart(true);
-        if (compress) {
-            rollingPolicy.setFileNamePattern(fileNameWithoutExtension + DATE_AND_INDEX_EXTENSION + extension + GZIP_EXTENSION);
-        } else {
-            rollingPolicy.setFileNamePattern(fileNameWithoutExtension + DATE_AND_INDEX_EXTENSION + extension);
+    /**
+     * Write an encoded record. The record must include its line separator
+     * and the caller must not modify it afterwards. A record which the
+     * writer does not accept, for example because it was dropped from a
+     * full queue, is not counted as written.
+     *
+     * @param record The encoded record.
+     * @return True if and only if the record was accepted.
+     */
+    protected boolean write(final byte[] record) {
+        final long start = System.nanoTime();
+        if (!_writer.write(record)) {
+            return false;
         }
+        if (_blockUntilDurable) {
+            _writer.awaitDurable();
+        }
+        _instrumentation.recordWrite(System.nanoTime() - start, record.length);
+        return true;
+    }
 
-        return rollingPolicy;
+    /**
+     * Write an encoded record only if the writer accepts it within the
+     * timeout. A record which is not accepted is neither written nor
+     * counted as dropped.
+     *
+     * @param record The encoded record.
+     * @param timeoutInNanos The maximum time to wait for queue capacity.
+     * @return True if and only if the record was accepted.
+     */
+    protected boolean tryWrite(final byte[] record, final long timeoutInNanos) {
+        final long start = System.nanoTime();
+        if (!_writer.tryWrite(record, timeoutInNanos)) {
+            return false;
+        }
+        if (_blockUntilDurable) {
+            _writer.awaitDurable();
+        }
+        _instrumentation.recordWrite(System.nanoTime() - start, record.length);
+        return true;
     }
 
-    private FileAppender<ILoggingEvent> createRollingAppender(
-            final String fileName,
-            final RollingPolicy rollingPolicy,
-            final Encoder<ILoggingEvent> encoder,
-            final boolean immediateFlush) {
-        final RollingFileAppender<ILoggingEvent> rollingAppender = new RollingFileAppender<>();
-        rollingAppender.setContext(_loggerContext);
-        rollingAppender.setName("query-log");
-        rollingAppender.setFile(fileName);
-        rollingAppender.setAppend(true);
-        rollingAppender.setRollingPolicy(rollingPolicy);
-        rollingAppender.setEncoder(encoder);
-        rollingAppender.setImmediateFlush(immediateFlush);
-        return rollingAppender;
+    /**
+     * Log a message through the <code>Logger</code> of the Logback writer
+     * engine, waiting for or dropping it on a full queue as configured.
+     *
+     * @param marker The marker of the message, if any.
+     * @param message The message or its format.
+     * @param arguments The arguments of the message, if any.
+     * @return True if and only if the message was accepted.
+     */
+    protected boolean log(@Nullable final Marker marker, final String message, @Nullable final Object[] arguments) {
+        return getLogbackWriter().log(marker, message, arguments);
+    }
+
+    /**
+     * Log a message through the <code>Logger</code> of the Logback writer
+     * engine only if its queue accepts it within the timeout. Unlike logging
+     * through <code>getMetricsLogger</code> the message never blocks on a
+     * full queue nor is silently discarded; a message which is not accepted
+     * is neither written nor counted as dropped.
+     *
+     * @param marker The marker of the message, if any.
+     * @param message The message or its format.
+     * @param arguments The arguments of the message, if any.
+     * @param timeoutInNanos The maximum time to wait for queue capacity.
+     * @return True if and only if the message was accepted.
+     */
+    protected boolean tryLog(
+            @Nullable final Marker marker,
+            final String message,
+            @Nullable final Object[] arguments,
+            final long timeoutInNanos) {
+        return getLogbackWriter().tryLog(marker, message, arguments, timeoutInNanos);
+    }
+
+    /**
+     * Wait until the writer has queue capacity for a record or the timeout
+     * elapses. Subclasses call this before encoding so that events offered
+     * to a full queue are rejected without being encoded.
+     *
+     * @param timeoutInNanos The maximum time to wait for queue capacity.
+     * @return True if and only if the writer had queue capacity.
+     */
+    protected boolean awaitCapacity(final long timeoutInNanos) {
+        return _writer.awaitCapacity(timeoutInNanos);
+    }
+
+    /**
+     * Record an event without waiting for queue capacity. Unlike
+     * <code>record</code> the event is never silently dropped or left
+     * blocking the caller on a full queue; instead the outcome tells the
+     * caller whether to shed or retry the event.
+     *
+     * @param event The event.
+     * @return The outcome of recording the event.
+     */
+    public RecordOutcome tryRecord(final Event event) {
+        return tryRecord(event, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record an event waiting at most the timeout for queue capacity. The
+     * event is <code>DROPPED</code> if it is sampled out or cannot be
+     * encoded and <code>REJECTED</code> if the queue stays full for the
+     * timeout, independent of whether the sink drops records when its queue
+     * is full.
+     *
+     * @param event The event.
+     * @param timeout The maximum time to wait for queue capacity.
+     * @param unit The unit of the timeout.
+     * @return The outcome of recording the event.
+     */
+    public RecordOutcome tryRecord(final Event event, final long timeout, final TimeUnit unit) {
+        @Nullable final Event sampled = sample(event);
+        if (sampled == null) {
+            return RecordOutcome.DROPPED;
+        }
+        return tryRecordSampled(sampled, unit.toNanos(timeout));
+    }
+
+    /**
+     * Register a one-shot callback run once the queue of this sink has
+     * capacity, for example to resume recording after a rejection. The
+     * callback runs on the thread draining the queue, or on the calling
+     * thread if there is capacity already, so it must be short and must not
+     * block. Sinks without a queue run the callback immediately.
+     *
+     * @param callback The callback.
+     */
+    public void onCapacityAvailable(final Runnable callback) {
+        _writer.onCapacityAvailable(callback);
+    }
+
+    /**
+     * Record an event which has already been sampled waiting at most the
+     * timeout for queue capacity.
+     *
+     * @param event The sampled event.
+     * @param timeoutInNanos The maximum time to wait for queue capacity.
+     * @return The outcome of recording the event.
+     */
+    protected abstract RecordOutcome tryRecordSampled(Event event, long timeoutInNanos);
+
+    /**
+     * Record the time spent encoding an event.
+     *
+     * @param latencyInNanos The serialization latency in nanoseconds.
+     */
+    protected void recordSerialization(final long latencyInNanos) {
+        _instrumentation.recordSerialization(latencyInNanos);
+    }
+
+    /**
+     * Record a record written without <code>write</code>, for example
+     * through the <code>Logger</code> of the Logback writer engine.
+     *
+     * @param latencyInNanos The write latency in nanoseconds.
+     * @param bytes The size of the record.
+     */
+    protected void recordWrite(final long latencyInNanos, final long bytes) {
+        _instrumentation.recordWrite(latencyInNanos, bytes);
+    }
+
+    /**
+     * Accessor for the size of a record logged as a string through the
+     * Logback writer engine, which encodes it as UTF-8 followed by a line
+     * separator.
+     *
+     * @param record The record.
+     * @return The size of the encoded record in bytes.
+     */
+    protected static long getEncodedBytes(final String record) {
+        long bytes = LINE_SEPARATOR_BYTES;
+        final int length = record.length();
+        for (int i = 0; i < length; ++i) {
+            final char c = record.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(record.charAt(i + 1))) {
+                bytes += 4;
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                // NOTE: Unpaired surrogates are replaced by a single byte
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Apply the sampler of this sink, if any, to an event before it is
+     * encoded.
+     *
+     * @param event The event.
+     * @return The event to write, which may carry a sample rate annotation,
+     * or <code>null</code> if the event is dropped.
+     */
+    @Nullable
+    protected Event sample(final Event event) {
+        return _sampler == null ? event : _sampler.sample(event);
+    }
+
+    /**
+     * Invoked by the shutdown hook before the writer is closed. Subclasses
+     * which hold events back from the writer override this to write them.
+     */
+    protected void onShutdown() {
+        // Nothing to write by default
+    }
+
+    /**
+     * Accessor for the statistics of this <code>Sink</code>.
+     *
+     * @return Snapshot of the statistics.
+     */
+    public SinkStatistics getStatistics() {
+        return _instrumentation.snapshot();
+    }
+
+    /**
+     * Accessor for the group commit statistics of this <code>Sink</code>.
+     * The statistics are empty unless group commit is enabled.
+     *
+     * @return Snapshot of the group commit statistics.
+     */
+    public CommitStatistics getCommitStatistics() {
+        return _writer.getCommitStatistics();
     }
 
-    private Appender<ILoggingEvent> createAsyncAppender(
-            final Appender<ILoggingEvent> appender,
-            final int discardingThreshold,
-            final int queueSize) {
-        final AsyncAppender asyncAppender = new AsyncAppender();
-        asyncAppender.setContext(_loggerContext);
-        asyncAppender.setDiscardingThreshold(discardingThreshold);
-        asyncAppender.setName("query-log-async");
-        asyncAppender.setQueueSize(queueSize);
-        asyncAppender.addAppender(appender);
-        return asyncAppender;
+    private LogbackRecordWriter getLogbackWriter() {
+        if (_logbackWriter == null) {
+            throw new IllegalStateException("Metrics logger is only available with the Logback writer engine");
+        }
+        return _logbackWriter;
     }
 
     /**
      * Protected constructor.
      *
      * @param builder Instance of <code>Builder</code>.
+     * @param encoder The <code>Encoder</code> used by the Logback writer engine.
      */
     protected BaseFileSink(
             final Builder<? extends BaseFileSink, ? extends Builder<? extends Sink, ?>> builder,
             final Encoder<ILoggingEvent> encoder) {
+        this(builder, encoder, null);
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param builder Instance of <code>Builder</code>.
+     * @param encoder The <code>Encoder</code> used by the Logback writer engine.
+     * @param dictionaries Creates the <code>FileDictionary</code> of each
+     * shard whose definitions are written ahead of the records which require
+     * them; only supported by the file channel and memory mapped writer
+     * engines.
+     */
+    /* package private */ BaseFileSink(
+            final Builder<? extends BaseFileSink, ? extends Builder<? extends Sink, ?>> builder,
+            final Encoder<ILoggingEvent> encoder,
+            @Nullable final Supplier<? extends FileDictionary> dictionaries) {
         final StringBuilder fileNameBuilder = new StringBuilder(builder._directory.getPath());
         fileNameBuilder.append(File.separator);
         fileNameBuilder.append(builder._name);
@@ -129,68 +345,68 @@ import javax.annotation.Nullable;
         fileNameBuilder.append(builder._extension);
         final String fileName = fileNameBuilder.toString();
 
-        _loggerContext = new LoggerContext();
-        encoder.setContext(_loggerContext);
-
-        final TimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = createRollingPolicy(
-                builder._extension,
-                fileNameWithoutExtension,
-                builder._maxHistory,
-                builder._maxFileSize,
-                builder._compress);
-        final FileAppender<ILoggingEvent> rollingAppender = createRollingAppender(
-                fileName,
-                rollingPolicy,
-                encoder,
-                builder._immediateFlush);
-
-        rollingPolicy.setParent(rollingAppender);
-        rollingPolicy.start();
-        encoder.start();
-        rollingAppender.start();
-
-        final Appender<ILoggingEvent> appender;
-        if (builder._async) {
-            appender = createAsyncAppender(
-                    rollingAppender,
-                    builder._dropWhenQueueFull ? builder._maxQueueSize : 0,
-                    builder._maxQueueSize);
-            appender.start();
+        if (builder._writerEngine != WriterEngine.LOGBACK) {
+            _writer = ShardedRecordWriter.create(builder, dictionaries);
+            _logbackWriter = null;
+            _metricsLogger = null;
         } else {
-            appender = rollingAppender;
+            final LoggerContext loggerContext = LogbackRecordWriter.createLoggerContext(
+                    builder,
+                    encoder,
+                    fileName,
+                    fileNameWithoutExtension);
+            _logbackWriter = new LogbackRecordWriter(loggerContext);
+            _writer = _logbackWriter;
+            _metricsLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
         }
 
-        final Logger rootLogger = _loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
-        rootLogger.setLevel(Level.INFO);
-        rootLogger.addAppender(appender);
-
-        Runtime.getRuntime().addShutdownHook(new ShutdownHookThread(_loggerContext));
+        _blockUntilDurable = builder._blockUntilDurable;
+        _sampler = builder._sampler;
+        _instrumentation = new SinkInstrumentation(_writer);
+        if (builder._jmxEnabled) {
+            _instrumentation.registerBean(getClass().getSimpleName(), fileName);
+        }
+        if (builder._statisticsListener != null) {
+            _instrumentation.startReporter(builder._statisticsListener, builder._statisticsIntervalInMillis);
+        }
 
-        _metricsLogger = _loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        Runtime.getRuntime().addShutdownHook(new ShutdownHookThread(this::onShutdown, _writer, _instrumentation::close));
     }
 
-    private final LoggerContext _loggerContext;
+    private final RecordWriter _writer;
+    private final boolean _blockUntilDurable;
+    @Nullable
+    private final EventSampler _sampler;
+    private final SinkInstrumentation _instrumentation;
+    @Nullable
+    private final LogbackRecordWriter _logbackWriter;
+    @Nullable
     private final Logger _metricsLogger;
 
-    private static final int MAX_RANDOM_OFFSET_IN_MILLIS = 10 * 60 * 1000; // 10 minutes
-    private static final String DATE_AND_INDEX_EXTENSION = ".%d{yyyy-MM-dd-HH}.%i";
-    private static final String GZIP_EXTENSION = ".gz";
+    /* package private */ static final int MAX_RANDOM_OFFSET_IN_MILLIS = 10 * 60 * 1000; // 10 minutes
 
+    private static final int LINE_SEPARATOR_BYTES = CoreConstants.LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8).length;
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(BaseFileSink.class);
 
     // NOTE: Package private for testing
     /* package private */ static final class ShutdownHookThread extends Thread {
 
-        /* package private */ ShutdownHookThread(final LoggerContext context) {
-            _context = context;
+        /* package private */ ShutdownHookThread(final Runnable onShutdown, final RecordWriter writer, final Runnable onClose) {
+            _onShutdown = onShutdown;
+            _writer = writer;
+            _onClose = onClose;
         }
 
         @Override
         public void run() {
-            _context.stop();
+            _onShutdown.run();
+            _writer.close();
+            _onClose.run();
         }
 
-        private final LoggerContext _context;
+        private final Runnable _onShutdown;
+        private final RecordWriter _writer;
+        private final Runnable _onClose;
     }
 
     /**
@@ -200,7 +416,7 @@ import javax.annotation.Nullable;
      *
      * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
      */
-    public abstract static class Builder<T extends Sink, B extends Builder<? extends Sink, ?>> {
+    public abstract static class Builder<T extends Sink, B extends Builder<? extends Sink, ?>> extends WriterPipelineBuilder<B> {
 
         /**
          * Create an instance of <code>Sink</code>.
@@ -297,6 +513,66 @@ import javax.annotation.Nullable;
             return self();
         }
 
+        /**
+         * Set the codec used to compress rolled files. The extension of the
+         * codec is appended to the name of compressed files. The Logback
+         * writer engine only supports gzip at the default level. Optional;
+         * default is gzip at the default level.
+         *
+         * @param value The compression codec.
+         * @return This <code>Builder</code> instance.
+         */
+        public B setCompressionCodec(@Nullable final CompressionCodec value) {
+            _compressionCodec = value;
+            return self();
+        }
+
+        /**
+         * Set whether records are compressed as they are written instead of
+         * when the file is rolled, which avoids reading back and rewriting
+         * each rolled file. The active file is named with the extension of
+         * the compression codec and is flushed in complete compressed blocks
+         * so readers tailing it can decompress every flushed record. The
+         * maximum file size applies to the compressed file. Only supported
+         * by the file channel writer engine and by concatenable codecs such
+         * as gzip. Optional; default is false.
+         *
+         * @param value Whether to compress records as they are written.
+         * @return This <code>Builder</code> instance.
+         */
+        public B setStreamingCompression(@Nullable final Boolean value) {
+            _streamingCompression = value;
+            return self();
+        }
+
+        /**
+         * Set the number of threads compressing rolled files. With more than
+         * one thread rolled files are compressed off the writer thread in
+         * parallel blocks. Only supported by the file channel and memory
+         * mapped writer engines and by concatenable codecs such as gzip.
+         * Optional; default is 1.
+         *
+         * @param value The number of compression threads.
+         * @return This <code>Builder</code> instance.
+         */
+        public B setCompressionThreads(@Nullable final Integer value) {
+            _compressionThreads = value;
+            return self();
+        }
+
+        /**
+         * Set the size in bytes of the blocks compressed in parallel, or of
+         * the uncompressed records per member with streaming compression.
+         * Optional; default is 1048576.
+         *
+         * @param value The compression block size in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        public B setCompressionBlockSize(@Nullable final Integer value) {
+            _compressionBlockSize = value;
+            return self();
+        }
+
         /**
          * Set whether entries are flushed immediately. Entries are still
          * written asynchronously unless async is disabled. Optional; default
@@ -311,38 +587,54 @@ import javax.annotation.Nullable;
         }
 
         /**
-         * Set whether files are written asynchronously. Optional; default is true.
+         * Set whether the statistics of the <code>Sink</code> are registered
+         * as an MXBean with the platform <code>MBeanServer</code>. The object
+         * name is <code>com.arpnetworking.metrics.impl:type=[Sink],name=[File]</code>
+         * where the name is the quoted path of the active file. Optional;
+         * default is false.
          *
-         * @param value Whether to write asynchronously.
+         * @param value Whether to register the statistics with JMX.
          * @return This <code>Builder</code> instance.
          */
-        public B setAsync(@Nullable final Boolean value) {
-            _async = value;
+        public B setJmxEnabled(@Nullable final Boolean value) {
+            _jmxEnabled = value;
             return self();
         }
 
         /**
-         * Set whether to drop events when the queue is full. If events are not
-         * dropped when the queue is full closing a <code>Metrics</code>
-         * instance will block on writing to this <code>Sink</code>. Optional;
-         * default is false.
+         * Set a listener which periodically receives the statistics of the
+         * <code>Sink</code> on a dedicated daemon thread. Optional; default
+         * is no listener.
+         *
+         * @param value The statistics listener.
+         * @return This <code>Builder</code> instance.
+         */
+        public B setStatisticsListener(@Nullable final Consumer<SinkStatistics> value) {
+            _statisticsListener = value;
+            return self();
+        }
+
+        /**
+         * Set the interval in milliseconds at which statistics are pushed to
+         * the statistics listener. Optional; default is 60 seconds.
          *
-         * @param value Whether to drop events when the queue is full.
+         * @param value The statistics interval in milliseconds.
          * @return This <code>Builder</code> instance.
          */
-        public B setDropWhenQueueFull(@Nullable final Boolean value) {
-            _dropWhenQueueFull = value;
+        public B setStatisticsIntervalInMillis(@Nullable final Long value) {
+            _statisticsIntervalInMillis = value;
             return self();
         }
 
         /**
-         * Set maximum event queue size. Optional; default is 500.
+         * Set the sampler which selects and rate limits events before they
+         * are encoded. Optional; default is to write every event.
          *
-         * @param value The maximum event queue size.
+         * @param value The event sampler.
          * @return This <code>Builder</code> instance.
          */
-        public B setMaxQueueSize(@Nullable final Integer value) {
-            _maxQueueSize = value;
+        public B setSampler(@Nullable final EventSampler value) {
+            _sampler = value;
             return self();
         }
 
@@ -350,7 +642,9 @@ import javax.annotation.Nullable;
          * Protected method allows child builder classes to add additional
          * defaulting behavior to fields.
          */
+        @Override
         protected void applyDefaults() {
+            super.applyDefaults();
             if (_directory == null) {
                 _directory = DEFAULT_DIRECTORY;
                 LOGGER.info(String.format("Defaulted null directory; directory=%s", _directory));
@@ -379,17 +673,39 @@ import javax.annotation.Nullable;
                 _immediateFlush = DEFAULT_IMMEDIATE_FLUSH;
                 LOGGER.info(String.format("Defaulted null immediate flush; immediateFlush=%b", _immediateFlush));
             }
-            if (_async == null) {
-                _async = DEFAULT_ASYNC;
-                LOGGER.info(String.format("Defaulted null async; async=%b", _async));
+            applyCompressionDefaults();
+            applyStatisticsDefaults();
+        }
+
+        private void applyCompressionDefaults() {
+            if (_streamingCompression == null) {
+                _streamingCompression = DEFAULT_STREAMING_COMPRESSION;
+                LOGGER.info(String.format("Defaulted null streaming compression; streamingCompression=%b", _streamingCompression));
+            }
+            if (_compressionCodec == null) {
+                _compressionCodec = DEFAULT_COMPRESSION_CODEC;
+                LOGGER.info(String.format("Defaulted null compression codec; compressionCodec=%s", _compressionCodec));
             }
-            if (_dropWhenQueueFull == null) {
-                _dropWhenQueueFull = DEFAULT_DROP_WHEN_QUEUE_FULL;
-                LOGGER.info(String.format("Defaulted null drop when queue full; dropWhenQueueFull=%s", _dropWhenQueueFull));
+            if (_compressionThreads == null) {
+                _compressionThreads = DEFAULT_COMPRESSION_THREADS;
+                LOGGER.info(String.format("Defaulted null compression threads; compressionThreads=%d", _compressionThreads));
             }
-            if (_maxQueueSize == null) {
-                _maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
-                LOGGER.info(String.format("Defaulted null max queue size; maxQueueSize=%d", _maxQueueSize));
+            if (_compressionBlockSize == null) {
+                _compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+                LOGGER.info(String.format("Defaulted null compression block size; compressionBlockSize=%d", _compressionBlockSize));
+            }
+        }
+
+        private void applyStatisticsDefaults() {
+            if (_jmxEnabled == null) {
+                _jmxEnabled = DEFAULT_JMX_ENABLED;
+                LOGGER.info(String.format("Defaulted null jmx enabled; jmxEnabled=%b", _jmxEnabled));
+            }
+            if (_statisticsIntervalInMillis == null) {
+                _statisticsIntervalInMillis = DEFAULT_STATISTICS_INTERVAL_IN_MILLIS;
+                LOGGER.info(String.format(
+                        "Defaulted null statistics interval; statisticsIntervalInMillis=%d",
+                        _statisticsIntervalInMillis));
             }
         }
 
@@ -399,13 +715,58 @@ import javax.annotation.Nullable;
          *
          * @param failures List of validation failures.
          */
+        @Override
         protected void validate(final List<String> failures) {
+            super.validate(failures);
             if (!_directory.isDirectory()) {
                 failures.add(String.format("Path is not a directory; path=%s", _directory));
             }
             if (!_directory.exists()) {
                 failures.add(String.format("Path does not exist; path=%s", _directory));
             }
+            validateCompression(failures);
+            if (_statisticsIntervalInMillis < 1) {
+                failures.add(String.format(
+                        "Statistics interval must be positive; statisticsIntervalInMillis=%d",
+                        _statisticsIntervalInMillis));
+            }
+        }
+
+        private void validateCompression(final List<String> failures) {
+            if (_compressionThreads < 1) {
+                failures.add(String.format("Compression threads must be positive; compressionThreads=%d", _compressionThreads));
+            }
+            if (_compressionThreads > 1 && _writerEngine == WriterEngine.LOGBACK) {
+                failures.add(String.format(
+                        "Parallel compression is not supported by the writer engine; writerEngine=%s",
+                        _writerEngine));
+            }
+            if (_compressionThreads > 1 && !_compressionCodec.isConcatenable()) {
+                failures.add(String.format(
+                        "Parallel compression is not supported by the compression codec; compressionCodec=%s",
+                        _compressionCodec));
+            }
+            if (_compress && !DEFAULT_COMPRESSION_CODEC.equals(_compressionCodec) && _writerEngine == WriterEngine.LOGBACK) {
+                failures.add(String.format(
+                        "Compression codec is not supported by the writer engine; compressionCodec=%s, writerEngine=%s",
+                        _compressionCodec,
+                        _writerEngine));
+            }
+            if (_streamingCompression && _writerEngine != WriterEngine.FILE_CHANNEL) {
+                failures.add(String.format(
+                        "Streaming compression is not supported by the writer engine; writerEngine=%s",
+                        _writerEngine));
+            }
+            if (_streamingCompression && !_compressionCodec.isConcatenable()) {
+                failures.add(String.format(
+                        "Streaming compression is not supported by the compression codec; compressionCodec=%s",
+                        _compressionCodec));
+            }
+            if (_compressionBlockSize < 1) {
+                failures.add(String.format(
+                        "Compression block size must be positive; compressionBlockSize=%d",
+                        _compressionBlockSize));
+            }
         }
 
         /**
@@ -416,13 +777,6 @@ import javax.annotation.Nullable;
          */
         protected abstract T createSink();
 
-        /**
-         * Protected method returns this builder with the correct top-level type.
-         *
-         * @return This builder with the correct top-level type.
-         */
-        protected abstract B self();
-
         protected File _directory = DEFAULT_DIRECTORY;
         protected String _name = DEFAULT_NAME;
         protected String _extension = DEFAULT_EXTENSION;
@@ -430,9 +784,16 @@ import javax.annotation.Nullable;
         protected String _maxFileSize = DEFAULT_MAX_FILE_SIZE;
         protected Boolean _compress = DEFAULT_COMPRESS;
         protected Boolean _immediateFlush = DEFAULT_IMMEDIATE_FLUSH;
-        protected Boolean _async = DEFAULT_ASYNC;
-        protected Boolean _dropWhenQueueFull = DEFAULT_DROP_WHEN_QUEUE_FULL;
-        protected Integer _maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+        protected CompressionCodec _compressionCodec = DEFAULT_COMPRESSION_CODEC;
+        protected Boolean _streamingCompression = DEFAULT_STREAMING_COMPRESSION;
+        protected Integer _compressionThreads = DEFAULT_COMPRESSION_THREADS;
+        protected Integer _compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+        protected Boolean _jmxEnabled = DEFAULT_JMX_ENABLED;
+        @Nullable
+        protected Consumer<SinkStatistics> _statisticsListener;
+        protected Long _statisticsIntervalInMillis = DEFAULT_STATISTICS_INTERVAL_IN_MILLIS;
+        @Nullable
+        protected EventSampler _sampler;
 
         private static final File DEFAULT_DIRECTORY = new File("./");
         private static final String DEFAULT_NAME = "query";
@@ -441,8 +802,11 @@ import javax.annotation.Nullable;
         private static final String DEFAULT_MAX_FILE_SIZE = "100MB";
         private static final Boolean DEFAULT_COMPRESS = Boolean.TRUE;
         private static final Boolean DEFAULT_IMMEDIATE_FLUSH = Boolean.FALSE;
-        private static final Boolean DEFAULT_ASYNC = Boolean.TRUE;
-        private static final Boolean DEFAULT_DROP_WHEN_QUEUE_FULL = Boolean.FALSE;
-        private static final Integer DEFAULT_MAX_QUEUE_SIZE = 500;
+        private static final CompressionCodec DEFAULT_COMPRESSION_CODEC = new GzipCompressionCodec();
+        private static final Boolean DEFAULT_STREAMING_COMPRESSION = Boolean.FALSE;
+        private static final Integer DEFAULT_COMPRESSION_THREADS = 1;
+        private static final Integer DEFAULT_COMPRESSION_BLOCK_SIZE = 1048576;
+        private static final Boolean DEFAULT_JMX_ENABLED = Boolean.FALSE;
+        private static final Long DEFAULT_STATISTICS_INTERVAL_IN_MILLIS = 60000L;
     }
 }
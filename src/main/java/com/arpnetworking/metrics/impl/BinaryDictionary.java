@@ -0,0 +1,144 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Dictionary of the annotation keys, metric names and unit names written by a
+ * <code>BinaryFileSink</code>. Identifiers are assigned on first use and are
+ * stable for the lifetime of the sink, so encoding a known name is a single
+ * lookup. Each event record starts with the number of entries it requires;
+ * since identifiers are assigned in order, the writer defines all entries
+ * below that number which are not yet defined in the current file in a
+ * dictionary record ahead of the event. Each writer tracks the entries
+ * defined in its current file through its own <code>FileDictionary</code>. Once the dictionary holds its
+ * maximum number of entries further names are written inline.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class BinaryDictionary {
+
+    /**
+     * Lookup the identifier of a name, assigning one if necessary.
+     *
+     * @param name The name.
+     * @return The identifier of the name or <code>-1</code> if the
+     * dictionary is full.
+     */
+    /* package private */ int lookup(final String name) {
+        @Nullable final Integer id = _ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            @Nullable final Integer existing = _ids.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            if (_names.size() >= _maxSize) {
+                return -1;
+            }
+            final int assigned = _names.size();
+            _names.add(name);
+            _ids.put(name, assigned);
+            return assigned;
+        }
+    }
+
+    /**
+     * Create a view of the dictionary which tracks the entries defined in
+     * the files of one writer. Every writer of the sink shares the
+     * identifiers but defines them in its own files.
+     *
+     * @return New <code>FileDictionary</code> with no entries defined.
+     */
+    /* package private */ FileDictionary createFileDictionary() {
+        return new FileView();
+    }
+
+    /**
+     * Accessor for the number of entries in the dictionary.
+     *
+     * @return The number of entries in the dictionary.
+     */
+    /* package private */ synchronized int size() {
+        return _names.size();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxSize The maximum number of entries.
+     */
+    /* package private */ BinaryDictionary(final int maxSize) {
+        _maxSize = maxSize;
+    }
+
+    private final int _maxSize;
+    private final ConcurrentMap<String, Integer> _ids = new ConcurrentHashMap<>();
+    private final List<String> _names = new ArrayList<>();
+
+    private static final byte[] NO_DEFINITIONS = new byte[0];
+
+    private final class FileView implements FileDictionary {
+
+        @Override
+        public void reset() {
+            synchronized (BinaryDictionary.this) {
+                _defined = 0;
+            }
+        }
+
+        @Override
+        public byte[] define(final byte[] record) {
+            int offset = 0;
+            while ((record[offset] & 0x80) != 0) {
+                ++offset;
+            }
+            ++offset;
+            if (record[offset] != BinaryFormat.DICTIONARY_EVENT_RECORD) {
+                return NO_DEFINITIONS;
+            }
+            int required = 0;
+            for (int i = 1; i <= Integer.BYTES; ++i) {
+                required = (required << Byte.SIZE) | (record[offset + i] & 0xFF);
+            }
+            synchronized (BinaryDictionary.this) {
+                if (required <= _defined) {
+                    return NO_DEFINITIONS;
+                }
+                final BinaryOutput output = new BinaryOutput();
+                output.writeByte(BinaryFormat.DICTIONARY_RECORD);
+                output.writeVarint(BinaryFormat.STATIC_STRINGS.size() + _defined);
+                output.writeVarint(required - _defined);
+                for (int id = _defined; id < required; ++id) {
+                    BinaryEventEncoder.writeInlineString(_names.get(id), output);
+                }
+                _defined = required;
+                return output.toRecord();
+            }
+        }
+
+        private int _defined;
+    }
+}
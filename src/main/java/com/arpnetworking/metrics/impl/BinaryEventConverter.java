@@ -0,0 +1,73 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.core.CoreConstants;
+import com.arpnetworking.metrics.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nullable;
+
+/**
+ * Converts the records written by <code>BinaryFileSink</code> to the "2f"
+ * JSON format. Each event is written on its own line exactly as
+ * <code>FileSink</code> would have written it.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class BinaryEventConverter {
+
+    /**
+     * Convert a stream of binary records to "2f" JSON. Neither stream is
+     * closed.
+     *
+     * @param inputStream The stream of binary records.
+     * @param outputStream The stream to write the JSON events to.
+     * @return The number of events converted.
+     * @throws IOException if the records cannot be read or the events
+     * cannot be written.
+     */
+    public static long convert(final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final BinaryEventReader reader = new BinaryEventReader(inputStream);
+        long count = 0;
+        @Nullable Event event = reader.read();
+        while (event != null) {
+            try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(outputStream)) {
+                ENCODER.encode(event, jsonGenerator);
+            }
+            outputStream.write(LINE_SEPARATOR);
+            ++count;
+            event = reader.read();
+        }
+        outputStream.flush();
+        return count;
+    }
+
+    private BinaryEventConverter() {}
+
+    private static final int MAX_UNIT_CACHE_SIZE = 1024;
+    private static final EventEncoder ENCODER = new EventEncoder(new UnitCache(MAX_UNIT_CACHE_SIZE));
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final byte[] LINE_SEPARATOR = CoreConstants.LINE_SEPARATOR.getBytes(StandardCharsets.UTF_8);
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Encodes an <code>Event</code> as a record of the binary format described
+ * by <code>BinaryFormat</code>. Each record is built in a reusable per thread
+ * buffer and copied once into a record array prefixed by its length. Units
+ * are simplified through the <code>UnitCache</code> so that the record holds
+ * the same unit names as the "2f" JSON format.
+ *
+ * With a <code>BinaryDictionary</code> annotation keys, metric names and
+ * unit names which are not in the static string table are replaced by their
+ * dictionary identifiers and the record starts with the number of dictionary
+ * entries it requires; the writer defines those entries in each file before
+ * the first record which refers to them.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class BinaryEventEncoder {
+
+    /**
+     * Encode an event as a length prefixed record.
+     *
+     * @param event The event to encode.
+     * @return The encoded record.
+     */
+    /* package private */ byte[] encode(final Event event) {
+        final State state = STATE.get();
+        final BinaryOutput output = state._output;
+        output.reset();
+        state._required = 0;
+        if (_dictionary == null) {
+            output.writeByte(BinaryFormat.EVENT_RECORD);
+        } else {
+            output.writeByte(BinaryFormat.DICTIONARY_EVENT_RECORD);
+            output.writeFixed(0, Integer.BYTES);
+        }
+        final Map<String, String> annotations = event.getAnnotations();
+        output.writeVarint(annotations.size());
+        for (final Map.Entry<String, String> annotation : annotations.entrySet()) {
+            writeName(annotation.getKey(), state);
+            writeString(annotation.getValue(), output);
+        }
+        encodeSamples(event.getCounterSamples(), state);
+        encodeSamples(event.getGaugeSamples(), state);
+        encodeSamples(event.getTimerSamples(), state);
+        if (_dictionary != null) {
+            output.setFixed(1, state._required, Integer.BYTES);
+        }
+        return output.toRecord();
+    }
+
+    private void encodeSamples(final Map<String, ? extends Collection<? extends Quantity>> samples, final State state) {
+        state._output.writeVarint(samples.size());
+        for (final Map.Entry<String, ? extends Collection<? extends Quantity>> entry : samples.entrySet()) {
+            writeName(entry.getKey(), state);
+            state._output.writeVarint(entry.getValue().size());
+            for (final Quantity quantity : entry.getValue()) {
+                encodeQuantity(quantity, state);
+            }
+        }
+    }
+
+    private void encodeQuantity(final Quantity quantity, final State state) {
+        @Nullable final Unit unit = quantity.getUnit();
+        @Nullable UnitCache.SerializedUnit serializedUnit = null;
+        int unitFlag = 0;
+        if (unit != null) {
+            serializedUnit = _unitCache.get(unit);
+            if (!serializedUnit.getNumeratorNames().isEmpty() || !serializedUnit.getDenominatorNames().isEmpty()) {
+                unitFlag = BinaryFormat.HAS_UNIT;
+            }
+        }
+        encodeNumber(quantity.getValue(), unitFlag, state._output);
+        if (unitFlag != 0) {
+            writeNames(serializedUnit.getNumeratorNames(), state);
+            writeNames(serializedUnit.getDenominatorNames(), state);
+        }
+    }
+
+    private void writeNames(final List<String> names, final State state) {
+        state._output.writeVarint(names.size());
+        for (final String name : names) {
+            writeName(name, state);
+        }
+    }
+
+    private void writeName(final String name, final State state) {
+        if (_dictionary != null && !BinaryFormat.STATIC_STRING_INDEX.containsKey(name)) {
+            final int id = _dictionary.lookup(name);
+            if (id >= 0) {
+                state._output.writeVarint(((long) (BinaryFormat.STATIC_STRINGS.size() + id) << 1) | 1);
+                state._required = Math.max(state._required, id + 1);
+                return;
+            }
+        }
+        writeString(name, state._output);
+    }
+
+    private static void encodeNumber(@Nullable final Number value, final int unitFlag, final BinaryOutput output) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(BinaryFormat.LONG_VALUE | unitFlag);
+            final long longValue = value.longValue();
+            output.writeVarint((longValue << 1) ^ (longValue >> 63));
+        } else if (value instanceof Double) {
+            output.writeByte(BinaryFormat.DOUBLE_VALUE | unitFlag);
+            output.writeFixed(Double.doubleToRawLongBits(value.doubleValue()), Long.BYTES);
+        } else if (value instanceof Float) {
+            output.writeByte(BinaryFormat.FLOAT_VALUE | unitFlag);
+            output.writeFixed(Float.floatToRawIntBits(value.floatValue()), Integer.BYTES);
+        } else if (value == null) {
+            output.writeByte(BinaryFormat.NULL_VALUE | unitFlag);
+        } else {
+            output.writeByte(BinaryFormat.TEXT_VALUE | unitFlag);
+            writeString(value.toString(), output);
+        }
+    }
+
+    private static void writeString(@Nullable final String value, final BinaryOutput output) {
+        if (value == null) {
+            output.writeVarint(0);
+            return;
+        }
+        @Nullable final Integer index = BinaryFormat.STATIC_STRING_INDEX.get(value);
+        if (index != null) {
+            output.writeVarint(((long) index << 1) | 1);
+        } else {
+            writeInlineString(value, output);
+        }
+    }
+
+    /**
+     * Append a string inline regardless of the string table.
+     *
+     * @param value The string.
+     * @param output The <code>BinaryOutput</code> to write to.
+     */
+    /* package private */ static void writeInlineString(final String value, final BinaryOutput output) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeVarint(((long) bytes.length + 1) << 1);
+        output.writeBytes(bytes);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param unitCache The cache of simplified units.
+     */
+    /* package private */ BinaryEventEncoder(final UnitCache unitCache) {
+        this(unitCache, null);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param unitCache The cache of simplified units.
+     * @param dictionary The dictionary of annotation keys, metric names and
+     * unit names; <code>null</code> to write them inline.
+     */
+    /* package private */ BinaryEventEncoder(final UnitCache unitCache, @Nullable final BinaryDictionary dictionary) {
+        _unitCache = unitCache;
+        _dictionary = dictionary;
+    }
+
+    private final UnitCache _unitCache;
+    @Nullable
+    private final BinaryDictionary _dictionary;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * Per thread encoding state.
+     */
+    private static final class State {
+
+        private final BinaryOutput _output = new BinaryOutput();
+        private int _required;
+    }
+}
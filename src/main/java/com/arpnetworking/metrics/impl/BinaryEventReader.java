@@ -0,0 +1,395 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Streaming reader of the records written by <code>BinaryFileSink</code>.
+ * Records are read one at a time into a reusable buffer and decoded into
+ * <code>Event</code> instances whose annotations, metrics and samples are in
+ * the order they were recorded. Units are restored as the simplified units
+ * written to the "2f" JSON format; unit names which are not in the static
+ * string table are restored as units with that name. Dictionary records are
+ * applied as they are read; a reader should be used for a single file.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class BinaryEventReader implements Closeable {
+
+    /**
+     * Read the next event.
+     *
+     * @return The next event or <code>null</code> at the end of the records.
+     * @throws IOException if the records cannot be read or are malformed.
+     */
+    @Nullable
+    public Event read() throws IOException {
+        while (nextRecord()) {
+            final int type = readByte();
+            if (type == BinaryFormat.DICTIONARY_RECORD) {
+                readDefinitions();
+            } else {
+                return readEvent(type);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _inputStream.close();
+    }
+
+    private boolean nextRecord() throws IOException {
+        final long length = readLength();
+        if (length <= 0) {
+            return false;
+        }
+        if (length > MAX_RECORD_LENGTH) {
+            throw new IOException(String.format("Invalid record length; length=%d", length));
+        }
+        fill((int) length);
+        return true;
+    }
+
+    private Event readEvent(final int type) throws IOException {
+        if (type == BinaryFormat.DICTIONARY_EVENT_RECORD) {
+            // NOTE: The number of dictionary entries required is only used by the writer
+            readFixed(Integer.BYTES);
+        } else if (type != BinaryFormat.EVENT_RECORD) {
+            throw new IOException(String.format("Unknown record type; type=%d", type));
+        }
+        final Map<String, String> annotations = readAnnotations();
+        final Map<String, List<Quantity>> counters = readSamples();
+        final Map<String, List<Quantity>> gauges = readSamples();
+        final Map<String, List<Quantity>> timers = readSamples();
+        checkEnd();
+        return new TsdEvent(annotations, timers, counters, gauges);
+    }
+
+    private void readDefinitions() throws IOException {
+        final long index = readVarint();
+        final int count = readCount();
+        final long start = index - BinaryFormat.STATIC_STRINGS.size();
+        if (start < 0 || start > _dictionary.size()) {
+            throw new IOException(String.format("Invalid dictionary definition; index=%d", index));
+        }
+        for (int i = 0; i < count; ++i) {
+            final String entry = readString();
+            final int id = (int) start + i;
+            if (id < _dictionary.size()) {
+                _dictionary.set(id, entry);
+            } else {
+                _dictionary.add(entry);
+            }
+        }
+        checkEnd();
+    }
+
+    private void checkEnd() throws IOException {
+        if (_position != _limit) {
+            throw new IOException(String.format("Trailing bytes in record; bytes=%d", _limit - _position));
+        }
+    }
+
+    private long readLength() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_BITS) {
+            final int next = _inputStream.read();
+            if (next < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new IOException("Truncated record length");
+            }
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed record length");
+    }
+
+    private void fill(final int length) throws IOException {
+        if (_buffer.length < length) {
+            _buffer = new byte[Math.max(_buffer.length * 2, length)];
+        }
+        int offset = 0;
+        while (offset < length) {
+            final int read = _inputStream.read(_buffer, offset, length - offset);
+            if (read < 0) {
+                throw new IOException(String.format("Truncated record; expected=%d, actual=%d", length, offset));
+            }
+            offset += read;
+        }
+        _position = 0;
+        _limit = length;
+    }
+
+    private Map<String, String> readAnnotations() throws IOException {
+        final int count = readCount();
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            annotations.put(readString(), readString());
+        }
+        return annotations;
+    }
+
+    private Map<String, List<Quantity>> readSamples() throws IOException {
+        final int count = readCount();
+        final Map<String, List<Quantity>> samples = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            final String name = readString();
+            final int sampleCount = readCount();
+            final List<Quantity> quantities = new ArrayList<>(sampleCount);
+            for (int j = 0; j < sampleCount; ++j) {
+                quantities.add(readQuantity());
+            }
+            samples.put(name, quantities);
+        }
+        return samples;
+    }
+
+    private Quantity readQuantity() throws IOException {
+        final int header = readByte();
+        @Nullable final Number value = readValue(header);
+        @Nullable Unit unit = null;
+        if ((header & BinaryFormat.HAS_UNIT) != 0) {
+            unit = readUnit();
+        }
+        return TsdQuantity.newInstance(value, unit);
+    }
+
+    @Nullable
+    private Number readValue(final int header) throws IOException {
+        switch (header & BinaryFormat.VALUE_TYPE_MASK) {
+            case BinaryFormat.NULL_VALUE:
+                return null;
+            case BinaryFormat.LONG_VALUE:
+                final long zigzag = readVarint();
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            case BinaryFormat.DOUBLE_VALUE:
+                return Double.longBitsToDouble(readFixed(Long.BYTES));
+            case BinaryFormat.FLOAT_VALUE:
+                return Float.intBitsToFloat((int) readFixed(Integer.BYTES));
+            case BinaryFormat.TEXT_VALUE:
+                return new TextNumber(readString());
+            default:
+                throw new IOException(String.format("Unknown sample type; header=%d", header));
+        }
+    }
+
+    @Nullable
+    private Unit readUnit() throws IOException {
+        final List<Unit> numerators = readUnits();
+        final List<Unit> denominators = readUnits();
+        if (numerators.size() == 1 && denominators.isEmpty()) {
+            return numerators.get(0);
+        }
+        return new TsdCompoundUnit.Builder()
+                .setNumeratorUnits(numerators)
+                .setDenominatorUnits(denominators)
+                .build();
+    }
+
+    private List<Unit> readUnits() throws IOException {
+        final int count = readCount();
+        final List<Unit> units = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            units.add(_units.computeIfAbsent(readString(), NamedUnit::new));
+        }
+        return units;
+    }
+
+    @Nullable
+    private String readString() throws IOException {
+        final long tag = readVarint();
+        if ((tag & 1) != 0) {
+            final long index = tag >>> 1;
+            if (index < BinaryFormat.STATIC_STRINGS.size()) {
+                return BinaryFormat.STATIC_STRINGS.get((int) index);
+            }
+            final long id = index - BinaryFormat.STATIC_STRINGS.size();
+            if (id >= _dictionary.size()) {
+                throw new IOException(String.format("Unknown string reference; index=%d", index));
+            }
+            return _dictionary.get((int) id);
+        }
+        if (tag == 0) {
+            return null;
+        }
+        final long length = (tag >>> 1) - 1;
+        if (length > _limit - _position) {
+            throw new IOException(String.format("Truncated string; length=%d", length));
+        }
+        final String value = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(_buffer, _position, (int) length)).toString();
+        _position += (int) length;
+        return value;
+    }
+
+    private int readCount() throws IOException {
+        final long count = readVarint();
+        // NOTE: Each element is at least one byte
+        if (count > _limit - _position) {
+            throw new IOException(String.format("Invalid count; count=%d", count));
+        }
+        return (int) count;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += VARINT_BITS) {
+            final int next = readByte();
+            value |= (long) (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private long readFixed(final int bytes) throws IOException {
+        long value = 0;
+        for (int i = 0; i < bytes; ++i) {
+            value = (value << Byte.SIZE) | readByte();
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (_position >= _limit) {
+            throw new IOException("Truncated record");
+        }
+        return _buffer[_position++] & 0xFF;
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param inputStream The stream of records to read; it is buffered by
+     * the reader.
+     */
+    public BinaryEventReader(final InputStream inputStream) {
+        _inputStream = new BufferedInputStream(inputStream);
+    }
+
+    private final InputStream _inputStream;
+    // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+    private final Map<String, Unit> _units = new HashMap<>(STATIC_UNITS);
+    // CHECKSTYLE.ON: IllegalInstantiation
+    private final List<String> _dictionary = new ArrayList<>();
+    private byte[] _buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int _position;
+    private int _limit;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final int VARINT_BITS = 7;
+    private static final long MAX_RECORD_LENGTH = Integer.MAX_VALUE - 8;
+    private static final Map<String, Unit> STATIC_UNITS;
+
+    static {
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, Unit> units = new HashMap<>();
+        // CHECKSTYLE.ON: IllegalInstantiation
+        for (final Unit unit : BinaryFormat.STATIC_UNITS) {
+            units.put(unit.getName(), unit);
+        }
+        STATIC_UNITS = Collections.unmodifiableMap(units);
+    }
+
+    /**
+     * Unit restored from a name which is not in the static string table.
+     */
+    private static final class NamedUnit implements Unit {
+
+        @Override
+        public String getName() {
+            return _name;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("NamedUnit{Name=%s}", _name);
+        }
+
+        /* package private */ NamedUnit(final String name) {
+            _name = name;
+        }
+
+        private final String _name;
+    }
+
+    /**
+     * Number restored from its string form.
+     */
+    private static final class TextNumber extends Number {
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(_text);
+        }
+
+        @Override
+        public String toString() {
+            return _text;
+        }
+
+        /* package private */ TextNumber(@Nullable final String text) throws IOException {
+            if (text == null) {
+                throw new IOException("Missing sample value");
+            }
+            _text = text;
+        }
+
+        private final String _text;
+
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.encoder.Encoder;
+import com.arpnetworking.metrics.Event;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>Sink</code> which writes events in a compact
+ * binary format instead of JSON. Each event is a length prefixed record with
+ * well known annotation keys and unit names replaced by identifiers, longs
+ * encoded as zigzag varints and doubles as their raw bits; see
+ * <code>BinaryFormat</code>. Read the records with
+ * <code>BinaryEventReader</code> or convert them to the "2f" JSON format
+ * with <code>BinaryEventConverter</code>.
+ *
+ * The memory mapped writer engine is not supported because it recovers the
+ * end of the active file by skipping trailing zero bytes, and binary records
+ * may end in a zero byte.
+ *
+ * With the file channel writer engine the sink can also
+ * replace annotation keys, metric names and unit names by identifiers from a
+ * dictionary which is written incrementally to each file; see
+ * <code>BinaryDictionary</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryFileSink extends BaseFileSink {
+
+    @Override
+    public void record(final Event event) {
+        @Nullable final Event sampled = sample(event);
+        if (sampled == null) {
+            return;
+        }
+        write(encodeTimed(sampled));
+    }
+
+    @Override
+    protected RecordOutcome tryRecordSampled(final Event event, final long timeoutInNanos) {
+        if (!awaitCapacity(timeoutInNanos)) {
+            return RecordOutcome.REJECTED;
+        }
+        // NOTE: Capacity was available so do not wait a second time
+        return tryWrite(encodeTimed(event), 0) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
+    }
+
+    private byte[] encodeTimed(final Event event) {
+        final long start = System.nanoTime();
+        final byte[] record = _encoder.encode(event);
+        recordSerialization(System.nanoTime() - start);
+        return record;
+    }
+
+    /**
+     * Accessor for the statistics of the cache of simplified units. The
+     * cache is shared by all instances of <code>BinaryFileSink</code>.
+     *
+     * @return Instance of <code>CacheStatistics</code>.
+     */
+    public CacheStatistics getUnitCacheStatistics() {
+        return UNIT_CACHE.getStatistics();
+    }
+
+    private static Encoder<ILoggingEvent> createEncoder() {
+        return new RawBytesEncoder();
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param builder Instance of <code>Builder</code>.
+     */
+    protected BinaryFileSink(final Builder builder) {
+        this(builder, builder._dictionary ? new BinaryDictionary(MAX_DICTIONARY_SIZE) : null);
+    }
+
+    private BinaryFileSink(final Builder builder, @Nullable final BinaryDictionary dictionary) {
+        super(builder, createEncoder(), dictionary == null ? null : dictionary::createFileDictionary);
+        _encoder = dictionary == null ? ENCODER : new BinaryEventEncoder(UNIT_CACHE, dictionary);
+    }
+
+    private final BinaryEventEncoder _encoder;
+
+    private static final int MAX_UNIT_CACHE_SIZE = 1024;
+    private static final int MAX_DICTIONARY_SIZE = 16384;
+    private static final UnitCache UNIT_CACHE = new UnitCache(MAX_UNIT_CACHE_SIZE);
+    private static final BinaryEventEncoder ENCODER = new BinaryEventEncoder(UNIT_CACHE);
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(BinaryFileSink.class);
+
+    /**
+     * Builder for <code>BinaryFileSink</code>.
+     *
+     * This class is thread safe.
+     *
+     * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+     */
+    public static class Builder extends BaseFileSink.Builder<BinaryFileSink, Builder> {
+
+        /**
+         * Public constructor. The extension defaults to <code>.bin</code>.
+         */
+        public Builder() {
+            _extension = DEFAULT_BINARY_EXTENSION;
+        }
+
+        /**
+         * Set whether annotation keys, metric names and unit names are
+         * replaced by identifiers from a dictionary. Each file defines the
+         * entries it uses ahead of the first record which refers to them, so
+         * every file can still be decoded on its own. Only supported by the
+         * file channel writer engine and without thread buffers. Optional; default is false.
+         *
+         * @param value Whether to use a dictionary.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setDictionary(@Nullable final Boolean value) {
+            _dictionary = value;
+            return self();
+        }
+
+        @Override
+        protected void applyDefaults() {
+            if (_extension == null) {
+                _extension = DEFAULT_BINARY_EXTENSION;
+                LOGGER.info(String.format("Defaulted null extension; extension=%s", _extension));
+            }
+            super.applyDefaults();
+            if (_dictionary == null) {
+                _dictionary = DEFAULT_DICTIONARY;
+                LOGGER.info(String.format("Defaulted null dictionary; dictionary=%b", _dictionary));
+            }
+        }
+
+        @Override
+        protected void validate(final List<String> failures) {
+            super.validate(failures);
+            if (_writerEngine == WriterEngine.MEMORY_MAPPED) {
+                failures.add(String.format("Binary records are not supported by the writer engine; writerEngine=%s", _writerEngine));
+            }
+            if (_dictionary && _writerEngine == WriterEngine.LOGBACK) {
+                failures.add(String.format("Dictionary is not supported by the writer engine; writerEngine=%s", _writerEngine));
+            }
+            if (_dictionary && _threadBufferSize > 0) {
+                failures.add(String.format("Dictionary is not supported with thread buffers; threadBufferSize=%d", _threadBufferSize));
+            }
+        }
+
+        @Override
+        protected BinaryFileSink createSink() {
+            return new BinaryFileSink(this);
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        private Boolean _dictionary = DEFAULT_DICTIONARY;
+
+        private static final String DEFAULT_BINARY_EXTENSION = ".bin";
+        private static final Boolean DEFAULT_DICTIONARY = Boolean.FALSE;
+    }
+}
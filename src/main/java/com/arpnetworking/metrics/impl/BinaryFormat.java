@@ -0,0 +1,163 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Constants of the binary event format written by <code>BinaryFileSink</code>.
+ *
+ * A file is a sequence of records. Each record is its body length as an
+ * unsigned varint followed by the body; a zero length marks the end of the
+ * records, for example a zero filled tail of a preallocated file. The
+ * body starts with a record type byte. An event record continues with:
+ *
+ * <ul>
+ *     <li>the number of annotations followed by each key and value</li>
+ *     <li>the counters, gauges and timers in that order; each as the number
+ *     of metrics followed by each metric name, its number of samples and
+ *     each sample</li>
+ * </ul>
+ *
+ * All counts are unsigned varints. A string is an unsigned varint tag: an
+ * odd tag refers to entry <code>tag &gt;&gt;&gt; 1</code> of the string
+ * table, which starts with <code>STATIC_STRINGS</code>; an even tag is
+ * followed by <code>(tag &gt;&gt;&gt; 1) - 1</code> bytes of UTF-8, with
+ * zero encoding <code>null</code>. A sample starts with a header byte whose
+ * low bits are the value type and whose <code>HAS_UNIT</code> bit indicates
+ * that the value is followed by the names of the numerator and denominator
+ * units of its simplified unit, each list as a count followed by strings.
+ * Long values are zigzag encoded varints, doubles and floats are their raw
+ * big endian IEEE 754 bits and other numbers are their string form.
+ *
+ * With a dictionary, event records have the type
+ * <code>DICTIONARY_EVENT_RECORD</code> and the type is followed by the
+ * number of dictionary entries the event requires as a four byte big endian
+ * integer. Dictionary entries extend the string table after
+ * <code>STATIC_STRINGS</code>. They are defined by dictionary records which
+ * hold the string table index of the first entry, the number of entries and
+ * each entry as a string; a later definition of an index replaces the
+ * earlier one. A reader starts each file with the static string table only.
+ *
+ * The static string table may only be appended to.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class BinaryFormat {
+
+    private BinaryFormat() {}
+
+    /**
+     * Record type of an event.
+     */
+    /* package private */ static final int EVENT_RECORD = 1;
+
+    /**
+     * Record type of dictionary entry definitions.
+     */
+    /* package private */ static final int DICTIONARY_RECORD = 2;
+
+    /**
+     * Record type of an event which refers to dictionary entries.
+     */
+    /* package private */ static final int DICTIONARY_EVENT_RECORD = 3;
+
+    /**
+     * Sample value type of <code>null</code>.
+     */
+    /* package private */ static final int NULL_VALUE = 0;
+
+    /**
+     * Sample value type of a zigzag varint encoded integral value.
+     */
+    /* package private */ static final int LONG_VALUE = 1;
+
+    /**
+     * Sample value type of an eight byte IEEE 754 double.
+     */
+    /* package private */ static final int DOUBLE_VALUE = 2;
+
+    /**
+     * Sample value type of a four byte IEEE 754 float.
+     */
+    /* package private */ static final int FLOAT_VALUE = 3;
+
+    /**
+     * Sample value type of a number written in its string form.
+     */
+    /* package private */ static final int TEXT_VALUE = 4;
+
+    /**
+     * Mask of the value type in the sample header.
+     */
+    /* package private */ static final int VALUE_TYPE_MASK = 0x07;
+
+    /**
+     * Sample header bit set when the sample has a unit.
+     */
+    /* package private */ static final int HAS_UNIT = 0x08;
+
+    /**
+     * Units whose names are in the static string table, in table order.
+     */
+    /* package private */ static final List<Unit> STATIC_UNITS = Collections.unmodifiableList(Arrays.asList(
+            Units.NANOSECOND, Units.MICROSECOND, Units.MILLISECOND, Units.SECOND,
+            Units.MINUTE, Units.HOUR, Units.DAY, Units.WEEK,
+            Units.BIT, Units.KIBIBIT, Units.MEBIBIT, Units.GIBIBIT, Units.TEBIBIT,
+            Units.PEBIBIT, Units.EXBIBIT, Units.ZEBIBIT, Units.YOBIBIT,
+            Units.KILOBIT, Units.MEGABIT, Units.GIGABIT, Units.TERABIT,
+            Units.PETABIT, Units.EXABIT, Units.ZETTABIT, Units.YOTTABIT,
+            Units.BYTE, Units.KIBIBYTE, Units.MEBIBYTE, Units.GIBIBYTE, Units.TEBIBYTE,
+            Units.PEBIBYTE, Units.EXBIBYTE, Units.ZEBIBYTE, Units.YOBIBYTE,
+            Units.KILOBYTE, Units.MEGABYTE, Units.GIGABYTE, Units.TERABYTE,
+            Units.PETABYTE, Units.EXABYTE, Units.ZETTABYTE, Units.YOTTABYTE,
+            Units.ROTATION, Units.RADIAN, Units.DEGREE,
+            Units.KELVIN, Units.CELSIUS, Units.FAHRENHEIT));
+
+    /**
+     * The static string table; the well known annotation keys followed by
+     * the names of <code>STATIC_UNITS</code>.
+     */
+    /* package private */ static final List<String> STATIC_STRINGS;
+
+    /**
+     * Index of each entry in <code>STATIC_STRINGS</code>.
+     */
+    /* package private */ static final Map<String, Integer> STATIC_STRING_INDEX;
+
+    static {
+        final List<String> strings = new ArrayList<>(Arrays.asList("_id", "_start", "_end", "_host", "_service", "_cluster"));
+        for (final Unit unit : STATIC_UNITS) {
+            strings.add(unit.getName());
+        }
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, Integer> index = new HashMap<>();
+        // CHECKSTYLE.ON: IllegalInstantiation
+        for (int i = 0; i < strings.size(); ++i) {
+            index.put(strings.get(i), i);
+        }
+        STATIC_STRINGS = Collections.unmodifiableList(strings);
+        STATIC_STRING_INDEX = Collections.unmodifiableMap(index);
+    }
+}
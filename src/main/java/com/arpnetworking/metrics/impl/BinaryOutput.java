@@ -0,0 +1,140 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer in which the body of a binary record is built. The body
+ * is copied once into a record array prefixed by its length as an unsigned
+ * varint.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class BinaryOutput {
+
+    /**
+     * Discard the contents of the buffer.
+     */
+    /* package private */ void reset() {
+        _size = 0;
+    }
+
+    /**
+     * Accessor for the number of bytes in the buffer.
+     *
+     * @return The number of bytes in the buffer.
+     */
+    /* package private */ int size() {
+        return _size;
+    }
+
+    /**
+     * Append a byte.
+     *
+     * @param value The byte in the low eight bits.
+     */
+    /* package private */ void writeByte(final int value) {
+        ensureCapacity(1);
+        _buffer[_size++] = (byte) value;
+    }
+
+    /**
+     * Append an unsigned varint.
+     *
+     * @param value The value.
+     */
+    /* package private */ void writeVarint(final long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= VARINT_BITS;
+        }
+        writeByte((int) remaining);
+    }
+
+    /**
+     * Append a fixed width big endian value.
+     *
+     * @param value The value in the low <code>bytes</code> bytes.
+     * @param bytes The width of the value.
+     */
+    /* package private */ void writeFixed(final long value, final int bytes) {
+        ensureCapacity(bytes);
+        setFixed(_size, value, bytes);
+        _size += bytes;
+    }
+
+    /**
+     * Overwrite a fixed width big endian value previously appended.
+     *
+     * @param offset The offset of the value.
+     * @param value The value in the low <code>bytes</code> bytes.
+     * @param bytes The width of the value.
+     */
+    /* package private */ void setFixed(final int offset, final long value, final int bytes) {
+        int position = offset;
+        for (int shift = (bytes - 1) * Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            _buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Append bytes.
+     *
+     * @param bytes The bytes.
+     */
+    /* package private */ void writeBytes(final byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, _buffer, _size, bytes.length);
+        _size += bytes.length;
+    }
+
+    /**
+     * Create a record of the buffer contents prefixed by their length.
+     *
+     * @return The record.
+     */
+    /* package private */ byte[] toRecord() {
+        int prefixLength = 1;
+        while (((long) _size >>> (VARINT_BITS * prefixLength)) != 0) {
+            ++prefixLength;
+        }
+        final byte[] record = new byte[prefixLength + _size];
+        int remaining = _size;
+        for (int i = 0; i < prefixLength - 1; ++i) {
+            record[i] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= VARINT_BITS;
+        }
+        record[prefixLength - 1] = (byte) remaining;
+        System.arraycopy(_buffer, 0, record, prefixLength, _size);
+        return record;
+    }
+
+    private void ensureCapacity(final int bytes) {
+        if (_size + bytes > _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length * 2, _size + bytes));
+        }
+    }
+
+    private byte[] _buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int _size;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final int VARINT_BITS = 7;
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+
+/**
+ * Releases the memory mapping of a direct <code>ByteBuffer</code> without
+ * waiting for it to be garbage collected. Until a mapping is released the
+ * disk space of a deleted file is not reclaimed.
+ *
+ * There is no public API for this so JDK internals are used; on Java 9 and
+ * later <code>sun.misc.Unsafe.invokeCleaner</code> and on Java 8 the
+ * buffer's <code>cleaner</code>. If neither is available the mapping is left
+ * to the garbage collector.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class BufferUnmapper {
+
+    /**
+     * Release the memory mapping of the buffer. The buffer must not be
+     * accessed afterwards.
+     *
+     * @param buffer The buffer to unmap.
+     */
+    /* package private */ static void unmap(final ByteBuffer buffer) {
+        unmap(DEFAULT_STRATEGY, buffer);
+    }
+
+    /**
+     * Release the memory mapping of the buffer with a specific strategy.
+     *
+     * @param strategy The strategy.
+     * @param buffer The buffer to unmap.
+     */
+    /* package private */ static void unmap(final Strategy strategy, final ByteBuffer buffer) {
+        try {
+            strategy.unmap(buffer);
+        } catch (final ReflectiveOperationException e) {
+            LOGGER.debug("Unable to unmap buffer; left to garbage collection", e);
+        }
+    }
+
+    /**
+     * Create the strategy supported by the running JDK.
+     *
+     * @param unsafeClassName The name of the <code>Unsafe</code> class.
+     * @param bufferClass The class of direct buffers.
+     * @return The strategy supported by the running JDK.
+     */
+    /* package private */ static Strategy createStrategy(final String unsafeClassName, final Class<?> bufferClass) {
+        try {
+            return createUnsafeStrategy(Class.forName(unsafeClassName));
+        } catch (final ReflectiveOperationException | SecurityException e) {
+            LOGGER.debug("Unsafe unmapping unavailable", e);
+        }
+        try {
+            return createCleanerStrategy(bufferClass);
+        } catch (final ReflectiveOperationException | SecurityException e) {
+            LOGGER.debug("Cleaner unmapping unavailable", e);
+        }
+        return buffer -> { };
+    }
+
+    /**
+     * Create a strategy which uses <code>invokeCleaner</code> of the
+     * <code>Unsafe</code> singleton (Java 9 and later).
+     *
+     * @param unsafeClass The <code>Unsafe</code> class.
+     * @return The strategy.
+     * @throws ReflectiveOperationException if the class does not support it.
+     */
+    /* package private */ static Strategy createUnsafeStrategy(final Class<?> unsafeClass) throws ReflectiveOperationException {
+        final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        final Field field = makeAccessible(unsafeClass.getDeclaredField("theUnsafe"));
+        final Object unsafe = field.get(null);
+        return buffer -> invokeCleaner.invoke(unsafe, buffer);
+    }
+
+    /**
+     * Create a strategy which cleans the buffer's <code>cleaner</code>
+     * (Java 8).
+     *
+     * @param bufferClass The class of direct buffers.
+     * @return The strategy.
+     * @throws ReflectiveOperationException if the class does not support it.
+     */
+    /* package private */ static Strategy createCleanerStrategy(final Class<?> bufferClass) throws ReflectiveOperationException {
+        final Method cleaner = makeAccessible(bufferClass.getMethod("cleaner"));
+        final Method clean = makeAccessible(cleaner.getReturnType().getMethod("clean"));
+        return buffer -> clean.invoke(cleaner.invoke(buffer));
+    }
+
+    private static <T extends AccessibleObject> T makeAccessible(final T object) {
+        AccessController.doPrivileged(new MakeAccessible(object));
+        return object;
+    }
+
+    private BufferUnmapper() {}
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(BufferUnmapper.class);
+    private static final Strategy DEFAULT_STRATEGY = createStrategy("sun.misc.Unsafe", ByteBuffer.allocateDirect(1).getClass());
+
+    /**
+     * Strategy for releasing the memory mapping of a buffer.
+     */
+    @FunctionalInterface
+    /* package private */ interface Strategy {
+
+        /**
+         * Release the memory mapping of the buffer.
+         *
+         * @param buffer The buffer to unmap.
+         * @throws ReflectiveOperationException if the buffer cannot be unmapped.
+         */
+        void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private static final class MakeAccessible implements PrivilegedAction<Void> {
+
+        @Override
+        public Void run() {
+            _object.setAccessible(true);
+            return null;
+        }
+
+        private MakeAccessible(final AccessibleObject object) {
+            _object = object;
+        }
+
+        private final AccessibleObject _object;
+    }
+}
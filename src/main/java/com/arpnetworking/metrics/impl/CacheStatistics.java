@@ -0,0 +1,77 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Snapshot of the statistics of a cache used by a file based
+ * <code>Sink</code>. All values are cumulative since the cache was created.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class CacheStatistics {
+
+    /**
+     * Accessor for the number of lookups served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public long getHits() {
+        return _hits;
+    }
+
+    /**
+     * Accessor for the number of lookups which were computed because the
+     * value was not in the cache.
+     *
+     * @return The number of cache misses.
+     */
+    public long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * Accessor for the number of entries in the cache.
+     *
+     * @return The number of entries in the cache.
+     */
+    public long getSize() {
+        return _size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStatistics{Hits=%d, Misses=%d, Size=%d}", _hits, _misses, _size);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param hits The number of cache hits.
+     * @param misses The number of cache misses.
+     * @param size The number of entries in the cache.
+     */
+    /* package private */ CacheStatistics(final long hits, final long misses, final long size) {
+        _hits = hits;
+        _misses = misses;
+        _size = size;
+    }
+
+    private final long _hits;
+    private final long _misses;
+    private final long _size;
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.annotation.Nullable;
+
+/**
+ * One-shot callbacks waiting for a writer queue to have capacity. The
+ * thread which drains the queue signals after taking records from it and
+ * every pending callback is run once on that thread; callbacks should
+ * therefore be short and must not block. A callback which throws is logged
+ * and does not prevent the others from running.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class CapacityCallbacks {
+
+    /**
+     * Register a callback to run on the next signal.
+     *
+     * @param callback The callback.
+     */
+    /* package private */ void add(final Runnable callback) {
+        _callbacks.add(callback);
+    }
+
+    /**
+     * Run and remove every pending callback.
+     */
+    /* package private */ void signal() {
+        @Nullable Runnable callback = _callbacks.poll();
+        while (callback != null) {
+            // CHECKSTYLE.OFF: IllegalCatch - A failing callback must not stop the draining thread.
+            try {
+                callback.run();
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Capacity callback failed", e);
+            }
+            // CHECKSTYLE.ON: IllegalCatch
+            callback = _callbacks.poll();
+        }
+    }
+
+    /**
+     * Whether any callback is pending.
+     *
+     * @return True if and only if a callback is pending.
+     */
+    /* package private */ boolean isPending() {
+        return !_callbacks.isEmpty();
+    }
+
+    private final Queue<Runnable> _callbacks = new ConcurrentLinkedQueue<>();
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(CapacityCallbacks.class);
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementation of <code>ActiveFile</code> which buffers records in a direct
+ * buffer and appends them to a <code>FileChannel</code>.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class ChannelActiveFile implements ActiveFile {
+
+    @Override
+    public void append(final byte[] record) throws IOException {
+        int offset = 0;
+        while (offset < record.length) {
+            if (!_buffer.hasRemaining()) {
+                flush();
+            }
+            final int length = Math.min(_buffer.remaining(), record.length - offset);
+            _buffer.put(record, offset, length);
+            offset += length;
+        }
+        _size += record.length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        _buffer.flip();
+        try {
+            while (_buffer.hasRemaining()) {
+                _channel.write(_buffer);
+            }
+        } finally {
+            _buffer.compact();
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        flush();
+        _channel.force(false);
+    }
+
+    @Override
+    public long size() {
+        return _size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            _buffer.clear();
+            _channel.close();
+        }
+    }
+
+    /**
+     * Open the file for appending.
+     *
+     * @param file The file to append to.
+     * @param buffer The direct buffer to stage records in.
+     * @return Instance of <code>ChannelActiveFile</code>.
+     * @throws IOException if the file cannot be opened.
+     */
+    /* package private */ static ChannelActiveFile open(final Path file, final ByteBuffer buffer) throws IOException {
+        final FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new ChannelActiveFile(channel, buffer);
+    }
+
+    private ChannelActiveFile(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        _channel = channel;
+        _buffer = buffer;
+        _buffer.clear();
+        _size = channel.size();
+    }
+
+    private final FileChannel _channel;
+    private final ByteBuffer _buffer;
+    private long _size;
+}
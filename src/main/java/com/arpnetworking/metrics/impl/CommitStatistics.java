@@ -0,0 +1,208 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Snapshot of group commit statistics for a file based <code>Sink</code>.
+ * Each commit forces the records written since the previous commit to disk.
+ * All values are cumulative since the <code>Sink</code> was created.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class CommitStatistics {
+
+    /**
+     * Accessor for the number of successful commits.
+     *
+     * @return The number of successful commits.
+     */
+    public long getCommits() {
+        return _commits;
+    }
+
+    /**
+     * Accessor for the number of failed commits.
+     *
+     * @return The number of failed commits.
+     */
+    public long getFailures() {
+        return _failures;
+    }
+
+    /**
+     * Accessor for the total time spent forcing records to disk in
+     * nanoseconds across successful commits.
+     *
+     * @return The total commit latency in nanoseconds.
+     */
+    public long getTotalLatencyInNanos() {
+        return _totalLatencyInNanos;
+    }
+
+    /**
+     * Accessor for the longest time spent forcing records to disk in a
+     * single successful commit in nanoseconds.
+     *
+     * @return The maximum commit latency in nanoseconds.
+     */
+    public long getMaxLatencyInNanos() {
+        return _maxLatencyInNanos;
+    }
+
+    /**
+     * Accessor for the total number of records made durable.
+     *
+     * @return The total number of records committed.
+     */
+    public long getTotalRecords() {
+        return _totalRecords;
+    }
+
+    /**
+     * Accessor for the largest number of records made durable by a single
+     * commit.
+     *
+     * @return The maximum number of records in a commit.
+     */
+    public long getMaxRecords() {
+        return _maxRecords;
+    }
+
+    /**
+     * Accessor for the total number of bytes made durable.
+     *
+     * @return The total number of bytes committed.
+     */
+    public long getTotalBytes() {
+        return _totalBytes;
+    }
+
+    /**
+     * Accessor for the largest number of bytes made durable by a single
+     * commit.
+     *
+     * @return The maximum number of bytes in a commit.
+     */
+    public long getMaxBytes() {
+        return _maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "CommitStatistics{Commits=%d, Failures=%d, TotalLatencyInNanos=%d, MaxLatencyInNanos=%d, "
+                        + "TotalRecords=%d, MaxRecords=%d, TotalBytes=%d, MaxBytes=%d}",
+                _commits,
+                _failures,
+                _totalLatencyInNanos,
+                _maxLatencyInNanos,
+                _totalRecords,
+                _maxRecords,
+                _totalBytes,
+                _maxBytes);
+    }
+
+    private CommitStatistics(final Accumulator accumulator) {
+        _commits = accumulator._commits;
+        _failures = accumulator._failures;
+        _totalLatencyInNanos = accumulator._totalLatencyInNanos;
+        _maxLatencyInNanos = accumulator._maxLatencyInNanos;
+        _totalRecords = accumulator._totalRecords;
+        _maxRecords = accumulator._maxRecords;
+        _totalBytes = accumulator._totalBytes;
+        _maxBytes = accumulator._maxBytes;
+    }
+
+    private final long _commits;
+    private final long _failures;
+    private final long _totalLatencyInNanos;
+    private final long _maxLatencyInNanos;
+    private final long _totalRecords;
+    private final long _maxRecords;
+    private final long _totalBytes;
+    private final long _maxBytes;
+
+    /* package private */ static final CommitStatistics EMPTY = new Accumulator().snapshot();
+
+    /**
+     * Mutable accumulator of commit statistics.
+     *
+     * This class is not thread safe.
+     */
+    /* package private */ static final class Accumulator {
+
+        /**
+         * Record a successful commit.
+         *
+         * @param latencyInNanos The time spent forcing records to disk.
+         * @param records The number of records committed.
+         * @param bytes The number of bytes committed.
+         */
+        /* package private */ void recordCommit(final long latencyInNanos, final long records, final long bytes) {
+            ++_commits;
+            _totalLatencyInNanos += latencyInNanos;
+            _maxLatencyInNanos = Math.max(_maxLatencyInNanos, latencyInNanos);
+            _totalRecords += records;
+            _maxRecords = Math.max(_maxRecords, records);
+            _totalBytes += bytes;
+            _maxBytes = Math.max(_maxBytes, bytes);
+        }
+
+        /**
+         * Record a failed commit.
+         */
+        /* package private */ void recordFailure() {
+            ++_failures;
+        }
+
+        /**
+         * Add the statistics of another writer, for example of another
+         * shard of the same <code>Sink</code>.
+         *
+         * @param statistics The statistics to add.
+         */
+        /* package private */ void add(final CommitStatistics statistics) {
+            _commits += statistics._commits;
+            _failures += statistics._failures;
+            _totalLatencyInNanos += statistics._totalLatencyInNanos;
+            _maxLatencyInNanos = Math.max(_maxLatencyInNanos, statistics._maxLatencyInNanos);
+            _totalRecords += statistics._totalRecords;
+            _maxRecords = Math.max(_maxRecords, statistics._maxRecords);
+            _totalBytes += statistics._totalBytes;
+            _maxBytes = Math.max(_maxBytes, statistics._maxBytes);
+        }
+
+        /**
+         * Create an immutable snapshot of the accumulated statistics.
+         *
+         * @return Instance of <code>CommitStatistics</code>.
+         */
+        /* package private */ CommitStatistics snapshot() {
+            return new CommitStatistics(this);
+        }
+
+        private long _commits;
+        private long _failures;
+        private long _totalLatencyInNanos;
+        private long _maxLatencyInNanos;
+        private long _totalRecords;
+        private long _maxRecords;
+        private long _totalBytes;
+        private long _maxBytes;
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>ActiveFile</code> which compresses records as they
+ * are appended to a <code>FileChannel</code>. The file is a sequence of
+ * compressed members of at most the block size of uncompressed records each,
+ * so a concatenable <code>CompressionCodec</code> is required. Flushing
+ * completes the pending compressed data of the current member so readers
+ * tailing the file can decompress every flushed record, and finishing a
+ * member bounds the records lost if the process stops without closing the
+ * file. Appending to an existing file starts a new member, which can only be
+ * decompressed if the file ends in a complete member; a file left by a
+ * process which stopped without closing it must therefore not be appended
+ * to.
+ *
+ * The size of the file is the number of compressed bytes in the file.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class CompressedActiveFile implements ActiveFile {
+
+    @Override
+    public void append(final byte[] record) throws IOException {
+        if (_member != null && _memberBytes >= _blockSize) {
+            _member.close();
+            _member = null;
+        }
+        if (_member == null) {
+            _member = new BufferedOutputStream(_codec.compress(_output), _bufferSize);
+            _memberBytes = 0;
+        }
+        _member.write(record);
+        _memberBytes += record.length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (_member != null) {
+            _member.flush();
+        }
+    }
+
+    @Override
+    public void force() throws IOException {
+        flush();
+        _channel.force(false);
+    }
+
+    @Override
+    public long size() {
+        return _output._size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (_member != null) {
+                _member.close();
+            }
+        } finally {
+            _member = null;
+            _channel.close();
+        }
+    }
+
+    /**
+     * Open the file for appending.
+     *
+     * @param file The file to append to.
+     * @param codec The concatenable codec to compress records with.
+     * @param blockSize The maximum number of uncompressed bytes per member.
+     * @param bufferSize The number of bytes to buffer before compressing.
+     * @return Instance of <code>CompressedActiveFile</code>.
+     * @throws IOException if the file cannot be opened.
+     */
+    /* package private */ static CompressedActiveFile open(
+            final Path file,
+            final CompressionCodec codec,
+            final int blockSize,
+            final int bufferSize) throws IOException {
+        final FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        return new CompressedActiveFile(channel, codec, blockSize, bufferSize);
+    }
+
+    private CompressedActiveFile(
+            final FileChannel channel,
+            final CompressionCodec codec,
+            final int blockSize,
+            final int bufferSize) throws IOException {
+        _channel = channel;
+        _codec = codec;
+        _blockSize = blockSize;
+        _bufferSize = bufferSize;
+        _output = new ChannelOutputStream(channel);
+    }
+
+    private final FileChannel _channel;
+    private final CompressionCodec _codec;
+    private final int _blockSize;
+    private final int _bufferSize;
+    private final ChannelOutputStream _output;
+    @Nullable
+    private OutputStream _member;
+    private long _memberBytes;
+
+    /**
+     * Writes compressed bytes to the channel and counts the size of the
+     * file. Closing a member does not close the channel.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        ChannelOutputStream(final FileChannel channel) throws IOException {
+            _channel = channel;
+            _size = channel.size();
+        }
+
+        @Override
+        public void write(final int value) throws IOException {
+            write(new byte[] {(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                _channel.write(buffer);
+            }
+            _size += length;
+        }
+
+        @Override
+        public void close() {
+            // Intentionally empty; the channel is closed by the active file
+        }
+
+        private final FileChannel _channel;
+        private long _size;
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compression applied to rolled files by the file channel and memory mapped
+ * writer engines. The codec determines the extension appended to the name
+ * of each compressed file. Besides gzip and zlib, LZ4 frames and Zstandard
+ * are supported by <code>Lz4CompressionCodec</code> and
+ * <code>ZstdCompressionCodec</code> when their optional libraries are
+ * present. Other formats may be provided by wrapping the streams of the
+ * corresponding library.
+ *
+ * Implementations must be thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public interface CompressionCodec {
+
+    /**
+     * Accessor for the extension appended to the name of compressed files,
+     * including the leading period.
+     *
+     * @return The extension of compressed files.
+     */
+    String getExtension();
+
+    /**
+     * Create a stream which compresses the bytes written to it into the
+     * provided stream. Flushing the returned stream writes the compressed
+     * form of all bytes written so far, for example with a sync flush, so
+     * that they can be decompressed before the stream is closed. Closing the
+     * returned stream completes the compressed data and closes the provided
+     * stream.
+     *
+     * @param outputStream The stream to write compressed bytes to.
+     * @return The compressing stream.
+     * @throws IOException if the stream cannot be created.
+     */
+    OutputStream compress(OutputStream outputStream) throws IOException;
+
+    /**
+     * Create a stream which decompresses the bytes read from the provided
+     * stream.
+     *
+     * @param inputStream The stream to read compressed bytes from.
+     * @return The decompressing stream.
+     * @throws IOException if the stream cannot be created.
+     */
+    InputStream decompress(InputStream inputStream) throws IOException;
+
+    /**
+     * Whether independently compressed blocks may be concatenated into a
+     * single file which decompresses to the concatenation of the blocks.
+     * Only such codecs support parallel compression. Default is false.
+     *
+     * @return Whether compressed blocks may be concatenated.
+     */
+    default boolean isConcatenable() {
+        return false;
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Extension of Logback's <code>AsyncAppender</code> which counts the events
+ * it discards and reports whether each event was queued. The discarding
+ * threshold is applied here rather than by Logback: each append claims a
+ * slot of the queue with compare-and-set on a count of appends in flight,
+ * so an event is only handed to Logback once there is room for it and is
+ * otherwise discarded or waits in Logback's blocking put. No lock is taken
+ * besides that of Logback's queue. Every discardable event seen by
+ * <code>isDiscardable</code> is dropped.
+ *
+ * The appender also carries the <code>CapacityCallbacks</code> which its
+ * child appender signals after each event it takes from the queue.
+ *
+ * With a <code>QueueByteBudget</code> each event reserves its size before it
+ * is queued and the child appender releases it once it was handed the
+ * event, whether or not the event could be written.
+ * An event which does not fit the budget is dropped when events are dropped
+ * and otherwise waits for the budget, in addition to the bound on the number
+ * of events enforced by Logback.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class CountingAsyncAppender extends AsyncAppender {
+
+    /**
+     * Accessor for the number of events discarded.
+     *
+     * @return The number of events discarded.
+     */
+    /* package private */ long getDropped() {
+        return _dropped.sum();
+    }
+
+    /**
+     * Whether an event appended now would be queued without blocking and
+     * without being discarded. The answer is advisory since other threads
+     * may fill the queue concurrently.
+     *
+     * @return True if and only if the queue has capacity for an event.
+     */
+    /* package private */ boolean hasCapacity() {
+        final long free = getRemainingCapacity() - (_inFlight.get() & IN_FLIGHT_MASK);
+        return free >= Math.max(1, _discardingThreshold)
+                && (_byteBudget == null || _byteBudget.hasCapacity());
+    }
+
+    /**
+     * Accessor for the callbacks waiting for capacity.
+     *
+     * @return The callbacks waiting for capacity.
+     */
+    /* package private */ CapacityCallbacks getCapacityCallbacks() {
+        return _capacityCallbacks;
+    }
+
+    /**
+     * Accessor for the size of an event for the byte budget. Events written
+     * with direct encoding carry the record as their only argument; other
+     * events are estimated by the length of their message.
+     *
+     * @param event The event.
+     * @return The size of the event in bytes.
+     */
+    /* package private */ static long getRecordBytes(final ILoggingEvent event) {
+        @Nullable final Object[] arguments = event.getArgumentArray();
+        if (arguments != null && arguments.length == 1 && arguments[0] instanceof byte[]) {
+            return ((byte[]) arguments[0]).length;
+        }
+        @Nullable final String message = event.getMessage();
+        return message == null ? 0 : message.length();
+    }
+
+    /**
+     * Queue an event only if the queue has capacity for it now. Unlike
+     * <code>doAppend</code> the event is never discarded, never waits and
+     * never counts as dropped; it is simply not queued.
+     *
+     * @param event The event.
+     * @return True if and only if the event was queued.
+     */
+    /* package private */ boolean tryAppend(final ILoggingEvent event) {
+        if (!isStarted()) {
+            return false;
+        }
+        final long bytes = getRecordBytes(event);
+        if (_byteBudget != null && !_byteBudget.tryAcquire(bytes)) {
+            return false;
+        }
+        if (tryClaim(Math.max(1, _discardingThreshold))) {
+            appendClaimed(event);
+            return true;
+        }
+        if (_byteBudget != null) {
+            _byteBudget.release(bytes);
+        }
+        return false;
+    }
+
+    /**
+     * Queue an event like <code>doAppend</code>, discarding it or waiting
+     * for capacity as configured, and report whether it was queued.
+     *
+     * @param event The event.
+     * @return True if and only if the event was queued.
+     */
+    /* package private */ boolean put(final ILoggingEvent event) {
+        return isStarted() && enqueue(event);
+    }
+
+    @Override
+    public void start() {
+        if (_discardingThreshold == UNDEFINED) {
+            _discardingThreshold = getQueueSize() / 5;
+        }
+        super.start();
+    }
+
+    @Override
+    public int getDiscardingThreshold() {
+        return _discardingThreshold;
+    }
+
+    @Override
+    public void setDiscardingThreshold(final int value) {
+        _discardingThreshold = value;
+    }
+
+    @Override
+    protected void append(final ILoggingEvent event) {
+        enqueue(event);
+    }
+
+    @Override
+    protected boolean isDiscardable(final ILoggingEvent event) {
+        final boolean discardable = super.isDiscardable(event);
+        if (discardable) {
+            _dropped.increment();
+            if (_byteBudget != null) {
+                _byteBudget.release(getRecordBytes(event));
+            }
+        }
+        return discardable;
+    }
+
+    private boolean enqueue(final ILoggingEvent event) {
+        final long bytes = getRecordBytes(event);
+        if (_byteBudget != null && !acquire(_byteBudget, bytes)) {
+            return false;
+        }
+        if (tryClaim(Math.max(1, _discardingThreshold))) {
+            appendClaimed(event);
+            return true;
+        }
+        if (_discardingThreshold > 0 && isDiscardable(event)) {
+            return false;
+        }
+        // NOTE: Claim without room so claims which require room leave the
+        // next free slot to this event while it waits in Logback's put
+        _inFlight.incrementAndGet();
+        appendClaimed(event);
+        return true;
+    }
+
+    private boolean tryClaim(final int required) {
+        while (true) {
+            // NOTE: Read the claims before the queue; any append completed
+            // in between changes the generation and fails the claim
+            final long inFlight = _inFlight.get();
+            final long free = getRemainingCapacity() - (inFlight & IN_FLIGHT_MASK);
+            if (free < required) {
+                return false;
+            }
+            if (_inFlight.compareAndSet(inFlight, inFlight + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void appendClaimed(final ILoggingEvent event) {
+        try {
+            super.append(event);
+        } finally {
+            _inFlight.addAndGet(RELEASE_CLAIM);
+        }
+    }
+
+    private boolean acquire(final QueueByteBudget byteBudget, final long bytes) {
+        while (!byteBudget.tryAcquire(bytes)) {
+            if (_dropWhenQueueFull) {
+                _dropped.increment();
+                return false;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                addWarn("Interrupted while waiting to queue event; event dropped");
+                _dropped.increment();
+                return false;
+            }
+            WaitStrategy.PARK.idle();
+        }
+        return true;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param capacityCallbacks The callbacks waiting for capacity.
+     * @param byteBudget The bound on the bytes of queued events, if any.
+     * @param dropWhenQueueFull Whether to drop events which do not fit the
+     * byte budget rather than wait.
+     */
+    /* package private */ CountingAsyncAppender(
+            final CapacityCallbacks capacityCallbacks,
+            @Nullable final QueueByteBudget byteBudget,
+            final boolean dropWhenQueueFull) {
+        _capacityCallbacks = capacityCallbacks;
+        _byteBudget = byteBudget;
+        _dropWhenQueueFull = dropWhenQueueFull;
+        // NOTE: The threshold is applied by this class so Logback never
+        // discards an event it is handed
+        super.setDiscardingThreshold(0);
+    }
+
+    private final CapacityCallbacks _capacityCallbacks;
+    @Nullable
+    private final QueueByteBudget _byteBudget;
+    private final boolean _dropWhenQueueFull;
+    private final LongAdder _dropped = new LongAdder();
+    // NOTE: The low bits count the appends in flight and the high bits count
+    // the completed appends as a generation
+    private final AtomicLong _inFlight = new AtomicLong();
+    private volatile int _discardingThreshold = UNDEFINED;
+
+    private static final int UNDEFINED = -1;
+    private static final long IN_FLIGHT_MASK = 0xFFFFFFFFL;
+    private static final long RELEASE_CLAIM = (1L << 32) - 1;
+}
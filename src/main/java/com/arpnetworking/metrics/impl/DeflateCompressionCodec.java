@@ -0,0 +1,163 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>CompressionCodec</code> which writes zlib files
+ * at a configurable compression level with an optional preset dictionary.
+ * A dictionary of representative records, for example the first events of
+ * an existing file, lets even short files reference the field names and
+ * units repeated in every event; only the last 32KiB of the dictionary are
+ * used. Files compressed with a dictionary can only be decompressed with
+ * the same dictionary, for example through <code>decompress</code> of an
+ * equal codec. The extension is <code>.zz</code> as written by
+ * <code>pigz -z</code>.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class DeflateCompressionCodec implements CompressionCodec {
+
+    /**
+     * Public constructor.
+     *
+     * @param level The compression level from 1 (fastest) to 9 (smallest),
+     * 0 for no compression or -1 for the default level.
+     * @param dictionary The preset dictionary or null for none.
+     */
+    public DeflateCompressionCodec(final int level, @Nullable final byte[] dictionary) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(String.format("Invalid compression level; level=%d", level));
+        }
+        _level = level;
+        _dictionary = dictionary == null ? null : Arrays.copyOf(dictionary, dictionary.length);
+    }
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream outputStream) {
+        final Deflater deflater = new Deflater(_level);
+        if (_dictionary != null) {
+            deflater.setDictionary(_dictionary);
+        }
+        return new OwningDeflaterOutputStream(outputStream, deflater);
+    }
+
+    @Override
+    public InputStream decompress(final InputStream inputStream) throws IOException {
+        // NOTE: InflaterInputStream stops when a dictionary is needed so it is set after reading the header
+        final byte[] header = new byte[HEADER_SIZE + DICTIONARY_ID_SIZE];
+        final DataInputStream dataInputStream = new DataInputStream(inputStream);
+        dataInputStream.readFully(header, 0, HEADER_SIZE);
+        int headerSize = HEADER_SIZE;
+        if ((header[1] & PRESET_DICTIONARY_FLAG) != 0) {
+            dataInputStream.readFully(header, HEADER_SIZE, DICTIONARY_ID_SIZE);
+            headerSize += DICTIONARY_ID_SIZE;
+        }
+        final Inflater inflater = new Inflater();
+        inflater.setInput(header, 0, headerSize);
+        try {
+            inflater.inflate(new byte[1]);
+        } catch (final DataFormatException e) {
+            inflater.end();
+            throw new IOException("Invalid zlib header", e);
+        }
+        if (inflater.needsDictionary()) {
+            if (_dictionary == null) {
+                inflater.end();
+                throw new IOException("Dictionary required to decompress");
+            }
+            inflater.setDictionary(_dictionary);
+        }
+        return new OwningInflaterInputStream(dataInputStream, inflater);
+    }
+
+    /**
+     * Accessor for the compression level.
+     *
+     * @return The compression level.
+     */
+    public int getLevel() {
+        return _level;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "DeflateCompressionCodec{Level=%d, DictionarySize=%d}",
+                _level,
+                _dictionary == null ? 0 : _dictionary.length);
+    }
+
+    private final int _level;
+    @Nullable
+    private final byte[] _dictionary;
+
+    private static final String EXTENSION = ".zz";
+    private static final int BUFFER_SIZE = 65536;
+    private static final int HEADER_SIZE = 2;
+    private static final int DICTIONARY_ID_SIZE = 4;
+    private static final int PRESET_DICTIONARY_FLAG = 0x20;
+
+    private static final class OwningDeflaterOutputStream extends DeflaterOutputStream {
+
+        OwningDeflaterOutputStream(final OutputStream outputStream, final Deflater deflater) {
+            super(outputStream, deflater, BUFFER_SIZE, true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    private static final class OwningInflaterInputStream extends InflaterInputStream {
+
+        OwningInflaterInputStream(final InputStream inputStream, final Inflater inflater) {
+            super(inputStream, inflater, BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.math.BigInteger;
+
+/**
+ * Formats finite <code>double</code> values into a caller supplied character
+ * buffer without allocating. The output is the shortest decimal which rounds
+ * to the same <code>double</code>, laid out as <code>Double.toString</code>
+ * does: plain notation for magnitudes in [10<sup>-3</sup>, 10<sup>7</sup>)
+ * and computerized scientific notation otherwise. This is the output of
+ * <code>Double.toString</code> on Java 19 and later; earlier releases
+ * occasionally emit additional digits for the same value.
+ *
+ * The shortest decimal is found with the Schubfach algorithm by Raffaello
+ * Giulietti. The table of powers of ten it requires is computed once when
+ * the class is initialized.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class DoubleFormatter {
+
+    /**
+     * Format a finite <code>double</code>.
+     *
+     * @param value The value to format; must be finite.
+     * @param buffer The buffer to write to; must have at least
+     * <code>MAX_LENGTH</code> characters available from the offset.
+     * @param offset The offset in the buffer to start writing at.
+     * @return The number of characters written.
+     */
+    /* package private */ static int format(final double value, final char[] buffer, final int offset) {
+        final long bits = Double.doubleToRawLongBits(value);
+        final long t = bits & T_MASK;
+        final int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        int index = offset;
+        if (bits < 0) {
+            buffer[index++] = '-';
+        }
+        if (bq != 0) {
+            // Normal value c 2^q with the implicit leading bit
+            final int mq = -Q_MIN + 1 - bq;
+            final long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                // Integer values below 2^53 are formatted exactly
+                final long f = c >> mq;
+                if (f << mq == c) {
+                    return appendDecimal(f, 0, buffer, index) - offset;
+                }
+            }
+            return toDecimal(-mq, c, 0, buffer, index) - offset;
+        } else if (t != 0) {
+            // Subnormal value t 2^Q_MIN
+            if (t < C_TINY) {
+                return toDecimal(Q_MIN, 10 * t, -1, buffer, index) - offset;
+            }
+            return toDecimal(Q_MIN, t, 0, buffer, index) - offset;
+        }
+        buffer[index++] = '0';
+        buffer[index++] = '.';
+        buffer[index++] = '0';
+        return index - offset;
+    }
+
+    private static int toDecimal(final int q, final long c, final int dk, final char[] buffer, final int index) {
+        final int out = (int) c & 0x1;
+        final long cb = c << 2;
+        final long cbr = cb + 2;
+        final long cbl;
+        final int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // The rounding interval of a power of two is asymmetric
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        final int h = q + flog2pow10(-k) + 2;
+
+        final long g1 = G1[k - K_MIN];
+        final long g0 = G0[k - K_MIN];
+        final long vb = rop(g1, g0, cb << h);
+        final long vbl = rop(g1, g0, cbl << h);
+        final long vbr = rop(g1, g0, cbr << h);
+
+        final long s = vb >> 2;
+        if (s >= 100) {
+            // Prefer a decimal with one digit fewer if one is in the rounding interval
+            final long sp10 = 10 * multiplyHigh(s, ONE_TENTH);
+            final long tp10 = sp10 + 10;
+            final boolean upin = vbl + out <= sp10 << 2;
+            final boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return appendDecimal(upin ? sp10 : tp10, k, buffer, index);
+            }
+        }
+
+        final long u = s + 1;
+        final boolean uin = vbl + out <= s << 2;
+        final boolean win = (u << 2) + out <= vbr;
+        if (uin != win) {
+            return appendDecimal(uin ? s : u, k + dk, buffer, index);
+        }
+        // Both candidates are in the rounding interval; choose the closest
+        final long cmp = vb - (s + u << 1);
+        return appendDecimal(cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : u, k + dk, buffer, index);
+    }
+
+    private static int appendDecimal(final long significand, final int exponent, final char[] buffer, final int index) {
+        // The value is f 10^e; strip trailing zeros so f has exactly the significant digits
+        long f = significand;
+        int e = exponent;
+        while (f % 10 == 0) {
+            f /= 10;
+            ++e;
+        }
+        int length = 1;
+        for (long remaining = f / 10; remaining > 0; remaining /= 10) {
+            ++length;
+        }
+        // The value is 0.d1d2...dn 10^decimalExponent
+        final int decimalExponent = length + e;
+        if (decimalExponent > 0 && decimalExponent <= MAX_PLAIN_EXPONENT) {
+            return appendPlain(f, length, decimalExponent, buffer, index);
+        } else if (decimalExponent > MIN_PLAIN_EXPONENT && decimalExponent <= 0) {
+            int i = index;
+            buffer[i++] = '0';
+            buffer[i++] = '.';
+            for (int zeros = -decimalExponent; zeros > 0; --zeros) {
+                buffer[i++] = '0';
+            }
+            return appendDigits(f, length, buffer, i);
+        }
+        return appendScientific(f, length, decimalExponent - 1, buffer, index);
+    }
+
+    private static int appendPlain(
+            final long f,
+            final int length,
+            final int decimalExponent,
+            final char[] buffer,
+            final int index) {
+        int i = appendDigits(f, length, buffer, index);
+        if (decimalExponent < length) {
+            // Insert the decimal point within the digits
+            final int point = index + decimalExponent;
+            System.arraycopy(buffer, point, buffer, point + 1, length - decimalExponent);
+            buffer[point] = '.';
+            return i + 1;
+        }
+        for (int zeros = decimalExponent - length; zeros > 0; --zeros) {
+            buffer[i++] = '0';
+        }
+        buffer[i++] = '.';
+        buffer[i++] = '0';
+        return i;
+    }
+
+    private static int appendScientific(
+            final long f,
+            final int length,
+            final int scientificExponent,
+            final char[] buffer,
+            final int index) {
+        int i = appendDigits(f, length, buffer, index + 1);
+        buffer[index] = buffer[index + 1];
+        buffer[index + 1] = '.';
+        if (length == 1) {
+            buffer[i++] = '0';
+        }
+        buffer[i++] = 'E';
+        int exponent = scientificExponent;
+        if (exponent < 0) {
+            buffer[i++] = '-';
+            exponent = -exponent;
+        }
+        if (exponent >= 100) {
+            buffer[i++] = (char) ('0' + exponent / 100);
+            exponent %= 100;
+            buffer[i++] = (char) ('0' + exponent / 10);
+        } else if (exponent >= 10) {
+            buffer[i++] = (char) ('0' + exponent / 10);
+        }
+        buffer[i++] = (char) ('0' + exponent % 10);
+        return i;
+    }
+
+    private static int appendDigits(final long f, final int length, final char[] buffer, final int index) {
+        long remaining = f;
+        for (int i = index + length - 1; i >= index; --i) {
+            buffer[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return index + length;
+    }
+
+    private static long rop(final long g1, final long g0, final long cp) {
+        // Rounds g cp / 2^127 to odd where g = g1 2^63 + g0
+        final long x1 = multiplyHigh(g0, cp);
+        final long y0 = g1 * cp;
+        final long y1 = multiplyHigh(g1, cp);
+        final long z = (y0 >>> 1) + x1;
+        final long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    private static long multiplyHigh(final long x, final long y) {
+        // NOTE: Math.multiplyHigh requires Java 9
+        final long x1 = x >> 32;
+        final long x2 = x & 0xFFFFFFFFL;
+        final long y1 = y >> 32;
+        final long y2 = y & 0xFFFFFFFFL;
+        final long z2 = x2 * y2;
+        final long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        final long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    private static int flog10pow2(final int e) {
+        // floor(log10(2^e))
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(final int e) {
+        // floor(log10(3/4 2^e))
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    private static int flog2pow10(final int e) {
+        // floor(log2(10^e))
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    private DoubleFormatter() {}
+
+    /**
+     * The maximum number of characters written for a value.
+     */
+    /* package private */ static final int MAX_LENGTH = 24;
+
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long C_TINY = 3;
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7FF;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long ONE_TENTH = 115_292_150_460_684_698L << 4;
+    private static final int MAX_PLAIN_EXPONENT = 7;
+    private static final int MIN_PLAIN_EXPONENT = -3;
+    private static final int K_MIN = flog10pow2(Q_MIN);
+    private static final int K_MAX = flog10pow2(BQ_MASK - 1 + Q_MIN - 1);
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    static {
+        // For each k let 10^-k = beta 2^r with 2^125 <= beta < 2^126 and g = floor(beta) + 1
+        final BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+        for (int k = K_MIN; k <= K_MAX; ++k) {
+            final BigInteger beta;
+            if (k <= 0) {
+                final BigInteger power = BigInteger.TEN.pow(-k);
+                final int shift = 126 - power.bitLength();
+                beta = shift >= 0 ? power.shiftLeft(shift) : power.shiftRight(-shift);
+            } else {
+                final BigInteger power = BigInteger.TEN.pow(k);
+                beta = BigInteger.ONE.shiftLeft(125 + power.bitLength()).divide(power);
+            }
+            final BigInteger g = beta.add(BigInteger.ONE);
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask63).longValue();
+        }
+    }
+}
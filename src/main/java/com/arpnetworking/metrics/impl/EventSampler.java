@@ -0,0 +1,180 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Samples and rate limits the events recorded by a file based
+ * <code>Sink</code> before they are encoded. Each event is selected with a
+ * fixed probability, either at random or by a hash of the value of an
+ * annotation so that, for example, all events with the same
+ * <code>_id</code> are kept or dropped together across hosts. Events
+ * without the annotation are selected at random.
+ *
+ * An optional maximum rate bounds the events written per second. The rate
+ * offered to the limit is measured each second and the probability of
+ * selection is scaled down for the following second so that the selected
+ * events fit the rate; a token bucket holding one second of events enforces
+ * the limit within the second. Overload therefore thins events uniformly
+ * instead of dropping whichever arrive once the limit is reached.
+ *
+ * Each selected event with a probability of selection below one is written
+ * with that probability in the <code>_sampleRate</code> annotation so that
+ * counts and sums can be scaled back up by its inverse.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class EventSampler {
+
+    /**
+     * Accessor for the number of events dropped by sampling or by the rate
+     * limit.
+     *
+     * @return The number of events dropped.
+     */
+    public long getDropped() {
+        return _dropped.sum();
+    }
+
+    /**
+     * Sample an event.
+     *
+     * @param event The event.
+     * @return The event to write, annotated with its sample rate if below
+     * one, or <code>null</code> if the event is dropped.
+     */
+    @Nullable
+    /* package private */ Event sample(final Event event) {
+        final long now = _nanoTime.getAsLong();
+        final double sampleRate = _sampleRate * throttle(now);
+        if (selector(event) >= sampleRate || (_tokenBucket != null && !_tokenBucket.tryAcquire(now))) {
+            _dropped.increment();
+            return null;
+        }
+        if (sampleRate >= 1.0) {
+            return event;
+        }
+        final Map<String, String> annotations = new LinkedHashMap<>(event.getAnnotations());
+        annotations.put(SAMPLE_RATE_ANNOTATION, Double.toString(sampleRate));
+        return new TsdEvent(annotations, event.getTimerSamples(), event.getCounterSamples(), event.getGaugeSamples());
+    }
+
+    private double selector(final Event event) {
+        if (_sampleAnnotation != null) {
+            @Nullable final String value = event.getAnnotations().get(_sampleAnnotation);
+            if (value != null) {
+                return (mix(value.hashCode()) >>> (Long.SIZE - DOUBLE_BITS)) * DOUBLE_UNIT;
+            }
+        }
+        return _random.getAsDouble();
+    }
+
+    private double throttle(final long now) {
+        if (_tokenBucket == null) {
+            return 1.0;
+        }
+        // NOTE: Only the caller which replaces an expired window sees it expired
+        final long windowStart = _windowStart.getAndUpdate(start -> now - start >= WINDOW_IN_NANOS ? now : start);
+        final long elapsed = now - windowStart;
+        if (elapsed >= WINDOW_IN_NANOS) {
+            final double offeredPerSecond = _offered.sumThenReset() * _sampleRate * WINDOW_IN_NANOS / elapsed;
+            _throttle = Math.min(1.0, _maxEventsPerSecond / offeredPerSecond);
+        }
+        _offered.increment();
+        return _throttle;
+    }
+
+    private static long mix(final long hash) {
+        // NOTE: Finalizer of MurmurHash3 to spread the bits of String.hashCode
+        long mixed = hash;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xff51afd7ed558ccdL;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xc4ceb9fe1a85ec53L;
+        mixed ^= mixed >>> 33;
+        return mixed;
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param sampleRate The probability with which each event is selected,
+     * greater than zero and at most one.
+     * @param sampleAnnotation The annotation whose value selects events or
+     * null to select events at random.
+     * @param maxEventsPerSecond The maximum number of events written per
+     * second or zero for no limit.
+     */
+    public EventSampler(final double sampleRate, @Nullable final String sampleAnnotation, final long maxEventsPerSecond) {
+        this(sampleRate, sampleAnnotation, maxEventsPerSecond, System::nanoTime, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    // NOTE: Package private for testing
+    /* package private */ EventSampler(
+            final double sampleRate,
+            @Nullable final String sampleAnnotation,
+            final long maxEventsPerSecond,
+            final LongSupplier nanoTime,
+            final DoubleSupplier random) {
+        if (!(sampleRate > 0.0 && sampleRate <= 1.0)) {
+            throw new IllegalArgumentException(String.format("Invalid sample rate; sampleRate=%s", sampleRate));
+        }
+        if (maxEventsPerSecond < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid max events per second; maxEventsPerSecond=%d",
+                    maxEventsPerSecond));
+        }
+        _sampleRate = sampleRate;
+        _sampleAnnotation = sampleAnnotation;
+        _maxEventsPerSecond = maxEventsPerSecond;
+        _nanoTime = nanoTime;
+        _random = random;
+        final long now = nanoTime.getAsLong();
+        _tokenBucket = maxEventsPerSecond == 0 ? null : new TokenBucket(maxEventsPerSecond, now);
+        _windowStart = new AtomicLong(now);
+    }
+
+    private final double _sampleRate;
+    @Nullable
+    private final String _sampleAnnotation;
+    private final long _maxEventsPerSecond;
+    private final LongSupplier _nanoTime;
+    private final DoubleSupplier _random;
+    @Nullable
+    private final TokenBucket _tokenBucket;
+    private final AtomicLong _windowStart;
+    private final LongAdder _offered = new LongAdder();
+    private final LongAdder _dropped = new LongAdder();
+    private volatile double _throttle = 1.0;
+
+    /* package private */ static final String SAMPLE_RATE_ANNOTATION = "_sampleRate";
+    private static final long WINDOW_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int DOUBLE_BITS = 53;
+    private static final double DOUBLE_UNIT = 1.0 / (1L << DOUBLE_BITS);
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Dictionary whose entries are defined in each file before the first record
+ * which refers to them, so that every file can be decoded on its own. The
+ * <code>RollingFileRecordWriter</code> resets the dictionary whenever it
+ * starts writing to a file and asks it for the definitions required by each
+ * record before appending the record.
+ *
+ * Implementations are only invoked by the writer while it holds its lock.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ interface FileDictionary {
+
+    /**
+     * Forget the entries defined in the previous file.
+     */
+    void reset();
+
+    /**
+     * Create the record of the definitions which must precede a record in
+     * the current file.
+     *
+     * @param record The record to be appended.
+     * @return The record defining the entries the record refers to and which
+     * are not yet defined in the current file; an empty array if there are
+     * none.
+     */
+    byte[] define(byte[] record);
+}
@@ -15,26 +15,14 @@
  */
 package com.arpnetworking.metrics.impl;
 
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.encoder.Encoder;
-import com.arpnetworking.metrics.CompoundUnit;
 import com.arpnetworking.metrics.Event;
-import com.arpnetworking.metrics.Quantity;
-import com.arpnetworking.metrics.Unit;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.JsonSerializer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializerProvider;
-import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.core.JsonFactory;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
 import javax.annotation.Nullable;
 
 /**
@@ -46,146 +34,126 @@ public class FileSink extends BaseFileSink {
 
     @Override
     public void record(final Event event) {
+        @Nullable final Event sampled = sample(event);
+        if (sampled == null) {
+            return;
+        }
         try {
-            getMetricsLogger().info(_objectMapper.writeValueAsString(event));
+            if (_directEncoding) {
+                write(encodeTimed(sampled));
+            } else {
+                log(sampled);
+            }
         } catch (final IOException e) {
             _logger.warn("Exception recording event", e);
         }
     }
 
-    private static Encoder<ILoggingEvent> createEncoder() {
-        final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
-        encoder.setPattern("%msg%n");
-        return encoder;
+    @Override
+    protected RecordOutcome tryRecordSampled(final Event event, final long timeoutInNanos) {
+        if (!awaitCapacity(timeoutInNanos)) {
+            return RecordOutcome.REJECTED;
+        }
+        try {
+            // NOTE: Capacity was available so do not wait a second time
+            if (_directEncoding) {
+                return tryWrite(encodeTimed(event), 0) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
+            }
+            return offer(event) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
+        } catch (final IOException e) {
+            _logger.warn("Exception recording event", e);
+            return RecordOutcome.DROPPED;
+        }
     }
 
     /**
-     * Protected constructor.
+     * Accessor for the statistics of the cache of serialized units. The cache
+     * is shared by all instances of <code>FileSink</code>.
      *
-     * @param builder Instance of <code>Builder</code>.
+     * @return Instance of <code>CacheStatistics</code>.
      */
-    protected FileSink(final Builder builder) {
-        this(builder, OBJECT_MAPPER, LOGGER);
-    }
-
-    // NOTE: Package private for testing
-    /* package private */ FileSink(final Builder builder, final ObjectMapper objectMapper, final org.slf4j.Logger logger) {
-        super(builder, createEncoder());
-        _objectMapper = objectMapper;
-        _logger = logger;
+    public CacheStatistics getUnitCacheStatistics() {
+        return UNIT_CACHE.getStatistics();
     }
 
-    private final ObjectMapper _objectMapper;
-    private final org.slf4j.Logger _logger;
-
-    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(FileSink.class);
-
-    static {
-        final SimpleModule simpleModule = new SimpleModule("FileSink");
-        simpleModule.addSerializer(Event.class, EventSerializer.newInstance());
-        simpleModule.addSerializer(Quantity.class, QuantitySerializer.newInstance());
-        OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.ALWAYS);
-        OBJECT_MAPPER.registerModule(simpleModule);
+    private byte[] encodeTimed(final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final byte[] record = encode(event);
+        recordSerialization(System.nanoTime() - start);
+        return record;
     }
 
-    private static final class EventSerializer extends JsonSerializer<Event> {
-
-        public static JsonSerializer<Event> newInstance() {
-            return new EventSerializer();
-        }
-
-        @Override
-        public void serialize(
-                final Event event,
-                final JsonGenerator jsonGenerator,
-                final SerializerProvider provider)
-                throws IOException {
-
-            jsonGenerator.writeStartObject();
-            jsonGenerator.writeStringField("version", VERSION);
-            jsonGenerator.writeObjectField("annotations", event.getAnnotations());
-            if (!event.getCounterSamples().isEmpty()) {
-                jsonGenerator.writeObjectFieldStart("counters");
-                serializeSamples(event.getCounterSamples(), jsonGenerator);
-                jsonGenerator.writeEndObject();
-            }
-            if (!event.getGaugeSamples().isEmpty()) {
-                jsonGenerator.writeObjectFieldStart("gauges");
-                serializeSamples(event.getGaugeSamples(), jsonGenerator);
-                jsonGenerator.writeEndObject();
-            }
-            if (!event.getTimerSamples().isEmpty()) {
-                jsonGenerator.writeObjectFieldStart("timers");
-                serializeSamples(event.getTimerSamples(), jsonGenerator);
-                jsonGenerator.writeEndObject();
-            }
-            jsonGenerator.writeEndObject();
+    private void log(final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final String record = encodeAsString(event);
+        final long encoded = System.nanoTime();
+        recordSerialization(encoded - start);
+        if (log(null, record, null)) {
+            recordWrite(System.nanoTime() - encoded, getEncodedBytes(record));
         }
+    }
 
-        private void serializeSamples(
-                final Map<String, ? extends Collection<? extends Quantity>> samples,
-                final JsonGenerator jsonGenerator)
-                throws IOException {
-            for (final Map.Entry<String, ? extends Collection<? extends Quantity>> entry : samples.entrySet()) {
-                jsonGenerator.writeObjectFieldStart(entry.getKey());
-                jsonGenerator.writeObjectField("values", entry.getValue());
-                jsonGenerator.writeEndObject();
-            }
+    private boolean offer(final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final String record = encodeAsString(event);
+        final long encoded = System.nanoTime();
+        recordSerialization(encoded - start);
+        if (!tryLog(null, record, null, 0)) {
+            return false;
         }
+        recordWrite(System.nanoTime() - encoded, getEncodedBytes(record));
+        return true;
+    }
 
-        private EventSerializer() {}
+    private byte[] encode(final Event event) throws IOException {
+        final JsonScratch scratch = _scratchPool.acquire();
+        ENCODER.encode(event, scratch.getGenerator());
+        scratch.getGenerator().writeRaw(CoreConstants.LINE_SEPARATOR);
+        final byte[] record = scratch.toByteArray();
+        _scratchPool.release(scratch);
+        return record;
+    }
 
-        private static final String VERSION = "2f";
+    private String encodeAsString(final Event event) throws IOException {
+        final JsonScratch scratch = _scratchPool.acquire();
+        ENCODER.encode(event, scratch.getGenerator());
+        final String record = scratch.toUtf8String();
+        _scratchPool.release(scratch);
+        return record;
     }
 
-    private static final class QuantitySerializer extends JsonSerializer<Quantity> {
+    private static Encoder<ILoggingEvent> createEncoder() {
+        return new RawBytesEncoder();
+    }
 
-        public static JsonSerializer<Quantity> newInstance() {
-            return new QuantitySerializer();
-        }
+    /**
+     * Protected constructor.
+     *
+     * @param builder Instance of <code>Builder</code>.
+     */
+    protected FileSink(final Builder builder) {
+        this(builder, JSON_FACTORY, LOGGER);
+    }
 
-        @Override
-        public void serialize(
-                final Quantity valueWithUnit,
-                final JsonGenerator jsonGenerator,
-                final SerializerProvider provider)
-                throws IOException {
-            jsonGenerator.writeStartObject();
-            jsonGenerator.writeObjectField("value", valueWithUnit.getValue());
-            @Nullable final Unit unit = valueWithUnit.getUnit();
-            if (unit != null) {
-                final Unit simplifiedUnit = new TsdCompoundUnit.Builder()
-                        .addNumeratorUnit(unit)
-                        .build();
-
-                if (simplifiedUnit instanceof CompoundUnit) {
-                    final CompoundUnit compoundUnit = (CompoundUnit) simplifiedUnit;
-                    if (!compoundUnit.getNumeratorUnits().isEmpty()) {
-                        writeUnits(jsonGenerator, compoundUnit.getNumeratorUnits(), "unitNumerators");
-                    }
-                    if (!compoundUnit.getDenominatorUnits().isEmpty()) {
-                        writeUnits(jsonGenerator, compoundUnit.getDenominatorUnits(), "unitDenominators");
-                    }
-                } else if (simplifiedUnit != null) {
-                    writeUnits(jsonGenerator, Collections.singletonList(simplifiedUnit), "unitNumerators");
-                }
+    // NOTE: Package private for testing
+    /* package private */ FileSink(final Builder builder, final JsonFactory jsonFactory, final org.slf4j.Logger logger) {
+        super(builder, createEncoder());
+        _directEncoding = builder._directEncoding || builder._writerEngine != WriterEngine.LOGBACK;
+        _scratchPool = new JsonScratchPool(jsonFactory, JsonScratchPool.DEFAULT_CAPACITY);
+        _logger = logger;
+    }
 
-            }
-            jsonGenerator.writeEndObject();
-        }
+    private final boolean _directEncoding;
+    private final JsonScratchPool _scratchPool;
+    private final org.slf4j.Logger _logger;
 
-        private void writeUnits(
-                final JsonGenerator jsonGenerator,
-                final List<Unit> units,
-                final String name) throws IOException {
-            jsonGenerator.writeArrayFieldStart(name);
-            for (final Unit unit : units) {
-                jsonGenerator.writeString(unit.getName());
-            }
-            jsonGenerator.writeEndArray();
-        }
-    }
+    private static final int MAX_UNIT_CACHE_SIZE = 1024;
+    private static final UnitCache UNIT_CACHE = new UnitCache(MAX_UNIT_CACHE_SIZE);
+    private static final EventEncoder ENCODER = new EventEncoder(UNIT_CACHE);
+    // NOTE: Pooled generators keep their buffers so they must not share the per-thread buffers
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonFactory.Feature.USE_THREAD_LOCAL_FOR_BUFFER_RECYCLING);
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(FileSink.class);
 
     /**
      * Builder for <code>FileSink</code>.
@@ -196,6 +164,31 @@ public class FileSink extends BaseFileSink {
      */
     public static class Builder extends BaseFileSink.Builder<FileSink, Builder> {
 
+        /**
+         * Set whether events are encoded directly to UTF-8 bytes in a pooled
+         * buffer and handed to the appender as is. This avoids
+         * building an intermediate <code>String</code> for each event and
+         * encoding it again in the appender. Events are always encoded
+         * directly with the file channel and memory mapped writer engines.
+         * Optional; default is false.
+         *
+         * @param value Whether to encode events directly to bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setDirectEncoding(@Nullable final Boolean value) {
+            _directEncoding = value;
+            return self();
+        }
+
+        @Override
+        protected void applyDefaults() {
+            super.applyDefaults();
+            if (_directEncoding == null) {
+                _directEncoding = DEFAULT_DIRECT_ENCODING;
+                LOGGER.info(String.format("Defaulted null direct encoding; directEncoding=%b", _directEncoding));
+            }
+        }
+
         @Override
         protected FileSink createSink() {
             return new FileSink(this);
@@ -205,5 +198,9 @@ public class FileSink extends BaseFileSink {
         protected Builder self() {
             return this;
         }
+
+        private Boolean _directEncoding = DEFAULT_DIRECT_ENCODING;
+
+        private static final Boolean DEFAULT_DIRECT_ENCODING = Boolean.FALSE;
     }
 }
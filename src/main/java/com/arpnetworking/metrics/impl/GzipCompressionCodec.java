@@ -0,0 +1,120 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Implementation of <code>CompressionCodec</code> which writes gzip files at
+ * a configurable compression level. Lower levels trade compression ratio for
+ * less CPU; on repetitive JSON the fastest level typically uses a fraction of
+ * the CPU of the default level for a modestly larger file. Gzip members may
+ * be concatenated so this codec supports parallel compression.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class GzipCompressionCodec implements CompressionCodec {
+
+    /**
+     * Public constructor for the default compression level.
+     */
+    public GzipCompressionCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param level The compression level from 1 (fastest) to 9 (smallest),
+     * 0 for no compression or -1 for the default level.
+     */
+    public GzipCompressionCodec(final int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(String.format("Invalid compression level; level=%d", level));
+        }
+        _level = level;
+    }
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream outputStream) throws IOException {
+        return new LeveledGzipOutputStream(outputStream, _level);
+    }
+
+    @Override
+    public InputStream decompress(final InputStream inputStream) throws IOException {
+        return new GZIPInputStream(inputStream, BUFFER_SIZE);
+    }
+
+    @Override
+    public boolean isConcatenable() {
+        return true;
+    }
+
+    /**
+     * Accessor for the compression level.
+     *
+     * @return The compression level.
+     */
+    public int getLevel() {
+        return _level;
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof GzipCompressionCodec)) {
+            return false;
+        }
+        return _level == ((GzipCompressionCodec) other)._level;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(_level);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GzipCompressionCodec{Level=%d}", _level);
+    }
+
+    private final int _level;
+
+    private static final String EXTENSION = ".gz";
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final class LeveledGzipOutputStream extends GZIPOutputStream {
+
+        LeveledGzipOutputStream(final OutputStream outputStream, final int level) throws IOException {
+            super(outputStream, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+    }
+}
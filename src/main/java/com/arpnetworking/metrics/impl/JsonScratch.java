@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable scratch state for encoding records as JSON: a growable output
+ * buffer and a <code>JsonGenerator</code> bound to it for the lifetime of the
+ * scratch. Records are written as consecutive root values without separators
+ * and each is taken from the buffer once complete, after which the buffer is
+ * reset for the next record. The buffer keeps its capacity across records
+ * unless it grew beyond <code>MAX_RETAINED_BYTES</code> for an unusually
+ * large record. A scratch whose encoding failed must be discarded since its
+ * generator may be left inside an incomplete value.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class JsonScratch {
+
+    /**
+     * Accessor for the generator to write the record to.
+     *
+     * @return The <code>JsonGenerator</code> of this scratch.
+     */
+    /* package private */ JsonGenerator getGenerator() {
+        return _generator;
+    }
+
+    /**
+     * Take the record written since the last record was taken as bytes.
+     *
+     * @return The encoded record.
+     * @throws IOException if the generator cannot be flushed.
+     */
+    /* package private */ byte[] toByteArray() throws IOException {
+        _generator.flush();
+        final byte[] record = _output.toByteArray();
+        _output.reset();
+        return record;
+    }
+
+    /**
+     * Take the record written since the last record was taken as a string.
+     *
+     * @return The encoded record.
+     * @throws IOException if the generator cannot be flushed.
+     */
+    /* package private */ String toUtf8String() throws IOException {
+        _generator.flush();
+        final String record = _output.toString(StandardCharsets.UTF_8.name());
+        _output.reset();
+        return record;
+    }
+
+    /**
+     * Accessor for the capacity of the output buffer.
+     *
+     * @return The capacity of the output buffer in bytes.
+     */
+    /* package private */ int getCapacity() {
+        return _output.getCapacity();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param jsonFactory The <code>JsonFactory</code> to create the generator with.
+     * @throws IOException if the generator cannot be created.
+     */
+    /* package private */ JsonScratch(final JsonFactory jsonFactory) throws IOException {
+        _output = new Output();
+        _generator = jsonFactory.createGenerator(_output);
+        _generator.setRootValueSeparator(null);
+    }
+
+    private final Output _output;
+    private final JsonGenerator _generator;
+
+    /* package private */ static final int INITIAL_CAPACITY = 4096;
+    /* package private */ static final int MAX_RETAINED_BYTES = 1024 * 1024;
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        Output() {
+            super(INITIAL_CAPACITY);
+        }
+
+        @Override
+        public synchronized void reset() {
+            if (buf.length > MAX_RETAINED_BYTES) {
+                buf = new byte[INITIAL_CAPACITY];
+            }
+            super.reset();
+        }
+
+        synchronized int getCapacity() {
+            return buf.length;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free pool of <code>JsonScratch</code> instances. Each slot
+ * holds at most one idle scratch; a thread starts probing at a slot chosen by
+ * its identifier so that threads mostly reuse their own scratch without
+ * contending. A scratch is created when no idle one is found and dropped when
+ * it is released into a full pool, so the pool never blocks and never holds
+ * more than its capacity.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class JsonScratchPool {
+
+    /**
+     * Borrow an idle scratch or create a new one if none is idle.
+     *
+     * @return Instance of <code>JsonScratch</code>.
+     * @throws IOException if a new scratch cannot be created.
+     */
+    /* package private */ JsonScratch acquire() throws IOException {
+        final int start = probe();
+        for (int i = 0; i < _slots.length(); ++i) {
+            final JsonScratch scratch = _slots.getAndSet((start + i) % _slots.length(), null);
+            if (scratch != null) {
+                return scratch;
+            }
+        }
+        return new JsonScratch(_jsonFactory);
+    }
+
+    /**
+     * Return a scratch to the pool. Only a scratch whose last record was
+     * encoded and taken successfully may be released.
+     *
+     * @param scratch The scratch to return.
+     */
+    /* package private */ void release(final JsonScratch scratch) {
+        final int start = probe();
+        for (int i = 0; i < _slots.length(); ++i) {
+            if (_slots.compareAndSet((start + i) % _slots.length(), null, scratch)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Accessor for the number of idle scratch instances.
+     *
+     * @return The number of idle scratch instances.
+     */
+    /* package private */ int getIdle() {
+        int idle = 0;
+        for (int i = 0; i < _slots.length(); ++i) {
+            if (_slots.get(i) != null) {
+                ++idle;
+            }
+        }
+        return idle;
+    }
+
+    private int probe() {
+        return (int) (Thread.currentThread().getId() % _slots.length());
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param jsonFactory The <code>JsonFactory</code> to create scratch generators with.
+     * @param capacity The maximum number of idle scratch instances.
+     */
+    /* package private */ JsonScratchPool(final JsonFactory jsonFactory, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException(String.format("Invalid capacity; capacity=%d", capacity));
+        }
+        _jsonFactory = jsonFactory;
+        _slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    private final JsonFactory _jsonFactory;
+    private final AtomicReferenceArray<JsonScratch> _slots;
+
+    /* package private */ static final int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds with log-linear buckets
+ * in the style of HdrHistogram. Each power of two is split into eight
+ * linear sub-buckets so a recorded value is resolved to within 12.5% of its
+ * magnitude using a fixed array of counters. Recording is wait free; the
+ * count and total use striped counters.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class LatencyHistogram {
+
+    /**
+     * Record a latency. Negative values are recorded as zero.
+     *
+     * @param latencyInNanos The latency in nanoseconds.
+     */
+    /* package private */ void record(final long latencyInNanos) {
+        final long value = Math.max(0, latencyInNanos);
+        _buckets.incrementAndGet(bucketIndex(value));
+        _count.increment();
+        _total.add(value);
+        _max.accumulate(value);
+    }
+
+    /**
+     * Create a snapshot of the recorded latencies. The snapshot is not
+     * atomic with respect to concurrent recording.
+     *
+     * @return Instance of <code>LatencyStatistics</code>.
+     */
+    /* package private */ LatencyStatistics snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = _buckets.get(i);
+        }
+        return new LatencyStatistics(counts, _count.sum(), _total.sum(), _max.get());
+    }
+
+    /**
+     * Compute the bucket of a non-negative value.
+     *
+     * @param value The value.
+     * @return The index of the bucket.
+     */
+    /* package private */ static int bucketIndex(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Compute the largest value in a bucket.
+     *
+     * @param index The index of the bucket.
+     * @return The largest value in the bucket.
+     */
+    /* package private */ static long highestValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _total = new LongAdder();
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /* package private */ static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Snapshot of a latency distribution recorded by a file based
+ * <code>Sink</code>. Percentiles are resolved to the largest value of the
+ * histogram bucket containing them, which is within 12.5% of the recorded
+ * value, and never exceed the maximum. All values are cumulative since the
+ * <code>Sink</code> was created.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class LatencyStatistics {
+
+    /**
+     * Accessor for the number of latencies recorded.
+     *
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        return _count;
+    }
+
+    /**
+     * Accessor for the sum of the latencies recorded in nanoseconds.
+     *
+     * @return The total latency in nanoseconds.
+     */
+    public long getTotalInNanos() {
+        return _totalInNanos;
+    }
+
+    /**
+     * Accessor for the largest latency recorded in nanoseconds.
+     *
+     * @return The maximum latency in nanoseconds.
+     */
+    public long getMaxInNanos() {
+        return _maxInNanos;
+    }
+
+    /**
+     * Accessor for the latency at a percentile in nanoseconds. Returns zero
+     * if no latencies were recorded.
+     *
+     * @param percentile The percentile in the range [0, 100].
+     * @return The latency at the percentile in nanoseconds.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final double clamped = Math.min(Math.max(percentile, 0.0), 100.0);
+        final long rank = Math.max(1, (long) Math.ceil(clamped / 100.0 * _bucketTotal));
+        long seen = 0;
+        for (int i = 0; i < _counts.length; ++i) {
+            seen += _counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValue(i), _maxInNanos);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "LatencyStatistics{Count=%d, TotalInNanos=%d, MaxInNanos=%d, P50=%d, P99=%d, P999=%d}",
+                _count,
+                _totalInNanos,
+                _maxInNanos,
+                getValueAtPercentile(50.0),
+                getValueAtPercentile(99.0),
+                getValueAtPercentile(99.9));
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param counts The number of latencies in each histogram bucket.
+     * @param count The number of latencies recorded.
+     * @param totalInNanos The sum of the latencies recorded.
+     * @param maxInNanos The largest latency recorded.
+     */
+    /* package private */ LatencyStatistics(
+            final long[] counts,
+            final long count,
+            final long totalInNanos,
+            final long maxInNanos) {
+        long bucketTotal = 0;
+        for (final long bucketCount : counts) {
+            bucketTotal += bucketCount;
+        }
+        _counts = counts;
+        _bucketTotal = bucketTotal;
+        _count = count;
+        _totalInNanos = totalInNanos;
+        _maxInNanos = maxInNanos;
+    }
+
+    private final long[] _counts;
+    private final long _bucketTotal;
+    private final long _count;
+    private final long _totalInNanos;
+    private final long _maxInNanos;
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.RollingPolicy;
+import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
+import ch.qos.logback.core.util.FileSize;
+import com.arpnetworking.logback.SizeAndRandomizedTimeBasedFNATP;
+import com.arpnetworking.metrics.Sink;
+import org.slf4j.Marker;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>RecordWriter</code> which writes records through
+ * the root logger of a private Logback <code>LoggerContext</code>. The
+ * appenders of the context must use <code>RawBytesEncoder</code>. Queue
+ * statistics are reported when the root logger has a
+ * <code>CountingAsyncAppender</code> named <code>query-log-async</code>.
+ *
+ * Records are queued with <code>CountingAsyncAppender</code>, which reports
+ * whether each record was queued. Records offered through
+ * <code>tryWrite</code> or <code>tryLog</code> are never blocked on nor
+ * discarded by a full queue; they are simply not accepted.
+ * Without the asynchronous appender records are written on the calling
+ * thread and always accepted.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class LogbackRecordWriter implements RecordWriter {
+
+    @Override
+    public boolean write(final byte[] record) {
+        // NOTE: The null pattern ensures Logback never formats the record
+        return log(null, null, new Object[] {record});
+    }
+
+    @Override
+    public boolean tryWrite(final byte[] record, final long timeoutInNanos) {
+        return tryLog(null, null, new Object[] {record}, timeoutInNanos);
+    }
+
+    /**
+     * Log a message through the root logger, waiting for or discarding it on
+     * a full queue as configured.
+     *
+     * @param marker The marker of the message, if any.
+     * @param message The message or its format.
+     * @param arguments The arguments of the message, if any.
+     * @return True if and only if the message was accepted.
+     */
+    /* package private */ boolean log(
+            @Nullable final Marker marker,
+            @Nullable final String message,
+            @Nullable final Object[] arguments) {
+        final LoggingEvent event = createEvent(marker, message, arguments);
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        if (appender == null) {
+            _logger.callAppenders(event);
+            return true;
+        }
+        return appender.put(event);
+    }
+
+    /**
+     * Log a message through the root logger only if the queue accepts it
+     * within the timeout. A message which is not accepted is neither written
+     * nor counted as dropped.
+     *
+     * @param marker The marker of the message, if any.
+     * @param message The message or its format.
+     * @param arguments The arguments of the message, if any.
+     * @param timeoutInNanos The maximum time to wait for capacity; zero to
+     * not wait at all.
+     * @return True if and only if the message was accepted.
+     */
+    /* package private */ boolean tryLog(
+            @Nullable final Marker marker,
+            @Nullable final String message,
+            @Nullable final Object[] arguments,
+            final long timeoutInNanos) {
+        final LoggingEvent event = createEvent(marker, message, arguments);
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        if (appender == null) {
+            _logger.callAppenders(event);
+            return true;
+        }
+        final long start = System.nanoTime();
+        while (!appender.tryAppend(event)) {
+            if (System.nanoTime() - start >= timeoutInNanos) {
+                return false;
+            }
+            WaitStrategy.PARK.idle();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitCapacity(final long timeoutInNanos) {
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        if (appender == null) {
+            return true;
+        }
+        final long start = System.nanoTime();
+        while (!appender.hasCapacity()) {
+            if (System.nanoTime() - start >= timeoutInNanos) {
+                return false;
+            }
+            WaitStrategy.PARK.idle();
+        }
+        return true;
+    }
+
+    @Override
+    public void onCapacityAvailable(final Runnable callback) {
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        if (appender == null) {
+            callback.run();
+            return;
+        }
+        final CapacityCallbacks callbacks = appender.getCapacityCallbacks();
+        callbacks.add(callback);
+        // NOTE: The worker signals after appending so check here for
+        // capacity freed before the callback was registered
+        if (appender.hasCapacity()) {
+            callbacks.signal();
+        }
+    }
+
+    @Override
+    public long getDropped() {
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        return appender == null ? 0 : appender.getDropped();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        return appender == null ? 0 : appender.getNumberOfElementsInQueue();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        @Nullable final CountingAsyncAppender appender = getAsyncAppender();
+        return appender == null ? 0 : appender.getQueueSize();
+    }
+
+    @Override
+    public void close() {
+        _context.stop();
+    }
+
+    private LoggingEvent createEvent(
+            @Nullable final Marker marker,
+            @Nullable final String message,
+            @Nullable final Object[] arguments) {
+        final LoggingEvent event = new LoggingEvent(FQCN, _logger, Level.INFO, message, null, arguments);
+        event.setMarker(marker);
+        return event;
+    }
+
+    @Nullable
+    private CountingAsyncAppender getAsyncAppender() {
+        @Nullable final Appender<ILoggingEvent> appender = _logger.getAppender(ASYNC_APPENDER_NAME);
+        return appender instanceof CountingAsyncAppender ? (CountingAsyncAppender) appender : null;
+    }
+
+    /**
+     * Create a private <code>LoggerContext</code> whose root logger appends
+     * to a rolling file as configured by a sink builder.
+     *
+     * @param builder The sink builder.
+     * @param encoder The <code>Encoder</code> of the rolling file appender.
+     * @param fileName The name of the active file.
+     * @param fileNameWithoutExtension The name of the active file without its extension.
+     * @return The started <code>LoggerContext</code>.
+     */
+    /* package private */ static LoggerContext createLoggerContext(
+            final BaseFileSink.Builder<? extends BaseFileSink, ? extends BaseFileSink.Builder<? extends Sink, ?>> builder,
+            final Encoder<ILoggingEvent> encoder,
+            final String fileName,
+            final String fileNameWithoutExtension) {
+        final LoggerContext loggerContext = new LoggerContext();
+        encoder.setContext(loggerContext);
+        final CapacityCallbacks capacityCallbacks = new CapacityCallbacks();
+        @Nullable final QueueByteBudget byteBudget =
+                builder._async && builder._maxQueueBytes != null ? new QueueByteBudget(builder._maxQueueBytes) : null;
+
+        final TimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = createRollingPolicy(
+                loggerContext,
+                builder._extension,
+                fileNameWithoutExtension,
+                builder._maxHistory,
+                builder._maxFileSize,
+                builder._compress,
+                builder._compressionCodec);
+        final FileAppender<ILoggingEvent> rollingAppender = createRollingAppender(
+                loggerContext,
+                fileName,
+                rollingPolicy,
+                encoder,
+                builder._immediateFlush,
+                capacityCallbacks,
+                byteBudget);
+
+        rollingPolicy.setParent(rollingAppender);
+        rollingPolicy.start();
+        encoder.start();
+        rollingAppender.start();
+
+        final Appender<ILoggingEvent> appender;
+        if (builder._async) {
+            appender = createAsyncAppender(
+                    loggerContext,
+                    rollingAppender,
+                    builder._dropWhenQueueFull,
+                    builder._maxQueueSize,
+                    capacityCallbacks,
+                    byteBudget);
+            appender.start();
+        } else {
+            appender = rollingAppender;
+        }
+
+        final Logger rootLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
+        rootLogger.setLevel(Level.INFO);
+        rootLogger.addAppender(appender);
+        return loggerContext;
+    }
+
+    private static TimeBasedRollingPolicy<ILoggingEvent> createRollingPolicy(
+            final LoggerContext loggerContext,
+            final String extension,
+            final String fileNameWithoutExtension,
+            final int maxHistory,
+            final String maxFileSizeAsString,
+            final boolean compress,
+            final CompressionCodec compressionCodec) {
+
+        final FileSize maxFileSize = FileSize.valueOf(maxFileSizeAsString);
+        final FileSize totalSizeCap = FileSize.valueOf(String.valueOf(maxHistory * maxFileSize.getSize()));
+
+        final SizeAndRandomizedTimeBasedFNATP<ILoggingEvent> triggeringPolicy = new SizeAndRandomizedTimeBasedFNATP<>();
+        triggeringPolicy.setContext(loggerContext);
+        triggeringPolicy.setMaxOffsetInMillis(BaseFileSink.MAX_RANDOM_OFFSET_IN_MILLIS);
+        triggeringPolicy.setMaxFileSize(maxFileSize);
+
+        final TimeBasedRollingPolicy<ILoggingEvent> rollingPolicy = new TimeBasedRollingPolicy<>();
+        rollingPolicy.setTimeBasedFileNamingAndTriggeringPolicy(triggeringPolicy);
+        rollingPolicy.setContext(loggerContext);
+        rollingPolicy.setMaxHistory(maxHistory);
+        rollingPolicy.setTotalSizeCap(totalSizeCap);
+        rollingPolicy.setCleanHistoryOnStart(true);
+        if (compress) {
+            rollingPolicy.setFileNamePattern(
+                    fileNameWithoutExtension + DATE_AND_INDEX_EXTENSION + extension + compressionCodec.getExtension());
+        } else {
+            rollingPolicy.setFileNamePattern(fileNameWithoutExtension + DATE_AND_INDEX_EXTENSION + extension);
+        }
+
+        return rollingPolicy;
+    }
+
+    private static FileAppender<ILoggingEvent> createRollingAppender(
+            final LoggerContext loggerContext,
+            final String fileName,
+            final RollingPolicy rollingPolicy,
+            final Encoder<ILoggingEvent> encoder,
+            final boolean immediateFlush,
+            final CapacityCallbacks capacityCallbacks,
+            @Nullable final QueueByteBudget byteBudget) {
+        final RollingFileAppender<ILoggingEvent> rollingAppender = new SignallingRollingFileAppender(capacityCallbacks, byteBudget);
+        rollingAppender.setContext(loggerContext);
+        rollingAppender.setName("query-log");
+        rollingAppender.setFile(fileName);
+        rollingAppender.setAppend(true);
+        rollingAppender.setRollingPolicy(rollingPolicy);
+        rollingAppender.setEncoder(encoder);
+        rollingAppender.setImmediateFlush(immediateFlush);
+        return rollingAppender;
+    }
+
+    private static Appender<ILoggingEvent> createAsyncAppender(
+            final LoggerContext loggerContext,
+            final Appender<ILoggingEvent> appender,
+            final boolean dropWhenQueueFull,
+            final int queueSize,
+            final CapacityCallbacks capacityCallbacks,
+            @Nullable final QueueByteBudget byteBudget) {
+        final AsyncAppender asyncAppender = new CountingAsyncAppender(capacityCallbacks, byteBudget, dropWhenQueueFull);
+        asyncAppender.setContext(loggerContext);
+        asyncAppender.setDiscardingThreshold(dropWhenQueueFull ? queueSize : 0);
+        asyncAppender.setName(ASYNC_APPENDER_NAME);
+        asyncAppender.setQueueSize(queueSize);
+        asyncAppender.addAppender(appender);
+        return asyncAppender;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param context The <code>LoggerContext</code> to write to.
+     */
+    /* package private */ LogbackRecordWriter(final LoggerContext context) {
+        _context = context;
+        _logger = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    }
+
+    private final LoggerContext _context;
+    private final Logger _logger;
+
+    /* package private */ static final String ASYNC_APPENDER_NAME = "query-log-async";
+
+    private static final String FQCN = LogbackRecordWriter.class.getName();
+
+    private static final String DATE_AND_INDEX_EXTENSION = ".%d{yyyy-MM-dd-HH}.%i";
+
+    /**
+     * Extension of <code>RollingFileAppender</code> which releases the bytes
+     * of each event handed to it from the byte budget, if any, and signals the
+     * callbacks waiting for capacity. Behind an <code>AsyncAppender</code> it
+     * runs on the worker thread, after the event was taken from the queue.
+     * The bytes are released whether or not the event is written, since
+     * Logback skips writing once the appender has stopped after a failure.
+     */
+    private static final class SignallingRollingFileAppender extends RollingFileAppender<ILoggingEvent> {
+
+        @Override
+        public void doAppend(final ILoggingEvent event) {
+            try {
+                super.doAppend(event);
+            } finally {
+                if (_byteBudget != null) {
+                    _byteBudget.release(CountingAsyncAppender.getRecordBytes(event));
+                }
+                if (_capacityCallbacks.isPending()) {
+                    _capacityCallbacks.signal();
+                }
+            }
+        }
+
+        private SignallingRollingFileAppender(
+                final CapacityCallbacks capacityCallbacks,
+                @Nullable final QueueByteBudget byteBudget) {
+            _capacityCallbacks = capacityCallbacks;
+            _byteBudget = byteBudget;
+        }
+
+        private final CapacityCallbacks _capacityCallbacks;
+        @Nullable
+        private final QueueByteBudget _byteBudget;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Implementation of <code>ActiveFile</code> which copies records into a
+ * memory mapped segment of the file. Appending a record is a memory copy;
+ * the kernel writes the dirty pages back in the background and readers of
+ * the file see records as soon as they are appended.
+ *
+ * The file is extended to the segment size and zero filled past the last
+ * record while it is active and truncated to the appended records when it
+ * is closed. On open the end of the records is recovered by skipping the
+ * trailing zeros of a file which was not closed; therefore records must not
+ * end in a zero byte, which holds for newline terminated records but not for
+ * the binary format. A record which does not
+ * fit in the remaining segment is appended to a new segment mapped from the
+ * end of the records. Forcing the file syncs the whole file, so records in
+ * previously mapped segments are durable as well.
+ *
+ * This class is not thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class MappedActiveFile implements ActiveFile {
+
+    @Override
+    public void append(final byte[] record) throws IOException {
+        if (_segment.remaining() < record.length) {
+            // NOTE: Unmap the old segment only once the new one is mapped; if
+            // mapping fails the old segment must remain valid for close
+            final MappedByteBuffer previous = _segment;
+            _segment = map(Math.max(_segmentSize, record.length));
+            BufferUnmapper.unmap(previous);
+        }
+        _segment.put(record);
+        _size += record.length;
+    }
+
+    @Override
+    public void flush() {
+        // NOTE: Appended records are in the page cache and visible to readers
+    }
+
+    @Override
+    public void force() throws IOException {
+        _segment.force();
+        // NOTE: Records in segments unmapped since the last force may still be
+        // dirty in the page cache; syncing the file writes them back as well
+        _channel.force(false);
+    }
+
+    @Override
+    public long size() {
+        return _size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            BufferUnmapper.unmap(_segment);
+            _channel.truncate(_size);
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /**
+     * Open the file for appending.
+     *
+     * @param file The file to append to.
+     * @param segmentSize The size of each mapped segment in bytes.
+     * @return Instance of <code>MappedActiveFile</code>.
+     * @throws IOException if the file cannot be opened.
+     */
+    /* package private */ static MappedActiveFile open(final Path file, final int segmentSize) throws IOException {
+        final FileChannel channel = FileChannel.open(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new MappedActiveFile(channel, segmentSize);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private MappedByteBuffer map(final int length) throws IOException {
+        return _channel.map(FileChannel.MapMode.READ_WRITE, _size, length);
+    }
+
+    private static long findEnd(final FileChannel channel) throws IOException {
+        long end = channel.size();
+        while (end > 0) {
+            final long start = Math.max(0, end - RECOVERY_WINDOW_SIZE);
+            final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            try {
+                for (int i = window.limit() - 1; i >= 0; --i) {
+                    if (window.get(i) != 0) {
+                        return start + i + 1;
+                    }
+                }
+            } finally {
+                BufferUnmapper.unmap(window);
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private MappedActiveFile(final FileChannel channel, final int segmentSize) throws IOException {
+        _channel = channel;
+        _segmentSize = segmentSize;
+        _size = findEnd(channel);
+        _segment = map(segmentSize);
+    }
+
+    private final FileChannel _channel;
+    private final int _segmentSize;
+    private MappedByteBuffer _segment;
+    private long _size;
+
+    private static final int RECOVERY_WINDOW_SIZE = 1048576;
+}
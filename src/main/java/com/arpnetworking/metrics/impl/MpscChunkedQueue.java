@@ -0,0 +1,171 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue whose storage grows
+ * and shrinks with the number of queued elements. Elements are stored in a
+ * linked list of fixed size chunks; producers claim a position by advancing a
+ * shared sequence with compare-and-set, link a new chunk when their position
+ * is past the last one and then publish the element in its slot. The consumer
+ * reads slots in order as they are published and drops each chunk once it
+ * has read past it. No locks are taken on either side.
+ *
+ * Unlike <code>MpscRingBuffer</code> only the chunks holding queued elements
+ * are allocated, so a large capacity costs memory only while it is used.
+ * The chunk size is rounded up to the next power of two (minimum of two).
+ *
+ * This class is thread safe for any number of producers calling
+ * <code>offer</code> and a single consumer calling <code>poll</code>.
+ *
+ * @param <T> The type of element.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+// NOTE: Field updaters can only be created for the raw class
+@SuppressWarnings("rawtypes")
+/* package private */ final class MpscChunkedQueue<T> implements MpscQueue<T> {
+
+    @Override
+    public boolean offer(final T element) {
+        // NOTE: Read the chunk before claiming a position so it cannot be past
+        // the chunk of the position
+        final Chunk<T> hint = _producerChunk.get();
+        long position = PRODUCER_SEQUENCE.get(this);
+        while (true) {
+            if (position - _consumerSequence >= _capacity) {
+                return false;
+            }
+            if (PRODUCER_SEQUENCE.compareAndSet(this, position, position + 1)) {
+                break;
+            }
+            position = PRODUCER_SEQUENCE.get(this);
+        }
+        final Chunk<T> chunk = findChunk(hint, position >>> _chunkShift);
+        chunk._elements.lazySet((int) (position & _chunkMask), element);
+        return true;
+    }
+
+    @Override
+    public @Nullable T poll() {
+        final long position = _consumerSequence;
+        Chunk<T> chunk = _consumerChunk;
+        if (chunk._index != position >>> _chunkShift) {
+            final Chunk<T> next = chunk._next.get();
+            if (next == null) {
+                return null;
+            }
+            chunk = next;
+            _consumerChunk = chunk;
+        }
+        final int index = (int) (position & _chunkMask);
+        final T element = chunk._elements.get(index);
+        if (element == null) {
+            return null;
+        }
+        chunk._elements.lazySet(index, null);
+        _consumerSequence = position + 1;
+        return element;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(_capacity, PRODUCER_SEQUENCE.get(this) - _consumerSequence));
+    }
+
+    @Override
+    public long getOfferedCount() {
+        return PRODUCER_SEQUENCE.get(this);
+    }
+
+    @Override
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * Accessor for the number of slots in each chunk.
+     *
+     * @return The number of slots in each chunk.
+     */
+    public int getChunkSize() {
+        return (int) (_chunkMask + 1);
+    }
+
+    private Chunk<T> findChunk(final Chunk<T> hint, final long index) {
+        Chunk<T> chunk = hint;
+        while (chunk._index < index) {
+            Chunk<T> next = chunk._next.get();
+            if (next == null) {
+                final Chunk<T> created = new Chunk<>(chunk._index + 1, getChunkSize());
+                next = chunk._next.compareAndSet(null, created) ? created : chunk._next.get();
+            }
+            chunk = next;
+        }
+        Chunk<T> current = _producerChunk.get();
+        while (current._index < chunk._index && !_producerChunk.compareAndSet(current, chunk)) {
+            current = _producerChunk.get();
+        }
+        return chunk;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param capacity The maximum number of elements the queue can hold.
+     * @param minimumChunkSize The minimum number of slots in each chunk.
+     */
+    /* package private */ MpscChunkedQueue(final int capacity, final int minimumChunkSize) {
+        final int chunkSize = Math.max(2, Integer.highestOneBit(Math.max(1, minimumChunkSize - 1)) << 1);
+        _capacity = Math.max(1, capacity);
+        _chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        _chunkMask = chunkSize - 1;
+        final Chunk<T> first = new Chunk<>(0, chunkSize);
+        _producerChunk = new AtomicReference<>(first);
+        _consumerChunk = first;
+    }
+
+    private final int _capacity;
+    private final int _chunkShift;
+    private final long _chunkMask;
+    private final AtomicReference<Chunk<T>> _producerChunk;
+    // NOTE: Updated through the field updater to avoid a separate atomic object
+    private volatile long _producerSequence;
+    // NOTE: Only accessed by the consumer thread except for size and capacity checks
+    private volatile long _consumerSequence;
+    // NOTE: Only accessed by the consumer thread
+    private Chunk<T> _consumerChunk;
+
+    private static final AtomicLongFieldUpdater<MpscChunkedQueue> PRODUCER_SEQUENCE =
+            AtomicLongFieldUpdater.newUpdater(MpscChunkedQueue.class, "_producerSequence");
+
+    private static final class Chunk<T> {
+
+        Chunk(final long index, final int size) {
+            _index = index;
+            _elements = new AtomicReferenceArray<>(size);
+        }
+
+        private final long _index;
+        private final AtomicReferenceArray<T> _elements;
+        private final AtomicReference<Chunk<T>> _next = new AtomicReference<>();
+    }
+}
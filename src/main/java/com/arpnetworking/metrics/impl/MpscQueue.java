@@ -0,0 +1,72 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import javax.annotation.Nullable;
+
+/**
+ * Interface for bounded lock-free multi-producer single-consumer queues
+ * which hand records to the writer thread of an <code>AsyncRecordWriter</code>.
+ *
+ * Implementations must be thread safe for any number of producers calling
+ * <code>offer</code> and a single consumer calling <code>poll</code>.
+ *
+ * @param <T> The type of element.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ interface MpscQueue<T> {
+
+    /**
+     * Add an element to the queue if there is space.
+     *
+     * @param element The element to add.
+     * @return True if and only if the element was added.
+     */
+    boolean offer(T element);
+
+    /**
+     * Remove the next element from the queue. Must only be called by the
+     * single consumer thread.
+     *
+     * @return The next element or null if the queue is empty.
+     */
+    @Nullable T poll();
+
+    /**
+     * Accessor for the approximate number of elements in the queue.
+     *
+     * @return The approximate number of elements.
+     */
+    int size();
+
+    /**
+     * Accessor for the total number of elements added to the queue.
+     * Elements are removed in the same order so once the consumer has
+     * removed this many elements every element added before the call has
+     * been removed.
+     *
+     * @return The total number of elements added.
+     */
+    long getOfferedCount();
+
+    /**
+     * Accessor for the capacity of the queue.
+     *
+     * @return The capacity.
+     */
+    int capacity();
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded lock-free multi-producer single-consumer ring buffer. Producers
+ * claim a slot by advancing a shared sequence with compare-and-set and then
+ * publish the slot by advancing its own sequence; the consumer reads slots in
+ * order as they are published. No locks are taken on either side.
+ *
+ * The capacity is rounded up to the next power of two (minimum of two) so
+ * slots can be addressed with a mask.
+ *
+ * This class is thread safe for any number of producers calling
+ * <code>offer</code> and a single consumer calling <code>poll</code>.
+ *
+ * @param <T> The type of element.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+// NOTE: Field updaters can only be created for the raw class
+@SuppressWarnings("rawtypes")
+/* package private */ final class MpscRingBuffer<T> implements MpscQueue<T> {
+
+    @Override
+    public boolean offer(final T element) {
+        long position = PRODUCER_SEQUENCE.get(this);
+        while (true) {
+            final int index = (int) (position & _mask);
+            final long difference = _slotSequences.get(index) - position;
+            if (difference == 0) {
+                if (PRODUCER_SEQUENCE.compareAndSet(this, position, position + 1)) {
+                    _elements.lazySet(index, element);
+                    _slotSequences.set(index, position + 1);
+                    return true;
+                }
+                position = PRODUCER_SEQUENCE.get(this);
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = PRODUCER_SEQUENCE.get(this);
+            }
+        }
+    }
+
+    @Override
+    public @Nullable T poll() {
+        final long position = _consumerSequence;
+        final int index = (int) (position & _mask);
+        if (_slotSequences.get(index) != position + 1) {
+            return null;
+        }
+        final T element = _elements.get(index);
+        _elements.lazySet(index, null);
+        _slotSequences.lazySet(index, position + _capacity);
+        _consumerSequence = position + 1;
+        return element;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.max(0, Math.min(_capacity, PRODUCER_SEQUENCE.get(this) - _consumerSequence));
+    }
+
+    @Override
+    public long getOfferedCount() {
+        return PRODUCER_SEQUENCE.get(this);
+    }
+
+    @Override
+    public int capacity() {
+        return _capacity;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param minimumCapacity The minimum number of elements the ring buffer can hold.
+     */
+    /* package private */ MpscRingBuffer(final int minimumCapacity) {
+        _capacity = Math.max(2, Integer.highestOneBit(Math.max(1, minimumCapacity - 1)) << 1);
+        _mask = _capacity - 1;
+        _elements = new AtomicReferenceArray<>(_capacity);
+        _slotSequences = new AtomicLongArray(_capacity);
+        for (int i = 0; i < _capacity; ++i) {
+            _slotSequences.set(i, i);
+        }
+    }
+
+    private final int _capacity;
+    private final long _mask;
+    private final AtomicReferenceArray<T> _elements;
+    private final AtomicLongArray _slotSequences;
+    // NOTE: Updated through the field updater to avoid a separate atomic object
+    private volatile long _producerSequence;
+    // NOTE: Only accessed by the consumer thread except for size estimates
+    private volatile long _consumerSequence;
+
+    private static final AtomicLongFieldUpdater<MpscRingBuffer> PRODUCER_SEQUENCE =
+            AtomicLongFieldUpdater.newUpdater(MpscRingBuffer.class, "_producerSequence");
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses files in parallel in the style of pigz. The source is split into
+ * fixed size blocks, each block is compressed into a complete stream by a
+ * concatenable <code>CompressionCodec</code> on the executor and the streams
+ * are written to the target in order. For gzip the result is a multi-member
+ * file which standard tools, including <code>GZIPInputStream</code>,
+ * decompress to the concatenation of the blocks.
+ *
+ * At most two blocks per thread are in flight so memory use is bounded by
+ * the block size and the parallelism and not by the size of the file.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class ParallelCompressor {
+
+    /**
+     * Compress a file. The calling thread reads the source and writes the
+     * target while the blocks are compressed on the executor.
+     *
+     * @param source The file to compress.
+     * @param target The compressed file to create.
+     * @throws IOException if the file cannot be compressed.
+     */
+    /* package private */ void compress(final Path source, final Path target) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(source);
+             OutputStream outputStream = Files.newOutputStream(target)) {
+            final Deque<Future<byte[]>> pending = new ArrayDeque<>(_maxBlocksInFlight);
+            // NOTE: The first block is submitted even if empty so the target is never an empty file
+            boolean more = true;
+            while (more || !pending.isEmpty()) {
+                while (more && pending.size() < _maxBlocksInFlight) {
+                    final byte[] block = readBlock(inputStream);
+                    pending.add(_executor.submit(() -> compressBlock(_codec, block)));
+                    more = block.length == _blockSize;
+                }
+                outputStream.write(await(pending.remove()));
+            }
+        }
+    }
+
+    private byte[] readBlock(final InputStream inputStream) throws IOException {
+        final byte[] block = new byte[_blockSize];
+        int length = 0;
+        while (length < _blockSize) {
+            final int read = inputStream.read(block, length, _blockSize - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length == _blockSize ? block : Arrays.copyOf(block, length);
+    }
+
+    private static byte[] compressBlock(final CompressionCodec codec, final byte[] block) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(block.length / 4 + MEMBER_OVERHEAD);
+        try (OutputStream compressedOutputStream = codec.compress(outputStream)) {
+            compressedOutputStream.write(block);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] await(final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (final ExecutionException e) {
+            throw new IOException("Unable to compress block", e.getCause());
+        }
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param codec The concatenable codec to compress blocks with.
+     * @param executor The executor to compress blocks on.
+     * @param parallelism The number of threads of the executor.
+     * @param blockSize The size of each block in bytes.
+     */
+    /* package private */ ParallelCompressor(
+            final CompressionCodec codec,
+            final ExecutorService executor,
+            final int parallelism,
+            final int blockSize) {
+        _codec = codec;
+        _executor = executor;
+        _maxBlocksInFlight = 2 * parallelism;
+        _blockSize = blockSize;
+    }
+
+    private final CompressionCodec _codec;
+    private final ExecutorService _executor;
+    private final int _maxBlocksInFlight;
+    private final int _blockSize;
+
+    private static final int MEMBER_OVERHEAD = 64;
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bound on the number of bytes of records in a writer queue. Producers
+ * reserve the size of each serialized record before queueing it and the
+ * thread which drains the queue releases it, so the accounting costs one
+ * atomic addition on either side. A record larger than the budget is only
+ * accepted into an otherwise empty queue so that it is not rejected forever.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class QueueByteBudget {
+
+    /**
+     * Reserve the bytes of a record about to be queued.
+     *
+     * @param bytes The size of the record.
+     * @return True if and only if the record fits the budget and was reserved.
+     */
+    /* package private */ boolean tryAcquire(final long bytes) {
+        final long queued = _queuedBytes.addAndGet(bytes);
+        if (queued > _maxBytes && queued > bytes) {
+            _queuedBytes.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Release the bytes of a record taken from the queue or not queued after
+     * all.
+     *
+     * @param bytes The size of the record.
+     */
+    /* package private */ void release(final long bytes) {
+        _queuedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Whether the queue is below its budget. The answer is advisory since
+     * other threads may reserve bytes concurrently.
+     *
+     * @return True if and only if the queue is below its budget.
+     */
+    /* package private */ boolean hasCapacity() {
+        return _queuedBytes.get() < _maxBytes;
+    }
+
+    /**
+     * Accessor for the number of bytes reserved by queued records.
+     *
+     * @return The number of queued bytes.
+     */
+    /* package private */ long getQueuedBytes() {
+        return _queuedBytes.get();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxBytes The maximum number of bytes of queued records.
+     */
+    /* package private */ QueueByteBudget(final long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException(String.format("Invalid max bytes; maxBytes=%d", maxBytes));
+        }
+        _maxBytes = maxBytes;
+    }
+
+    private final long _maxBytes;
+    private final AtomicLong _queuedBytes = new AtomicLong();
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Outcome of offering an event to a file based <code>Sink</code> without
+ * blocking on a full queue; see <code>tryRecord</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum RecordOutcome {
+    /**
+     * The event was written or queued for writing.
+     */
+    ACCEPTED,
+    /**
+     * The event was discarded by the sink independent of its capacity, for
+     * example by its sampler or rate limit or because it could not be
+     * encoded. Retrying the event is not useful.
+     */
+    DROPPED,
+    /**
+     * The event was not queued because the queue of the sink remained full
+     * for the allowed wait. Nothing was written and no drop was counted; the
+     * caller decides whether to retry, shed or otherwise handle the event.
+     */
+    REJECTED
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.List;
+
+/**
+ * Interface for writing encoded records to the output of a file based
+ * <code>Sink</code>. Each record is a complete, pre-encoded entry including
+ * its line separator.
+ *
+ * Implementations must be thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ interface RecordWriter {
+
+    /**
+     * Write a record. The writer takes ownership of the array and the caller
+     * must not modify it afterwards. A record which is not accepted, for
+     * example because it was dropped from a full queue or could not be
+     * written, is not written later either.
+     *
+     * @param record The encoded record.
+     * @return True if and only if the record was written, queued or buffered.
+     */
+    boolean write(byte[] record);
+
+    /**
+     * Write a batch of records in order. Implementations may coalesce the
+     * batch into fewer writes to the underlying output. The writer takes
+     * ownership of the arrays but not of the list. Records which are not
+     * accepted are not written later either.
+     *
+     * @param records The encoded records.
+     * @return The number of records written, queued or buffered.
+     */
+    default int write(final List<byte[]> records) {
+        int accepted = 0;
+        for (final byte[] record : records) {
+            if (write(record)) {
+                ++accepted;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Write a record only if the queue of this writer accepts it within the
+     * timeout. Unlike <code>write</code> a full queue never blocks beyond
+     * the timeout and never counts a drop; the record is simply not written.
+     * Writers without a queue always accept the record.
+     *
+     * @param record The encoded record.
+     * @param timeoutInNanos The maximum time to wait for capacity; zero to
+     * not wait at all.
+     * @return True if and only if the record was accepted.
+     */
+    default boolean tryWrite(final byte[] record, final long timeoutInNanos) {
+        if (!awaitCapacity(timeoutInNanos)) {
+            return false;
+        }
+        return write(record);
+    }
+
+    /**
+     * Wait until the queue of this writer has capacity for at least one
+     * record or the timeout elapses. Writers without a queue always have
+     * capacity.
+     *
+     * @param timeoutInNanos The maximum time to wait; zero to not wait at all.
+     * @return True if and only if the queue had capacity.
+     */
+    default boolean awaitCapacity(final long timeoutInNanos) {
+        return true;
+    }
+
+    /**
+     * Register a one-shot callback run once the queue of this writer has
+     * capacity. The callback runs on the thread draining the queue, or on
+     * the calling thread if there is capacity already, so it must be short
+     * and must not block. Writers without a queue run it immediately.
+     *
+     * @param callback The callback.
+     */
+    default void onCapacityAvailable(final Runnable callback) {
+        callback.run();
+    }
+
+    /**
+     * Block until every record accepted by this writer before the call is
+     * durable, its commit failed, or the writer is closed. Writers which do
+     * not commit records to disk return immediately.
+     */
+    default void awaitDurable() {
+        // Records are never committed so there is nothing to wait for
+    }
+
+    /**
+     * Accessor for the group commit statistics of this writer.
+     *
+     * @return Snapshot of the group commit statistics.
+     */
+    default CommitStatistics getCommitStatistics() {
+        return CommitStatistics.EMPTY;
+    }
+
+    /**
+     * Accessor for the number of records dropped because the queue of this
+     * writer was full. Writers without a queue never drop records.
+     *
+     * @return The number of records dropped.
+     */
+    default long getDropped() {
+        return 0;
+    }
+
+    /**
+     * Accessor for the number of records waiting in the queue of this writer.
+     *
+     * @return The number of records in the queue.
+     */
+    default int getQueueDepth() {
+        return 0;
+    }
+
+    /**
+     * Accessor for the capacity of the queue of this writer. Writers without
+     * a queue have no capacity.
+     *
+     * @return The capacity of the queue.
+     */
+    default int getQueueCapacity() {
+        return 0;
+    }
+
+    /**
+     * Accessor for the number of rolled files waiting to be compressed.
+     *
+     * @return The number of files waiting to be compressed.
+     */
+    default long getCompressionBacklogFiles() {
+        return 0;
+    }
+
+    /**
+     * Accessor for the total size in bytes of the rolled files waiting to be
+     * compressed.
+     *
+     * @return The number of bytes waiting to be compressed.
+     */
+    default long getCompressionBacklogBytes() {
+        return 0;
+    }
+
+    /**
+     * Flush any pending records and release the underlying resources. No
+     * further records may be written after the writer is closed.
+     */
+    void close();
+}
@@ -0,0 +1,869 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>RecordWriter</code> which appends records directly
+ * to the active file, either through a <code>FileChannel</code> or a memory
+ * mapped segment of the file. The file is rolled with the same semantics as
+ * the Logback engine configured by <code>BaseFileSink</code>:
+ *
+ * <ul>
+ *     <li>files roll hourly, offset by a random amount per instance, and
+ *     whenever the active file reaches the maximum file size</li>
+ *     <li>rolled files are named <code>name.yyyy-MM-dd-HH.index.extension</code>
+ *     and optionally compressed in the background, in which case the
+ *     extension of the <code>CompressionCodec</code> is appended</li>
+ *     <li>rolled files older than the maximum history in hours are removed
+ *     as are the oldest rolled files in excess of the maximum history times
+ *     the maximum file size</li>
+ * </ul>
+ *
+ * When group commit is enabled the records written since the previous commit
+ * are forced to disk once they reach the commit size and at the commit
+ * interval, as well as before the file is rolled or closed.
+ *
+ * Records written through a <code>FileChannel</code> are buffered unless
+ * immediate flush is enabled. Batches of records are coalesced in the buffer
+ * and written with a single write per buffer capacity; the buffer is always
+ * flushed at the end of a batch. Records written to a memory mapped segment
+ * are copied into the page cache without a system call; the segment is the
+ * size of the maximum file size and the active file is zero filled past the
+ * last record until it is rolled or closed.
+ *
+ * Rolled files are compressed one at a time on the archiver thread. With
+ * more than one compression thread and a concatenable codec each file is
+ * split into blocks which are compressed in parallel, for gzip into a
+ * multi-member gzip file. The number and total size of rolled files waiting
+ * to be compressed is reported as the compression backlog. With streaming
+ * compression records are instead compressed as they are written to the
+ * active file, which is renamed on roll without being read back.
+ *
+ * With a <code>FileDictionary</code> the definitions each record requires
+ * are appended ahead of it; the dictionary is reset whenever a file is
+ * opened so that every file can be decoded on its own.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class RollingFileRecordWriter implements RecordWriter {
+
+    @Override
+    public synchronized boolean write(final byte[] record) {
+        if (_closed) {
+            return false;
+        }
+        try {
+            if (_active == null) {
+                open(_clock.millis());
+            }
+            rollIfNeeded(_clock.millis());
+            append(record);
+            if (_immediateFlush) {
+                flush();
+            }
+            commitIfNeeded();
+            return true;
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("Unable to write record; file=%s", _file), e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized int write(final List<byte[]> records) {
+        if (_closed) {
+            return 0;
+        }
+        try {
+            final long now = _clock.millis();
+            if (_active == null) {
+                open(now);
+            }
+            for (final byte[] record : records) {
+                rollIfNeeded(now);
+                append(record);
+            }
+            flush();
+            commitIfNeeded();
+            return records.size();
+        } catch (final IOException e) {
+            // NOTE: Records of the batch may have been partly written so the whole batch is reported as lost
+            LOGGER.warn(String.format("Unable to write records; file=%s, records=%d", _file, records.size()), e);
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized void awaitDurable() {
+        if (_committer == null) {
+            return;
+        }
+        final long target = _appendedRecords;
+        try {
+            while (_resolvedRecords < target) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized CommitStatistics getCommitStatistics() {
+        return _commitStatistics.snapshot();
+    }
+
+    @Override
+    public long getCompressionBacklogFiles() {
+        return _compressionBacklogFiles.get();
+    }
+
+    @Override
+    public long getCompressionBacklogBytes() {
+        return _compressionBacklogBytes.get();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _closed = true;
+            commitPending();
+            closeActiveFile();
+            _resolvedRecords = _appendedRecords;
+            notifyAll();
+        }
+        if (_committer != null) {
+            _committer.shutdown();
+        }
+        _archiver.shutdown();
+        try {
+            if (!_archiver.awaitTermination(ARCHIVER_SHUTDOWN_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn(String.format("Timed out waiting for archiving to complete; file=%s", _file));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (_compressionExecutor != null) {
+            _compressionExecutor.shutdown();
+        }
+    }
+
+    private void open(final long now) throws IOException {
+        if (Files.exists(_file)) {
+            startPeriod(Files.getLastModifiedTime(_file).toMillis());
+        } else {
+            startPeriod(now);
+        }
+        _index = findNextIndex(_periodName);
+        if (_streamingCompression && Files.exists(_file) && Files.size(_file) > 0) {
+            // NOTE: A process which stopped without closing the file may have left an unterminated member which
+            // would make every member appended after it unreadable, so archive the file and start a new one
+            final String archiveName = _name + "." + _periodName + "." + _index + _extension;
+            Files.move(_file, _directory.resolve(archiveName + _compressionCodec.getExtension()));
+            startPeriod(now);
+            _index = findNextIndex(_periodName);
+        }
+        _active = _opener.open(_file);
+        resetDictionary();
+    }
+
+    private void rollIfNeeded(final long now) throws IOException {
+        if (now < _nextRollAttempt) {
+            return;
+        }
+        if (now >= _nextCheck) {
+            if (roll(now)) {
+                startPeriod(now);
+                _index = findNextIndex(_periodName);
+            }
+        } else if (_active.size() >= _maxFileSize) {
+            if (roll(now)) {
+                ++_index;
+            }
+        }
+    }
+
+    private boolean roll(final long now) throws IOException {
+        if (_committer != null) {
+            commit();
+        } else {
+            flush();
+        }
+        _active.close();
+        _active = null;
+        final String archiveName = _name + "." + _periodName + "." + _index + _extension;
+        boolean rolled = false;
+        try {
+            if (_streamingCompression) {
+                Files.move(_file, _directory.resolve(archiveName + _compressionCodec.getExtension()));
+            } else if (_compress) {
+                final Path temporary = _directory.resolve(archiveName + "." + System.nanoTime() + TEMPORARY_EXTENSION);
+                final Path archive = _directory.resolve(archiveName + _compressionCodec.getExtension());
+                Files.move(_file, temporary);
+                final long size = Files.size(temporary);
+                _compressionBacklogFiles.incrementAndGet();
+                _compressionBacklogBytes.addAndGet(size);
+                _archiver.execute(() -> compress(temporary, archive, size));
+            } else {
+                Files.move(_file, _directory.resolve(archiveName));
+            }
+            final String cutoffPeriodName = PERIOD_FORMATTER.format(truncateToPeriod(now).minusHours(_maxHistory));
+            _archiver.execute(() -> removeHistory(cutoffPeriodName));
+            rolled = true;
+        } catch (final IOException e) {
+            // NOTE: Keep writing to the active file in the same period and
+            // index; the roll is retried once the retry interval elapsed
+            LOGGER.warn(String.format("Unable to roll file; file=%s, archive=%s", _file, archiveName), e);
+            _nextRollAttempt = now + ROLL_RETRY_INTERVAL_IN_MILLIS;
+        }
+        _active = _opener.open(_file);
+        resetDictionary();
+        return rolled;
+    }
+
+    private void resetDictionary() {
+        if (_dictionary != null) {
+            _dictionary.reset();
+        }
+    }
+
+    private void append(final byte[] record) throws IOException {
+        if (_dictionary != null) {
+            final byte[] definitions = _dictionary.define(record);
+            if (definitions.length > 0) {
+                _active.append(definitions);
+                _uncommittedBytes += definitions.length;
+            }
+        }
+        _active.append(record);
+        _uncommittedBytes += record.length;
+        ++_appendedRecords;
+    }
+
+    private void commitIfNeeded() throws IOException {
+        if (_committer != null && _uncommittedBytes >= _commitBytes) {
+            commit();
+        }
+    }
+
+    private synchronized void commitPending() {
+        if (_committer != null && _active != null && _resolvedRecords < _appendedRecords) {
+            try {
+                commit();
+            } catch (final IOException e) {
+                LOGGER.warn(String.format("Unable to commit records; file=%s", _file), e);
+            }
+        }
+    }
+
+    private void commit() throws IOException {
+        final long records = _appendedRecords - _resolvedRecords;
+        final long bytes = _uncommittedBytes;
+        try {
+            flush();
+            final long start = System.nanoTime();
+            _active.force();
+            _commitStatistics.recordCommit(System.nanoTime() - start, records, bytes);
+        } catch (final IOException e) {
+            _commitStatistics.recordFailure();
+            throw e;
+        } finally {
+            // NOTE: Records in a failed commit are resolved so callers never block indefinitely
+            _resolvedRecords = _appendedRecords;
+            _uncommittedBytes = 0;
+            notifyAll();
+        }
+    }
+
+    private void flush() throws IOException {
+        _active.flush();
+    }
+
+    private void closeActiveFile() {
+        if (_active != null) {
+            try {
+                _active.close();
+            } catch (final IOException e) {
+                LOGGER.warn(String.format("Unable to close file; file=%s", _file), e);
+            }
+            _active = null;
+        }
+    }
+
+    private void startPeriod(final long time) {
+        final ZonedDateTime periodStart = truncateToPeriod(time);
+        _periodName = PERIOD_FORMATTER.format(periodStart);
+        _nextCheck = periodStart.plusHours(1).toInstant().toEpochMilli() + _randomOffsetInMillis;
+    }
+
+    private int findNextIndex(final String periodName) throws IOException {
+        int nextIndex = 0;
+        // NOTE: Temporaries still awaiting compression reserve their index
+        final List<Archive> archives = listArchives(_archivePattern);
+        archives.addAll(listArchives(_temporaryPattern));
+        for (final Archive archive : archives) {
+            if (archive._periodName.equals(periodName)) {
+                nextIndex = Math.max(nextIndex, archive._index + 1);
+            }
+        }
+        return nextIndex;
+    }
+
+    private void removeHistory(final String cutoffPeriodName) {
+        try {
+            final List<Archive> archives = listArchives(_archivePattern);
+            archives.sort(NEWEST_FIRST);
+            long totalSize = 0;
+            for (final Archive archive : archives) {
+                final long size = Files.size(archive._path);
+                if (archive._periodName.compareTo(cutoffPeriodName) < 0 || totalSize + size > _totalSizeCap) {
+                    Files.deleteIfExists(archive._path);
+                } else {
+                    totalSize += size;
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("Unable to remove history; file=%s", _file), e);
+        }
+    }
+
+    private void recoverTemporaries() {
+        // NOTE: Temporaries left behind by a failed or interrupted compression are archived again
+        try {
+            for (final Archive temporary : listArchives(_temporaryPattern)) {
+                final String archiveName = _name + "." + temporary._periodName + "." + temporary._index + _extension;
+                if (_compress && !_streamingCompression) {
+                    final Path archive = _directory.resolve(archiveName + _compressionCodec.getExtension());
+                    final long size = Files.size(temporary._path);
+                    _compressionBacklogFiles.incrementAndGet();
+                    _compressionBacklogBytes.addAndGet(size);
+                    _archiver.execute(() -> compress(temporary._path, archive, size));
+                } else {
+                    Files.move(temporary._path, _directory.resolve(archiveName), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.warn(String.format("Unable to recover temporary files; file=%s", _file), e);
+        }
+    }
+
+    private List<Archive> listArchives(final Pattern pattern) throws IOException {
+        final List<Archive> archives = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(_directory)) {
+            for (final Path path : stream) {
+                final Matcher matcher = pattern.matcher(String.valueOf(path.getFileName()));
+                if (matcher.matches()) {
+                    archives.add(new Archive(path, matcher.group(1), Integer.parseInt(matcher.group(2))));
+                }
+            }
+        }
+        return archives;
+    }
+
+    private ZonedDateTime truncateToPeriod(final long time) {
+        return Instant.ofEpochMilli(time).atZone(_clock.getZone()).truncatedTo(ChronoUnit.HOURS);
+    }
+
+    private void compress(final Path source, final Path target, final long size) {
+        try {
+            if (_parallelCompressor != null) {
+                _parallelCompressor.compress(source, target);
+            } else {
+                try (OutputStream fileOutputStream = Files.newOutputStream(target);
+                     OutputStream outputStream = _compressionCodec.compress(fileOutputStream)) {
+                    Files.copy(source, outputStream);
+                }
+            }
+            Files.delete(source);
+        } catch (final IOException e) {
+            // NOTE: The source is kept and recovered on the next start; the partial target is discarded
+            try {
+                Files.deleteIfExists(target);
+            } catch (final IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            LOGGER.warn(String.format("Unable to compress file; source=%s, target=%s", source, target), e);
+        } finally {
+            _compressionBacklogFiles.decrementAndGet();
+            _compressionBacklogBytes.addAndGet(-size);
+        }
+    }
+
+    private static ActiveFile.Opener createOpener(final Builder builder) {
+        if (builder._memoryMapped) {
+            final int segmentSize = (int) Math.max(1, Math.min(builder._maxFileSize, Integer.MAX_VALUE));
+            return file -> MappedActiveFile.open(file, segmentSize);
+        }
+        if (isStreamingCompression(builder)) {
+            return file -> CompressedActiveFile.open(
+                    file,
+                    builder._compressionCodec,
+                    builder._compressionBlockSize,
+                    builder._bufferSize);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(builder._bufferSize);
+        return file -> ChannelActiveFile.open(file, buffer);
+    }
+
+    @Nullable
+    private ScheduledExecutorService createCommitter(final long commitIntervalInMillis) {
+        if (commitIntervalInMillis <= 0) {
+            return null;
+        }
+        final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-file-sink-committer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        committer.scheduleAtFixedRate(
+                this::commitPending,
+                commitIntervalInMillis,
+                commitIntervalInMillis,
+                TimeUnit.MILLISECONDS);
+        return committer;
+    }
+
+    private static boolean isStreamingCompression(final Builder builder) {
+        return builder._compress && builder._streamingCompression;
+    }
+
+    private RollingFileRecordWriter(final Builder builder) {
+        _directory = builder._directory;
+        _streamingCompression = isStreamingCompression(builder);
+        _file = builder._directory.resolve(
+                builder._name + builder._extension + (_streamingCompression ? builder._compressionCodec.getExtension() : ""));
+        _name = builder._name;
+        _extension = builder._extension;
+        _maxHistory = builder._maxHistory;
+        _maxFileSize = builder._maxFileSize;
+        _totalSizeCap = builder._maxHistory * builder._maxFileSize;
+        _compress = builder._compress;
+        _compressionCodec = builder._compressionCodec;
+        _immediateFlush = builder._immediateFlush;
+        _randomOffsetInMillis = builder._randomOffsetInMillis;
+        _clock = builder._clock;
+        _archiver = builder._archiver;
+        _opener = createOpener(builder);
+        _compressionExecutor = builder._compressionExecutor;
+        _parallelCompressor = _compressionExecutor == null
+                ? null
+                : new ParallelCompressor(
+                        _compressionCodec,
+                        _compressionExecutor,
+                        builder._compressionThreads,
+                        builder._compressionBlockSize);
+        _commitBytes = builder._commitBytes;
+        _dictionary = builder._dictionary;
+        _committer = createCommitter(builder._commitIntervalInMillis);
+        // NOTE: Archives compressed by any codec are matched so history is removed across codec changes
+        _archivePattern = Pattern.compile(
+                Pattern.quote(_name) + "\\.(\\d{4}-\\d{2}-\\d{2}-\\d{2})\\.(\\d+)" + Pattern.quote(_extension) + "(?:\\.[A-Za-z0-9]+)?");
+        _temporaryPattern = Pattern.compile(
+                Pattern.quote(_name) + "\\.(\\d{4}-\\d{2}-\\d{2}-\\d{2})\\.(\\d+)" + Pattern.quote(_extension)
+                        + "\\.\\d+" + Pattern.quote(TEMPORARY_EXTENSION));
+
+        synchronized (this) {
+            recoverTemporaries();
+            try {
+                open(_clock.millis());
+            } catch (final IOException e) {
+                LOGGER.warn(String.format("Unable to open file; file=%s", _file), e);
+            }
+            final String cutoffPeriodName = PERIOD_FORMATTER.format(truncateToPeriod(_clock.millis()).minusHours(_maxHistory));
+            _archiver.execute(() -> removeHistory(cutoffPeriodName));
+        }
+    }
+
+    private final Path _directory;
+    private final Path _file;
+    private final String _name;
+    private final String _extension;
+    private final int _maxHistory;
+    private final long _maxFileSize;
+    private final long _totalSizeCap;
+    private final boolean _compress;
+    private final boolean _streamingCompression;
+    private final CompressionCodec _compressionCodec;
+    private final boolean _immediateFlush;
+    private final int _randomOffsetInMillis;
+    private final Clock _clock;
+    private final Pattern _archivePattern;
+    private final Pattern _temporaryPattern;
+    private final ExecutorService _archiver;
+    private final ActiveFile.Opener _opener;
+    @Nullable
+    private final ExecutorService _compressionExecutor;
+    @Nullable
+    private final ParallelCompressor _parallelCompressor;
+    private final AtomicLong _compressionBacklogFiles = new AtomicLong();
+    private final AtomicLong _compressionBacklogBytes = new AtomicLong();
+    private final long _commitBytes;
+    @Nullable
+    private final FileDictionary _dictionary;
+    @Nullable
+    private final ScheduledExecutorService _committer;
+    private final CommitStatistics.Accumulator _commitStatistics = new CommitStatistics.Accumulator();
+    @Nullable
+    private ActiveFile _active;
+    private String _periodName;
+    private long _nextCheck;
+    private long _nextRollAttempt;
+    private int _index;
+    private boolean _closed;
+    private long _appendedRecords;
+    private long _resolvedRecords;
+    private long _uncommittedBytes;
+
+    private static final long ARCHIVER_SHUTDOWN_TIMEOUT_IN_MILLIS = 30000;
+    private static final long ROLL_RETRY_INTERVAL_IN_MILLIS = 1000;
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final DateTimeFormatter PERIOD_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    private static final Comparator<Archive> NEWEST_FIRST = Comparator.<Archive, String>comparing(a -> a._periodName)
+            .thenComparingInt(a -> a._index)
+            .reversed();
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(RollingFileRecordWriter.class);
+
+    /**
+     * Builder for <code>RollingFileRecordWriter</code>.
+     */
+    /* package private */ static final class Builder {
+
+        /**
+         * Set the directory to write to.
+         *
+         * @param value The directory.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setDirectory(final Path value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Set the file name without extension.
+         *
+         * @param value The file name without extension.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the file extension.
+         *
+         * @param value The file extension.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setExtension(final String value) {
+            _extension = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum history in hours.
+         *
+         * @param value The maximum history in hours.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxHistory(final int value) {
+            _maxHistory = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum file size in bytes.
+         *
+         * @param value The maximum file size in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMaxFileSize(final long value) {
+            _maxFileSize = value;
+            return this;
+        }
+
+        /**
+         * Set whether to compress files on roll.
+         *
+         * @param value Whether to compress files on roll.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompress(final boolean value) {
+            _compress = value;
+            return this;
+        }
+
+        /**
+         * Set whether to flush each record immediately.
+         *
+         * @param value Whether to flush each record immediately.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setImmediateFlush(final boolean value) {
+            _immediateFlush = value;
+            return this;
+        }
+
+        /**
+         * Set the size of the write buffer in bytes. Optional; default is 8192.
+         *
+         * @param value The size of the write buffer in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setBufferSize(final int value) {
+            _bufferSize = value;
+            return this;
+        }
+
+        /**
+         * Set whether to append records to a memory mapped segment of the
+         * file instead of writing them through a <code>FileChannel</code>.
+         * The segment size is the maximum file size and the write buffer size
+         * is ignored. Optional; default is false.
+         *
+         * @param value Whether to append records to a memory mapped segment.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setMemoryMapped(final boolean value) {
+            _memoryMapped = value;
+            return this;
+        }
+
+        /**
+         * Set whether records are compressed as they are written to the
+         * active file instead of when the file is rolled. The active file is
+         * named with the extension of the compression codec, which must be
+         * concatenable, and is written as members of at most the compression
+         * block size. The maximum file size applies to the compressed file.
+         * Ignored for memory mapped files and unless compression is enabled.
+         * Optional; default is false.
+         *
+         * @param value Whether to compress records as they are written.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setStreamingCompression(final boolean value) {
+            _streamingCompression = value;
+            return this;
+        }
+
+        /**
+         * Set the interval in milliseconds at which written records are
+         * forced to disk. Zero disables group commit. Optional; default is
+         * zero.
+         *
+         * @param value The commit interval in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCommitIntervalInMillis(final long value) {
+            _commitIntervalInMillis = value;
+            return this;
+        }
+
+        /**
+         * Set the number of written bytes which triggers forcing records to
+         * disk before the commit interval elapses. Ignored unless group commit
+         * is enabled. Optional; default is unbounded.
+         *
+         * @param value The commit size in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCommitBytes(final long value) {
+            _commitBytes = value;
+            return this;
+        }
+
+        /**
+         * Set the offset of the hourly roll. Each instance should use a
+         * random offset to avoid all hosts rolling at the same time.
+         *
+         * @param value The offset of the hourly roll in milliseconds.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setRandomOffsetInMillis(final int value) {
+            _randomOffsetInMillis = value;
+            return this;
+        }
+
+        /**
+         * Set the clock. Optional; defaults to the system clock.
+         *
+         * @param value The clock.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Set the executor used for compression and history removal.
+         * Optional; defaults to a single daemon thread.
+         *
+         * @param value The executor.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setArchiver(final ExecutorService value) {
+            _archiver = value;
+            return this;
+        }
+
+        /**
+         * Set the codec used to compress rolled files. Optional; default is
+         * gzip at the default compression level.
+         *
+         * @param value The compression codec.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompressionCodec(final CompressionCodec value) {
+            _compressionCodec = value;
+            return this;
+        }
+
+        /**
+         * Set the number of threads compressing rolled files. With more than
+         * one thread and a concatenable codec files are compressed in
+         * parallel blocks. Optional; default is one.
+         *
+         * @param value The number of compression threads.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompressionThreads(final int value) {
+            _compressionThreads = value;
+            return this;
+        }
+
+        /**
+         * Set the size in bytes of the blocks compressed in parallel, or of
+         * the uncompressed records per member with streaming compression.
+         * Optional; default is 1MiB.
+         *
+         * @param value The compression block size in bytes.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompressionBlockSize(final int value) {
+            _compressionBlockSize = value;
+            return this;
+        }
+
+        /**
+         * Set the dictionary whose definitions are written ahead of the
+         * records which require them. Optional; default is none.
+         *
+         * @param value The dictionary.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setDictionary(@Nullable final FileDictionary value) {
+            _dictionary = value;
+            return this;
+        }
+
+        /**
+         * Create an instance of <code>RollingFileRecordWriter</code>.
+         *
+         * @return Instance of <code>RollingFileRecordWriter</code>.
+         */
+        /* package private */ RollingFileRecordWriter build() {
+            if (_archiver == null) {
+                _archiver = Executors.newSingleThreadExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "metrics-file-sink-archiver");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            if (_compress && !_streamingCompression && _compressionThreads > 1 && _compressionCodec.isConcatenable()) {
+                _compressionExecutor = Executors.newFixedThreadPool(_compressionThreads, runnable -> {
+                    final Thread thread = new Thread(runnable, "metrics-file-sink-compressor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return new RollingFileRecordWriter(this);
+        }
+
+        private Path _directory;
+        private String _name;
+        private String _extension;
+        private int _maxHistory;
+        private long _maxFileSize;
+        private boolean _compress;
+        private CompressionCodec _compressionCodec = DEFAULT_COMPRESSION_CODEC;
+        private boolean _immediateFlush;
+        private int _bufferSize = DEFAULT_BUFFER_SIZE;
+        private boolean _memoryMapped;
+        private boolean _streamingCompression;
+        private long _commitIntervalInMillis;
+        private long _commitBytes = Long.MAX_VALUE;
+        private int _randomOffsetInMillis;
+        private Clock _clock = Clock.systemDefaultZone();
+        @Nullable
+        private ExecutorService _archiver;
+        private int _compressionThreads = 1;
+        private int _compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+        @Nullable
+        private ExecutorService _compressionExecutor;
+        @Nullable
+        private FileDictionary _dictionary;
+
+        private static final int DEFAULT_BUFFER_SIZE = 8192;
+        private static final CompressionCodec DEFAULT_COMPRESSION_CODEC = new GzipCompressionCodec();
+        private static final int DEFAULT_COMPRESSION_BLOCK_SIZE = 1048576;
+    }
+
+    private static final class Archive {
+
+        private Archive(final Path path, final String periodName, final int index) {
+            _path = path;
+            _periodName = periodName;
+            _index = index;
+        }
+
+        private final Path _path;
+        private final String _periodName;
+        private final int _index;
+    }
+}
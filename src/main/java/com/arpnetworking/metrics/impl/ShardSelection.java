@@ -0,0 +1,38 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * The strategy used by file based <code>Sink</code> implementations with
+ * more than one shard to pick the shard each record is written to.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum ShardSelection {
+    /**
+     * Write all records from a producer thread to the same shard. Threads
+     * are assigned to shards in turn on their first write, so the records
+     * of each thread stay in order within one file.
+     */
+    THREAD,
+    /**
+     * Write each record to the next shard in turn regardless of the
+     * producing thread. This balances the shards when few threads produce
+     * most of the records at the cost of spreading the records of a thread
+     * across files.
+     */
+    ROUND_ROBIN
+}
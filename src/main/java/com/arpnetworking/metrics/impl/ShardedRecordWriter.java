@@ -0,0 +1,319 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.core.util.FileSize;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>RecordWriter</code> which spreads records across
+ * independent shard writers so that the writer threads, files and devices of
+ * a single <code>Sink</code> scale with the number of shards. Each shard is
+ * picked by the configured <code>ShardSelection</code> and a batch is always
+ * written to a single shard, so records written together stay in order.
+ *
+ * With <code>THREAD</code> selection callers waiting for durability only
+ * wait on the shard of their thread. With <code>ROUND_ROBIN</code> selection
+ * the records of a caller may be on any shard so callers wait on every
+ * shard. The same applies to waiting for capacity: with <code>THREAD</code>
+ * selection callers wait for the shard of their thread while with
+ * <code>ROUND_ROBIN</code> selection a callback runs once any shard has
+ * capacity.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class ShardedRecordWriter implements RecordWriter {
+
+    @Override
+    public boolean write(final byte[] record) {
+        return _shards.get(select()).write(record);
+    }
+
+    @Override
+    public int write(final List<byte[]> records) {
+        return _shards.get(select()).write(records);
+    }
+
+    @Override
+    public boolean tryWrite(final byte[] record, final long timeoutInNanos) {
+        return _shards.get(select()).tryWrite(record, timeoutInNanos);
+    }
+
+    @Override
+    public boolean awaitCapacity(final long timeoutInNanos) {
+        if (_selection == ShardSelection.THREAD) {
+            return _shards.get(_threadShard.get()).awaitCapacity(timeoutInNanos);
+        }
+        return _shards.get((_next.get() & Integer.MAX_VALUE) % _shards.size()).awaitCapacity(timeoutInNanos);
+    }
+
+    @Override
+    public void onCapacityAvailable(final Runnable callback) {
+        if (_selection == ShardSelection.THREAD) {
+            _shards.get(_threadShard.get()).onCapacityAvailable(callback);
+        } else {
+            final Runnable once = new OnceRunnable(callback);
+            for (final RecordWriter shard : _shards) {
+                shard.onCapacityAvailable(once);
+            }
+        }
+    }
+
+    @Override
+    public void awaitDurable() {
+        if (_selection == ShardSelection.THREAD) {
+            _shards.get(_threadShard.get()).awaitDurable();
+        } else {
+            for (final RecordWriter shard : _shards) {
+                shard.awaitDurable();
+            }
+        }
+    }
+
+    @Override
+    public CommitStatistics getCommitStatistics() {
+        final CommitStatistics.Accumulator accumulator = new CommitStatistics.Accumulator();
+        for (final RecordWriter shard : _shards) {
+            accumulator.add(shard.getCommitStatistics());
+        }
+        return accumulator.snapshot();
+    }
+
+    @Override
+    public long getDropped() {
+        long dropped = 0;
+        for (final RecordWriter shard : _shards) {
+            dropped += shard.getDropped();
+        }
+        return dropped;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (final RecordWriter shard : _shards) {
+            depth += shard.getQueueDepth();
+        }
+        return depth;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        int capacity = 0;
+        for (final RecordWriter shard : _shards) {
+            capacity += shard.getQueueCapacity();
+        }
+        return capacity;
+    }
+
+    @Override
+    public long getCompressionBacklogFiles() {
+        long files = 0;
+        for (final RecordWriter shard : _shards) {
+            files += shard.getCompressionBacklogFiles();
+        }
+        return files;
+    }
+
+    @Override
+    public long getCompressionBacklogBytes() {
+        long bytes = 0;
+        for (final RecordWriter shard : _shards) {
+            bytes += shard.getCompressionBacklogBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        for (final RecordWriter shard : _shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Create the writer of a sink using a direct writer engine. Each shard
+     * is an independent pipeline with its own rolling file, compressor and,
+     * when asynchronous, its own queue and writer thread. With more than one
+     * shard the files of shard <code>i</code> are named
+     * <code>[name]-[i][extension]</code> and are written to the shard
+     * directories in turn, or to the directory of the sink if no shard
+     * directories are configured. With thread buffers the records of each
+     * producer thread are collected before they reach the shards.
+     *
+     * @param builder The sink builder.
+     * @param dictionaries Creates the <code>FileDictionary</code> of each
+     * shard, or <code>null</code> to write without a dictionary.
+     * @return The writer of the sink.
+     */
+    /* package private */ static RecordWriter create(
+            final BaseFileSink.Builder<?, ?> builder,
+            @Nullable final Supplier<? extends FileDictionary> dictionaries) {
+        final List<RecordWriter> shards = new ArrayList<>(builder._shards);
+        for (int i = 0; i < builder._shards; ++i) {
+            final File directory = builder._shardDirectories == null
+                    ? builder._directory
+                    : builder._shardDirectories.get(i % builder._shardDirectories.size());
+            final String name = builder._shards == 1 ? builder._name : builder._name + "-" + i;
+            shards.add(createShard(builder, directory, name, dictionaries == null ? null : dictionaries.get()));
+        }
+        final RecordWriter writer;
+        final Supplier<RecordWriter> threadWriters;
+        if (shards.size() == 1) {
+            writer = shards.get(0);
+            threadWriters = () -> writer;
+        } else {
+            final ShardedRecordWriter shardedWriter = new ShardedRecordWriter(shards, builder._shardSelection);
+            writer = shardedWriter;
+            threadWriters = shardedWriter::getThreadWriter;
+        }
+        if (builder._threadBufferSize > 0) {
+            return new ThreadBufferedRecordWriter(
+                    writer,
+                    threadWriters,
+                    builder._threadBufferSize,
+                    builder._threadBufferLingerInMillis);
+        }
+        return writer;
+    }
+
+    private static RecordWriter createShard(
+            final BaseFileSink.Builder<?, ?> builder,
+            final File directory,
+            final String name,
+            @Nullable final FileDictionary dictionary) {
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory.toPath())
+                .setName(name)
+                .setExtension(builder._extension)
+                .setMaxHistory(builder._maxHistory)
+                .setMaxFileSize(FileSize.valueOf(builder._maxFileSize).getSize())
+                .setCompress(builder._compress)
+                .setCompressionCodec(builder._compressionCodec)
+                .setStreamingCompression(builder._streamingCompression)
+                .setCompressionThreads(builder._compressionThreads)
+                .setCompressionBlockSize(builder._compressionBlockSize)
+                .setImmediateFlush(builder._immediateFlush)
+                .setMemoryMapped(builder._writerEngine == WriterEngine.MEMORY_MAPPED)
+                .setCommitIntervalInMillis(builder._groupCommit ? builder._groupCommitIntervalInMillis : 0)
+                .setCommitBytes(builder._groupCommitBytes)
+                .setBufferSize(builder._async ? Math.max(MIN_BUFFER_SIZE, builder._maxBatchBytes) : MIN_BUFFER_SIZE)
+                .setRandomOffsetInMillis((int) (ThreadLocalRandom.current().nextDouble() * BaseFileSink.MAX_RANDOM_OFFSET_IN_MILLIS))
+                .setDictionary(dictionary)
+                .build();
+        if (builder._async) {
+            return new AsyncRecordWriter.Builder()
+                    .setDelegate(writer)
+                    .setMaxQueueSize(builder._maxQueueSize)
+                    .setMaxQueueBytes(builder._maxQueueBytes == null ? 0 : Math.max(1, builder._maxQueueBytes / builder._shards))
+                    .setAdaptiveQueue(builder._adaptiveQueue)
+                    .setDropWhenQueueFull(builder._dropWhenQueueFull)
+                    .setWaitStrategy(builder._waitStrategy)
+                    .setMaxBatchSize(builder._maxBatchSize)
+                    .setMaxBatchBytes(builder._maxBatchBytes)
+                    .setMaxBatchLingerInMillis(builder._maxBatchLingerInMillis)
+                    .build();
+        }
+        return writer;
+    }
+
+    /**
+     * Accessor for the writer of the records of the calling thread. With
+     * <code>THREAD</code> selection this is the shard of the calling thread,
+     * so records written to it from any thread land on that shard. With
+     * <code>ROUND_ROBIN</code> selection it is this writer.
+     *
+     * @return The writer of the records of the calling thread.
+     */
+    /* package private */ RecordWriter getThreadWriter() {
+        if (_selection == ShardSelection.THREAD) {
+            return _shards.get(_threadShard.get());
+        }
+        return this;
+    }
+
+    /**
+     * Accessor for the number of shards.
+     *
+     * @return The number of shards.
+     */
+    /* package private */ int getShardCount() {
+        return _shards.size();
+    }
+
+    private int select() {
+        if (_selection == ShardSelection.THREAD) {
+            return _threadShard.get();
+        }
+        return nextShard();
+    }
+
+    private int nextShard() {
+        return (_next.getAndIncrement() & Integer.MAX_VALUE) % _shards.size();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param shards The writers of the shards.
+     * @param selection The strategy used to pick the shard of each record.
+     */
+    /* package private */ ShardedRecordWriter(final List<RecordWriter> shards, final ShardSelection selection) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Invalid shards; shards=%s", shards));
+        }
+        _shards = new ArrayList<>(shards);
+        _selection = selection;
+    }
+
+    private final List<RecordWriter> _shards;
+    private final ShardSelection _selection;
+    private final AtomicInteger _next = new AtomicInteger();
+    private final ThreadLocal<Integer> _threadShard = ThreadLocal.withInitial(this::nextShard);
+
+    private static final int MIN_BUFFER_SIZE = 8192;
+
+    /**
+     * Runs a callback registered on several shards only for the first shard
+     * with capacity.
+     */
+    private static final class OnceRunnable implements Runnable {
+
+        @Override
+        public void run() {
+            if (_ran.compareAndSet(false, true)) {
+                _callback.run();
+            }
+        }
+
+        private OnceRunnable(final Runnable callback) {
+            _callback = callback;
+        }
+
+        private final Runnable _callback;
+        private final AtomicBoolean _ran = new AtomicBoolean();
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the statistics of a file based <code>Sink</code>. Counts use
+ * striped counters and latencies are recorded in
+ * <code>LatencyHistogram</code> instances so that recording does not
+ * contend between threads. Queue and compression backlog statistics are
+ * read from the <code>RecordWriter</code> when a snapshot is taken.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class SinkInstrumentation implements SinkStatisticsMXBean {
+
+    /**
+     * Record the time spent encoding an event.
+     *
+     * @param latencyInNanos The serialization latency in nanoseconds.
+     */
+    /* package private */ void recordSerialization(final long latencyInNanos) {
+        _serializationLatency.record(latencyInNanos);
+    }
+
+    /**
+     * Record a record handed to the writer.
+     *
+     * @param latencyInNanos The write latency in nanoseconds.
+     * @param bytes The size of the record in bytes.
+     */
+    /* package private */ void recordWrite(final long latencyInNanos, final long bytes) {
+        _writeLatency.record(latencyInNanos);
+        _records.increment();
+        _bytes.add(bytes);
+    }
+
+    /**
+     * Create a snapshot of the statistics.
+     *
+     * @return Instance of <code>SinkStatistics</code>.
+     */
+    /* package private */ SinkStatistics snapshot() {
+        return new SinkStatistics.Builder()
+                .setRecords(_records.sum())
+                .setBytes(_bytes.sum())
+                .setDropped(_writer.getDropped())
+                .setQueueDepth(_writer.getQueueDepth())
+                .setQueueCapacity(_writer.getQueueCapacity())
+                .setCompressionBacklogFiles(_writer.getCompressionBacklogFiles())
+                .setCompressionBacklogBytes(_writer.getCompressionBacklogBytes())
+                .setSerializationLatency(_serializationLatency.snapshot())
+                .setWriteLatency(_writeLatency.snapshot())
+                .build();
+    }
+
+    /**
+     * Register this instance as an MXBean with the platform
+     * <code>MBeanServer</code>. Failures are logged.
+     *
+     * @param type The type of the <code>Sink</code>.
+     * @param fileName The name of the file written by the <code>Sink</code>.
+     */
+    /* package private */ void registerBean(final String type, final String fileName) {
+        try {
+            final ObjectName beanName = new ObjectName(String.format(
+                    "%s:type=%s,name=%s",
+                    SinkInstrumentation.class.getPackage().getName(),
+                    type,
+                    ObjectName.quote(fileName)));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, beanName);
+            _beanName = beanName;
+        } catch (final JMException e) {
+            LOGGER.warn(String.format("Unable to register statistics bean; fileName=%s", fileName), e);
+        }
+    }
+
+    /**
+     * Report snapshots of the statistics to a listener at a fixed interval
+     * on a daemon thread.
+     *
+     * @param listener The listener to report to.
+     * @param intervalInMillis The interval between reports in milliseconds.
+     */
+    /* package private */ void startReporter(final Consumer<SinkStatistics> listener, final long intervalInMillis) {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-file-sink-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(
+                () -> report(listener),
+                intervalInMillis,
+                intervalInMillis,
+                TimeUnit.MILLISECONDS);
+        _reporter = executor;
+    }
+
+    /**
+     * Stop reporting to the listener, if any, and unregister the MXBean, if
+     * registered. Failures are logged.
+     */
+    /* package private */ void close() {
+        @Nullable final ScheduledExecutorService reporter = _reporter;
+        if (reporter != null) {
+            reporter.shutdown();
+            _reporter = null;
+        }
+        @Nullable final ObjectName beanName = _beanName;
+        if (beanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(beanName);
+            } catch (final JMException e) {
+                LOGGER.warn(String.format("Unable to unregister statistics bean; name=%s", beanName), e);
+            }
+            _beanName = null;
+        }
+    }
+
+    private void report(final Consumer<SinkStatistics> listener) {
+        // CHECKSTYLE.OFF: IllegalCatch - A failing listener must not cancel future reports.
+        try {
+            listener.accept(snapshot());
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Statistics listener failed", e);
+        }
+        // CHECKSTYLE.ON: IllegalCatch
+    }
+
+    @Override
+    public long getRecords() {
+        return _records.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return _bytes.sum();
+    }
+
+    @Override
+    public long getDropped() {
+        return _writer.getDropped();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return _writer.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return _writer.getQueueCapacity();
+    }
+
+    @Override
+    public long getCompressionBacklogFiles() {
+        return _writer.getCompressionBacklogFiles();
+    }
+
+    @Override
+    public long getCompressionBacklogBytes() {
+        return _writer.getCompressionBacklogBytes();
+    }
+
+    @Override
+    public long getSerializationLatencyP50() {
+        return _serializationLatency.snapshot().getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public long getSerializationLatencyP99() {
+        return _serializationLatency.snapshot().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getSerializationLatencyMax() {
+        return _serializationLatency.snapshot().getMaxInNanos();
+    }
+
+    @Override
+    public long getWriteLatencyP50() {
+        return _writeLatency.snapshot().getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public long getWriteLatencyP99() {
+        return _writeLatency.snapshot().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public long getWriteLatencyMax() {
+        return _writeLatency.snapshot().getMaxInNanos();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param writer The <code>RecordWriter</code> to read queue statistics from.
+     */
+    /* package private */ SinkInstrumentation(final RecordWriter writer) {
+        _writer = writer;
+    }
+
+    private final RecordWriter _writer;
+    private final LongAdder _records = new LongAdder();
+    private final LongAdder _bytes = new LongAdder();
+    private final LatencyHistogram _serializationLatency = new LatencyHistogram();
+    private final LatencyHistogram _writeLatency = new LatencyHistogram();
+    @Nullable
+    private volatile ObjectName _beanName;
+    @Nullable
+    private volatile ScheduledExecutorService _reporter;
+
+    private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(SinkInstrumentation.class);
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Snapshot of the statistics of a file based <code>Sink</code>. Counts and
+ * latencies are cumulative since the <code>Sink</code> was created; rates
+ * such as bytes per second are the difference between two snapshots divided
+ * by the time between them. The queue depth and capacity are those of the
+ * asynchronous queue and are zero for synchronous sinks. The compression
+ * backlog is that of rolled files waiting to be compressed.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class SinkStatistics {
+
+    /**
+     * Accessor for the number of records written.
+     *
+     * @return The number of records written.
+     */
+    public long getRecords() {
+        return _records;
+    }
+
+    /**
+     * Accessor for the number of bytes written. Records handed to Logback
+     * as strings are counted by their length in characters.
+     *
+     * @return The number of bytes written.
+     */
+    public long getBytes() {
+        return _bytes;
+    }
+
+    /**
+     * Accessor for the number of records dropped because the queue was full.
+     *
+     * @return The number of records dropped.
+     */
+    public long getDropped() {
+        return _dropped;
+    }
+
+    /**
+     * Accessor for the number of records waiting in the queue.
+     *
+     * @return The number of records in the queue.
+     */
+    public int getQueueDepth() {
+        return _queueDepth;
+    }
+
+    /**
+     * Accessor for the capacity of the queue.
+     *
+     * @return The capacity of the queue.
+     */
+    public int getQueueCapacity() {
+        return _queueCapacity;
+    }
+
+    /**
+     * Accessor for the number of rolled files waiting to be compressed.
+     *
+     * @return The number of files waiting to be compressed.
+     */
+    public long getCompressionBacklogFiles() {
+        return _compressionBacklogFiles;
+    }
+
+    /**
+     * Accessor for the total size in bytes of the rolled files waiting to be
+     * compressed.
+     *
+     * @return The number of bytes waiting to be compressed.
+     */
+    public long getCompressionBacklogBytes() {
+        return _compressionBacklogBytes;
+    }
+
+    /**
+     * Accessor for the distribution of the time spent encoding events.
+     *
+     * @return The serialization latency distribution.
+     */
+    public LatencyStatistics getSerializationLatency() {
+        return _serializationLatency;
+    }
+
+    /**
+     * Accessor for the distribution of the time spent handing records to the
+     * writer. For asynchronous sinks this is the time to queue the record,
+     * including any time spent waiting for space in the queue.
+     *
+     * @return The write latency distribution.
+     */
+    public LatencyStatistics getWriteLatency() {
+        return _writeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "SinkStatistics{Records=%d, Bytes=%d, Dropped=%d, QueueDepth=%d, QueueCapacity=%d, "
+                        + "CompressionBacklogFiles=%d, CompressionBacklogBytes=%d, SerializationLatency=%s, WriteLatency=%s}",
+                _records,
+                _bytes,
+                _dropped,
+                _queueDepth,
+                _queueCapacity,
+                _compressionBacklogFiles,
+                _compressionBacklogBytes,
+                _serializationLatency,
+                _writeLatency);
+    }
+
+    private SinkStatistics(final Builder builder) {
+        _records = builder._records;
+        _bytes = builder._bytes;
+        _dropped = builder._dropped;
+        _queueDepth = builder._queueDepth;
+        _queueCapacity = builder._queueCapacity;
+        _compressionBacklogFiles = builder._compressionBacklogFiles;
+        _compressionBacklogBytes = builder._compressionBacklogBytes;
+        _serializationLatency = builder._serializationLatency;
+        _writeLatency = builder._writeLatency;
+    }
+
+    private final long _records;
+    private final long _bytes;
+    private final long _dropped;
+    private final int _queueDepth;
+    private final int _queueCapacity;
+    private final long _compressionBacklogFiles;
+    private final long _compressionBacklogBytes;
+    private final LatencyStatistics _serializationLatency;
+    private final LatencyStatistics _writeLatency;
+
+    /**
+     * Builder for <code>SinkStatistics</code>.
+     *
+     * This class is not thread safe.
+     */
+    /* package private */ static final class Builder {
+
+        /**
+         * Set the records.
+         *
+         * @param value The number of records written.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setRecords(final long value) {
+            _records = value;
+            return this;
+        }
+
+        /**
+         * Set the bytes.
+         *
+         * @param value The number of bytes written.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setBytes(final long value) {
+            _bytes = value;
+            return this;
+        }
+
+        /**
+         * Set the dropped.
+         *
+         * @param value The number of records dropped.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setDropped(final long value) {
+            _dropped = value;
+            return this;
+        }
+
+        /**
+         * Set the queue depth.
+         *
+         * @param value The number of records in the queue.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setQueueDepth(final int value) {
+            _queueDepth = value;
+            return this;
+        }
+
+        /**
+         * Set the queue capacity.
+         *
+         * @param value The capacity of the queue.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setQueueCapacity(final int value) {
+            _queueCapacity = value;
+            return this;
+        }
+
+        /**
+         * Set the compression backlog files.
+         *
+         * @param value The number of files waiting to be compressed.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompressionBacklogFiles(final long value) {
+            _compressionBacklogFiles = value;
+            return this;
+        }
+
+        /**
+         * Set the compression backlog bytes.
+         *
+         * @param value The number of bytes waiting to be compressed.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setCompressionBacklogBytes(final long value) {
+            _compressionBacklogBytes = value;
+            return this;
+        }
+
+        /**
+         * Set the serialization latency.
+         *
+         * @param value The serialization latency distribution.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setSerializationLatency(final LatencyStatistics value) {
+            _serializationLatency = value;
+            return this;
+        }
+
+        /**
+         * Set the write latency.
+         *
+         * @param value The write latency distribution.
+         * @return This <code>Builder</code> instance.
+         */
+        /* package private */ Builder setWriteLatency(final LatencyStatistics value) {
+            _writeLatency = value;
+            return this;
+        }
+
+        /**
+         * Create an instance of <code>SinkStatistics</code>.
+         *
+         * @return Instance of <code>SinkStatistics</code>.
+         */
+        /* package private */ SinkStatistics build() {
+            return new SinkStatistics(this);
+        }
+
+        private long _records;
+        private long _bytes;
+        private long _dropped;
+        private int _queueDepth;
+        private int _queueCapacity;
+        private long _compressionBacklogFiles;
+        private long _compressionBacklogBytes;
+        private LatencyStatistics _serializationLatency = EMPTY_LATENCY;
+        private LatencyStatistics _writeLatency = EMPTY_LATENCY;
+
+        private static final LatencyStatistics EMPTY_LATENCY = new LatencyHistogram().snapshot();
+    }
+}
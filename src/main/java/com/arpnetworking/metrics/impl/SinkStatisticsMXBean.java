@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * Management interface exposing the statistics of a file based
+ * <code>Sink</code> through JMX. Latencies are in nanoseconds. See
+ * <code>SinkStatistics</code> for the meaning of each value.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public interface SinkStatisticsMXBean {
+
+    /**
+     * Accessor for the number of records written.
+     *
+     * @return The number of records written.
+     */
+    long getRecords();
+
+    /**
+     * Accessor for the number of bytes written.
+     *
+     * @return The number of bytes written.
+     */
+    long getBytes();
+
+    /**
+     * Accessor for the number of records dropped because the queue was full.
+     *
+     * @return The number of records dropped.
+     */
+    long getDropped();
+
+    /**
+     * Accessor for the number of records waiting in the queue.
+     *
+     * @return The number of records in the queue.
+     */
+    int getQueueDepth();
+
+    /**
+     * Accessor for the capacity of the queue.
+     *
+     * @return The capacity of the queue.
+     */
+    int getQueueCapacity();
+
+    /**
+     * Accessor for the number of rolled files waiting to be compressed.
+     *
+     * @return The number of files waiting to be compressed.
+     */
+    long getCompressionBacklogFiles();
+
+    /**
+     * Accessor for the number of bytes waiting to be compressed.
+     *
+     * @return The number of bytes waiting to be compressed.
+     */
+    long getCompressionBacklogBytes();
+
+    /**
+     * Accessor for the median serialization latency.
+     *
+     * @return The median serialization latency in nanoseconds.
+     */
+    long getSerializationLatencyP50();
+
+    /**
+     * Accessor for the 99th percentile serialization latency.
+     *
+     * @return The 99th percentile serialization latency in nanoseconds.
+     */
+    long getSerializationLatencyP99();
+
+    /**
+     * Accessor for the maximum serialization latency.
+     *
+     * @return The maximum serialization latency in nanoseconds.
+     */
+    long getSerializationLatencyMax();
+
+    /**
+     * Accessor for the median write latency.
+     *
+     * @return The median write latency in nanoseconds.
+     */
+    long getWriteLatencyP50();
+
+    /**
+     * Accessor for the 99th percentile write latency.
+     *
+     * @return The 99th percentile write latency in nanoseconds.
+     */
+    long getWriteLatencyP99();
+
+    /**
+     * Accessor for the maximum write latency.
+     *
+     * @return The maximum write latency in nanoseconds.
+     */
+    long getWriteLatencyMax();
+}
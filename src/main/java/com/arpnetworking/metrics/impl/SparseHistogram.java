@@ -0,0 +1,98 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Concurrent sparse histogram of <code>double</code> values with log-linear
+ * buckets. A value is bucketed by truncating its IEEE 754 representation to
+ * the sign, the exponent and the seven most significant bits of the
+ * mantissa; each power of two is therefore split into 128 linear buckets and
+ * a value is resolved to within 1/128 of its magnitude. Only buckets which
+ * have been recorded to are allocated. Recording an existing bucket is lock
+ * free; the count of each bucket is a striped counter. Weighted values add
+ * their weight to the count of their bucket.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class SparseHistogram {
+
+    /**
+     * Record a finite value.
+     *
+     * @param value The value.
+     */
+    /* package private */ void record(final double value) {
+        record(value, 1.0);
+    }
+
+    /**
+     * Record a finite value which stands for a number of values.
+     *
+     * @param value The value.
+     * @param weight The number of values the value stands for.
+     */
+    /* package private */ void record(final double value, final double weight) {
+        final long bucket = bucket(value);
+        @Nullable DoubleAdder count = _buckets.get(bucket);
+        if (count == null) {
+            count = _buckets.computeIfAbsent(bucket, key -> new DoubleAdder());
+        }
+        count.add(weight);
+    }
+
+    /**
+     * Create a snapshot of the recorded buckets. Each bucket is identified by
+     * the value of smallest magnitude it contains. The snapshot is not atomic
+     * with respect to concurrent recording.
+     *
+     * @return The count of each bucket ordered by value, rounded to the
+     * nearest integer for weighted values.
+     */
+    /* package private */ SortedMap<Double, Long> getBuckets() {
+        final SortedMap<Double, Long> buckets = new TreeMap<>();
+        for (final Map.Entry<Long, DoubleAdder> entry : _buckets.entrySet()) {
+            buckets.put(Double.longBitsToDouble(entry.getKey()), Math.round(entry.getValue().sum()));
+        }
+        return buckets;
+    }
+
+    /**
+     * Compute the bucket of a value.
+     *
+     * @param value The value.
+     * @return The bits of the value of smallest magnitude in the bucket.
+     */
+    /* package private */ static long bucket(final double value) {
+        // NOTE: Adding zero maps negative zero to positive zero
+        return Double.doubleToLongBits(value + 0.0) & BUCKET_MASK;
+    }
+
+    private final ConcurrentMap<Long, DoubleAdder> _buckets = new ConcurrentHashMap<>();
+
+    private static final int PRECISION_BITS = 7;
+    private static final int MANTISSA_BITS = 52;
+    private static final long BUCKET_MASK = -1L << (MANTISSA_BITS - PRECISION_BITS);
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+/**
+ * Encodes an <code>Event</code> as a complete Steno record in a single pass.
+ * The Steno envelope and the "2f" event body are written to the same
+ * streaming <code>JsonGenerator</code>, so the body is never serialized to
+ * an intermediate string that the Steno encoder then parses and embeds
+ * again. The output matches that of <code>StenoEncoder</code> as configured
+ * by <code>StenoFileSink</code>: the time, name, level, data, context, id
+ * and version fields in that order followed by a newline. The host and
+ * process identifier are resolved once; the thread identifier is the name
+ * of the encoding thread.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class StenoEventEncoder {
+
+    /**
+     * Encode an event.
+     *
+     * @param event The event to encode.
+     * @param jsonGenerator The <code>JsonGenerator</code> to write to.
+     * @throws IOException if the event cannot be written.
+     */
+    /* package private */ void encode(final Event event, final JsonGenerator jsonGenerator) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeFieldName(TIME_FIELD);
+        jsonGenerator.writeString(TIME_FORMATTER.format(Instant.ofEpochMilli(_clock.millis())));
+        jsonGenerator.writeFieldName(NAME_FIELD);
+        jsonGenerator.writeString(NAME);
+        jsonGenerator.writeFieldName(LEVEL_FIELD);
+        jsonGenerator.writeString(LEVEL);
+        jsonGenerator.writeFieldName(DATA_FIELD);
+        _eventEncoder.encode(event, jsonGenerator);
+        jsonGenerator.writeFieldName(CONTEXT_FIELD);
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeFieldName(HOST_FIELD);
+        jsonGenerator.writeString(_host);
+        jsonGenerator.writeFieldName(PROCESS_ID_FIELD);
+        jsonGenerator.writeString(_processId);
+        jsonGenerator.writeFieldName(THREAD_ID_FIELD);
+        jsonGenerator.writeString(Thread.currentThread().getName());
+        jsonGenerator.writeEndObject();
+        jsonGenerator.writeFieldName(ID_FIELD);
+        jsonGenerator.writeString(UUID.randomUUID().toString());
+        jsonGenerator.writeFieldName(VERSION_FIELD);
+        jsonGenerator.writeString(VERSION);
+        jsonGenerator.writeEndObject();
+        jsonGenerator.writeRaw(LINE_SEPARATOR);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param eventEncoder The encoder of the event body.
+     * @param host The host name written to the context of each record.
+     * @param processId The process identifier written to the context of each record.
+     * @param clock The <code>Clock</code> used to timestamp records.
+     */
+    /* package private */ StenoEventEncoder(
+            final EventEncoder eventEncoder,
+            final String host,
+            final String processId,
+            final Clock clock) {
+        _eventEncoder = eventEncoder;
+        _host = new SerializedString(host);
+        _processId = new SerializedString(processId);
+        _clock = clock;
+    }
+
+    private final EventEncoder _eventEncoder;
+    private final SerializableString _host;
+    private final SerializableString _processId;
+    private final Clock _clock;
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZZZZZ").withZone(ZoneOffset.UTC);
+    private static final char LINE_SEPARATOR = '\n';
+    private static final SerializableString NAME = new SerializedString("aint.metrics");
+    private static final SerializableString LEVEL = new SerializedString("info");
+    private static final SerializableString VERSION = new SerializedString("0");
+    private static final SerializableString TIME_FIELD = new SerializedString("time");
+    private static final SerializableString NAME_FIELD = new SerializedString("name");
+    private static final SerializableString LEVEL_FIELD = new SerializedString("level");
+    private static final SerializableString DATA_FIELD = new SerializedString("data");
+    private static final SerializableString CONTEXT_FIELD = new SerializedString("context");
+    private static final SerializableString HOST_FIELD = new SerializedString("host");
+    private static final SerializableString PROCESS_ID_FIELD = new SerializedString("processId");
+    private static final SerializableString THREAD_ID_FIELD = new SerializedString("threadId");
+    private static final SerializableString ID_FIELD = new SerializedString("id");
+    private static final SerializableString VERSION_FIELD = new SerializedString("version");
+}
@@ -17,13 +17,15 @@ package com.arpnetworking.metrics.impl;
 
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.encoder.Encoder;
+import com.arpnetworking.logback.HostConverter;
+import com.arpnetworking.logback.ProcessConverter;
 import com.arpnetworking.logback.StenoEncoder;
 import com.arpnetworking.logback.StenoMarker;
-import com.arpnetworking.metrics.CompoundUnit;
 import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Quantity;
 import com.arpnetworking.metrics.Unit;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -32,11 +34,14 @@ import com.fasterxml.jackson.databind.module.SimpleModule;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nullable;
 
 /**
@@ -53,28 +58,109 @@ public class StenoFileSink extends BaseFileSink {
 
     @Override
     public void record(final Event event) {
+        @Nullable final Event sampled = sample(event);
+        if (sampled == null) {
+            return;
+        }
 
-        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
-        final Map<String, String> filteredAnnotations = new HashMap<>(event.getAnnotations());
-        // CHECKSTYLE.ON: IllegalInstantiation
-        filteredAnnotations.remove("_host");
-        filteredAnnotations.remove("_id");
+        try {
+            if (_stenoEncoder != null) {
+                write(encodeTimed(_stenoEncoder, sampled));
+            } else {
+                log(sampled);
+            }
+        } catch (final IOException e) {
+            _logger.warn("Exception recording event", e);
+        }
+    }
 
+    @Override
+    protected RecordOutcome tryRecordSampled(final Event event, final long timeoutInNanos) {
+        if (!awaitCapacity(timeoutInNanos)) {
+            return RecordOutcome.REJECTED;
+        }
         try {
-            getMetricsLogger().info(
-                    StenoMarker.OBJECT_JSON_MARKER,
-                    "aint.metrics",
-                    _objectMapper.writeValueAsString(new TsdEvent(
-                            filteredAnnotations,
-                            event.getTimerSamples(),
-                            event.getCounterSamples(),
-                            event.getGaugeSamples())));
+            if (_stenoEncoder != null) {
+                // NOTE: Capacity was available so do not wait a second time
+                return tryWrite(encodeTimed(_stenoEncoder, event), 0) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
+            }
+            return offer(event) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
         } catch (final IOException e) {
             _logger.warn("Exception recording event", e);
+            return RecordOutcome.DROPPED;
+        }
+    }
+
+    /**
+     * Accessor for the statistics of the cache of serialized units. The cache
+     * is shared by all instances of <code>StenoFileSink</code>.
+     *
+     * @return Instance of <code>CacheStatistics</code>.
+     */
+    public CacheStatistics getUnitCacheStatistics() {
+        return UNIT_CACHE.getStatistics();
+    }
+
+    private byte[] encodeTimed(final StenoEventEncoder stenoEncoder, final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final byte[] record = encode(stenoEncoder, event);
+        recordSerialization(System.nanoTime() - start);
+        return record;
+    }
+
+    private void log(final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final String record = encodeAsString(event);
+        final long encoded = System.nanoTime();
+        recordSerialization(encoded - start);
+        if (log(StenoMarker.OBJECT_JSON_MARKER, "aint.metrics", new Object[] {record})) {
+            // NOTE: Only the event data is counted since the encoder adds the Steno envelope
+            recordWrite(System.nanoTime() - encoded, getEncodedBytes(record));
+        }
+    }
+
+    private boolean offer(final Event event) throws IOException {
+        final long start = System.nanoTime();
+        final String record = encodeAsString(event);
+        final long encoded = System.nanoTime();
+        recordSerialization(encoded - start);
+        if (!tryLog(StenoMarker.OBJECT_JSON_MARKER, "aint.metrics", new Object[] {record}, 0)) {
+            return false;
         }
+        recordWrite(System.nanoTime() - encoded, getEncodedBytes(record));
+        return true;
     }
 
-    private static Encoder<ILoggingEvent> createEncoder() {
+    private String encodeAsString(final Event event) throws IOException {
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, String> filteredAnnotations = new HashMap<>(event.getAnnotations());
+        // CHECKSTYLE.ON: IllegalInstantiation
+        filteredAnnotations.keySet().removeAll(EXCLUDED_ANNOTATIONS);
+        final JsonScratch scratch = _scratchPool.acquire();
+        _objectMapper.writeValue(
+                scratch.getGenerator(),
+                new TsdEvent(
+                        filteredAnnotations,
+                        event.getTimerSamples(),
+                        event.getCounterSamples(),
+                        event.getGaugeSamples()));
+        final String record = scratch.toUtf8String();
+        _scratchPool.release(scratch);
+        return record;
+    }
+
+    private byte[] encode(final StenoEventEncoder stenoEncoder, final Event event) throws IOException {
+        final JsonScratch scratch = _scratchPool.acquire();
+        stenoEncoder.encode(event, scratch.getGenerator());
+        final byte[] record = scratch.toByteArray();
+        _scratchPool.release(scratch);
+        return record;
+    }
+
+    private static Encoder<ILoggingEvent> createEncoder(final boolean directEncoding) {
+        if (directEncoding) {
+            return new RawBytesEncoder();
+        }
         final StenoEncoder encoder = new StenoEncoder();
         encoder.setInjectContextClass(false);
         encoder.setInjectContextFile(false);
@@ -100,21 +186,60 @@ public class StenoFileSink extends BaseFileSink {
 
     // NOTE: Package private for testing
     /* package private */ StenoFileSink(final Builder builder, final ObjectMapper objectMapper, final org.slf4j.Logger logger) {
-        super(builder, createEncoder());
+        this(builder, objectMapper, logger, isDirectEncoding(builder));
+    }
+
+    private StenoFileSink(
+            final Builder builder,
+            final ObjectMapper objectMapper,
+            final org.slf4j.Logger logger,
+            final boolean directEncoding) {
+        super(builder, createEncoder(directEncoding));
+        _stenoEncoder = directEncoding ? createStenoEncoder() : null;
+        _scratchPool = new JsonScratchPool(
+                directEncoding ? JSON_FACTORY : objectMapper.getFactory(),
+                JsonScratchPool.DEFAULT_CAPACITY);
         _objectMapper = objectMapper;
         _logger = logger;
     }
 
+    private static boolean isDirectEncoding(final Builder builder) {
+        return builder._directEncoding || builder._writerEngine != WriterEngine.LOGBACK;
+    }
+
+    private static StenoEventEncoder createStenoEncoder() {
+        // NOTE: The converters cache the host and process exactly as the Steno encoder does
+        return new StenoEventEncoder(
+                ENCODER,
+                new HostConverter().convert((ILoggingEvent) null),
+                new ProcessConverter().convert((ILoggingEvent) null),
+                Clock.systemUTC());
+    }
+
+    @Nullable
+    private final StenoEventEncoder _stenoEncoder;
+    private final JsonScratchPool _scratchPool;
     private final ObjectMapper _objectMapper;
     private final org.slf4j.Logger _logger;
 
+    private static final int MAX_UNIT_CACHE_SIZE = 1024;
+    private static final UnitCache UNIT_CACHE = new UnitCache(MAX_UNIT_CACHE_SIZE);
+    // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+    private static final Set<String> EXCLUDED_ANNOTATIONS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("_host", "_id")));
+    // CHECKSTYLE.ON: IllegalInstantiation
+    private static final EventEncoder ENCODER = new EventEncoder(UNIT_CACHE, EXCLUDED_ANNOTATIONS);
+    // NOTE: Pooled generators keep their buffers so they must not share the per-thread buffers
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonFactory.Feature.USE_THREAD_LOCAL_FOR_BUFFER_RECYCLING);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
     private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(StenoFileSink.class);
 
     static {
         final SimpleModule simpleModule = new SimpleModule("StenoFileSink");
         simpleModule.addSerializer(Event.class, EventSerializer.newInstance());
-        simpleModule.addSerializer(Quantity.class, QuantitySerializer.newInstance());
+        simpleModule.addSerializer(Quantity.class, QuantitySerializer.newInstance(UNIT_CACHE));
+        OBJECT_MAPPER.getFactory().disable(JsonFactory.Feature.USE_THREAD_LOCAL_FOR_BUFFER_RECYCLING);
         OBJECT_MAPPER.setSerializationInclusion(JsonInclude.Include.ALWAYS);
         OBJECT_MAPPER.registerModule(simpleModule);
     }
@@ -171,8 +296,8 @@ public class StenoFileSink extends BaseFileSink {
 
     private static final class QuantitySerializer extends JsonSerializer<Quantity> {
 
-        public static JsonSerializer<Quantity> newInstance() {
-            return new QuantitySerializer();
+        public static JsonSerializer<Quantity> newInstance(final UnitCache unitCache) {
+            return new QuantitySerializer(unitCache);
         }
 
         @Override
@@ -183,38 +308,18 @@ public class StenoFileSink extends BaseFileSink {
                 throws IOException {
             jsonGenerator.writeStartObject();
             jsonGenerator.writeObjectField("value", valueWithUnit.getValue());
-            final Unit unit = valueWithUnit.getUnit();
+            @Nullable final Unit unit = valueWithUnit.getUnit();
             if (unit != null) {
-                @Nullable final Unit simplifiedUnit = new TsdCompoundUnit.Builder()
-                        .addNumeratorUnit(unit)
-                        .build();
-
-                if (simplifiedUnit instanceof CompoundUnit) {
-                    final CompoundUnit compoundUnit = (CompoundUnit) simplifiedUnit;
-                    if (!compoundUnit.getNumeratorUnits().isEmpty()) {
-                        writeUnits(jsonGenerator, compoundUnit.getNumeratorUnits(), "unitNumerators");
-                    }
-                    if (!compoundUnit.getDenominatorUnits().isEmpty()) {
-                        writeUnits(jsonGenerator, compoundUnit.getDenominatorUnits(), "unitDenominators");
-                    }
-                } else if (simplifiedUnit != null) {
-                    writeUnits(jsonGenerator, Collections.singletonList(simplifiedUnit), "unitNumerators");
-                }
-
+                _unitCache.get(unit).serialize(jsonGenerator);
             }
             jsonGenerator.writeEndObject();
         }
 
-        private void writeUnits(
-                final JsonGenerator jsonGenerator,
-                final List<Unit> units,
-                final String name) throws IOException {
-            jsonGenerator.writeArrayFieldStart(name);
-            for (final Unit unit : units) {
-                jsonGenerator.writeString(unit.getName());
-            }
-            jsonGenerator.writeEndArray();
+        private QuantitySerializer(final UnitCache unitCache) {
+            _unitCache = unitCache;
         }
+
+        private final UnitCache _unitCache;
     }
 
     /**
@@ -226,6 +331,32 @@ public class StenoFileSink extends BaseFileSink {
      */
     public static class Builder extends BaseFileSink.Builder<StenoFileSink, Builder> {
 
+        /**
+         * Set whether events are encoded directly to complete Steno records.
+         * The Steno envelope and the event are written to a pooled buffer in
+         * a single pass and handed to the appender as is, instead
+         * of serializing the event to a string which the Steno encoder then
+         * parses and embeds again. Events are always encoded directly with
+         * the file channel and memory mapped writer engines. Optional; default
+         * is false.
+         *
+         * @param value Whether to encode events directly to Steno records.
+         * @return This <code>Builder</code> instance.
+         */
+        public Builder setDirectEncoding(@Nullable final Boolean value) {
+            _directEncoding = value;
+            return self();
+        }
+
+        @Override
+        protected void applyDefaults() {
+            super.applyDefaults();
+            if (_directEncoding == null) {
+                _directEncoding = DEFAULT_DIRECT_ENCODING;
+                LOGGER.info(String.format("Defaulted null direct encoding; directEncoding=%b", _directEncoding));
+            }
+        }
+
         @Override
         protected StenoFileSink createSink() {
             return new StenoFileSink(this);
@@ -235,5 +366,9 @@ public class StenoFileSink extends BaseFileSink {
         protected Builder self() {
             return this;
         }
+
+        private Boolean _directEncoding = DEFAULT_DIRECT_ENCODING;
+
+        private static final Boolean DEFAULT_DIRECT_ENCODING = Boolean.FALSE;
     }
 }
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of <code>RecordWriter</code> which collects the records of
+ * each producer thread in a buffer owned by that thread and hands them to a
+ * delegate <code>RecordWriter</code> as a single chunk once the buffer is
+ * full. A daemon thread hands off the buffers of every thread each linger
+ * interval, so a record reaches the delegate within about one interval even
+ * when its thread stops writing. Records larger than the buffer are written
+ * to the delegate directly after the pending records of the thread.
+ *
+ * Each buffer is handed to the writer which the delegate uses for its owner
+ * thread, for example the shard of that thread, even when the daemon thread
+ * hands it off. The records of a thread therefore reach the same writer in
+ * order. Callers waiting for durability hand off their own buffer before
+ * waiting on the delegate. When
+ * the writer is closed the buffers of all threads are handed off before the
+ * delegate is closed.
+ *
+ * Capacity is that of the delegate: a record offered with a timeout is
+ * buffered once the delegate has capacity, although the chunk holding it may
+ * still wait for the delegate when it is handed off. A buffered record is
+ * accepted; should the delegate drop the chunk holding it the delegate
+ * counts the chunk as a single dropped record.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class ThreadBufferedRecordWriter implements RecordWriter {
+
+    @Override
+    public boolean write(final byte[] record) {
+        return _buffer.get().append(record);
+    }
+
+    @Override
+    public boolean awaitCapacity(final long timeoutInNanos) {
+        return _delegate.awaitCapacity(timeoutInNanos);
+    }
+
+    @Override
+    public void onCapacityAvailable(final Runnable callback) {
+        _delegate.onCapacityAvailable(callback);
+    }
+
+    @Override
+    public void awaitDurable() {
+        _buffer.get().handOff();
+        _delegate.awaitDurable();
+    }
+
+    @Override
+    public CommitStatistics getCommitStatistics() {
+        return _delegate.getCommitStatistics();
+    }
+
+    @Override
+    public long getDropped() {
+        return _delegate.getDropped();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return _delegate.getQueueDepth();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return _delegate.getQueueCapacity();
+    }
+
+    @Override
+    public long getCompressionBacklogFiles() {
+        return _delegate.getCompressionBacklogFiles();
+    }
+
+    @Override
+    public long getCompressionBacklogBytes() {
+        return _delegate.getCompressionBacklogBytes();
+    }
+
+    @Override
+    public synchronized void close() {
+        // NOTE: A flush in progress completes before the delegate is closed
+        _flusher.shutdown();
+        flush();
+        _delegate.close();
+    }
+
+    /**
+     * Hand off the buffered records of every thread to the delegate and
+     * forget the buffers of threads which have terminated.
+     */
+    /* package private */ synchronized void flush() {
+        final Iterator<Buffer> iterator = _buffers.iterator();
+        while (iterator.hasNext()) {
+            final Buffer buffer = iterator.next();
+            buffer.handOff();
+            if (!buffer.isOwnerAlive()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Accessor for the number of thread buffers.
+     *
+     * @return The number of thread buffers.
+     */
+    /* package private */ int getBufferCount() {
+        return _buffers.size();
+    }
+
+    private Buffer createBuffer() {
+        final Buffer buffer = new Buffer(Thread.currentThread(), _threadWriters.get(), _bufferSize);
+        _buffers.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param delegate The <code>RecordWriter</code> chunks are handed to.
+     * @param bufferSize The size of the buffer of each thread in bytes.
+     * @param lingerInMillis The interval at which buffers are handed off
+     * regardless of their size in milliseconds.
+     */
+    /* package private */ ThreadBufferedRecordWriter(
+            final RecordWriter delegate,
+            final int bufferSize,
+            final long lingerInMillis) {
+        this(delegate, () -> delegate, bufferSize, lingerInMillis);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param delegate The <code>RecordWriter</code> waited on and closed.
+     * @param threadWriters Supplies the <code>RecordWriter</code> the chunks
+     * of the calling thread are handed to; called on each producer thread
+     * when its buffer is created.
+     * @param bufferSize The size of the buffer of each thread in bytes.
+     * @param lingerInMillis The interval at which buffers are handed off
+     * regardless of their size in milliseconds.
+     */
+    /* package private */ ThreadBufferedRecordWriter(
+            final RecordWriter delegate,
+            final Supplier<RecordWriter> threadWriters,
+            final int bufferSize,
+            final long lingerInMillis) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid buffer size; bufferSize=%d", bufferSize));
+        }
+        _delegate = delegate;
+        _threadWriters = threadWriters;
+        _bufferSize = bufferSize;
+        _flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics-file-sink-buffer-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _flusher.scheduleAtFixedRate(this::flush, lingerInMillis, lingerInMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private final RecordWriter _delegate;
+    private final Supplier<RecordWriter> _threadWriters;
+    private final int _bufferSize;
+    private final ScheduledExecutorService _flusher;
+    private final Queue<Buffer> _buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer> _buffer = ThreadLocal.withInitial(this::createBuffer);
+
+    private final class Buffer {
+
+        public synchronized boolean append(final byte[] record) {
+            if (_size + record.length > _bytes.length) {
+                handOff();
+            }
+            if (record.length >= _bytes.length) {
+                return _writer.write(record);
+            }
+            System.arraycopy(record, 0, _bytes, _size, record.length);
+            _size += record.length;
+            if (_size == _bytes.length) {
+                handOff();
+            }
+            return true;
+        }
+
+        public synchronized void handOff() {
+            if (_size > 0) {
+                _writer.write(Arrays.copyOf(_bytes, _size));
+                _size = 0;
+            }
+        }
+
+        public boolean isOwnerAlive() {
+            return _owner.isAlive();
+        }
+
+        private Buffer(final Thread owner, final RecordWriter writer, final int size) {
+            _owner = owner;
+            _writer = writer;
+            _bytes = new byte[size];
+        }
+
+        private final Thread _owner;
+        private final RecordWriter _writer;
+        private final byte[] _bytes;
+        private int _size;
+    }
+}
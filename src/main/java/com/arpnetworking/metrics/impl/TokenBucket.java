@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket. Tokens are added at a fixed rate up to a capacity
+ * of one second of tokens, so bursts of up to the rate are admitted
+ * immediately and the sustained rate never exceeds it. The bucket is kept as
+ * the theoretical arrival time of the next token, as in the generic cell
+ * rate algorithm, which needs a single atomic update per acquisition.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class TokenBucket {
+
+    /**
+     * Try to take a token.
+     *
+     * @param nowInNanos The current time from <code>System.nanoTime</code>.
+     * @return True if and only if a token was taken.
+     */
+    /* package private */ boolean tryAcquire(final long nowInNanos) {
+        final long previous = _arrival.getAndUpdate(arrival -> {
+            final long next = Math.max(arrival, nowInNanos) + _intervalInNanos;
+            return next - nowInNanos > CAPACITY_IN_NANOS ? arrival : next;
+        });
+        return Math.max(previous, nowInNanos) + _intervalInNanos - nowInNanos <= CAPACITY_IN_NANOS;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param tokensPerSecond The rate at which tokens are added.
+     * @param nowInNanos The current time from <code>System.nanoTime</code>.
+     */
+    /* package private */ TokenBucket(final long tokensPerSecond, final long nowInNanos) {
+        _intervalInNanos = Math.max(1, CAPACITY_IN_NANOS / tokensPerSecond);
+        _arrival = new AtomicLong(nowInNanos);
+    }
+
+    private final long _intervalInNanos;
+    private final AtomicLong _arrival;
+
+    private static final long CAPACITY_IN_NANOS = TimeUnit.SECONDS.toNanos(1);
+}
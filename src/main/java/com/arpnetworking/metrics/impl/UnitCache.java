@@ -0,0 +1,231 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Unit;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded cache from <code>Unit</code> to the serialized form of its
+ * simplification. Each distinct unit is simplified and its numerator and
+ * denominator arrays rendered to JSON once; serializing a sample then writes
+ * the pre-rendered arrays as raw values. Once the cache is full additional
+ * units are simplified on every lookup. Lookups first check a small table
+ * of slots keyed by the identity of the unit; since events usually reuse the
+ * same unit instances this avoids computing the hash code of the unit, which
+ * allocates for the client's unit implementations.
+ *
+ * This class is thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ final class UnitCache {
+
+    /**
+     * Lookup the serialized form of a unit.
+     *
+     * @param unit The unit.
+     * @return The serialized form of the unit.
+     */
+    /* package private */ SerializedUnit get(final Unit unit) {
+        final int slot = (System.identityHashCode(unit) & Integer.MAX_VALUE) % _identitySlots.length();
+        @Nullable final IdentityEntry entry = _identitySlots.get(slot);
+        if (entry != null && entry._unit == unit) {
+            _hits.increment();
+            return entry._serializedUnit;
+        }
+        @Nullable final SerializedUnit cached = _cache.get(unit);
+        if (cached != null) {
+            _hits.increment();
+            _identitySlots.set(slot, new IdentityEntry(unit, cached));
+            return cached;
+        }
+        _misses.increment();
+        if (_cache.size() < _maxSize) {
+            final SerializedUnit serializedUnit = _cache.computeIfAbsent(unit, SerializedUnit::create);
+            _identitySlots.set(slot, new IdentityEntry(unit, serializedUnit));
+            return serializedUnit;
+        }
+        return SerializedUnit.create(unit);
+    }
+
+    /**
+     * Create a snapshot of the cache statistics.
+     *
+     * @return Instance of <code>CacheStatistics</code>.
+     */
+    /* package private */ CacheStatistics getStatistics() {
+        return new CacheStatistics(_hits.sum(), _misses.sum(), _cache.size());
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxSize The maximum number of units to cache.
+     */
+    /* package private */ UnitCache(final int maxSize) {
+        this(maxSize, IDENTITY_SLOTS);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxSize The maximum number of units to cache.
+     * @param identitySlots The number of slots keyed by unit identity.
+     */
+    /* package private */ UnitCache(final int maxSize, final int identitySlots) {
+        _maxSize = maxSize;
+        _identitySlots = new AtomicReferenceArray<>(identitySlots);
+    }
+
+    private final int _maxSize;
+    private final AtomicReferenceArray<IdentityEntry> _identitySlots;
+    private final ConcurrentMap<Unit, SerializedUnit> _cache = new ConcurrentHashMap<>();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    private static final int IDENTITY_SLOTS = 64;
+
+    private static final class IdentityEntry {
+
+        IdentityEntry(final Unit unit, final SerializedUnit serializedUnit) {
+            _unit = unit;
+            _serializedUnit = serializedUnit;
+        }
+
+        private final Unit _unit;
+        private final SerializedUnit _serializedUnit;
+    }
+
+    /**
+     * The serialized numerator and denominator units of a simplified unit
+     * together with their names.
+     *
+     * This class is immutable and thread safe.
+     */
+    /* package private */ static final class SerializedUnit {
+
+        /**
+         * Write the <code>unitNumerators</code> and
+         * <code>unitDenominators</code> fields of the unit; fields without
+         * units are omitted.
+         *
+         * @param jsonGenerator The <code>JsonGenerator</code> to write to.
+         * @throws IOException if the fields cannot be written.
+         */
+        /* package private */ void serialize(final JsonGenerator jsonGenerator) throws IOException {
+            if (_numerators != null) {
+                jsonGenerator.writeFieldName(NUMERATORS_FIELD);
+                jsonGenerator.writeRawValue(_numerators);
+            }
+            if (_denominators != null) {
+                jsonGenerator.writeFieldName(DENOMINATORS_FIELD);
+                jsonGenerator.writeRawValue(_denominators);
+            }
+        }
+
+        private static SerializedUnit create(final Unit unit) {
+            @Nullable final Unit simplifiedUnit = new TsdCompoundUnit.Builder()
+                    .addNumeratorUnit(unit)
+                    .build();
+            if (simplifiedUnit instanceof CompoundUnit) {
+                final CompoundUnit compoundUnit = (CompoundUnit) simplifiedUnit;
+                return new SerializedUnit(
+                        names(compoundUnit.getNumeratorUnits()),
+                        names(compoundUnit.getDenominatorUnits()));
+            } else if (simplifiedUnit != null) {
+                return new SerializedUnit(Collections.singletonList(simplifiedUnit.getName()), Collections.emptyList());
+            }
+            return new SerializedUnit(Collections.emptyList(), Collections.emptyList());
+        }
+
+        /**
+         * Accessor for the names of the numerator units of the simplified
+         * unit.
+         *
+         * @return The names of the numerator units; empty if there are none.
+         */
+        /* package private */ List<String> getNumeratorNames() {
+            return _numeratorNames;
+        }
+
+        /**
+         * Accessor for the names of the denominator units of the simplified
+         * unit.
+         *
+         * @return The names of the denominator units; empty if there are none.
+         */
+        /* package private */ List<String> getDenominatorNames() {
+            return _denominatorNames;
+        }
+
+        private static List<String> names(final List<Unit> units) {
+            final List<String> names = new ArrayList<>(units.size());
+            for (final Unit unit : units) {
+                names.add(unit.getName());
+            }
+            return Collections.unmodifiableList(names);
+        }
+
+        @Nullable
+        private static SerializableString render(final List<String> names) {
+            if (names.isEmpty()) {
+                return null;
+            }
+            final StringBuilder stringBuilder = new StringBuilder("[");
+            for (final String name : names) {
+                if (stringBuilder.length() > 1) {
+                    stringBuilder.append(',');
+                }
+                stringBuilder.append('"');
+                stringBuilder.append(new SerializedString(name).asQuotedChars());
+                stringBuilder.append('"');
+            }
+            stringBuilder.append(']');
+            return new SerializedString(stringBuilder.toString());
+        }
+
+        private SerializedUnit(final List<String> numeratorNames, final List<String> denominatorNames) {
+            _numeratorNames = numeratorNames;
+            _denominatorNames = denominatorNames;
+            _numerators = render(numeratorNames);
+            _denominators = render(denominatorNames);
+        }
+
+        private final List<String> _numeratorNames;
+        private final List<String> _denominatorNames;
+        @Nullable
+        private final SerializableString _numerators;
+        @Nullable
+        private final SerializableString _denominators;
+
+        private static final SerializableString NUMERATORS_FIELD = new SerializedString("unitNumerators");
+        private static final SerializableString DENOMINATORS_FIELD = new SerializedString("unitDenominators");
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The strategy used by the asynchronous writer thread while waiting for
+ * records and by producers while waiting for space when records are not
+ * dropped. The strategies trade CPU consumption for latency.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum WaitStrategy {
+    /**
+     * Spin without yielding the processor. Lowest latency but consumes a
+     * full core while idle.
+     */
+    BUSY_SPIN {
+        @Override
+        /* package private */ void idle() {
+            // Intentionally empty
+        }
+    },
+    /**
+     * Yield the processor to other threads between attempts.
+     */
+    YIELD {
+        @Override
+        /* package private */ void idle() {
+            Thread.yield();
+        }
+    },
+    /**
+     * Park the thread briefly between attempts. Highest latency but
+     * negligible CPU consumption while idle.
+     */
+    PARK {
+        @Override
+        /* package private */ void idle() {
+            LockSupport.parkNanos(PARK_TIME_IN_NANOS);
+        }
+    };
+
+    /**
+     * Wait before the next attempt.
+     */
+    /* package private */ abstract void idle();
+
+    private static final long PARK_TIME_IN_NANOS = 100000;
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+/**
+ * The engine used by file based <code>Sink</code> implementations to write
+ * records to disk.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public enum WriterEngine {
+    /**
+     * Write records through a private Logback <code>LoggerContext</code> with
+     * rolling file and asynchronous appenders.
+     */
+    LOGBACK,
+    /**
+     * Write records directly to a <code>FileChannel</code> bypassing Logback.
+     * The rolling, compression and history semantics match those of the
+     * Logback engine.
+     */
+    FILE_CHANNEL,
+    /**
+     * Copy records directly into a memory mapped segment of the active file
+     * bypassing Logback. The segment is the size of the maximum file size and
+     * the active file is zero filled past the last record until it is rolled
+     * or closed. The rolling, compression and history semantics match those
+     * of the Logback engine.
+     */
+    MEMORY_MAPPED
+}
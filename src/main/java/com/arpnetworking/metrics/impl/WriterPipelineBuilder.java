@@ -0,0 +1,549 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Base class for the builders of file based <code>Sink</code> implementations
+ * holding the options of the writer pipeline: the writer engine, the
+ * asynchronous queue and its batches, group commit, sharding and thread
+ * buffers.
+ *
+ * This class is thread safe.
+ *
+ * @param <B> The type of the concrete builder.
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+/* package private */ abstract class WriterPipelineBuilder<B> {
+
+    /**
+     * Set whether files are written asynchronously. Optional; default is true.
+     *
+     * @param value Whether to write asynchronously.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setAsync(@Nullable final Boolean value) {
+        _async = value;
+        return self();
+    }
+
+    /**
+     * Set whether to drop events when the queue is full. If events are not
+     * dropped when the queue is full closing a <code>Metrics</code>
+     * instance will block on writing to this <code>Sink</code>. Optional;
+     * default is false.
+     *
+     * @param value Whether to drop events when the queue is full.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setDropWhenQueueFull(@Nullable final Boolean value) {
+        _dropWhenQueueFull = value;
+        return self();
+    }
+
+    /**
+     * Set maximum event queue size. The direct engines round the
+     * size up to the next power of two. Optional; default is 500.
+     *
+     * @param value The maximum event queue size.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setMaxQueueSize(@Nullable final Integer value) {
+        _maxQueueSize = value;
+        return self();
+    }
+
+    /**
+     * Set whether the asynchronous direct engines adapt the capacity of
+     * their queue. The queue starts with the maximum queue size, grows up
+     * to the maximum queue bytes while the writer falls behind, for example
+     * during garbage collection pauses or file rolls, and shrinks back once
+     * idle. The capacity follows the drain rate and average size of the
+     * events observed by the writer thread. The queue reserves one slot per
+     * 256 bytes of the maximum queue bytes (at least 1024 and at most 2^24
+     * per shard), so events averaging less than 256 bytes are bounded by the
+     * number of slots rather than by the bytes. Requires the maximum queue
+     * bytes, at most 4GiB per shard, and is not supported by the Logback
+     * engine. Optional; default is false.
+     *
+     * @param value Whether to adapt the capacity of the queue.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setAdaptiveQueue(@Nullable final Boolean value) {
+        _adaptiveQueue = value;
+        return self();
+    }
+
+    /**
+     * Set the maximum number of bytes of queued events. Each event reserves
+     * its serialized size while queued, so the queue is full once either
+     * the maximum queue size or this budget is reached; an event larger
+     * than the budget is only queued once the queue is empty. The Logback
+     * engine estimates events which are not directly encoded by the length
+     * of their message. An adaptive queue grows up to this budget. With
+     * shards the budget is divided evenly between the shards. Optional;
+     * default is none.
+     *
+     * @param value The maximum number of bytes of queued events.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setMaxQueueBytes(@Nullable final Long value) {
+        _maxQueueBytes = value;
+        return self();
+    }
+
+    /**
+     * Set the strategy used by the asynchronous direct engines while
+     * waiting for records, and by callers while waiting for space when
+     * events are not dropped. Ignored by the Logback engine. Optional;
+     * default is <code>PARK</code>.
+     *
+     * @param value The wait strategy.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setWaitStrategy(@Nullable final WaitStrategy value) {
+        _waitStrategy = value;
+        return self();
+    }
+
+    /**
+     * Set the maximum number of events the asynchronous direct engines
+     * write together. Ignored by the Logback engine. Optional;
+     * default is 64.
+     *
+     * @param value The maximum number of events in a batch.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setMaxBatchSize(@Nullable final Integer value) {
+        _maxBatchSize = value;
+        return self();
+    }
+
+    /**
+     * Set the maximum number of bytes the asynchronous direct engines
+     * write together. Ignored by the Logback engine. Optional;
+     * default is 65536.
+     *
+     * @param value The maximum number of bytes in a batch.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setMaxBatchBytes(@Nullable final Integer value) {
+        _maxBatchBytes = value;
+        return self();
+    }
+
+    /**
+     * Set the maximum time in milliseconds the asynchronous direct engines
+     * wait for more events to complete a batch once its queue is
+     * empty. This bounds the additional latency before an event reaches
+     * the file. Ignored by the Logback engine. Optional; default is 0.
+     *
+     * @param value The maximum batch linger time in milliseconds.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setMaxBatchLingerInMillis(@Nullable final Long value) {
+        _maxBatchLingerInMillis = value;
+        return self();
+    }
+
+    /**
+     * Set whether to periodically force written events to disk. Group
+     * commit is not supported by the Logback engine. Optional; default is
+     * false.
+     *
+     * @param value Whether to enable group commit.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setGroupCommit(@Nullable final Boolean value) {
+        _groupCommit = value;
+        return self();
+    }
+
+    /**
+     * Set the interval in milliseconds at which written events are forced
+     * to disk when group commit is enabled. This bounds how long an event
+     * remains only in the operating system page cache. Optional; default
+     * is 100.
+     *
+     * @param value The group commit interval in milliseconds.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setGroupCommitIntervalInMillis(@Nullable final Long value) {
+        _groupCommitIntervalInMillis = value;
+        return self();
+    }
+
+    /**
+     * Set the number of written bytes which forces events to disk before
+     * the group commit interval elapses. Optional; default is 1048576.
+     *
+     * @param value The group commit size in bytes.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setGroupCommitBytes(@Nullable final Long value) {
+        _groupCommitBytes = value;
+        return self();
+    }
+
+    /**
+     * Set whether recording an event blocks until the event has been
+     * forced to disk. Requires group commit. Optional; default is false.
+     *
+     * @param value Whether to block until events are durable.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setBlockUntilDurable(@Nullable final Boolean value) {
+        _blockUntilDurable = value;
+        return self();
+    }
+
+    /**
+     * Set the engine used to write records. The Logback engine writes
+     * through a private Logback <code>LoggerContext</code> while the file
+     * channel and memory mapped engines write directly to a
+     * <code>FileChannel</code> or a memory mapped segment of the file with
+     * the same rolling, compression and history semantics. Optional;
+     * default is <code>LOGBACK</code>.
+     *
+     * @param value The writer engine.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setWriterEngine(@Nullable final WriterEngine value) {
+        _writerEngine = value;
+        return self();
+    }
+
+    /**
+     * Set the number of shards. Each shard is an independent writer
+     * pipeline with its own file, queue, writer thread and compressor,
+     * so throughput scales across cores and devices. With more than one
+     * shard the files are named <code>[name]-[shard][extension]</code>
+     * and each is rolled, compressed and retained like the file of an
+     * unsharded sink. Sharding is not supported by the Logback engine.
+     * Optional; default is 1.
+     *
+     * @param value The number of shards.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setShards(@Nullable final Integer value) {
+        _shards = value;
+        return self();
+    }
+
+    /**
+     * Set the directories of the shards, for example one per device.
+     * Shards are assigned to the directories in turn. Optional; default
+     * is to write every shard to the directory of the sink.
+     *
+     * @param value The shard directories.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setShardDirectories(@Nullable final List<File> value) {
+        _shardDirectories = value == null ? null : new ArrayList<>(value);
+        return self();
+    }
+
+    /**
+     * Set how the shard of each record is picked. Optional; default is
+     * <code>THREAD</code>.
+     *
+     * @param value The shard selection.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setShardSelection(@Nullable final ShardSelection value) {
+        _shardSelection = value;
+        return self();
+    }
+
+    /**
+     * Set the size in bytes of the buffer each producer thread collects its
+     * records in before handing them to the writer as a single chunk, which
+     * replaces a handoff per record with a handoff per chunk. Each producer
+     * thread allocates a buffer of this size. Records larger than the buffer
+     * are handed off directly. Only supported by the file channel and memory
+     * mapped writer engines. Optional; default is 0 which disables thread
+     * buffers.
+     *
+     * @param value The thread buffer size in bytes.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setThreadBufferSize(@Nullable final Integer value) {
+        _threadBufferSize = value;
+        return self();
+    }
+
+    /**
+     * Set the interval in milliseconds at which the thread buffers are
+     * handed to the writer regardless of their size. This bounds the
+     * additional latency before a record reaches the writer. Optional;
+     * default is 100.
+     *
+     * @param value The thread buffer linger time in milliseconds.
+     * @return This <code>Builder</code> instance.
+     */
+    public B setThreadBufferLingerInMillis(@Nullable final Long value) {
+        _threadBufferLingerInMillis = value;
+        return self();
+    }
+
+    /**
+     * Protected method allows child builder classes to add additional
+     * defaulting behavior to fields.
+     */
+    protected void applyDefaults() {
+        applyWriterDefaults();
+        applyDurabilityDefaults();
+        applyShardDefaults();
+        applyThreadBufferDefaults();
+    }
+
+    private void applyThreadBufferDefaults() {
+        if (_threadBufferSize == null) {
+            _threadBufferSize = DEFAULT_THREAD_BUFFER_SIZE;
+            LOGGER.info(String.format("Defaulted null thread buffer size; threadBufferSize=%d", _threadBufferSize));
+        }
+        if (_threadBufferLingerInMillis == null) {
+            _threadBufferLingerInMillis = DEFAULT_THREAD_BUFFER_LINGER_IN_MILLIS;
+            LOGGER.info(String.format(
+                    "Defaulted null thread buffer linger; threadBufferLingerInMillis=%d",
+                    _threadBufferLingerInMillis));
+        }
+    }
+
+    private void applyShardDefaults() {
+        if (_shards == null) {
+            _shards = DEFAULT_SHARDS;
+            LOGGER.info(String.format("Defaulted null shards; shards=%d", _shards));
+        }
+        if (_shardSelection == null) {
+            _shardSelection = DEFAULT_SHARD_SELECTION;
+            LOGGER.info(String.format("Defaulted null shard selection; shardSelection=%s", _shardSelection));
+        }
+    }
+
+    private void applyDurabilityDefaults() {
+        if (_groupCommit == null) {
+            _groupCommit = DEFAULT_GROUP_COMMIT;
+            LOGGER.info(String.format("Defaulted null group commit; groupCommit=%b", _groupCommit));
+        }
+        if (_groupCommitIntervalInMillis == null) {
+            _groupCommitIntervalInMillis = DEFAULT_GROUP_COMMIT_INTERVAL_IN_MILLIS;
+            LOGGER.info(String.format(
+                    "Defaulted null group commit interval; groupCommitIntervalInMillis=%d",
+                    _groupCommitIntervalInMillis));
+        }
+        if (_groupCommitBytes == null) {
+            _groupCommitBytes = DEFAULT_GROUP_COMMIT_BYTES;
+            LOGGER.info(String.format("Defaulted null group commit bytes; groupCommitBytes=%d", _groupCommitBytes));
+        }
+        if (_blockUntilDurable == null) {
+            _blockUntilDurable = DEFAULT_BLOCK_UNTIL_DURABLE;
+            LOGGER.info(String.format("Defaulted null block until durable; blockUntilDurable=%b", _blockUntilDurable));
+        }
+    }
+
+    private void applyWriterDefaults() {
+        if (_async == null) {
+            _async = DEFAULT_ASYNC;
+            LOGGER.info(String.format("Defaulted null async; async=%b", _async));
+        }
+        if (_dropWhenQueueFull == null) {
+            _dropWhenQueueFull = DEFAULT_DROP_WHEN_QUEUE_FULL;
+            LOGGER.info(String.format("Defaulted null drop when queue full; dropWhenQueueFull=%s", _dropWhenQueueFull));
+        }
+        if (_maxQueueSize == null) {
+            _maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+            LOGGER.info(String.format("Defaulted null max queue size; maxQueueSize=%d", _maxQueueSize));
+        }
+        if (_adaptiveQueue == null) {
+            _adaptiveQueue = DEFAULT_ADAPTIVE_QUEUE;
+            LOGGER.info(String.format("Defaulted null adaptive queue; adaptiveQueue=%b", _adaptiveQueue));
+        }
+        if (_waitStrategy == null) {
+            _waitStrategy = DEFAULT_WAIT_STRATEGY;
+            LOGGER.info(String.format("Defaulted null wait strategy; waitStrategy=%s", _waitStrategy));
+        }
+        if (_maxBatchSize == null) {
+            _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+            LOGGER.info(String.format("Defaulted null max batch size; maxBatchSize=%d", _maxBatchSize));
+        }
+        if (_maxBatchBytes == null) {
+            _maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+            LOGGER.info(String.format("Defaulted null max batch bytes; maxBatchBytes=%d", _maxBatchBytes));
+        }
+        if (_maxBatchLingerInMillis == null) {
+            _maxBatchLingerInMillis = DEFAULT_MAX_BATCH_LINGER_IN_MILLIS;
+            LOGGER.info(String.format("Defaulted null max batch linger; maxBatchLingerInMillis=%d", _maxBatchLingerInMillis));
+        }
+        if (_writerEngine == null) {
+            _writerEngine = DEFAULT_WRITER_ENGINE;
+            LOGGER.info(String.format("Defaulted null writer engine; writerEngine=%s", _writerEngine));
+        }
+    }
+
+    /**
+     * Protected method allows child builder classes to add additional
+     * validation to fields.
+     *
+     * @param failures List of validation failures.
+     */
+    protected void validate(final List<String> failures) {
+        if (_maxBatchSize < 1) {
+            failures.add(String.format("Max batch size must be positive; maxBatchSize=%d", _maxBatchSize));
+        }
+        if (_maxBatchBytes < 1) {
+            failures.add(String.format("Max batch bytes must be positive; maxBatchBytes=%d", _maxBatchBytes));
+        }
+        if (_maxBatchLingerInMillis < 0) {
+            failures.add(String.format(
+                    "Max batch linger must not be negative; maxBatchLingerInMillis=%d",
+                    _maxBatchLingerInMillis));
+        }
+        validateQueue(failures);
+        validateDurability(failures);
+        validateShards(failures);
+        validateThreadBuffers(failures);
+    }
+
+    private void validateQueue(final List<String> failures) {
+        if (_maxQueueBytes != null && _maxQueueBytes < 1) {
+            failures.add(String.format("Max queue bytes must be positive; maxQueueBytes=%d", _maxQueueBytes));
+        }
+        if (_adaptiveQueue && _writerEngine == WriterEngine.LOGBACK) {
+            failures.add(String.format("Adaptive queue is not supported by the writer engine; writerEngine=%s", _writerEngine));
+        }
+        if (_adaptiveQueue && _maxQueueBytes == null) {
+            failures.add("Adaptive queue requires max queue bytes");
+        }
+        if (_adaptiveQueue
+                && _maxQueueBytes != null
+                && _maxQueueBytes / Math.max(1, _shards) > MAX_ADAPTIVE_QUEUE_BYTES_PER_SHARD) {
+            failures.add(String.format(
+                    "Max queue bytes exceeds the adaptive queue capacity; maxQueueBytes=%d, shards=%d, maxPerShard=%d",
+                    _maxQueueBytes,
+                    _shards,
+                    MAX_ADAPTIVE_QUEUE_BYTES_PER_SHARD));
+        }
+    }
+
+    private void validateThreadBuffers(final List<String> failures) {
+        if (_threadBufferSize < 0) {
+            failures.add(String.format("Thread buffer size must not be negative; threadBufferSize=%d", _threadBufferSize));
+        }
+        if (_threadBufferSize > 0 && _writerEngine == WriterEngine.LOGBACK) {
+            failures.add(String.format("Thread buffers are not supported by the writer engine; writerEngine=%s", _writerEngine));
+        }
+        if (_threadBufferLingerInMillis < 1) {
+            failures.add(String.format(
+                    "Thread buffer linger must be positive; threadBufferLingerInMillis=%d",
+                    _threadBufferLingerInMillis));
+        }
+    }
+
+    private void validateShards(final List<String> failures) {
+        if (_shards < 1) {
+            failures.add(String.format("Shards must be positive; shards=%d", _shards));
+        }
+        if (_shards > 1 && _writerEngine == WriterEngine.LOGBACK) {
+            failures.add(String.format("Sharding is not supported by the writer engine; writerEngine=%s", _writerEngine));
+        }
+        if (_shardDirectories != null) {
+            if (_shardDirectories.isEmpty()) {
+                failures.add("Shard directories must not be empty");
+            }
+            for (final File directory : _shardDirectories) {
+                if (!directory.isDirectory()) {
+                    failures.add(String.format("Shard path is not a directory; path=%s", directory));
+                }
+            }
+        }
+    }
+
+    private void validateDurability(final List<String> failures) {
+        if (_groupCommit && _writerEngine == WriterEngine.LOGBACK) {
+            failures.add(String.format("Group commit is not supported by the writer engine; writerEngine=%s", _writerEngine));
+        }
+        if (_groupCommitIntervalInMillis < 1) {
+            failures.add(String.format(
+                    "Group commit interval must be positive; groupCommitIntervalInMillis=%d",
+                    _groupCommitIntervalInMillis));
+        }
+        if (_groupCommitBytes < 1) {
+            failures.add(String.format("Group commit bytes must be positive; groupCommitBytes=%d", _groupCommitBytes));
+        }
+        if (_blockUntilDurable && !_groupCommit) {
+            failures.add("Block until durable requires group commit");
+        }
+    }
+
+    /**
+     * Protected method returns this builder with the correct top-level type.
+     *
+     * @return This builder with the correct top-level type.
+     */
+    protected abstract B self();
+
+    protected Boolean _async = DEFAULT_ASYNC;
+    protected Boolean _dropWhenQueueFull = DEFAULT_DROP_WHEN_QUEUE_FULL;
+    protected Integer _maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    protected Boolean _adaptiveQueue = DEFAULT_ADAPTIVE_QUEUE;
+    @Nullable
+    protected Long _maxQueueBytes;
+    protected WaitStrategy _waitStrategy = DEFAULT_WAIT_STRATEGY;
+    protected Integer _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    protected Integer _maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    protected Long _maxBatchLingerInMillis = DEFAULT_MAX_BATCH_LINGER_IN_MILLIS;
+    protected Boolean _groupCommit = DEFAULT_GROUP_COMMIT;
+    protected Long _groupCommitIntervalInMillis = DEFAULT_GROUP_COMMIT_INTERVAL_IN_MILLIS;
+    protected Long _groupCommitBytes = DEFAULT_GROUP_COMMIT_BYTES;
+    protected Boolean _blockUntilDurable = DEFAULT_BLOCK_UNTIL_DURABLE;
+    protected WriterEngine _writerEngine = DEFAULT_WRITER_ENGINE;
+    protected Integer _shards = DEFAULT_SHARDS;
+    @Nullable
+    protected List<File> _shardDirectories;
+    protected ShardSelection _shardSelection = DEFAULT_SHARD_SELECTION;
+    protected Integer _threadBufferSize = DEFAULT_THREAD_BUFFER_SIZE;
+    protected Long _threadBufferLingerInMillis = DEFAULT_THREAD_BUFFER_LINGER_IN_MILLIS;
+
+    private static final Boolean DEFAULT_ASYNC = Boolean.TRUE;
+    private static final Boolean DEFAULT_DROP_WHEN_QUEUE_FULL = Boolean.FALSE;
+    private static final Integer DEFAULT_MAX_QUEUE_SIZE = 500;
+    private static final Boolean DEFAULT_ADAPTIVE_QUEUE = Boolean.FALSE;
+    private static final WaitStrategy DEFAULT_WAIT_STRATEGY = WaitStrategy.PARK;
+    private static final Integer DEFAULT_MAX_BATCH_SIZE = 64;
+    private static final Integer DEFAULT_MAX_BATCH_BYTES = 65536;
+    private static final Long DEFAULT_MAX_BATCH_LINGER_IN_MILLIS = 0L;
+    private static final Boolean DEFAULT_GROUP_COMMIT = Boolean.FALSE;
+    private static final Long DEFAULT_GROUP_COMMIT_INTERVAL_IN_MILLIS = 100L;
+    private static final Long DEFAULT_GROUP_COMMIT_BYTES = 1048576L;
+    private static final Boolean DEFAULT_BLOCK_UNTIL_DURABLE = Boolean.FALSE;
+    private static final WriterEngine DEFAULT_WRITER_ENGINE = WriterEngine.LOGBACK;
+    private static final Integer DEFAULT_SHARDS = 1;
+    private static final ShardSelection DEFAULT_SHARD_SELECTION = ShardSelection.THREAD;
+    private static final Integer DEFAULT_THREAD_BUFFER_SIZE = 0;
+    private static final Long DEFAULT_THREAD_BUFFER_LINGER_IN_MILLIS = 100L;
+    private static final long MAX_ADAPTIVE_QUEUE_BYTES_PER_SHARD =
+            (long) AsyncRecordWriter.ADAPTIVE_MAX_SLOTS * AsyncRecordWriter.ADAPTIVE_MIN_RECORD_BYTES;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriterPipelineBuilder.class);
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of <code>CompressionCodec</code> which writes Zstandard
+ * files at a configurable compression level with an optional dictionary.
+ * Low levels compress faster than gzip at its fastest level for a smaller
+ * file. A dictionary trained with <code>trainDictionary</code> on
+ * representative records lets even short files reference the field names
+ * and units repeated in every event. Files compressed with a dictionary can
+ * only be decompressed with the same dictionary, for example through
+ * <code>decompress</code> of an equal codec or <code>zstd -D</code>.
+ * Zstandard frames may be concatenated so this codec supports parallel and
+ * streaming compression.
+ *
+ * This codec requires <code>com.github.luben:zstd-jni</code> which is an
+ * optional dependency of this library.
+ *
+ * This class is immutable and thread safe.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public final class ZstdCompressionCodec implements CompressionCodec {
+
+    /**
+     * Public constructor for the default compression level without a
+     * dictionary.
+     */
+    public ZstdCompressionCodec() {
+        this(DEFAULT_LEVEL, null);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param level The compression level from 1 (fastest) to 22 (smallest).
+     * @param dictionary The dictionary or null for none.
+     */
+    public ZstdCompressionCodec(final int level, @Nullable final byte[] dictionary) {
+        if (level < MIN_LEVEL || level > MAX_LEVEL) {
+            throw new IllegalArgumentException(String.format("Invalid compression level; level=%d", level));
+        }
+        _level = level;
+        _dictionary = dictionary == null ? null : Arrays.copyOf(dictionary, dictionary.length);
+    }
+
+    /**
+     * Train a dictionary on sample records, for example the events of an
+     * existing file split at each line separator. Training requires many
+     * samples; the total size of the samples should be about a hundred
+     * times the size of the dictionary.
+     *
+     * @param samples The sample records.
+     * @param dictionarySize The maximum size of the dictionary in bytes.
+     * @return The trained dictionary.
+     */
+    public static byte[] trainDictionary(final List<byte[]> samples, final int dictionarySize) {
+        int samplesSize = 0;
+        for (final byte[] sample : samples) {
+            samplesSize += sample.length;
+        }
+        final ZstdDictTrainer trainer = new ZstdDictTrainer(samplesSize, dictionarySize);
+        for (final byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public OutputStream compress(final OutputStream outputStream) throws IOException {
+        final ZstdOutputStream zstdOutputStream = new ZstdOutputStream(outputStream, _level);
+        if (_dictionary != null) {
+            zstdOutputStream.setDict(_dictionary);
+        }
+        return zstdOutputStream;
+    }
+
+    @Override
+    public InputStream decompress(final InputStream inputStream) throws IOException {
+        final ZstdInputStream zstdInputStream = new ZstdInputStream(inputStream);
+        if (_dictionary != null) {
+            zstdInputStream.setDict(_dictionary);
+        }
+        return zstdInputStream;
+    }
+
+    @Override
+    public boolean isConcatenable() {
+        return true;
+    }
+
+    /**
+     * Accessor for the compression level.
+     *
+     * @return The compression level.
+     */
+    public int getLevel() {
+        return _level;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ZstdCompressionCodec{Level=%d, DictionarySize=%d}",
+                _level,
+                _dictionary == null ? 0 : _dictionary.length);
+    }
+
+    private final int _level;
+    @Nullable
+    private final byte[] _dictionary;
+
+    private static final String EXTENSION = ".zst";
+    private static final int DEFAULT_LEVEL = 3;
+    private static final int MIN_LEVEL = 1;
+    private static final int MAX_LEVEL = 22;
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>AdaptiveQueueLimit</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AdaptiveQueueLimitTest {
+
+    @Test
+    public void testGrow() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 1024, 100000);
+        Assert.assertEquals(10, limit.getLimit());
+        Assert.assertEquals(10, limit.getBudget());
+        Assert.assertEquals(0, limit.getAverageRecordBytes(), 0.0);
+
+        // NOTE: Nothing is known about the records so the limit stays put
+        Assert.assertFalse(limit.grow(10));
+        Assert.assertEquals(10, limit.getLimit());
+
+        limit.update(INTERVAL_IN_NANOS, 10, 1000, 10);
+        Assert.assertEquals(100, limit.getAverageRecordBytes(), 0.0);
+        Assert.assertEquals(25, limit.getDrainRate(), 0.0);
+        Assert.assertEquals(1000, limit.getBudget());
+        Assert.assertEquals(10, limit.getLimit());
+
+        // NOTE: Draining 100 records per second averages to 25 which
+        // exceeds twice the initial limit
+        Assert.assertTrue(limit.grow(10));
+        Assert.assertEquals(25, limit.getLimit());
+        Assert.assertTrue(limit.grow(10));
+        Assert.assertEquals(25, limit.getLimit());
+        Assert.assertTrue(limit.grow(25));
+        Assert.assertEquals(50, limit.getLimit());
+        Assert.assertTrue(limit.grow(50));
+        Assert.assertEquals(100, limit.getLimit());
+
+        limit.update(INTERVAL_IN_NANOS, 10, 1000, 100);
+        Assert.assertEquals(100, limit.getLimit());
+    }
+
+    @Test
+    public void testBoundedByBudget() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 1024, 2000);
+        limit.update(INTERVAL_IN_NANOS, 10, 1000, 0);
+        Assert.assertTrue(limit.grow(10));
+        Assert.assertEquals(20, limit.getLimit());
+        Assert.assertFalse(limit.grow(20));
+        Assert.assertEquals(20, limit.getLimit());
+
+        // NOTE: Larger records shrink the budget below the initial limit
+        for (int i = 0; i < 20; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 1, 1000, 0);
+        }
+        Assert.assertEquals(2, limit.getBudget());
+        Assert.assertEquals(2, limit.getLimit());
+        Assert.assertEquals(1000, limit.getAverageRecordBytes(), 5.0);
+
+        final AdaptiveQueueLimit huge = new AdaptiveQueueLimit(1, 8, 10);
+        huge.update(INTERVAL_IN_NANOS, 1, 1000, 1);
+        Assert.assertEquals(1, huge.getBudget());
+        Assert.assertFalse(huge.grow(1));
+    }
+
+    @Test
+    public void testBoundedBySlots() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 64, Long.MAX_VALUE);
+        limit.update(INTERVAL_IN_NANOS, 10, 1000, 0);
+        while (limit.grow(limit.getLimit())) {
+            Assert.assertTrue(limit.getLimit() <= 64);
+        }
+        Assert.assertEquals(64, limit.getLimit());
+    }
+
+    @Test
+    public void testGrowsToDrainRate() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 100000, Long.MAX_VALUE);
+        // NOTE: Draining 10000 records per second requires room for a second
+        limit.update(TimeUnit.SECONDS.toNanos(1), 10000, 10000, 0);
+        Assert.assertTrue(limit.grow(10));
+        Assert.assertEquals(2500, limit.getLimit());
+    }
+
+    @Test
+    public void testShrinksWhenIdle() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 1024, Long.MAX_VALUE);
+        limit.update(INTERVAL_IN_NANOS, 1, 100, 0);
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(limit.grow(limit.getLimit()));
+        }
+        Assert.assertEquals(320, limit.getLimit());
+
+        // NOTE: The first interval was saturated so it is not idle
+        for (int i = 0; i < 50; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        }
+        Assert.assertEquals(320, limit.getLimit());
+
+        // NOTE: A busy interval restarts the idle count
+        limit.update(INTERVAL_IN_NANOS, 0, 0, 200);
+        for (int i = 0; i < 49; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        }
+        Assert.assertEquals(320, limit.getLimit());
+        limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        Assert.assertEquals(160, limit.getLimit());
+        for (int i = 0; i < 500; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        }
+        Assert.assertEquals(10, limit.getLimit());
+
+        // NOTE: A saturated interval restarts the idle count
+        for (int i = 0; i < 49; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        }
+        Assert.assertTrue(limit.grow(10));
+        for (int i = 0; i < 50; ++i) {
+            limit.update(INTERVAL_IN_NANOS, 0, 0, 0);
+        }
+        Assert.assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void testShrinkKeepsDrainRate() {
+        final AdaptiveQueueLimit limit = new AdaptiveQueueLimit(10, 16384, Long.MAX_VALUE);
+        for (int i = 0; i < 10; ++i) {
+            limit.update(TimeUnit.SECONDS.toNanos(1), 1000, 1000, 0);
+            limit.grow(limit.getLimit());
+        }
+        Assert.assertEquals(16384, limit.getLimit());
+        for (int i = 0; i < 500; ++i) {
+            limit.update(TimeUnit.SECONDS.toNanos(1), 1000, 1000, 0);
+        }
+        Assert.assertEquals(1000, limit.getLimit(), 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMinLimit() {
+        new AdaptiveQueueLimit(0, 10, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxLimit() {
+        new AdaptiveQueueLimit(10, 5, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxBytes() {
+        new AdaptiveQueueLimit(10, 20, 0);
+    }
+
+    private static final long INTERVAL_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Tests for <code>AggregateEncoder</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AggregateEncoderTest {
+
+    @Test
+    public void testTimer() throws IOException {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_host", "host");
+        annotations.put("_service", "service");
+        final AggregatedSeries series = new AggregatedSeries(
+                annotations,
+                AggregatedSeries.Type.TIMER,
+                "timer",
+                new UnitCache(10).get(Units.MILLISECOND));
+        series.record(1.0);
+        series.record(2.0);
+        series.record(2.0078125);
+
+        Assert.assertEquals(
+                "{\"version\":\"2f-aggregate\","
+                        + "\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\",\"_end\":\"2019-01-01T00:01:00Z\","
+                        + "\"_host\":\"host\",\"_service\":\"service\"},"
+                        + "\"type\":\"timer\",\"name\":\"timer\",\"unitNumerators\":[\"millisecond\"],"
+                        + "\"count\":3,\"sum\":5.0078125,\"min\":1.0,\"max\":2.0078125,"
+                        + "\"histogram\":[[1.0,1],[2.0,2]]}",
+                encode(series));
+    }
+
+    @Test
+    public void testCounter() throws IOException {
+        final AggregatedSeries series = new AggregatedSeries(
+                Collections.emptyMap(),
+                AggregatedSeries.Type.COUNTER,
+                "counter",
+                null);
+        series.record(3.0);
+
+        Assert.assertEquals(
+                "{\"version\":\"2f-aggregate\","
+                        + "\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\",\"_end\":\"2019-01-01T00:01:00Z\"},"
+                        + "\"type\":\"counter\",\"name\":\"counter\","
+                        + "\"count\":1,\"sum\":3.0,\"min\":3.0,\"max\":3.0}",
+                encode(series));
+    }
+
+    private static String encode(final AggregatedSeries series) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            new AggregateEncoder().encode(series, START_IN_MILLIS, START_IN_MILLIS + 60000, jsonGenerator);
+        }
+        return writer.toString();
+    }
+
+    private static final long START_IN_MILLIS = 1546300800000L;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Tests for <code>AggregatedSeries</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AggregatedSeriesTest {
+
+    @Test
+    public void testTimer() {
+        final Map<String, String> annotations = Collections.singletonMap("_host", "host");
+        final UnitCache.SerializedUnit unit = new UnitCache(10).get(Units.SECOND);
+        final AggregatedSeries series = new AggregatedSeries(annotations, AggregatedSeries.Type.TIMER, "timer", unit);
+        series.record(2.0);
+        series.record(-1.0);
+        series.record(5.5);
+
+        Assert.assertSame(annotations, series.getAnnotations());
+        Assert.assertEquals(AggregatedSeries.Type.TIMER, series.getType());
+        Assert.assertEquals("timer", series.getName());
+        Assert.assertSame(unit, series.getUnit());
+        Assert.assertEquals(3, series.getCount());
+        Assert.assertEquals(6.5, series.getSum(), 0.0);
+        Assert.assertEquals(-1.0, series.getMin(), 0.0);
+        Assert.assertEquals(5.5, series.getMax(), 0.0);
+        Assert.assertNotNull(series.getHistogram());
+        Assert.assertEquals(3, series.getHistogram().getBuckets().size());
+    }
+
+    @Test
+    public void testCounter() {
+        final AggregatedSeries series = new AggregatedSeries(
+                Collections.emptyMap(),
+                AggregatedSeries.Type.COUNTER,
+                "counter",
+                null);
+        series.record(1.0);
+        series.record(1.0);
+
+        Assert.assertNull(series.getUnit());
+        Assert.assertNull(series.getHistogram());
+        Assert.assertEquals(2, series.getCount());
+        Assert.assertEquals(2.0, series.getSum(), 0.0);
+    }
+
+    @Test
+    public void testWeighted() {
+        final AggregatedSeries series = new AggregatedSeries(
+                Collections.emptyMap(),
+                AggregatedSeries.Type.TIMER,
+                "timer",
+                null);
+        series.record(1.0, 4.0);
+        series.record(3.0, 1.0);
+
+        Assert.assertEquals(5, series.getCount());
+        Assert.assertEquals(7.0, series.getSum(), 0.0);
+        Assert.assertEquals(1.0, series.getMin(), 0.0);
+        Assert.assertEquals(3.0, series.getMax(), 0.0);
+        Assert.assertEquals(Long.valueOf(4), series.getHistogram().getBuckets().get(1.0));
+    }
+
+    @Test
+    public void testTypeKeys() {
+        Assert.assertEquals("counter", AggregatedSeries.Type.COUNTER.getKey());
+        Assert.assertEquals("gauge", AggregatedSeries.Type.GAUGE.getKey());
+        Assert.assertEquals("timer", AggregatedSeries.Type.TIMER.getKey());
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for <code>AggregatingFileSink</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AggregatingFileSinkTest {
+
+    @Test
+    public void testAggregation() throws IOException {
+        final File file = new File("./target/AggregatingFileSinkTest/testAggregation-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final AggregatingFileSink sink = (AggregatingFileSink) createBuilder("testAggregation-Query")
+                .setPeriodInMillis(3600000L)
+                .build();
+        for (int i = 0; i < 100; ++i) {
+            sink.record(createEvent(String.valueOf(i), i));
+        }
+        sink.flush();
+
+        final List<JsonNode> records = readRecords(file);
+        Assert.assertEquals(2, records.size());
+        for (final JsonNode record : records) {
+            Assert.assertEquals("2f-aggregate", record.get("version").asText());
+            Assert.assertEquals("host", record.get("annotations").get("_host").asText());
+            Assert.assertNull(record.get("annotations").get("_id"));
+            final Instant start = Instant.parse(record.get("annotations").get("_start").asText());
+            final Instant end = Instant.parse(record.get("annotations").get("_end").asText());
+            Assert.assertEquals(3600000, end.toEpochMilli() - start.toEpochMilli());
+            Assert.assertEquals(0, start.toEpochMilli() % 3600000);
+            Assert.assertEquals(100, record.get("count").asLong());
+            if ("timer".equals(record.get("type").asText())) {
+                Assert.assertEquals("latency", record.get("name").asText());
+                Assert.assertEquals("millisecond", record.get("unitNumerators").get(0).asText());
+                Assert.assertEquals(4950.0, record.get("sum").asDouble(), 0.0);
+                Assert.assertEquals(0.0, record.get("min").asDouble(), 0.0);
+                Assert.assertEquals(99.0, record.get("max").asDouble(), 0.0);
+                long count = 0;
+                for (final JsonNode bucket : record.get("histogram")) {
+                    count += bucket.get(1).asLong();
+                }
+                Assert.assertEquals(100, count);
+            } else {
+                Assert.assertEquals("counter", record.get("type").asText());
+                Assert.assertEquals(100.0, record.get("sum").asDouble(), 0.0);
+                Assert.assertNull(record.get("histogram"));
+            }
+        }
+        Assert.assertEquals(2, sink.getStatistics().getRecords());
+
+        sink.flush();
+        Assert.assertEquals(2, readRecords(file).size());
+    }
+
+    @Test
+    public void testFlushBeforeEndOfPeriod() throws IOException {
+        final File file = new File("./target/AggregatingFileSinkTest/testFlushBeforeEndOfPeriod-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final AggregatingFileSink sink = (AggregatingFileSink) createBuilder("testFlushBeforeEndOfPeriod-Query")
+                .setPeriodInMillis(3600000L)
+                .build();
+        // NOTE: Both flushes run before the end of the first period
+        sink.record(createEvent("1", 1));
+        sink.flush();
+        sink.record(createEvent("2", 2));
+        sink.flush();
+
+        final List<JsonNode> records = readRecords(file);
+        Assert.assertEquals(4, records.size());
+        final long firstStart = Instant.parse(records.get(0).get("annotations").get("_start").asText()).toEpochMilli();
+        final long secondStart = Instant.parse(records.get(2).get("annotations").get("_start").asText()).toEpochMilli();
+        Assert.assertEquals(3600000, secondStart - firstStart);
+    }
+
+    @Test
+    public void testScheduledFlush() throws IOException, InterruptedException {
+        final File file = new File("./target/AggregatingFileSinkTest/testScheduledFlush-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final Sink sink = createBuilder("testScheduledFlush-Query")
+                .setPeriodInMillis(100L)
+                .build();
+        sink.record(createEvent("1", 1));
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (readRecords(file).size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, readRecords(file).size());
+    }
+
+    @Test
+    public void testOnShutdown() throws IOException {
+        final File file = new File("./target/AggregatingFileSinkTest/testOnShutdown-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final AggregatingFileSink sink = (AggregatingFileSink) createBuilder("testOnShutdown-Query").build();
+        sink.record(createEvent("1", 1));
+        sink.onShutdown();
+        Assert.assertEquals(2, readRecords(file).size());
+    }
+
+    @Test
+    public void testTryRecord() throws IOException {
+        final File file = new File("./target/AggregatingFileSinkTest/testTryRecord-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final AggregatingFileSink sink = (AggregatingFileSink) createBuilder("testTryRecord-Query").build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(createEvent("1", 1)));
+        sink.flush();
+        Assert.assertEquals(2, readRecords(file).size());
+    }
+
+    @Test
+    public void testJsonFactoryIOException() throws IOException {
+        final org.slf4j.Logger logger = Mockito.mock(org.slf4j.Logger.class);
+        final JsonFactory jsonFactory = Mockito.spy(new JsonFactory());
+        final AggregatingFileSink sink = new AggregatingFileSink(
+                createBuilder("testJsonFactoryIOException-Query"),
+                jsonFactory,
+                logger);
+
+        Mockito.doThrow(new IOException("IOException"))
+                .when(jsonFactory)
+                .createGenerator(Mockito.any(OutputStream.class));
+        sink.record(createEvent("1", 1));
+        sink.flush();
+        Mockito.verify(logger, Mockito.times(2)).warn(
+                Mockito.any(String.class),
+                Mockito.any(Throwable.class));
+    }
+
+    @Test
+    public void testBuilderWithNullPeriod() throws IOException {
+        final Sink sink = createBuilder("testBuilderWithNullPeriod-Query")
+                .setPeriodInMillis(null)
+                .build();
+        Assert.assertTrue(sink instanceof AggregatingFileSink);
+    }
+
+    @Test
+    public void testBuilderWithInvalidPeriod() throws IOException {
+        final Sink sink = createBuilder("testBuilderWithInvalidPeriod-Query")
+                .setPeriodInMillis(0L)
+                .build();
+        Assert.assertTrue(sink instanceof WarningSink);
+    }
+
+    @Test
+    public void testSampler() throws IOException {
+        final File file = new File("./target/AggregatingFileSinkTest/testSampler-Query.log");
+        Files.deleteIfExists(file.toPath());
+        final Iterator<Double> random = Arrays.asList(0.25, 0.75).iterator();
+        final AggregatingFileSink sink = (AggregatingFileSink) createBuilder("testSampler-Query")
+                .setSampler(new EventSampler(0.5, null, 0, System::nanoTime, random::next))
+                .build();
+        sink.record(createEvent("1", 1));
+        sink.record(createEvent("2", 2));
+        sink.flush();
+
+        final List<JsonNode> records = readRecords(file);
+        Assert.assertEquals(2, records.size());
+        for (final JsonNode record : records) {
+            Assert.assertEquals(2, record.get("count").asLong());
+            Assert.assertNull(record.get("annotations").get("_sampleRate"));
+        }
+    }
+
+    private static AggregatingFileSink.Builder createBuilder(final String name) throws IOException {
+        return new AggregatingFileSink.Builder()
+                .setDirectory(createDirectory("./target/AggregatingFileSinkTest"))
+                .setName(name)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false);
+    }
+
+    private static Event createEvent(final String id, final long latency) {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", id);
+        annotations.put("_start", "2019-01-01T00:00:00Z");
+        annotations.put("_end", "2019-01-01T00:00:01Z");
+        annotations.put("_host", "host");
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "latency",
+                Collections.singletonList(TsdQuantity.newInstance(latency, Units.MILLISECOND)));
+        final Map<String, List<Quantity>> counters = Collections.singletonMap(
+                "requests",
+                Collections.singletonList(TsdQuantity.newInstance(1L, null)));
+        return new TsdEvent(annotations, timers, counters, Collections.emptyMap());
+    }
+
+    private static List<JsonNode> readRecords(final File file) throws IOException {
+        final List<JsonNode> records = new ArrayList<>();
+        if (file.exists()) {
+            for (final String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                records.add(OBJECT_MAPPER.readTree(line));
+            }
+        }
+        return records;
+    }
+
+    private static File createDirectory(final String path) throws IOException {
+        final File directory = new File(path);
+        Files.createDirectories(directory.toPath());
+        return directory;
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+}
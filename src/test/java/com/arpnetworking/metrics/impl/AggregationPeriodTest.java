@@ -0,0 +1,171 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for <code>AggregationPeriod</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AggregationPeriodTest {
+
+    @Test
+    public void testAdd() {
+        final AggregationPeriod period = new AggregationPeriod(1000, 2000, UNIT_CACHE);
+        Assert.assertEquals(1000, period.getStartInMillis());
+        Assert.assertEquals(2000, period.getEndInMillis());
+
+        final Map<String, List<Quantity>> timers = new LinkedHashMap<>();
+        timers.put("timer", Arrays.asList(
+                TsdQuantity.newInstance(1L, Units.SECOND),
+                TsdQuantity.newInstance(2L, Units.SECOND),
+                TsdQuantity.newInstance(3L, Units.MILLISECOND),
+                TsdQuantity.newInstance(Double.NaN, Units.SECOND),
+                Mockito.mock(Quantity.class)));
+        final Map<String, List<Quantity>> counters = Collections.singletonMap(
+                "counter",
+                Collections.singletonList(TsdQuantity.newInstance(1L, null)));
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "timer",
+                Collections.singletonList(TsdQuantity.newInstance(4.5, Units.SECOND)));
+        period.add(new TsdEvent(createAnnotations("1", "host"), timers, counters, gauges));
+        period.add(new TsdEvent(createAnnotations("2", "host"), timers, counters, Collections.emptyMap()));
+        period.add(new TsdEvent(createAnnotations("3", "other"), Collections.emptyMap(), counters, Collections.emptyMap()));
+
+        final Map<String, AggregatedSeries> series = index(period.getSeries());
+        Assert.assertEquals(5, series.size());
+        final AggregatedSeries seconds = series.get("host/timer/timer/[second]");
+        Assert.assertEquals(Collections.singletonMap("_host", "host"), seconds.getAnnotations());
+        Assert.assertEquals(4, seconds.getCount());
+        Assert.assertEquals(6.0, seconds.getSum(), 0.0);
+        Assert.assertEquals(2, series.get("host/timer/timer/[millisecond]").getCount());
+        Assert.assertEquals(1, series.get("host/gauge/timer/[second]").getCount());
+        Assert.assertEquals(2, series.get("host/counter/counter/[]").getCount());
+        Assert.assertEquals(1, series.get("other/counter/counter/[]").getCount());
+    }
+
+    @Test
+    public void testEnter() throws InterruptedException {
+        final AggregationPeriod replaced = new AggregationPeriod(0, 1000, UNIT_CACHE);
+        final AggregationPeriod current = new AggregationPeriod(1000, 2000, UNIT_CACHE);
+        final Iterator<AggregationPeriod> periods = Arrays.asList(replaced, current, current, current).iterator();
+        Assert.assertSame(current, AggregationPeriod.enter(periods::next));
+        replaced.awaitWriters();
+
+        final Thread thread = new Thread(current::awaitWriters);
+        thread.start();
+        thread.join(50);
+        Assert.assertTrue(thread.isAlive());
+        current.exit();
+        thread.join();
+    }
+
+    @Test
+    public void testSampleRate() {
+        final AggregationPeriod period = new AggregationPeriod(1000, 2000, UNIT_CACHE);
+        final Map<String, List<Quantity>> counters = Collections.singletonMap(
+                "counter",
+                Collections.singletonList(TsdQuantity.newInstance(2L, null)));
+        final Map<String, String> half = createAnnotations("1", "host");
+        half.put("_sampleRate", "0.5");
+        final Map<String, String> quarter = createAnnotations("2", "host");
+        quarter.put("_sampleRate", "0.25");
+        period.add(new TsdEvent(half, Collections.emptyMap(), counters, Collections.emptyMap()));
+        period.add(new TsdEvent(quarter, Collections.emptyMap(), counters, Collections.emptyMap()));
+        period.add(new TsdEvent(createAnnotations("3", "host"), Collections.emptyMap(), counters, Collections.emptyMap()));
+
+        final List<AggregatedSeries> series = period.getSeries();
+        Assert.assertEquals(1, series.size());
+        Assert.assertEquals(Collections.singletonMap("_host", "host"), series.get(0).getAnnotations());
+        Assert.assertEquals(7, series.get(0).getCount());
+        Assert.assertEquals(14.0, series.get(0).getSum(), 0.0);
+    }
+
+    @Test
+    public void testWeight() {
+        Assert.assertEquals(1.0, AggregationPeriod.weight(null), 0.0);
+        Assert.assertEquals(4.0, AggregationPeriod.weight("0.25"), 0.0);
+        Assert.assertEquals(1.0, AggregationPeriod.weight("1.0"), 0.0);
+        Assert.assertEquals(1.0, AggregationPeriod.weight("0"), 0.0);
+        Assert.assertEquals(1.0, AggregationPeriod.weight("2"), 0.0);
+        Assert.assertEquals(1.0, AggregationPeriod.weight("foo"), 0.0);
+    }
+
+    @Test
+    public void testSeriesKey() {
+        final UnitCache.SerializedUnit second = UNIT_CACHE.get(Units.SECOND);
+        final AggregationPeriod.SeriesKey key = new AggregationPeriod.SeriesKey(AggregatedSeries.Type.TIMER, "t", second);
+        Assert.assertEquals(key, key);
+        Assert.assertEquals(key, new AggregationPeriod.SeriesKey(AggregatedSeries.Type.TIMER, "t", UNIT_CACHE.get(Units.SECOND)));
+        Assert.assertEquals(
+                key.hashCode(),
+                new AggregationPeriod.SeriesKey(AggregatedSeries.Type.TIMER, "t", UNIT_CACHE.get(Units.SECOND)).hashCode());
+        Assert.assertNotEquals(key, "t");
+        Assert.assertNotEquals(key, new AggregationPeriod.SeriesKey(AggregatedSeries.Type.GAUGE, "t", second));
+        Assert.assertNotEquals(key, new AggregationPeriod.SeriesKey(AggregatedSeries.Type.TIMER, "u", second));
+        Assert.assertNotEquals(key, new AggregationPeriod.SeriesKey(AggregatedSeries.Type.TIMER, "t", null));
+        Assert.assertNotEquals(
+                key,
+                new AggregationPeriod.SeriesKey(
+                        AggregatedSeries.Type.TIMER,
+                        "t",
+                        UNIT_CACHE.get(new TsdCompoundUnit.Builder()
+                                .addNumeratorUnit(Units.SECOND)
+                                .addDenominatorUnit(Units.BYTE)
+                                .build())));
+    }
+
+    private static Map<String, String> createAnnotations(final String id, final String host) {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", id);
+        annotations.put("_start", "2019-01-01T00:00:00Z");
+        annotations.put("_end", "2019-01-01T00:00:01Z");
+        annotations.put("_host", host);
+        return annotations;
+    }
+
+    private static Map<String, AggregatedSeries> index(final List<AggregatedSeries> series) {
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava dependency here.
+        final Map<String, AggregatedSeries> index = new HashMap<>();
+        // CHECKSTYLE.ON: IllegalInstantiation
+        for (final AggregatedSeries aggregate : series) {
+            final UnitCache.SerializedUnit unit = aggregate.getUnit();
+            index.put(
+                    aggregate.getAnnotations().get("_host")
+                            + "/" + aggregate.getType().getKey()
+                            + "/" + aggregate.getName()
+                            + "/" + (unit == null ? Collections.emptyList() : unit.getNumeratorNames()),
+                    aggregate);
+        }
+        return index;
+    }
+
+    private static final UnitCache UNIT_CACHE = new UnitCache(10);
+}
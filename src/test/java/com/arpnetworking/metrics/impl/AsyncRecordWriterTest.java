@@ -0,0 +1,617 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>AsyncRecordWriter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class AsyncRecordWriterTest {
+
+    @Test
+    public void testWrite() {
+        final RecordingWriter delegate = new RecordingWriter();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .build();
+        final byte[] record = new byte[] {'a', '\n'};
+        Assert.assertTrue(writer.write(record));
+        writer.close();
+        Assert.assertEquals(Collections.singletonList(Collections.singletonList(record)), delegate.getBatches());
+        Assert.assertTrue(delegate.isClosed());
+        Assert.assertEquals(0, writer.getDropped());
+    }
+
+    @Test
+    public void testDropWhenQueueFull() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .setDropWhenQueueFull(true)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        Assert.assertTrue(writer.write(new byte[] {'b'}));
+        Assert.assertTrue(writer.write(new byte[] {'c'}));
+        Assert.assertFalse(writer.write(new byte[] {'d'}));
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertEquals(2, writer.getQueueDepth());
+        Assert.assertEquals(2, writer.getQueueCapacity());
+        delegate.release();
+        writer.close();
+        Assert.assertEquals(3, delegate.getRecordCount());
+    }
+
+    @Test
+    public void testBlockWhenQueueFull() {
+        final RecordingWriter delegate = new RecordingWriter();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(1)
+                .build();
+        for (int i = 0; i < 100; ++i) {
+            writer.write(new byte[] {'a'});
+        }
+        writer.close();
+        Assert.assertEquals(100, delegate.getRecordCount());
+        Assert.assertEquals(0, writer.getDropped());
+    }
+
+    @Test
+    public void testBlockWhenQueueFullInterrupted() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        writer.write(new byte[] {'b'});
+        writer.write(new byte[] {'c'});
+        Thread.currentThread().interrupt();
+        Assert.assertFalse(writer.write(new byte[] {'d'}));
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(1, writer.getDropped());
+        delegate.release();
+        writer.close();
+        Assert.assertEquals(3, delegate.getRecordCount());
+    }
+
+    @Test
+    public void testTryWrite() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .setDropWhenQueueFull(true)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        Assert.assertTrue(writer.tryWrite(new byte[] {'b'}, 0));
+        Assert.assertTrue(writer.tryWrite(new byte[] {'c'}, 0));
+        Assert.assertFalse(writer.tryWrite(new byte[] {'d'}, 0));
+        Assert.assertFalse(writer.tryWrite(new byte[] {'d'}, TimeUnit.MILLISECONDS.toNanos(1)));
+        Assert.assertEquals(0, writer.getDropped());
+
+        final Thread releaser = new Thread(() -> {
+            sleep(50);
+            delegate.release();
+        });
+        releaser.start();
+        Assert.assertTrue(writer.tryWrite(new byte[] {'e'}, TimeUnit.SECONDS.toNanos(10)));
+        releaser.join();
+        writer.close();
+        Assert.assertEquals(4, delegate.getRecordCount());
+    }
+
+    @Test
+    public void testAwaitCapacity() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .build();
+        Assert.assertTrue(writer.awaitCapacity(0));
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        writer.write(new byte[] {'b'});
+        writer.write(new byte[] {'c'});
+        Assert.assertFalse(writer.awaitCapacity(0));
+        Assert.assertFalse(writer.awaitCapacity(TimeUnit.MILLISECONDS.toNanos(1)));
+
+        final Thread releaser = new Thread(() -> {
+            sleep(50);
+            delegate.release();
+        });
+        releaser.start();
+        Assert.assertTrue(writer.awaitCapacity(TimeUnit.SECONDS.toNanos(10)));
+        releaser.join();
+        writer.close();
+    }
+
+    @Test
+    public void testOnCapacityAvailable() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .build();
+        final CountDownLatch immediate = new CountDownLatch(1);
+        writer.onCapacityAvailable(immediate::countDown);
+        Assert.assertEquals(0, immediate.getCount());
+
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        writer.write(new byte[] {'b'});
+        writer.write(new byte[] {'c'});
+        final CountDownLatch deferred = new CountDownLatch(1);
+        writer.onCapacityAvailable(deferred::countDown);
+        Assert.assertEquals(1, deferred.getCount());
+        delegate.release();
+        Assert.assertTrue(deferred.await(10, TimeUnit.SECONDS));
+        writer.close();
+    }
+
+    @Test
+    public void testBatchSize() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(16)
+                .setMaxBatchSize(3)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        for (int i = 0; i < 7; ++i) {
+            writer.write(new byte[] {'b'});
+        }
+        delegate.release();
+        writer.close();
+        Assert.assertEquals(Arrays.asList(1, 3, 3, 1), delegate.getBatchSizes());
+    }
+
+    @Test
+    public void testBatchBytes() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(16)
+                .setMaxBatchSize(100)
+                .setMaxBatchBytes(4)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        writer.write(new byte[] {'b', 'b', 'b'});
+        writer.write(new byte[] {'c'});
+        writer.write(new byte[] {'d', 'd', 'd', 'd', 'd'});
+        writer.write(new byte[] {'e'});
+        delegate.release();
+        writer.close();
+        Assert.assertEquals(Arrays.asList(1, 2, 1, 1), delegate.getBatchSizes());
+    }
+
+    @Test
+    public void testBatchLinger() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(16)
+                .setMaxBatchSize(100)
+                .setMaxBatchLingerInMillis(200)
+                .build();
+        writer.write(new byte[] {'a'});
+        writer.write(new byte[] {'b'});
+        Thread.sleep(50);
+        Assert.assertEquals(0, delegate.getRecordCount());
+        Thread.sleep(500);
+        Assert.assertEquals(Collections.singletonList(2), delegate.getBatchSizes());
+        writer.write(new byte[] {'c'});
+        writer.close();
+        Assert.assertEquals(Arrays.asList(2, 1), delegate.getBatchSizes());
+    }
+
+    @Test
+    public void testCloseTimeout() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(1)
+                .setDropWhenQueueFull(true)
+                .build();
+        writer.write(new byte[] {'a'});
+        delegate.awaitBlocked();
+        writer.close();
+        Assert.assertFalse(writer.write(new byte[] {'b'}));
+        Assert.assertFalse(writer.tryWrite(new byte[] {'c'}, 0));
+        Assert.assertFalse(delegate.isClosed());
+
+        // NOTE: The writer thread closes the delegate once the queued records are written
+        delegate.release();
+        while (!delegate.isClosed()) {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(1, delegate.getRecordCount());
+        Assert.assertEquals(0, writer.getDropped());
+    }
+
+    @Test
+    public void testCloseInterrupted() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .build();
+        Thread.currentThread().interrupt();
+        writer.close();
+        Assert.assertTrue(Thread.interrupted());
+        while (!delegate.isClosed()) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testWaitStrategies() {
+        for (final WaitStrategy waitStrategy : WaitStrategy.values()) {
+            final RecordingWriter delegate = new RecordingWriter();
+            final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                    .setDelegate(delegate)
+                    .setMaxQueueSize(2)
+                    .setWaitStrategy(waitStrategy)
+                    .build();
+            for (int i = 0; i < 100; ++i) {
+                writer.write(new byte[] {'a'});
+            }
+            writer.close();
+            Assert.assertEquals(100, delegate.getRecordCount());
+        }
+    }
+
+    @Test
+    public void testAwaitDurable() {
+        final RecordingWriter delegate = new RecordingWriter();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxBatchSize(100)
+                .setMaxBatchLingerInMillis(50)
+                .build();
+        writer.write(new byte[] {'a'});
+        writer.awaitDurable();
+        Assert.assertEquals(1, delegate.getRecordCount());
+        Assert.assertEquals(1, delegate.getDurableCount());
+        writer.close();
+    }
+
+    @Test
+    public void testDelegateFailed() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doThrow(new IllegalStateException())
+                .doReturn(1)
+                .when(delegate).write(Mockito.<List<byte[]>>any());
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .build();
+        writer.write(new byte[] {'a'});
+        writer.awaitDurable();
+        writer.write(new byte[] {'b'});
+        writer.awaitDurable();
+        Mockito.verify(delegate, Mockito.times(2)).write(Mockito.<List<byte[]>>any());
+        Mockito.verify(delegate, Mockito.times(2)).awaitDurable();
+        Assert.assertEquals(1, writer.getDropped());
+        writer.close();
+    }
+
+    @Test
+    public void testDelegateRejected() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(1)
+                .doReturn(0)
+                .when(delegate).write(Mockito.<List<byte[]>>any());
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxBatchSize(2)
+                .setMaxBatchLingerInMillis(1000)
+                .build();
+        writer.write(new byte[] {'a'});
+        writer.write(new byte[] {'b'});
+        writer.awaitDurable();
+        Assert.assertEquals(1, writer.getDropped());
+        writer.write(new byte[] {'c'});
+        writer.write(new byte[] {'d'});
+        writer.awaitDurable();
+        Assert.assertEquals(3, writer.getDropped());
+        writer.close();
+    }
+
+    @Test
+    public void testCommitStatistics() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(CommitStatistics.EMPTY).when(delegate).getCommitStatistics();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .build();
+        Assert.assertSame(CommitStatistics.EMPTY, writer.getCommitStatistics());
+        writer.close();
+    }
+
+    @Test
+    public void testDefaultBatchWrite() {
+        final RecordWriter writer = Mockito.mock(RecordWriter.class, Mockito.CALLS_REAL_METHODS);
+        final byte[] first = new byte[] {'a'};
+        final byte[] second = new byte[] {'b'};
+        Mockito.doReturn(true).when(writer).write(first);
+        Assert.assertEquals(1, writer.write(Arrays.asList(first, second)));
+        final InOrder inOrder = Mockito.inOrder(writer);
+        inOrder.verify(writer).write(first);
+        inOrder.verify(writer).write(second);
+        writer.awaitDurable();
+        Assert.assertSame(CommitStatistics.EMPTY, writer.getCommitStatistics());
+        Assert.assertEquals(0, writer.getDropped());
+        Assert.assertEquals(0, writer.getQueueDepth());
+        Assert.assertEquals(0, writer.getQueueCapacity());
+        Assert.assertEquals(0, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(0, writer.getCompressionBacklogBytes());
+    }
+
+    @Test
+    public void testDefaultCapacity() {
+        final RecordWriter writer = Mockito.mock(RecordWriter.class, Mockito.CALLS_REAL_METHODS);
+        Mockito.doReturn(true).when(writer).write(Mockito.any(byte[].class));
+        final byte[] record = new byte[] {'a'};
+        Assert.assertTrue(writer.awaitCapacity(0));
+        Assert.assertTrue(writer.tryWrite(record, 0));
+        Mockito.verify(writer).write(record);
+        final Runnable callback = Mockito.mock(Runnable.class);
+        writer.onCapacityAvailable(callback);
+        Mockito.verify(callback).run();
+
+        Mockito.doReturn(false).when(writer).awaitCapacity(0);
+        Assert.assertFalse(writer.tryWrite(new byte[] {'b'}, 0));
+        Mockito.verify(writer, Mockito.times(1)).write(Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void testCompressionBacklog() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(2L).when(delegate).getCompressionBacklogFiles();
+        Mockito.doReturn(3L).when(delegate).getCompressionBacklogBytes();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .build();
+        Assert.assertEquals(2, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(3, writer.getCompressionBacklogBytes());
+        writer.close();
+    }
+
+    @Test
+    public void testAdaptiveQueue() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .setMaxQueueBytes(1000)
+                .setAdaptiveQueue(true)
+                .setDropWhenQueueFull(true)
+                .build();
+        final byte[] record = new byte[10];
+
+        // NOTE: Nothing has been drained so the queue stays at its initial limit
+        writer.write(record);
+        delegate.awaitBlocked();
+        writer.write(record);
+        writer.write(record);
+        writer.write(record);
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertEquals(2, writer.getQueueCapacity());
+
+        delegate.release();
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(writer.tryWrite(record, TimeUnit.SECONDS.toNanos(10)));
+        }
+        sleep(250);
+        Assert.assertEquals(0, writer.getQueueDepth());
+
+        // NOTE: Once the record size is known the queue grows up to the byte budget
+        delegate.block();
+        writer.write(record);
+        delegate.awaitBlocked();
+        int accepted = 0;
+        while (writer.tryWrite(record, 0)) {
+            ++accepted;
+        }
+        Assert.assertEquals(100, accepted);
+        Assert.assertEquals(100, writer.getQueueDepth());
+        Assert.assertEquals(100, writer.getQueueCapacity());
+        Assert.assertEquals(1, writer.getDropped());
+
+        delegate.release();
+        writer.close();
+        Assert.assertEquals(204, delegate.getRecordCount());
+    }
+
+    @Test
+    public void testAdaptiveSlots() {
+        Assert.assertEquals(AsyncRecordWriter.ADAPTIVE_MIN_SLOTS, AsyncRecordWriter.getAdaptiveSlots(1000));
+        Assert.assertEquals(4097, AsyncRecordWriter.getAdaptiveSlots(1048577));
+        Assert.assertEquals(AsyncRecordWriter.ADAPTIVE_MAX_SLOTS, AsyncRecordWriter.getAdaptiveSlots(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testMaxQueueBytes() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(16)
+                .setMaxQueueBytes(25)
+                .setDropWhenQueueFull(true)
+                .build();
+        writer.write(new byte[10]);
+        delegate.awaitBlocked();
+        writer.write(new byte[10]);
+        writer.write(new byte[10]);
+        Assert.assertTrue(writer.awaitCapacity(0));
+        Assert.assertFalse(writer.tryWrite(new byte[10], 0));
+        writer.write(new byte[10]);
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertTrue(writer.tryWrite(new byte[5], 0));
+        Assert.assertFalse(writer.awaitCapacity(0));
+        final CountDownLatch deferred = new CountDownLatch(1);
+        writer.onCapacityAvailable(deferred::countDown);
+        Assert.assertEquals(1, deferred.getCount());
+        Assert.assertEquals(3, writer.getQueueDepth());
+        Assert.assertEquals(16, writer.getQueueCapacity());
+
+        delegate.release();
+        Assert.assertTrue(deferred.await(10, TimeUnit.SECONDS));
+        writer.close();
+        Assert.assertEquals(4, delegate.getRecordCount());
+    }
+
+    @Test
+    public void testMaxQueueBytesQueueFull() throws InterruptedException {
+        final RecordingWriter delegate = new RecordingWriter();
+        delegate.block();
+        final AsyncRecordWriter writer = new AsyncRecordWriter.Builder()
+                .setDelegate(delegate)
+                .setMaxQueueSize(2)
+                .setMaxQueueBytes(1000)
+                .setDropWhenQueueFull(true)
+                .build();
+        writer.write(new byte[10]);
+        delegate.awaitBlocked();
+        writer.write(new byte[10]);
+        writer.write(new byte[10]);
+        writer.write(new byte[10]);
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertFalse(writer.awaitCapacity(0));
+
+        // NOTE: The bytes of the record rejected by the ring buffer are released
+        delegate.release();
+        Assert.assertTrue(writer.tryWrite(new byte[1000], TimeUnit.SECONDS.toNanos(10)));
+        writer.close();
+        Assert.assertEquals(4, delegate.getRecordCount());
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RecordingWriter implements RecordWriter {
+
+        @Override
+        public boolean write(final byte[] record) {
+            write(Collections.singletonList(record));
+            return true;
+        }
+
+        @Override
+        public int write(final List<byte[]> records) {
+            synchronized (this) {
+                _batches.add(new ArrayList<>(records));
+            }
+            _blocked.countDown();
+            try {
+                _release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return records.size();
+        }
+
+        @Override
+        public void awaitDurable() {
+            _durableCount = getRecordCount();
+        }
+
+        @Override
+        public void close() {
+            _closed = true;
+        }
+
+        public int getDurableCount() {
+            return _durableCount;
+        }
+
+        public void block() {
+            _blocked = new CountDownLatch(1);
+            _release = new CountDownLatch(1);
+        }
+
+        public void awaitBlocked() throws InterruptedException {
+            _blocked.await();
+        }
+
+        public void release() {
+            _release.countDown();
+        }
+
+        public boolean isClosed() {
+            return _closed;
+        }
+
+        public synchronized List<List<byte[]>> getBatches() {
+            return new ArrayList<>(_batches);
+        }
+
+        public synchronized List<Integer> getBatchSizes() {
+            final List<Integer> sizes = new ArrayList<>();
+            for (final List<byte[]> batch : _batches) {
+                sizes.add(batch.size());
+            }
+            return sizes;
+        }
+
+        public synchronized int getRecordCount() {
+            int count = 0;
+            for (final List<byte[]> batch : _batches) {
+                count += batch.size();
+            }
+            return count;
+        }
+
+        private final List<List<byte[]>> _batches = new ArrayList<>();
+        private volatile CountDownLatch _blocked = new CountDownLatch(1);
+        private volatile CountDownLatch _release = new CountDownLatch(0);
+        private volatile boolean _closed;
+        private volatile int _durableCount;
+    }
+}
@@ -19,6 +19,7 @@ import ch.qos.logback.classic.AsyncAppender;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
 import ch.qos.logback.core.encoder.Encoder;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
@@ -27,11 +28,24 @@ import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Sink;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * Tests for <code>BaseFileSink</code>.
@@ -124,11 +138,80 @@ public class BaseFileSinkTest {
                 (SizeAndRandomizedTimeBasedFNATP<ILoggingEvent>) rollingPolicy.getTimeBasedFileNamingAndTriggeringPolicy();
     }
 
+    @Test
+    public void testFileChannelBuilder() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testFileChannelBuilder/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .setImmediateFlush(true)
+                .build();
+
+        Assert.assertTrue(expectedFile.exists());
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+    }
+
+    @Test
+    public void testAsyncFileChannelBuilder() throws IOException, InterruptedException {
+        final String expectedPath = "./target/BaseFileSinkTest/testAsyncFileChannelBuilder/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Thread.sleep(500);
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+    }
+
+    @Test
+    public void testMemoryMappedBuilder() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testMemoryMappedBuilder/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.MEMORY_MAPPED)
+                .setMaxFileSize("1KB")
+                .setAsync(false)
+                .setGroupCommit(true)
+                .setBlockUntilDurable(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(1, sink.getCommitStatistics().getTotalRecords());
+        final byte[] actual = Files.readAllBytes(expectedFile.toPath());
+        Assert.assertEquals(1024, actual.length);
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(actual, 0, 4)).toString());
+        Assert.assertEquals(0, actual[4]);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFileChannelMetricsLogger() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testFileChannelMetricsLogger/"))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .build();
+        sink.getMetricsLogger();
+    }
+
     @Test
     public void testBuilderWithNull() throws IOException {
         final String expectedPath = "./";
         final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
                 .setCompress(null)
+                .setCompressionCodec(null)
+                .setStreamingCompression(null)
+                .setCompressionThreads(null)
+                .setCompressionBlockSize(null)
                 .setDirectory(null)
                 .setExtension(null)
                 .setImmediateFlush(null)
@@ -137,7 +220,26 @@ public class BaseFileSinkTest {
                 .setMaxFileSize(null)
                 .setName(null)
                 .setMaxQueueSize(null)
+                .setAdaptiveQueue(null)
+                .setMaxQueueBytes(null)
                 .setDropWhenQueueFull(null)
+                .setWaitStrategy(null)
+                .setMaxBatchSize(null)
+                .setMaxBatchBytes(null)
+                .setMaxBatchLingerInMillis(null)
+                .setGroupCommit(null)
+                .setGroupCommitIntervalInMillis(null)
+                .setGroupCommitBytes(null)
+                .setBlockUntilDurable(null)
+                .setWriterEngine(null)
+                .setShards(null)
+                .setShardDirectories(null)
+                .setShardSelection(null)
+                .setThreadBufferSize(null)
+                .setThreadBufferLingerInMillis(null)
+                .setJmxEnabled(null)
+                .setStatisticsListener(null)
+                .setStatisticsIntervalInMillis(null)
                 .build();
 
         final AsyncAppender asyncAppender = (AsyncAppender)
@@ -187,6 +289,544 @@ public class BaseFileSinkTest {
         Assert.assertTrue(sink instanceof WarningSink);
     }
 
+    @Test
+    public void testBuilderWithInvalidBatch() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testBuilderWithInvalidBatch/";
+        final Sink sink = new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setMaxBatchSize(0)
+                .setMaxBatchBytes(0)
+                .setMaxBatchLingerInMillis(-1L)
+                .build();
+
+        Assert.assertNotNull(sink);
+        Assert.assertTrue(sink instanceof WarningSink);
+    }
+
+    @Test
+    public void testGroupCommitBuilder() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testGroupCommitBuilder/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setGroupCommit(true)
+                .setGroupCommitIntervalInMillis(10L)
+                .setBlockUntilDurable(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals(1, sink.getCommitStatistics().getTotalRecords());
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+    }
+
+    @Test
+    public void testGroupCommitStatisticsLogback() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testGroupCommitStatisticsLogback/"))
+                .build();
+        Assert.assertEquals(0, sink.getCommitStatistics().getCommits());
+    }
+
+    @Test
+    public void testBuilderWithInvalidGroupCommit() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testBuilderWithInvalidGroupCommit/";
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setGroupCommit(true)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setBlockUntilDurable(true)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setGroupCommitIntervalInMillis(0L)
+                .setGroupCommitBytes(0L)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testBuilderWithInvalidCompression() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testBuilderWithInvalidCompression/";
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setCompressionThreads(2)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setCompressionThreads(0)
+                .setCompressionBlockSize(0)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testBuilderWithInvalidCompressionCodec() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testBuilderWithInvalidCompressionCodec/";
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setCompressionCodec(new GzipCompressionCodec(1))
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setCompressionCodec(new DeflateCompressionCodec(1, null))
+                .setCompressionThreads(2)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testCompressionCodec() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testCompressionCodec/";
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setCompress(false)
+                .setCompressionCodec(new GzipCompressionCodec(1))
+                .build() instanceof TestFileSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setCompressionCodec(new DeflateCompressionCodec(1, null))
+                .build() instanceof TestFileSink);
+    }
+
+    @Test
+    public void testBuilderWithInvalidStreamingCompression() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testBuilderWithInvalidStreamingCompression/";
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.MEMORY_MAPPED)
+                .setStreamingCompression(true)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setCompressionCodec(new DeflateCompressionCodec(1, null))
+                .setStreamingCompression(true)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testStreamingCompression() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testStreamingCompression/";
+        final File expectedFile = new File(expectedPath + "query.log.gz");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setStreamingCompression(true)
+                .setAsync(false)
+                .setImmediateFlush(true)
+                .build();
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(expectedFile.length() > 0);
+    }
+
+    @Test
+    public void testParallelCompression() throws IOException {
+        final Sink sink = new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testParallelCompression/"))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setCompressionThreads(2)
+                .setCompressionBlockSize(65536)
+                .build();
+        Assert.assertTrue(sink instanceof TestFileSink);
+    }
+
+    @Test
+    public void testShards() throws IOException {
+        final File first = createDirectory("./target/BaseFileSinkTest/testShards/first/");
+        final File second = createDirectory("./target/BaseFileSinkTest/testShards/second/");
+        final File firstFile = new File(first, "query-0.log");
+        final File secondFile = new File(second, "query-1.log");
+        Files.deleteIfExists(firstFile.toPath());
+        Files.deleteIfExists(secondFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testShards/"))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setShards(2)
+                .setShardDirectories(Arrays.asList(first, second))
+                .setShardSelection(ShardSelection.ROUND_ROBIN)
+                .setAsync(false)
+                .setImmediateFlush(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        sink.write("bar\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(firstFile.toPath()))).toString());
+        Assert.assertEquals("bar\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(secondFile.toPath()))).toString());
+        Assert.assertEquals(2, sink.getStatistics().getRecords());
+    }
+
+    @Test
+    public void testShardsInSinkDirectory() throws IOException {
+        final File directory = createDirectory("./target/BaseFileSinkTest/testShardsInSinkDirectory/");
+        final Sink sink = new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.MEMORY_MAPPED)
+                .setMaxFileSize("1KB")
+                .setShards(3)
+                .build();
+
+        Assert.assertTrue(sink instanceof TestFileSink);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(new File(directory, "query-" + i + ".log").exists());
+        }
+        Assert.assertFalse(new File(directory, "query.log").exists());
+    }
+
+    @Test
+    public void testBuilderWithInvalidShards() throws IOException {
+        final File directory = createDirectory("./target/BaseFileSinkTest/testBuilderWithInvalidShards/");
+        final File file = new File(directory, "file");
+        Files.deleteIfExists(file.toPath());
+        Files.createFile(file.toPath());
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setShards(0)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setShards(2)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setShards(2)
+                .setShardDirectories(Collections.emptyList())
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setShards(2)
+                .setShardDirectories(Arrays.asList(directory, file))
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testAdaptiveQueue() throws IOException, InterruptedException {
+        final String expectedPath = "./target/BaseFileSinkTest/testAdaptiveQueue/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setMaxQueueSize(2)
+                .setAdaptiveQueue(true)
+                .setMaxQueueBytes(1024L)
+                .setImmediateFlush(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        sink.write("bar\n".getBytes(StandardCharsets.UTF_8));
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (expectedFile.length() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(
+                "foo\nbar\n",
+                StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+        Assert.assertEquals(2, sink.getStatistics().getQueueCapacity());
+    }
+
+    @Test
+    public void testBuilderWithInvalidAdaptiveQueue() throws IOException {
+        final File directory = createDirectory("./target/BaseFileSinkTest/testBuilderWithInvalidAdaptiveQueue/");
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setMaxQueueBytes(0L)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAdaptiveQueue(true)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setAdaptiveQueue(true)
+                .setMaxQueueBytes(1024L)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAdaptiveQueue(true)
+                .setMaxQueueBytes(8L << 30)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testThreadBuffers() throws IOException, InterruptedException {
+        final String expectedPath = "./target/BaseFileSinkTest/testThreadBuffers/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setThreadBufferSize(1024)
+                .setThreadBufferLingerInMillis(10L)
+                .setAsync(false)
+                .setImmediateFlush(true)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        sink.write("bar\n".getBytes(StandardCharsets.UTF_8));
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (expectedFile.length() < 8 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(
+                "foo\nbar\n",
+                StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+        Assert.assertEquals(2, sink.getStatistics().getRecords());
+    }
+
+    @Test
+    public void testBuilderWithInvalidThreadBuffers() throws IOException {
+        final File directory = createDirectory("./target/BaseFileSinkTest/testBuilderWithInvalidThreadBuffers/");
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setThreadBufferSize(-1)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setThreadBufferSize(65536)
+                .build() instanceof WarningSink);
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(directory)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setThreadBufferLingerInMillis(0L)
+                .build() instanceof WarningSink);
+    }
+
+    @Test
+    public void testStatistics() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testStatistics/"))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .build();
+
+        sink.recordSerialization(100);
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        sink.recordWrite(200, 3);
+        final SinkStatistics statistics = sink.getStatistics();
+        Assert.assertEquals(2, statistics.getRecords());
+        Assert.assertEquals(7, statistics.getBytes());
+        Assert.assertEquals(0, statistics.getDropped());
+        Assert.assertEquals(0, statistics.getQueueDepth());
+        Assert.assertEquals(0, statistics.getQueueCapacity());
+        Assert.assertEquals(1, statistics.getSerializationLatency().getCount());
+        Assert.assertEquals(100, statistics.getSerializationLatency().getMaxInNanos());
+        Assert.assertEquals(2, statistics.getWriteLatency().getCount());
+    }
+
+    @Test
+    public void testStatisticsLogback() throws IOException {
+        final TestFileSink asyncSink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testStatisticsLogback/"))
+                .setMaxQueueSize(1000)
+                .build();
+        Assert.assertEquals(1000, asyncSink.getStatistics().getQueueCapacity());
+        Assert.assertEquals(0, asyncSink.getStatistics().getDropped());
+        Assert.assertEquals(0, asyncSink.getStatistics().getQueueDepth());
+
+        final TestFileSink syncSink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testStatisticsLogback/"))
+                .setName("sync")
+                .setAsync(false)
+                .build();
+        Assert.assertEquals(0, syncSink.getStatistics().getQueueCapacity());
+        Assert.assertEquals(0, syncSink.getStatistics().getDropped());
+        Assert.assertEquals(0, syncSink.getStatistics().getQueueDepth());
+    }
+
+    @Test
+    public void testTryWrite() throws IOException {
+        final String expectedPath = "./target/BaseFileSinkTest/testTryWrite/";
+        final File expectedFile = new File(expectedPath + "query.log");
+        Files.deleteIfExists(expectedFile.toPath());
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .setGroupCommit(true)
+                .setBlockUntilDurable(true)
+                .build();
+
+        Assert.assertTrue(sink.awaitCapacity(0));
+        Assert.assertTrue(sink.tryWrite("foo\n".getBytes(StandardCharsets.UTF_8), 0));
+        Assert.assertEquals(1, sink.getCommitStatistics().getTotalRecords());
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(expectedFile.toPath()))).toString());
+        final Runnable callback = Mockito.mock(Runnable.class);
+        sink.onCapacityAvailable(callback);
+        Mockito.verify(callback).run();
+    }
+
+    @Test
+    public void testTryRecordLogback() throws IOException, InterruptedException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testTryRecordLogback/"))
+                .setMaxQueueSize(10)
+                .build();
+        final Event event = Mockito.mock(Event.class);
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(event));
+        Assert.assertTrue(sink.tryWrite("foo\n".getBytes(StandardCharsets.UTF_8), 0));
+
+        // NOTE: A discarding threshold above the queue size leaves no usable capacity
+        final AsyncAppender asyncAppender = (AsyncAppender)
+                sink.getMetricsLogger().getAppender("query-log-async");
+        asyncAppender.setDiscardingThreshold(11);
+        Assert.assertEquals(RecordOutcome.REJECTED, sink.tryRecord(event));
+        Assert.assertEquals(RecordOutcome.REJECTED, sink.tryRecord(event, 1, TimeUnit.MILLISECONDS));
+        Assert.assertFalse(sink.tryWrite("bar\n".getBytes(StandardCharsets.UTF_8), 0));
+        final CountDownLatch latch = new CountDownLatch(1);
+        sink.onCapacityAvailable(latch::countDown);
+        Assert.assertEquals(1, latch.getCount());
+
+        asyncAppender.setDiscardingThreshold(0);
+        sink.record(event);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        final CountDownLatch immediate = new CountDownLatch(1);
+        sink.onCapacityAvailable(immediate::countDown);
+        Assert.assertEquals(0, immediate.getCount());
+        Assert.assertEquals(0, sink.getStatistics().getDropped());
+    }
+
+    @Test
+    public void testMaxQueueBytesLogback() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testMaxQueueBytesLogback/"))
+                .setMaxQueueBytes(1024L)
+                .build();
+
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(sink.tryWrite("bar\n".getBytes(StandardCharsets.UTF_8), 0));
+        Assert.assertTrue(sink.awaitCapacity(TimeUnit.SECONDS.toNanos(10)));
+        Assert.assertEquals(2, sink.getStatistics().getRecords());
+        Assert.assertEquals(0, sink.getStatistics().getDropped());
+
+        final Sink syncSink = new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testMaxQueueBytesLogbackSync/"))
+                .setMaxQueueBytes(1024L)
+                .setAsync(false)
+                .build();
+        Assert.assertTrue(syncSink instanceof TestFileSink);
+    }
+
+    @Test
+    public void testMaxQueueBytesLogbackStoppedAppender() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testMaxQueueBytesLogbackStoppedAppender/"))
+                .setMaxQueueBytes(16L)
+                .setDropWhenQueueFull(true)
+                .build();
+        final AsyncAppender asyncAppender = (AsyncAppender)
+                sink.getMetricsLogger().getAppender("query-log-async");
+        // NOTE: Logback stops an output stream appender which failed to write
+        asyncAppender.getAppender("query-log").stop();
+
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(sink.awaitCapacity(TimeUnit.SECONDS.toNanos(10)));
+            sink.write("foobar\n".getBytes(StandardCharsets.UTF_8));
+        }
+        Assert.assertTrue(sink.awaitCapacity(TimeUnit.SECONDS.toNanos(10)));
+        Assert.assertEquals(0, sink.getStatistics().getDropped());
+    }
+
+    @Test
+    public void testTryRecordLogbackSync() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testTryRecordLogbackSync/"))
+                .setAsync(false)
+                .build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(Mockito.mock(Event.class), 1, TimeUnit.SECONDS));
+        final Runnable callback = Mockito.mock(Runnable.class);
+        sink.onCapacityAvailable(callback);
+        Mockito.verify(callback).run();
+    }
+
+    @Test
+    public void testTryRecordSampled() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testTryRecordSampled/"))
+                .setSampler(new EventSampler(0.5, null, 0, System::nanoTime, () -> 0.75))
+                .build();
+        Assert.assertEquals(RecordOutcome.DROPPED, sink.tryRecord(Mockito.mock(Event.class)));
+    }
+
+    @Test
+    public void testGetEncodedBytes() {
+        final int separator = CoreConstants.LINE_SEPARATOR.length();
+        Assert.assertEquals(separator, BaseFileSink.getEncodedBytes(""));
+        for (final String record : new String[] {"foo", "\u00e9t\u00e9", "\u20ac", "\ud83d\ude00", "\ud83d", "a\ude00b"}) {
+            Assert.assertEquals(
+                    (record + CoreConstants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8).length,
+                    BaseFileSink.getEncodedBytes(record));
+        }
+    }
+
+    @Test
+    public void testStatisticsJmx() throws IOException, JMException {
+        final String expectedPath = "./target/BaseFileSinkTest/testStatisticsJmx/";
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .setJmxEnabled(true)
+                .build();
+        sink.write("foo\n".getBytes(StandardCharsets.UTF_8));
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(
+                "com.arpnetworking.metrics.impl:type=TestFileSink,name=" + ObjectName.quote(expectedPath + "query.log"));
+        Assert.assertEquals(1L, server.getAttribute(name, "Records"));
+        Assert.assertEquals(4L, server.getAttribute(name, "Bytes"));
+
+        // A second sink for the same file cannot register but is still created
+        final Sink duplicate = new TestFileSink.Builder()
+                .setDirectory(createDirectory(expectedPath))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .setJmxEnabled(true)
+                .build();
+        Assert.assertTrue(duplicate instanceof TestFileSink);
+        server.unregisterMBean(name);
+    }
+
+    @Test
+    public void testStatisticsListener() throws IOException, InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testStatisticsListener/"))
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setAsync(false)
+                .setStatisticsIntervalInMillis(10L)
+                .setStatisticsListener(statistics -> {
+                    if (calls.incrementAndGet() == 1) {
+                        throw new IllegalStateException("Failure does not cancel reports");
+                    }
+                    latch.countDown();
+                })
+                .build();
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBuilderWithInvalidStatisticsInterval() throws IOException {
+        Assert.assertTrue(new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testBuilderWithInvalidStatisticsInterval/"))
+                .setStatisticsIntervalInMillis(0L)
+                .build() instanceof WarningSink);
+    }
+
     @Test
     public void testBuilderEmptyDirectory() throws IOException {
         final String expectedPath = "";
@@ -201,10 +841,41 @@ public class BaseFileSinkTest {
     @Test
     public void testShutdownHookThread() throws InterruptedException {
         final LoggerContext context = Mockito.mock(LoggerContext.class);
-        final Thread shutdownThread = new TestFileSink.ShutdownHookThread(context);
+        final Runnable onShutdown = Mockito.mock(Runnable.class);
+        final Runnable onClose = Mockito.mock(Runnable.class);
+        final Thread shutdownThread = new TestFileSink.ShutdownHookThread(onShutdown, new LogbackRecordWriter(context), onClose);
         shutdownThread.start();
         shutdownThread.join();
-        Mockito.verify(context).stop();
+        final InOrder inOrder = Mockito.inOrder(onShutdown, context, onClose);
+        inOrder.verify(onShutdown).run();
+        inOrder.verify(context).stop();
+        inOrder.verify(onClose).run();
+    }
+
+    @Test
+    public void testShutdownHookThreadDrainsThreadBuffers() throws InterruptedException {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, TimeUnit.HOURS.toMillis(1));
+        writer.write(new byte[] {'a'});
+        final Thread shutdownThread = new TestFileSink.ShutdownHookThread(
+                () -> writer.write(new byte[] {'b'}),
+                writer,
+                () -> { });
+        shutdownThread.start();
+        shutdownThread.join();
+        final InOrder inOrder = Mockito.inOrder(delegate);
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(new byte[] {'a'}));
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(new byte[] {'b'}));
+        inOrder.verify(delegate).close();
+    }
+
+    @Test
+    public void testOnShutdown() throws IOException {
+        final TestFileSink sink = (TestFileSink) new TestFileSink.Builder()
+                .setDirectory(createDirectory("./target/BaseFileSinkTest/testOnShutdown"))
+                .build();
+        sink.onShutdown();
+        Assert.assertEquals(0, sink.getStatistics().getRecords());
     }
 
     private static File createDirectory(final String path) throws IOException {
@@ -220,6 +891,11 @@ public class BaseFileSinkTest {
             getMetricsLogger().info(event.toString());
         }
 
+        @Override
+        protected RecordOutcome tryRecordSampled(final Event event, final long timeoutInNanos) {
+            return tryLog(null, event.toString(), null, timeoutInNanos) ? RecordOutcome.ACCEPTED : RecordOutcome.REJECTED;
+        }
+
         private static Encoder<ILoggingEvent> createEncoder(final boolean immediateFlush) {
             final PatternLayoutEncoder encoder = new PatternLayoutEncoder();
             encoder.setPattern("%msg%n");
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests for <code>BinaryDictionary</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryDictionaryTest {
+
+    @Test
+    public void testLookup() {
+        final BinaryDictionary dictionary = new BinaryDictionary(2);
+        Assert.assertEquals(0, dictionary.lookup("foo"));
+        Assert.assertEquals(1, dictionary.lookup("bar"));
+        Assert.assertEquals(0, dictionary.lookup("foo"));
+        Assert.assertEquals(-1, dictionary.lookup("baz"));
+        Assert.assertEquals(1, dictionary.lookup("bar"));
+        Assert.assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    public void testLookupConcurrentlyAssigned() throws InterruptedException {
+        final BinaryDictionary dictionary = new BinaryDictionary(10);
+        final int[] result = new int[1];
+        final Thread thread = new Thread(() -> result[0] = dictionary.lookup("foo"));
+        synchronized (dictionary) {
+            thread.start();
+            while (thread.getState() != Thread.State.BLOCKED) {
+                Thread.yield();
+            }
+            Assert.assertEquals(0, dictionary.lookup("foo"));
+        }
+        thread.join();
+        Assert.assertEquals(0, result[0]);
+        Assert.assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void testDefine() {
+        final BinaryDictionary dictionary = new BinaryDictionary(10);
+        dictionary.lookup("foo");
+        dictionary.lookup("bar");
+        final FileDictionary file = dictionary.createFileDictionary();
+        final int first = BinaryFormat.STATIC_STRINGS.size();
+        Assert.assertEquals(0, file.define(bytes(0x01, BinaryFormat.EVENT_RECORD)).length);
+        Assert.assertArrayEquals(
+                bytes(0x07, BinaryFormat.DICTIONARY_RECORD, first, 0x01, 0x08, 'f', 'o', 'o'),
+                file.define(bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x01)));
+        Assert.assertEquals(0, file.define(bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x01)).length);
+        Assert.assertArrayEquals(
+                bytes(0x07, BinaryFormat.DICTIONARY_RECORD, first + 1, 0x01, 0x08, 'b', 'a', 'r'),
+                file.define(bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x02)));
+        Assert.assertEquals(0, file.define(bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x00)).length);
+
+        file.reset();
+        Assert.assertArrayEquals(
+                bytes(0x0B, BinaryFormat.DICTIONARY_RECORD, first, 0x02, 0x08, 'f', 'o', 'o', 0x08, 'b', 'a', 'r'),
+                file.define(bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x02)));
+    }
+
+    @Test
+    public void testDefineLongRecord() {
+        final BinaryDictionary dictionary = new BinaryDictionary(10);
+        dictionary.lookup("foo");
+        final FileDictionary file = dictionary.createFileDictionary();
+        final byte[] record = new byte[2 + 200];
+        record[0] = (byte) 0xC8;
+        record[1] = 0x01;
+        record[2] = BinaryFormat.DICTIONARY_EVENT_RECORD;
+        record[6] = 0x01;
+        Assert.assertArrayEquals(
+                bytes(0x07, BinaryFormat.DICTIONARY_RECORD, BinaryFormat.STATIC_STRINGS.size(), 0x01, 0x08, 'f', 'o', 'o'),
+                file.define(record));
+        Assert.assertEquals(0, file.define(Arrays.copyOf(record, record.length)).length);
+    }
+
+    @Test
+    public void testFileDictionariesDefineIndependently() {
+        final BinaryDictionary dictionary = new BinaryDictionary(10);
+        dictionary.lookup("foo");
+        final FileDictionary first = dictionary.createFileDictionary();
+        final FileDictionary second = dictionary.createFileDictionary();
+        final byte[] record = bytes(0x05, BinaryFormat.DICTIONARY_EVENT_RECORD, 0x00, 0x00, 0x00, 0x01);
+        final byte[] definitions = bytes(
+                0x07, BinaryFormat.DICTIONARY_RECORD, BinaryFormat.STATIC_STRINGS.size(), 0x01, 0x08, 'f', 'o', 'o');
+        Assert.assertArrayEquals(definitions, first.define(record));
+        Assert.assertEquals(0, first.define(record).length);
+        Assert.assertArrayEquals(definitions, second.define(record));
+        Assert.assertEquals(0, second.define(record).length);
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.core.CoreConstants;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for <code>BinaryEventConverter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryEventConverterTest {
+
+    @Test
+    public void testConvert() throws IOException {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "123");
+        annotations.put("_host", "host.example.com");
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "timer",
+                Arrays.asList(
+                        TsdQuantity.newInstance(12L, Units.MILLISECOND),
+                        TsdQuantity.newInstance(1.5, Units.SECOND)));
+        final Map<String, List<Quantity>> counters = Collections.singletonMap(
+                "counter",
+                Collections.singletonList(TsdQuantity.newInstance(1L, null)));
+        final Event event = new TsdEvent(annotations, timers, counters, Collections.emptyMap());
+
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        final byte[] record = ENCODER.encode(event);
+        binary.write(record, 0, record.length);
+        binary.write(record, 0, record.length);
+
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        Assert.assertEquals(2, BinaryEventConverter.convert(new ByteArrayInputStream(binary.toByteArray()), json));
+        final String expected = "{\"version\":\"2f\","
+                + "\"annotations\":{\"_id\":\"123\",\"_host\":\"host.example.com\"},"
+                + "\"counters\":{\"counter\":{\"values\":[{\"value\":1}]}},"
+                + "\"timers\":{\"timer\":{\"values\":["
+                + "{\"value\":12,\"unitNumerators\":[\"millisecond\"]},"
+                + "{\"value\":1.5,\"unitNumerators\":[\"second\"]}]}}}"
+                + CoreConstants.LINE_SEPARATOR;
+        Assert.assertEquals(expected + expected, StandardCharsets.UTF_8.decode(ByteBuffer.wrap(json.toByteArray())).toString());
+    }
+
+    @Test
+    public void testConvertEmpty() throws IOException {
+        final ByteArrayOutputStream json = new ByteArrayOutputStream();
+        Assert.assertEquals(0, BinaryEventConverter.convert(new ByteArrayInputStream(new byte[0]), json));
+        Assert.assertEquals(0, json.size());
+    }
+
+    private static final BinaryEventEncoder ENCODER = new BinaryEventEncoder(new UnitCache(10));
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for <code>BinaryEventEncoder</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryEventEncoderTest {
+
+    @Test
+    public void testEmptyEvent() {
+        Assert.assertArrayEquals(
+                bytes(0x05, 0x01, 0x00, 0x00, 0x00, 0x00),
+                ENCODER.encode(new TsdEvent(
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.emptyMap())));
+    }
+
+    @Test
+    public void testEvent() {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "a");
+        annotations.put("x", null);
+        final Map<String, List<Quantity>> counters = Collections.singletonMap(
+                "c",
+                Collections.singletonList(TsdQuantity.newInstance(1L, Units.SECOND)));
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "g",
+                Collections.singletonList(TsdQuantity.newInstance(-1, null)));
+        Assert.assertArrayEquals(
+                bytes(
+                        0x18,
+                        0x01,
+                        0x02, 0x01, 0x04, 'a', 0x04, 'x', 0x00,
+                        0x01, 0x04, 'c', 0x01, 0x09, 0x02, 0x01, 0x13, 0x00,
+                        0x01, 0x04, 'g', 0x01, 0x01, 0x01,
+                        0x00),
+                ENCODER.encode(new TsdEvent(annotations, Collections.emptyMap(), counters, gauges)));
+    }
+
+    @Test
+    public void testValues() {
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "t",
+                Arrays.asList(
+                        TsdQuantity.newInstance(1.5, null),
+                        TsdQuantity.newInstance(2.5f, null),
+                        TsdQuantity.newInstance(new BigDecimal("1.25E+3"), null),
+                        Mockito.mock(Quantity.class),
+                        TsdQuantity.newInstance((short) 3, Mockito.mock(CompoundUnit.class)),
+                        TsdQuantity.newInstance((byte) -3, null)));
+        Assert.assertArrayEquals(
+                bytes(
+                        0x24,
+                        0x01,
+                        0x00,
+                        0x00,
+                        0x00,
+                        0x01, 0x04, 't', 0x06,
+                        0x02, 0x3F, 0xF8, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+                        0x03, 0x40, 0x20, 0x00, 0x00,
+                        0x04, 0x10, '1', '.', '2', '5', 'E', '+', '3',
+                        0x00,
+                        0x01, 0x06,
+                        0x01, 0x05),
+                ENCODER.encode(new TsdEvent(Collections.emptyMap(), timers, Collections.emptyMap(), Collections.emptyMap())));
+    }
+
+    @Test
+    public void testLargeRecord() {
+        final char[] value = new char[1000];
+        Arrays.fill(value, 'v');
+        final byte[] record = ENCODER.encode(new TsdEvent(
+                Collections.singletonMap("_host", String.valueOf(value)),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap()));
+        // NOTE: The body is the type, count, key, two byte tag, value and three metric counts
+        final int length = 1 + 1 + 1 + 2 + 1000 + 3;
+        Assert.assertEquals(2 + length, record.length);
+        Assert.assertEquals((length & 0x7F) | 0x80, record[0] & 0xFF);
+        Assert.assertEquals(length >>> 7, record[1]);
+        Assert.assertEquals(0x07, record[4]);
+        Assert.assertEquals('v', record[record.length - 4]);
+    }
+
+    @Test
+    public void testDictionary() {
+        final BinaryEventEncoder encoder = new BinaryEventEncoder(new UnitCache(10), new BinaryDictionary(1));
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "a");
+        annotations.put("x", "y");
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "g",
+                Collections.singletonList(TsdQuantity.newInstance(-1, null)));
+        Assert.assertArrayEquals(
+                bytes(
+                        0x14,
+                        0x03, 0x00, 0x00, 0x00, 0x01,
+                        0x02, 0x01, 0x04, 'a', (BinaryFormat.STATIC_STRINGS.size() << 1) | 1, 0x04, 'y',
+                        0x00,
+                        0x01, 0x04, 'g', 0x01, 0x01, 0x01,
+                        0x00),
+                encoder.encode(new TsdEvent(annotations, Collections.emptyMap(), Collections.emptyMap(), gauges)));
+        Assert.assertArrayEquals(
+                bytes(0x0C, 0x03, 0x00, 0x00, 0x00, 0x00, 0x01, 0x01, 0x04, 'a', 0x00, 0x00, 0x00),
+                encoder.encode(new TsdEvent(
+                        Collections.singletonMap("_id", "a"),
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.emptyMap())));
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static final BinaryEventEncoder ENCODER = new BinaryEventEncoder(new UnitCache(10));
+}
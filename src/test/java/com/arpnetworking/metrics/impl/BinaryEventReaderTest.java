@@ -0,0 +1,318 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for <code>BinaryEventReader</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryEventReaderTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final Event event = createEvent();
+        final Event empty = new TsdEvent(
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+        try (BinaryEventReader reader = new BinaryEventReader(stream(ENCODER.encode(event), ENCODER.encode(empty)))) {
+            final Event decoded = reader.read();
+            Assert.assertEquals(toJson(event), toJson(decoded));
+            Assert.assertEquals(event.getAnnotations(), decoded.getAnnotations());
+            Assert.assertEquals(toJson(empty), toJson(reader.read()));
+            Assert.assertNull(reader.read());
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testDecodedValues() throws IOException {
+        final Event decoded = new BinaryEventReader(stream(ENCODER.encode(createEvent()))).read();
+        final List<Quantity> timers = decoded.getTimerSamples().get("timerA");
+        Assert.assertEquals(Long.valueOf(3), timers.get(0).getValue());
+        Assert.assertSame(Units.MILLISECOND, timers.get(0).getUnit());
+        Assert.assertEquals(Long.valueOf(-5), timers.get(2).getValue());
+        final Number text = timers.get(3).getValue();
+        Assert.assertEquals("1.25E+3", text.toString());
+        Assert.assertEquals(1250, text.intValue());
+        Assert.assertEquals(1250L, text.longValue());
+        Assert.assertEquals(1250f, text.floatValue(), 0.0f);
+        Assert.assertEquals(1250d, text.doubleValue(), 0.0);
+        Assert.assertNull(timers.get(6).getValue());
+        Assert.assertNull(timers.get(6).getUnit());
+
+        final List<Quantity> gauges = decoded.getGaugeSamples().get("gaugeA");
+        Assert.assertEquals(Double.valueOf(1.5), gauges.get(0).getValue());
+        Assert.assertEquals(Float.valueOf(2.5f), gauges.get(3).getValue());
+        final Unit compoundUnit = gauges.get(0).getUnit();
+        Assert.assertTrue(compoundUnit instanceof CompoundUnit);
+        Assert.assertEquals(
+                Collections.singletonList(Units.KILOBYTE),
+                ((CompoundUnit) compoundUnit).getNumeratorUnits());
+        Assert.assertEquals(
+                Collections.singletonList(Units.SECOND),
+                ((CompoundUnit) compoundUnit).getDenominatorUnits());
+        Assert.assertEquals("widget", gauges.get(1).getUnit().getName());
+        Assert.assertEquals("NamedUnit{Name=widget}", gauges.get(1).getUnit().toString());
+        Assert.assertNull(gauges.get(2).getUnit());
+    }
+
+    @Test
+    public void testLargeRecord() throws IOException {
+        final char[] value = new char[1000];
+        Arrays.fill(value, 'v');
+        final Event event = new TsdEvent(
+                Collections.singletonMap("_host", String.valueOf(value)),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+        final BinaryEventReader reader = new BinaryEventReader(stream(ENCODER.encode(event), ENCODER.encode(event)));
+        Assert.assertEquals(event.getAnnotations(), reader.read().getAnnotations());
+        Assert.assertEquals(event.getAnnotations(), reader.read().getAnnotations());
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final BinaryDictionary dictionary = new BinaryDictionary(100);
+        final BinaryEventEncoder encoder = new BinaryEventEncoder(new UnitCache(10), dictionary);
+        final Event event = createEvent();
+        final byte[] first = encoder.encode(event);
+        final byte[] second = encoder.encode(event);
+        final BinaryEventReader reader = new BinaryEventReader(stream(dictionary.createFileDictionary().define(first), first, second));
+        Assert.assertEquals(toJson(event), toJson(reader.read()));
+        Assert.assertEquals(toJson(event), toJson(reader.read()));
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testDictionaryRedefinition() throws IOException {
+        final int index = BinaryFormat.STATIC_STRINGS.size();
+        final BinaryEventReader reader = new BinaryEventReader(stream(
+                bytes(0x07, 0x02, index, 0x01, 0x08, 'f', 'o', 'o'),
+                bytes(0x07, 0x02, index, 0x01, 0x08, 'b', 'a', 'r'),
+                bytes(0x0B, 0x03, 0x00, 0x00, 0x00, 0x01, 0x01, (index << 1) | 1, 0x01, 0x00, 0x00, 0x00)));
+        Assert.assertEquals(Collections.singletonMap("bar", "_id"), reader.read().getAnnotations());
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testInvalidDictionaryDefinition() {
+        assertMalformed("Invalid dictionary definition; index=0", bytes(0x03, 0x02, 0x00, 0x00));
+        final int index = BinaryFormat.STATIC_STRINGS.size() + 1;
+        assertMalformed(
+                String.format("Invalid dictionary definition; index=%d", index),
+                bytes(0x03, 0x02, index, 0x00));
+    }
+
+    @Test
+    public void testDictionaryTrailingBytes() {
+        assertMalformed(
+                "Trailing bytes in record; bytes=1",
+                bytes(0x04, 0x02, BinaryFormat.STATIC_STRINGS.size(), 0x00, 0x00));
+    }
+
+    @Test
+    public void testUnknownDictionaryReference() {
+        final int index = BinaryFormat.STATIC_STRINGS.size();
+        assertMalformed(
+                String.format("Unknown string reference; index=%d", index),
+                bytes(0x08, 0x03, 0x00, 0x00, 0x00, 0x01, 0x01, (index << 1) | 1, 0x00));
+    }
+
+    @Test
+    public void testEndOfRecords() throws IOException {
+        final BinaryEventReader reader = new BinaryEventReader(stream(bytes(0x00, 0x00, 0x00)));
+        Assert.assertNull(reader.read());
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        final InputStream inputStream = Mockito.mock(InputStream.class);
+        new BinaryEventReader(inputStream).close();
+        Mockito.verify(inputStream).close();
+    }
+
+    @Test
+    public void testTruncatedLength() {
+        assertMalformed("Truncated record length", bytes(0x80));
+    }
+
+    @Test
+    public void testMalformedLength() {
+        assertMalformed("Malformed record length", bytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF));
+    }
+
+    @Test
+    public void testInvalidLength() {
+        assertMalformed("Invalid record length; length=4294967296", bytes(0x80, 0x80, 0x80, 0x80, 0x10));
+    }
+
+    @Test
+    public void testTruncatedRecord() {
+        assertMalformed("Truncated record; expected=5, actual=2", bytes(0x05, 0x01, 0x00));
+    }
+
+    @Test
+    public void testUnknownRecordType() {
+        assertMalformed("Unknown record type; type=4", bytes(0x01, 0x04));
+    }
+
+    @Test
+    public void testTrailingBytes() {
+        assertMalformed("Trailing bytes in record; bytes=1", bytes(0x06, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00));
+    }
+
+    @Test
+    public void testTruncatedBody() {
+        assertMalformed("Truncated record", bytes(0x01, 0x01));
+    }
+
+    @Test
+    public void testInvalidCount() {
+        assertMalformed("Invalid count; count=2", bytes(0x03, 0x01, 0x02, 0x00));
+    }
+
+    @Test
+    public void testMalformedVarint() {
+        assertMalformed(
+                "Malformed varint",
+                bytes(0x0B, 0x01, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF));
+    }
+
+    @Test
+    public void testUnknownStringReference() {
+        assertMalformed("Unknown string reference; index=100", bytes(0x05, 0x01, 0x01, 0xC9, 0x01, 0x00));
+    }
+
+    @Test
+    public void testTruncatedString() {
+        assertMalformed("Truncated string; length=3", bytes(0x05, 0x01, 0x01, 0x08, 'a', 'b'));
+    }
+
+    @Test
+    public void testUnknownSampleType() {
+        assertMalformed("Unknown sample type; header=7", bytes(0x07, 0x01, 0x00, 0x01, 0x04, 'c', 0x01, 0x07));
+    }
+
+    @Test
+    public void testMissingSampleValue() {
+        assertMalformed("Missing sample value", bytes(0x08, 0x01, 0x00, 0x01, 0x04, 'c', 0x01, 0x04, 0x00));
+    }
+
+    private static void assertMalformed(final String message, final byte[] bytes) {
+        try {
+            new BinaryEventReader(stream(bytes)).read();
+            Assert.fail("Expected exception not thrown");
+        } catch (final IOException e) {
+            Assert.assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static Event createEvent() {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "123");
+        annotations.put("escaped", "a\"b\\c\n\u0001é/");
+        annotations.put("null", null);
+        final Unit widget = Mockito.mock(Unit.class);
+        Mockito.doReturn("widget").when(widget).getName();
+
+        final Map<String, List<Quantity>> counters = new LinkedHashMap<>();
+        counters.put("counterA", Arrays.asList(
+                TsdQuantity.newInstance(1L, null),
+                TsdQuantity.newInstance(Long.MIN_VALUE, Units.BYTE),
+                TsdQuantity.newInstance(Long.MAX_VALUE, Units.BYTES_PER_SECOND)));
+        counters.put("counter\"B", Collections.emptyList());
+        final Map<String, List<Quantity>> gauges = new LinkedHashMap<>();
+        gauges.put("gaugeA", Arrays.asList(
+                TsdQuantity.newInstance(1.5, new TsdCompoundUnit.Builder()
+                        .addNumeratorUnit(Units.KILOBYTE)
+                        .addDenominatorUnit(Units.SECOND)
+                        .build()),
+                TsdQuantity.newInstance(Double.NaN, widget),
+                TsdQuantity.newInstance(1e-20, Mockito.mock(CompoundUnit.class)),
+                TsdQuantity.newInstance(2.5f, new TsdCompoundUnit.Builder()
+                        .addNumeratorUnit(Units.BYTE, widget, Units.KILOBIT)
+                        .addDenominatorUnit(Units.SECOND, Units.SECOND, widget)
+                        .build()),
+                TsdQuantity.newInstance(Float.POSITIVE_INFINITY, null)));
+        final Map<String, List<Quantity>> timers = new LinkedHashMap<>();
+        timers.put("timerA", Arrays.asList(
+                TsdQuantity.newInstance(3, Units.MILLISECOND),
+                TsdQuantity.newInstance((short) 4, Units.HERTZ),
+                TsdQuantity.newInstance((byte) -5, null),
+                TsdQuantity.newInstance(new BigDecimal("1.25E+3"), null),
+                TsdQuantity.newInstance(new BigInteger("123456789012345678901234567890"), null),
+                TsdQuantity.newInstance(new AtomicLong(6), null),
+                Mockito.mock(Quantity.class)));
+        return new TsdEvent(annotations, timers, counters, gauges);
+    }
+
+    private static String toJson(final Event event) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            JSON_ENCODER.encode(event, jsonGenerator);
+        }
+        return writer.toString();
+    }
+
+    private static InputStream stream(final byte[]... records) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (final byte[] record : records) {
+            outputStream.write(record, 0, record.length);
+        }
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static final BinaryEventEncoder ENCODER = new BinaryEventEncoder(new UnitCache(10));
+    private static final EventEncoder JSON_ENCODER = new EventEncoder(new UnitCache(10));
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+}
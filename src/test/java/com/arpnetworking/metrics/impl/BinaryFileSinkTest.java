@@ -0,0 +1,307 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests for <code>BinaryFileSink</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryFileSinkTest {
+
+    @Test
+    public void testFileChannel() throws IOException {
+        final File file = new File("./target/BinaryFileSinkTest/testFileChannel-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testFileChannel-Query")
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        sink.record(event);
+        sink.record(event);
+
+        assertEvents(file, event, event);
+        final CacheStatistics unitCacheStatistics = ((BinaryFileSink) sink).getUnitCacheStatistics();
+        Assert.assertTrue(unitCacheStatistics.getSize() > 0);
+        Assert.assertEquals(2, ((BinaryFileSink) sink).getStatistics().getRecords());
+    }
+
+    @Test
+    public void testLogback() throws IOException, InterruptedException {
+        final File file = new File("./target/BinaryFileSinkTest/testLogback-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testLogback-Query")
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        sink.record(event);
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        assertEvents(file, event);
+    }
+
+    @Test
+    public void testBuilderWithNullExtension() throws IOException {
+        final File file = new File("./target/BinaryFileSinkTest/testBuilderWithNullExtension-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testBuilderWithNullExtension-Query")
+                .setExtension(null)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        sink.record(createEvent());
+        Assert.assertTrue(file.exists());
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final File directory = createDirectory("./target/BinaryFileSinkTest/testDictionary");
+        for (final Path path : listFiles(directory)) {
+            Files.delete(path);
+        }
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(directory)
+                .setName("testDictionary-Query")
+                .setCompress(false)
+                .setMaxFileSize("200")
+                .setDictionary(true)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        for (int i = 0; i < 10; ++i) {
+            sink.record(event);
+        }
+
+        // NOTE: Each file carries its own definitions and decodes independently
+        final List<Path> files = listFiles(directory);
+        Assert.assertTrue(files.size() > 1);
+        int events = 0;
+        for (final Path file : files) {
+            try (BinaryEventReader reader = new BinaryEventReader(Files.newInputStream(file))) {
+                for (Event actual = reader.read(); actual != null; actual = reader.read()) {
+                    Assert.assertEquals(toJson(event), toJson(actual));
+                    ++events;
+                }
+            }
+        }
+        Assert.assertEquals(10, events);
+    }
+
+    @Test
+    public void testShardedDictionary() throws IOException {
+        final File directory = createDirectory("./target/BinaryFileSinkTest/testShardedDictionary");
+        for (final Path path : listFiles(directory)) {
+            Files.delete(path);
+        }
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(directory)
+                .setName("testShardedDictionary-Query")
+                .setShards(2)
+                .setShardSelection(ShardSelection.ROUND_ROBIN)
+                .setDictionary(true)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        sink.record(event);
+        sink.record(event);
+
+        // NOTE: Each shard defines the shared identifiers in its own file
+        assertEvents(new File(directory, "testShardedDictionary-Query-0.bin"), event);
+        assertEvents(new File(directory, "testShardedDictionary-Query-1.bin"), event);
+    }
+
+    @Test
+    public void testBuilderWithNullDictionary() throws IOException {
+        final File file = new File("./target/BinaryFileSinkTest/testBuilderWithNullDictionary-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testBuilderWithNullDictionary-Query")
+                .setDictionary(null)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        sink.record(event);
+        assertEvents(file, event);
+    }
+
+    @Test
+    public void testDictionaryWithLogback() throws IOException {
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testDictionaryWithLogback-Query")
+                .setDictionary(true)
+                .build();
+        Assert.assertTrue(sink instanceof WarningSink);
+    }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testMemoryMapped-Query")
+                .setWriterEngine(WriterEngine.MEMORY_MAPPED)
+                .build();
+        Assert.assertTrue(sink instanceof WarningSink);
+    }
+
+    @Test
+    public void testDictionaryWithThreadBuffers() throws IOException {
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testDictionaryWithThreadBuffers-Query")
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setThreadBufferSize(65536)
+                .setDictionary(true)
+                .build();
+        Assert.assertTrue(sink instanceof WarningSink);
+    }
+
+    @Test
+    public void testSampler() throws IOException {
+        final File file = new File("./target/BinaryFileSinkTest/testSampler-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final Iterator<Double> random = Arrays.asList(0.75, 0.25).iterator();
+        final Sink sink = new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testSampler-Query")
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .setSampler(new EventSampler(0.5, null, 0, System::nanoTime, random::next))
+                .build();
+        sink.record(createEvent());
+        sink.record(createEvent());
+
+        try (BinaryEventReader reader = new BinaryEventReader(new FileInputStream(file))) {
+            Assert.assertEquals("0.5", reader.read().getAnnotations().get("_sampleRate"));
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    @Test
+    public void testTryRecord() throws IOException {
+        final File file = new File("./target/BinaryFileSinkTest/testTryRecord-Query.bin");
+        Files.deleteIfExists(file.toPath());
+        final BinaryFileSink sink = (BinaryFileSink) new BinaryFileSink.Builder()
+                .setDirectory(createDirectory("./target/BinaryFileSinkTest"))
+                .setName("testTryRecord-Query")
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setImmediateFlush(true)
+                .setAsync(false)
+                .build();
+        final Event event = createEvent();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(event));
+        assertEvents(file, event);
+
+        final BinaryFileSink spy = Mockito.spy(sink);
+        Mockito.doReturn(false).when(spy).tryWrite(Mockito.any(byte[].class), Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(event));
+        Mockito.doReturn(false).when(spy).awaitCapacity(Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(event));
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+    }
+
+    private static void assertEvents(final File file, final Event... events) throws IOException {
+        try (BinaryEventReader reader = new BinaryEventReader(new FileInputStream(file))) {
+            for (final Event event : events) {
+                Assert.assertEquals(toJson(event), toJson(reader.read()));
+            }
+            Assert.assertNull(reader.read());
+        }
+    }
+
+    private static Event createEvent() {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "123");
+        annotations.put("_service", "service");
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "timer",
+                Arrays.asList(
+                        TsdQuantity.newInstance(12L, Units.MILLISECOND),
+                        TsdQuantity.newInstance(1.5, Units.BYTES_PER_SECOND)));
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "gauge",
+                Collections.singletonList(TsdQuantity.newInstance(-2.25, null)));
+        return new TsdEvent(annotations, timers, Collections.emptyMap(), gauges);
+    }
+
+    private static String toJson(final Event event) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            JSON_ENCODER.encode(event, jsonGenerator);
+        }
+        return writer.toString();
+    }
+
+    private static List<Path> listFiles(final File directory) throws IOException {
+        try (Stream<Path> paths = Files.list(directory.toPath())) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+
+    private static File createDirectory(final String path) throws IOException {
+        final File directory = new File(path);
+        Files.createDirectories(directory.toPath());
+        return directory;
+    }
+
+    private static final EventEncoder JSON_ENCODER = new EventEncoder(new UnitCache(10));
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+}
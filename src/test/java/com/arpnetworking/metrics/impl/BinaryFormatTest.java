@@ -0,0 +1,42 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Unit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>BinaryFormat</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryFormatTest {
+
+    @Test
+    public void testStaticStrings() {
+        Assert.assertEquals(BinaryFormat.STATIC_STRINGS.size(), BinaryFormat.STATIC_STRING_INDEX.size());
+        Assert.assertEquals("_id", BinaryFormat.STATIC_STRINGS.get(0));
+        for (int i = 0; i < BinaryFormat.STATIC_STRINGS.size(); ++i) {
+            Assert.assertEquals(Integer.valueOf(i), BinaryFormat.STATIC_STRING_INDEX.get(BinaryFormat.STATIC_STRINGS.get(i)));
+        }
+        for (final Unit unit : BinaryFormat.STATIC_UNITS) {
+            Assert.assertTrue(BinaryFormat.STATIC_STRING_INDEX.containsKey(unit.getName()));
+        }
+        // NOTE: References to the static table fit in a single byte
+        Assert.assertTrue(BinaryFormat.STATIC_STRINGS.size() <= 64);
+    }
+}
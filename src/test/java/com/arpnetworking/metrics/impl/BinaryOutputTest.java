@@ -0,0 +1,73 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>BinaryOutput</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BinaryOutputTest {
+
+    @Test
+    public void testWrite() {
+        final BinaryOutput output = new BinaryOutput();
+        output.writeByte(0x01);
+        output.writeVarint(300);
+        output.writeFixed(0x0102, Short.BYTES);
+        output.writeBytes(new byte[] {'a', 'b'});
+        Assert.assertEquals(7, output.size());
+        Assert.assertArrayEquals(new byte[] {0x07, 0x01, (byte) 0xAC, 0x02, 0x01, 0x02, 'a', 'b'}, output.toRecord());
+    }
+
+    @Test
+    public void testSetFixed() {
+        final BinaryOutput output = new BinaryOutput();
+        output.writeByte(0x01);
+        output.writeFixed(0, Integer.BYTES);
+        output.setFixed(1, 0x01020304, Integer.BYTES);
+        Assert.assertArrayEquals(new byte[] {0x05, 0x01, 0x01, 0x02, 0x03, 0x04}, output.toRecord());
+    }
+
+    @Test
+    public void testReset() {
+        final BinaryOutput output = new BinaryOutput();
+        output.writeByte(0x01);
+        output.reset();
+        Assert.assertEquals(0, output.size());
+        Assert.assertArrayEquals(new byte[] {0x00}, output.toRecord());
+    }
+
+    @Test
+    public void testGrowth() {
+        final BinaryOutput output = new BinaryOutput();
+        final byte[] bytes = new byte[20000];
+        bytes[bytes.length - 1] = 'z';
+        output.writeBytes(bytes);
+        output.writeByte('y');
+        final byte[] record = output.toRecord();
+        // NOTE: The length 20001 is a three byte varint
+        Assert.assertEquals(3 + 20001, record.length);
+        Assert.assertEquals(0xA1, record[0] & 0xFF);
+        Assert.assertEquals(0x9C, record[1] & 0xFF);
+        Assert.assertEquals(0x01, record[2]);
+        Assert.assertEquals('z', record[record.length - 2]);
+        Assert.assertEquals('y', record[record.length - 1]);
+    }
+}
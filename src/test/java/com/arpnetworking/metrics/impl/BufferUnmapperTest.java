@@ -0,0 +1,103 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tests for <code>BufferUnmapper</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class BufferUnmapperTest {
+
+    @Test
+    public void testUnmap() {
+        BufferUnmapper.unmap(ByteBuffer.allocateDirect(16));
+    }
+
+    @Test
+    public void testUnmapFailure() throws ReflectiveOperationException {
+        final BufferUnmapper.Strategy strategy = Mockito.mock(BufferUnmapper.Strategy.class);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        Mockito.doThrow(new IllegalAccessException()).when(strategy).unmap(buffer);
+        BufferUnmapper.unmap(strategy, buffer);
+        Mockito.verify(strategy).unmap(buffer);
+    }
+
+    @Test
+    public void testUnsafeStrategy() throws ReflectiveOperationException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        BufferUnmapper.createUnsafeStrategy(FakeUnsafe.class).unmap(buffer);
+        Assert.assertSame(buffer, FakeUnsafe.getInstance().getCleaned());
+    }
+
+    @Test
+    public void testCreateUnsafeStrategy() throws ReflectiveOperationException {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        BufferUnmapper.createStrategy(FakeUnsafe.class.getName(), Object.class).unmap(buffer);
+        Assert.assertSame(buffer, FakeUnsafe.getInstance().getCleaned());
+    }
+
+    @Test
+    public void testCleanerStrategyFallback() throws ReflectiveOperationException {
+        final BufferUnmapper.Strategy strategy = BufferUnmapper.createStrategy(
+                "com.arpnetworking.metrics.impl.Missing",
+                ByteBuffer.allocateDirect(1).getClass());
+        strategy.unmap(ByteBuffer.allocateDirect(16));
+    }
+
+    @Test
+    public void testNoStrategy() throws ReflectiveOperationException {
+        final BufferUnmapper.Strategy strategy = BufferUnmapper.createStrategy(
+                "com.arpnetworking.metrics.impl.Missing",
+                Object.class);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(16);
+        strategy.unmap(buffer);
+        buffer.put((byte) 1);
+        Assert.assertEquals(1, buffer.get(0));
+    }
+
+    /**
+     * Stand-in for <code>sun.misc.Unsafe</code> on Java 9 and later.
+     */
+    public static final class FakeUnsafe {
+
+        public static FakeUnsafe getInstance() {
+            return theUnsafe;
+        }
+
+        public synchronized void invokeCleaner(final ByteBuffer buffer) {
+            _cleaned = buffer;
+        }
+
+        public synchronized ByteBuffer getCleaned() {
+            return _cleaned;
+        }
+
+        private FakeUnsafe() {}
+
+        private ByteBuffer _cleaned;
+
+        // CHECKSTYLE.OFF: ConstantName - Matches the field of sun.misc.Unsafe
+        private static final FakeUnsafe theUnsafe = new FakeUnsafe();
+        // CHECKSTYLE.ON: ConstantName
+    }
+}
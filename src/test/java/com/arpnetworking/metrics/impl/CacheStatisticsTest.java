@@ -0,0 +1,43 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>CacheStatistics</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CacheStatisticsTest {
+
+    @Test
+    public void testAccessors() {
+        final CacheStatistics statistics = new CacheStatistics(3, 2, 1);
+        Assert.assertEquals(3, statistics.getHits());
+        Assert.assertEquals(2, statistics.getMisses());
+        Assert.assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void testToString() {
+        final String asString = new CacheStatistics(3, 2, 1).toString();
+        Assert.assertNotNull(asString);
+        Assert.assertFalse(asString.isEmpty());
+        Assert.assertTrue(asString.contains("Hits=3"));
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+/**
+ * Tests for <code>CapacityCallbacks</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CapacityCallbacksTest {
+
+    @Test
+    public void testSignal() {
+        final CapacityCallbacks callbacks = new CapacityCallbacks();
+        Assert.assertFalse(callbacks.isPending());
+        callbacks.signal();
+
+        final Runnable first = Mockito.mock(Runnable.class);
+        final Runnable second = Mockito.mock(Runnable.class);
+        callbacks.add(first);
+        callbacks.add(second);
+        Assert.assertTrue(callbacks.isPending());
+        callbacks.signal();
+        Assert.assertFalse(callbacks.isPending());
+        final InOrder inOrder = Mockito.inOrder(first, second);
+        inOrder.verify(first).run();
+        inOrder.verify(second).run();
+
+        callbacks.signal();
+        Mockito.verifyNoMoreInteractions(first, second);
+    }
+
+    @Test
+    public void testFailingCallback() {
+        final CapacityCallbacks callbacks = new CapacityCallbacks();
+        final Runnable failing = Mockito.mock(Runnable.class);
+        Mockito.doThrow(new IllegalStateException("Test")).when(failing).run();
+        final Runnable next = Mockito.mock(Runnable.class);
+        callbacks.add(failing);
+        callbacks.add(next);
+        callbacks.signal();
+        Mockito.verify(failing).run();
+        Mockito.verify(next).run();
+        Assert.assertFalse(callbacks.isPending());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>CommitStatistics</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CommitStatisticsTest {
+
+    @Test
+    public void testAccumulator() {
+        final CommitStatistics.Accumulator accumulator = new CommitStatistics.Accumulator();
+        accumulator.recordCommit(100, 2, 20);
+        accumulator.recordCommit(50, 5, 10);
+        accumulator.recordFailure();
+        final CommitStatistics statistics = accumulator.snapshot();
+        Assert.assertEquals(2, statistics.getCommits());
+        Assert.assertEquals(1, statistics.getFailures());
+        Assert.assertEquals(150, statistics.getTotalLatencyInNanos());
+        Assert.assertEquals(100, statistics.getMaxLatencyInNanos());
+        Assert.assertEquals(7, statistics.getTotalRecords());
+        Assert.assertEquals(5, statistics.getMaxRecords());
+        Assert.assertEquals(30, statistics.getTotalBytes());
+        Assert.assertEquals(20, statistics.getMaxBytes());
+
+        accumulator.recordFailure();
+        Assert.assertEquals(1, statistics.getFailures());
+        Assert.assertEquals(2, accumulator.snapshot().getFailures());
+    }
+
+    @Test
+    public void testAdd() {
+        final CommitStatistics.Accumulator first = new CommitStatistics.Accumulator();
+        first.recordCommit(100, 2, 20);
+        first.recordFailure();
+        final CommitStatistics.Accumulator second = new CommitStatistics.Accumulator();
+        second.recordCommit(50, 5, 10);
+        final CommitStatistics.Accumulator accumulator = new CommitStatistics.Accumulator();
+        accumulator.add(first.snapshot());
+        accumulator.add(second.snapshot());
+        final CommitStatistics statistics = accumulator.snapshot();
+        Assert.assertEquals(2, statistics.getCommits());
+        Assert.assertEquals(1, statistics.getFailures());
+        Assert.assertEquals(150, statistics.getTotalLatencyInNanos());
+        Assert.assertEquals(100, statistics.getMaxLatencyInNanos());
+        Assert.assertEquals(7, statistics.getTotalRecords());
+        Assert.assertEquals(5, statistics.getMaxRecords());
+        Assert.assertEquals(30, statistics.getTotalBytes());
+        Assert.assertEquals(20, statistics.getMaxBytes());
+    }
+
+    @Test
+    public void testToString() {
+        final String asString = CommitStatistics.EMPTY.toString();
+        Assert.assertNotNull(asString);
+        Assert.assertFalse(asString.isEmpty());
+        Assert.assertTrue(asString.contains("Commits=0"));
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for <code>CompressedActiveFile</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CompressedActiveFileTest {
+
+    @Test
+    public void testAppend() throws IOException {
+        final Path file = createFile("testAppend");
+        final ActiveFile activeFile = CompressedActiveFile.open(file, CODEC, 1024, 64);
+        Assert.assertEquals(0, activeFile.size());
+        activeFile.append(bytes("foo\n"));
+        activeFile.append(bytes("bar\n"));
+        activeFile.close();
+        Assert.assertEquals(Files.size(file), activeFile.size());
+        Assert.assertEquals("foo\nbar\n", readCompressed(file));
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        final Path file = createFile("testFlush");
+        final ActiveFile activeFile = CompressedActiveFile.open(file, CODEC, 1024, 64);
+        activeFile.flush();
+        Assert.assertEquals(0, Files.size(file));
+        activeFile.append(bytes("foo\n"));
+        activeFile.flush();
+        Assert.assertEquals("foo\n", readFlushed(file));
+        activeFile.append(bytes("bar\n"));
+        activeFile.force();
+        Assert.assertEquals("foo\nbar\n", readFlushed(file));
+        activeFile.close();
+    }
+
+    @Test
+    public void testMembers() throws IOException {
+        final Path file = createFile("testMembers");
+        final ActiveFile activeFile = CompressedActiveFile.open(file, CODEC, 4, 64);
+        activeFile.append(bytes("foo\n"));
+        activeFile.append(bytes("bar\n"));
+        Assert.assertEquals("foo\n", readFlushed(file));
+        activeFile.append(bytes("baz\n"));
+        activeFile.close();
+        Assert.assertEquals("foo\nbar\nbaz\n", readCompressed(file));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        final Path file = createFile("testResume");
+        final ActiveFile first = CompressedActiveFile.open(file, CODEC, 1024, 64);
+        first.append(bytes("foo\n"));
+        first.close();
+        final ActiveFile second = CompressedActiveFile.open(file, CODEC, 1024, 64);
+        Assert.assertEquals(Files.size(file), second.size());
+        second.append(bytes("bar\n"));
+        second.close();
+        Assert.assertEquals("foo\nbar\n", readCompressed(file));
+    }
+
+    @Test
+    public void testCloseEmpty() throws IOException {
+        final Path file = createFile("testCloseEmpty");
+        CompressedActiveFile.open(file, CODEC, 1024, 64).close();
+        Assert.assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void testSingleByteWrites() throws IOException {
+        final Path file = createFile("testSingleByteWrites");
+        final CompressionCodec codec = Mockito.mock(CompressionCodec.class);
+        Mockito.doAnswer(invocation -> new FilterOutputStream(invocation.getArgument(0)))
+                .when(codec).compress(Mockito.any());
+        final ActiveFile activeFile = CompressedActiveFile.open(file, codec, 1024, 64);
+        activeFile.append(bytes("foo\n"));
+        activeFile.close();
+        Assert.assertEquals(4, activeFile.size());
+        Assert.assertEquals("foo\n", StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(file))).toString());
+    }
+
+    private static Path createFile(final String name) throws IOException {
+        final Path directory = Paths.get("./target/CompressedActiveFileTest");
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(name + ".log.gz");
+        Files.deleteIfExists(file);
+        return file;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readCompressed(final Path path) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path))) {
+            copy(inputStream, outputStream);
+        }
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(outputStream.toByteArray())).toString();
+    }
+
+    private static String readFlushed(final Path path) throws IOException {
+        // NOTE: The current member is incomplete so the stream ends without a trailer
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path))) {
+            copy(inputStream, outputStream);
+        } catch (final EOFException e) {
+            // Expected for an incomplete member
+        }
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(outputStream.toByteArray())).toString();
+    }
+
+    private static void copy(final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final byte[] buffer = new byte[1024];
+        int read = inputStream.read(buffer);
+        while (read >= 0) {
+            outputStream.write(buffer, 0, read);
+            read = inputStream.read(buffer);
+        }
+    }
+
+    private static final CompressionCodec CODEC = new GzipCompressionCodec();
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tests for <code>CountingAsyncAppender</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class CountingAsyncAppenderTest {
+
+    @Test
+    public void testCountsDiscardedEvents() {
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), null, false);
+        final ILoggingEvent info = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn(Level.INFO).when(info).getLevel();
+        final ILoggingEvent warn = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn(Level.WARN).when(warn).getLevel();
+
+        Assert.assertTrue(appender.isDiscardable(info));
+        Assert.assertFalse(appender.isDiscardable(warn));
+        Assert.assertTrue(appender.isDiscardable(info));
+        Assert.assertEquals(2, appender.getDropped());
+    }
+
+    @Test
+    public void testHasCapacity() throws InterruptedException {
+        final CountDownLatch appending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        @SuppressWarnings("unchecked")
+        final Appender<ILoggingEvent> child = Mockito.mock(Appender.class);
+        Mockito.doAnswer(invocation -> {
+            appending.countDown();
+            release.await();
+            return null;
+        }).when(child).doAppend(Mockito.any());
+        final ILoggingEvent info = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn(Level.INFO).when(info).getLevel();
+        final CapacityCallbacks callbacks = new CapacityCallbacks();
+        final CountingAsyncAppender appender = new CountingAsyncAppender(callbacks, null, false);
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(1);
+        appender.addAppender(child);
+        appender.start();
+        Assert.assertSame(callbacks, appender.getCapacityCallbacks());
+        Assert.assertTrue(appender.hasCapacity());
+
+        appender.doAppend(info);
+        appending.await();
+        appender.doAppend(info);
+        Assert.assertFalse(appender.hasCapacity());
+
+        release.countDown();
+        while (appender.getNumberOfElementsInQueue() > 0) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(appender.hasCapacity());
+        appender.setDiscardingThreshold(2);
+        Assert.assertFalse(appender.hasCapacity());
+        appender.stop();
+    }
+
+    @Test
+    public void testTryAppend() throws InterruptedException {
+        final QueueByteBudget budget = new QueueByteBudget(25);
+        final List<ILoggingEvent> appended = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), budget, false);
+        Assert.assertFalse(appender.tryAppend(createEvent(10)));
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(1);
+        appender.addAppender(createReleasingAppender(budget, appended, release));
+        appender.start();
+
+        // NOTE: The first event is taken from the queue and held by the child appender
+        Assert.assertTrue(appender.tryAppend(createEvent(10)));
+        while (appender.getNumberOfElementsInQueue() > 0) {
+            Thread.sleep(1);
+        }
+        Assert.assertFalse(appender.tryAppend(createEvent(20)));
+        Assert.assertEquals(10, budget.getQueuedBytes());
+        Assert.assertTrue(appender.tryAppend(createEvent(10)));
+        Assert.assertFalse(appender.tryAppend(createEvent(1)));
+        Assert.assertEquals(20, budget.getQueuedBytes());
+
+        // NOTE: A blocking append waits for room and holds the next free slot
+        final Thread producer = new Thread(() -> appender.doAppend(createEvent(1)));
+        producer.start();
+        producer.join(50);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertFalse(appender.tryAppend(createEvent(1)));
+        Assert.assertEquals(21, budget.getQueuedBytes());
+
+        release.countDown();
+        producer.join();
+        while (appended.size() < 3) {
+            Thread.sleep(1);
+        }
+        appender.stop();
+        Assert.assertEquals(0, appender.getDropped());
+        Assert.assertEquals(0, budget.getQueuedBytes());
+    }
+
+    @Test
+    public void testPut() throws InterruptedException {
+        final QueueByteBudget budget = new QueueByteBudget(100);
+        final List<ILoggingEvent> appended = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), budget, true);
+        Assert.assertFalse(appender.put(createEvent(10)));
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(2);
+        appender.setDiscardingThreshold(2);
+        appender.addAppender(createReleasingAppender(budget, appended, release));
+        appender.start();
+
+        Assert.assertTrue(appender.put(createEvent(10)));
+        while (appender.getNumberOfElementsInQueue() > 0) {
+            Thread.sleep(1);
+        }
+        Assert.assertTrue(appender.put(createEvent(10)));
+        Assert.assertFalse(appender.put(createEvent(10)));
+        Assert.assertEquals(1, appender.getDropped());
+        Assert.assertEquals(20, budget.getQueuedBytes());
+
+        release.countDown();
+        while (appended.size() < 2) {
+            Thread.sleep(1);
+        }
+        appender.stop();
+        Assert.assertEquals(0, budget.getQueuedBytes());
+    }
+
+    @Test
+    public void testDiscardingThreshold() {
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), null, false);
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(10);
+        @SuppressWarnings("unchecked")
+        final Appender<ILoggingEvent> child = Mockito.mock(Appender.class);
+        appender.addAppender(child);
+        appender.start();
+        Assert.assertEquals(2, appender.getDiscardingThreshold());
+        appender.setDiscardingThreshold(5);
+        Assert.assertEquals(5, appender.getDiscardingThreshold());
+        appender.stop();
+    }
+
+    @Test
+    public void testConcurrentTryAppend() throws InterruptedException {
+        final List<ILoggingEvent> appended = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), null, true);
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(4);
+        appender.setDiscardingThreshold(0);
+        appender.addAppender(createReleasingAppender(new QueueByteBudget(Long.MAX_VALUE), appended, release));
+        appender.start();
+        Assert.assertTrue(appender.tryAppend(createEvent(1)));
+        while (appender.getNumberOfElementsInQueue() > 0) {
+            Thread.sleep(1);
+        }
+
+        // NOTE: Producers never block in Logback's put when claims race for the last slots
+        final List<Thread> producers = new ArrayList<>();
+        final LongAdder accepted = new LongAdder();
+        for (int i = 0; i < 8; ++i) {
+            final Thread producer = new Thread(() -> {
+                for (int j = 0; j < 100; ++j) {
+                    if (appender.tryAppend(createEvent(1))) {
+                        accepted.increment();
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+        Assert.assertEquals(4, accepted.sum());
+        Assert.assertEquals(4, appender.getNumberOfElementsInQueue());
+
+        release.countDown();
+        while (appended.size() < 5) {
+            Thread.sleep(1);
+        }
+        appender.stop();
+    }
+
+    @Test
+    public void testGetRecordBytes() {
+        final ILoggingEvent direct = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn(new Object[] {new byte[10]}).when(direct).getArgumentArray();
+        Assert.assertEquals(10, CountingAsyncAppender.getRecordBytes(direct));
+
+        final ILoggingEvent message = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn("foo").when(message).getMessage();
+        Assert.assertEquals(3, CountingAsyncAppender.getRecordBytes(message));
+        Mockito.doReturn(new Object[0]).when(message).getArgumentArray();
+        Assert.assertEquals(3, CountingAsyncAppender.getRecordBytes(message));
+        Mockito.doReturn(new Object[] {"bar"}).when(message).getArgumentArray();
+        Assert.assertEquals(3, CountingAsyncAppender.getRecordBytes(message));
+        Mockito.doReturn(new Object[] {new byte[10], "bar"}).when(message).getArgumentArray();
+        Assert.assertEquals(3, CountingAsyncAppender.getRecordBytes(message));
+
+        Assert.assertEquals(0, CountingAsyncAppender.getRecordBytes(Mockito.mock(ILoggingEvent.class)));
+    }
+
+    @Test
+    public void testByteBudgetDrop() throws InterruptedException {
+        final QueueByteBudget budget = new QueueByteBudget(25);
+        final List<ILoggingEvent> appended = Collections.synchronizedList(new ArrayList<>());
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), budget, true);
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(16);
+        final CountDownLatch release = new CountDownLatch(1);
+        appender.addAppender(createReleasingAppender(budget, appended, release));
+        appender.start();
+
+        // NOTE: The first event keeps its bytes until the child appender returns
+        appender.doAppend(createEvent(10));
+        appender.doAppend(createEvent(10));
+        appender.doAppend(createEvent(10));
+        Assert.assertEquals(1, appender.getDropped());
+        Assert.assertTrue(appender.hasCapacity());
+        appender.doAppend(createEvent(5));
+        Assert.assertFalse(appender.hasCapacity());
+        release.countDown();
+        while (appended.size() < 3) {
+            Thread.sleep(1);
+        }
+        appender.stop();
+        Assert.assertEquals(3, appended.size());
+        Assert.assertEquals(0, budget.getQueuedBytes());
+    }
+
+    @Test
+    public void testByteBudgetDiscarded() {
+        final QueueByteBudget budget = new QueueByteBudget(25);
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), budget, true);
+        Assert.assertTrue(budget.tryAcquire(10));
+        Assert.assertTrue(appender.isDiscardable(createEvent(10)));
+        Assert.assertEquals(0, budget.getQueuedBytes());
+        Assert.assertEquals(1, appender.getDropped());
+    }
+
+    @Test
+    public void testByteBudgetBlock() throws InterruptedException {
+        final QueueByteBudget budget = new QueueByteBudget(25);
+        final List<ILoggingEvent> appended = Collections.synchronizedList(new ArrayList<>());
+        final CountingAsyncAppender appender = new CountingAsyncAppender(new CapacityCallbacks(), budget, false);
+        appender.setContext(new LoggerContext());
+        appender.setQueueSize(16);
+        appender.addAppender(createReleasingAppender(budget, appended, new CountDownLatch(0)));
+        appender.start();
+
+        // NOTE: Reserve the budget as if events were queued
+        Assert.assertTrue(budget.tryAcquire(20));
+        final Thread producer = new Thread(() -> appender.doAppend(createEvent(10)));
+        producer.start();
+        producer.join(50);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertTrue(appended.isEmpty());
+        budget.release(20);
+        producer.join();
+        while (appended.isEmpty()) {
+            Thread.sleep(1);
+        }
+
+        Assert.assertTrue(budget.tryAcquire(20));
+        Thread.currentThread().interrupt();
+        appender.doAppend(createEvent(10));
+        Assert.assertTrue(Thread.interrupted());
+        budget.release(20);
+        appender.stop();
+        Assert.assertEquals(1, appended.size());
+        Assert.assertEquals(1, appender.getDropped());
+    }
+
+    private static ILoggingEvent createEvent(final int bytes) {
+        final ILoggingEvent event = Mockito.mock(ILoggingEvent.class);
+        Mockito.doReturn(Level.INFO).when(event).getLevel();
+        Mockito.doReturn(new Object[] {new byte[bytes]}).when(event).getArgumentArray();
+        return event;
+    }
+
+    private static Appender<ILoggingEvent> createReleasingAppender(
+            final QueueByteBudget budget,
+            final List<ILoggingEvent> appended,
+            final CountDownLatch release) {
+        @SuppressWarnings("unchecked")
+        final Appender<ILoggingEvent> child = Mockito.mock(Appender.class);
+        Mockito.doAnswer(invocation -> {
+            final ILoggingEvent event = invocation.getArgument(0);
+            release.await();
+            budget.release(CountingAsyncAppender.getRecordBytes(event));
+            appended.add(event);
+            return null;
+        }).when(child).doAppend(Mockito.any());
+        return child;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tests for <code>DeflateCompressionCodec</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class DeflateCompressionCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final CompressionCodec codec = new DeflateCompressionCodec(1, null);
+        final byte[] compressed = compress(codec, DATA);
+        try (InputStream inputStream = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final byte[] dictionary = DATA.clone();
+        final CompressionCodec codec = new DeflateCompressionCodec(9, dictionary);
+        dictionary[0] = 0;
+        final byte[] compressed = compress(codec, DATA);
+        Assert.assertTrue(compressed.length < compress(new DeflateCompressionCodec(9, null), DATA).length);
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDictionaryRequired() throws IOException {
+        final byte[] compressed = compress(new DeflateCompressionCodec(9, DATA), DATA);
+        new DeflateCompressionCodec(9, null).decompress(new ByteArrayInputStream(compressed));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidHeader() throws IOException {
+        new DeflateCompressionCodec(9, null).decompress(new ByteArrayInputStream(new byte[] {1, 2, 3}));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedHeader() throws IOException {
+        new DeflateCompressionCodec(9, null).decompress(new ByteArrayInputStream(new byte[] {0x78}));
+    }
+
+    @Test
+    public void testAccessors() {
+        final DeflateCompressionCodec codec = new DeflateCompressionCodec(3, new byte[] {1, 2});
+        Assert.assertEquals(".zz", codec.getExtension());
+        Assert.assertEquals(3, codec.getLevel());
+        Assert.assertFalse(codec.isConcatenable());
+        Assert.assertEquals("DeflateCompressionCodec{Level=3, DictionarySize=2}", codec.toString());
+        Assert.assertEquals("DeflateCompressionCodec{Level=3, DictionarySize=0}", new DeflateCompressionCodec(3, null).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooLow() {
+        new DeflateCompressionCodec(-2, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooHigh() {
+        new DeflateCompressionCodec(10, null);
+    }
+
+    private static byte[] compress(final CompressionCodec codec, final byte[] data) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream compressedOutputStream = codec.compress(outputStream)) {
+            compressedOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read = inputStream.read(buffer);
+        while (read >= 0) {
+            outputStream.write(buffer, 0, read);
+            read = inputStream.read(buffer);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final byte[] DATA = ("{\"version\":\"2f\",\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\"},"
+            + "\"timers\":{\"latency\":{\"values\":[{\"value\":1.5,\"unitNumerators\":[\"second\"]}]}}}\n")
+            .getBytes(StandardCharsets.UTF_8);
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests for <code>DoubleFormatter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class DoubleFormatterTest {
+
+    @Test
+    public void testZero() {
+        assertFormat("0.0", 0.0);
+        assertFormat("-0.0", -0.0);
+    }
+
+    @Test
+    public void testPlain() {
+        assertFormat("1.0", 1.0);
+        assertFormat("-1.0", -1.0);
+        assertFormat("100.0", 100.0);
+        assertFormat("123.456", 123.456);
+        assertFormat("4.35", 4.35);
+        assertFormat("0.3", 0.3);
+        assertFormat("0.001", 0.001);
+        assertFormat("0.002", 0.002);
+        assertFormat("9999999.0", 9999999.0);
+    }
+
+    @Test
+    public void testScientific() {
+        assertFormat("9.999E-4", 9.999E-4);
+        assertFormat("1.0E-5", 1.0E-5);
+        assertFormat("1.0E7", 1.0E7);
+        assertFormat("1.23456789E7", 12345678.9);
+        assertFormat("9.007199254740992E15", 0x1.0p53);
+        assertFormat("1.5E300", 1.5E300);
+        assertFormat("-2.5E-200", -2.5E-200);
+    }
+
+    @Test
+    public void testShortest() {
+        assertFormat("1.0E23", 1.0E23);
+        assertFormat("9.9E-324", 2 * Double.MIN_VALUE);
+    }
+
+    @Test
+    public void testTies() {
+        assertFormat("2.9802322387695312E-8", 0x1.0p-25);
+        assertFormat("1.7881393432617188E-7", 0x1.8p-23);
+    }
+
+    @Test
+    public void testLimits() {
+        assertFormat("4.9E-324", Double.MIN_VALUE);
+        assertFormat("2.2250738585072014E-308", Double.MIN_NORMAL);
+        assertFormat("1.7976931348623157E308", Double.MAX_VALUE);
+        assertFormat("-1.7976931348623157E308", -Double.MAX_VALUE);
+    }
+
+    @Test
+    public void testOffset() {
+        final char[] buffer = new char[DoubleFormatter.MAX_LENGTH + 3];
+        final int length = DoubleFormatter.format(-1.5, buffer, 3);
+        Assert.assertEquals("-1.5", String.valueOf(buffer, 3, length));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final Random random = new Random(42);
+        final char[] buffer = new char[DoubleFormatter.MAX_LENGTH];
+        for (int i = 0; i < 100000; ++i) {
+            final double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isFinite(value)) {
+                final int length = DoubleFormatter.format(value, buffer, 0);
+                final String formatted = String.valueOf(buffer, 0, length);
+                Assert.assertEquals(formatted, value, Double.parseDouble(formatted), 0.0);
+                Assert.assertTrue(formatted, length <= Double.toString(value).length());
+            }
+        }
+    }
+
+    private static void assertFormat(final String expected, final double value) {
+        final char[] buffer = new char[DoubleFormatter.MAX_LENGTH];
+        final int length = DoubleFormatter.format(value, buffer, 0);
+        Assert.assertEquals(expected, String.valueOf(buffer, 0, length));
+    }
+}
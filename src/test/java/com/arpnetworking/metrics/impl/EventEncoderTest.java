@@ -0,0 +1,189 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for <code>EventEncoder</code>. The expected output is produced by
+ * Jackson data binding of an equivalent tree of maps and lists.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class EventEncoderTest {
+
+    @Test
+    public void testEmptyEvent() throws IOException {
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("version", "2f");
+        expected.put("annotations", Collections.emptyMap());
+        assertEncoding(
+                expected,
+                new TsdEvent(
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.emptyMap(),
+                        Collections.emptyMap()));
+    }
+
+    @Test
+    public void testEvent() throws IOException {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "123");
+        annotations.put("escaped", "a\"b\\c\n\u0001é/");
+        annotations.put("null", null);
+        final Unit compoundUnit = new TsdCompoundUnit.Builder()
+                .addNumeratorUnit(Units.KILOBYTE)
+                .addDenominatorUnit(Units.SECOND)
+                .build();
+
+        final Map<String, List<Quantity>> counters = new LinkedHashMap<>();
+        counters.put("counterA", Arrays.asList(
+                TsdQuantity.newInstance(1L, null),
+                TsdQuantity.newInstance(Long.MIN_VALUE, Units.BYTE)));
+        counters.put("counter\"B", Collections.emptyList());
+        final Map<String, List<Quantity>> gauges = new LinkedHashMap<>();
+        gauges.put("gaugeA", Arrays.asList(
+                TsdQuantity.newInstance(1.5, compoundUnit),
+                TsdQuantity.newInstance(Double.NaN, null),
+                TsdQuantity.newInstance(1e-20, null),
+                TsdQuantity.newInstance(2.5f, null),
+                TsdQuantity.newInstance(Float.POSITIVE_INFINITY, null)));
+        final Map<String, List<Quantity>> timers = new LinkedHashMap<>();
+        timers.put("timerA", Arrays.asList(
+                TsdQuantity.newInstance(3, Units.MILLISECOND),
+                TsdQuantity.newInstance((short) 4, null),
+                TsdQuantity.newInstance((byte) 5, null),
+                TsdQuantity.newInstance(new BigDecimal("1.25E+3"), null),
+                TsdQuantity.newInstance(new BigInteger("123456789012345678901234567890"), null),
+                TsdQuantity.newInstance(new AtomicLong(6), null),
+                Mockito.mock(Quantity.class)));
+
+        final Map<String, Object> expectedCounters = new LinkedHashMap<>();
+        expectedCounters.put("counterA", values(sample(1L, null, null), sample(Long.MIN_VALUE, "byte", null)));
+        expectedCounters.put("counter\"B", values());
+        final Map<String, Object> expectedGauges = new LinkedHashMap<>();
+        expectedGauges.put("gaugeA", values(
+                sample(1.5, "kilobyte", "second"),
+                sample(Double.NaN, null, null),
+                sample(1e-20, null, null),
+                sample(2.5f, null, null),
+                sample(Float.POSITIVE_INFINITY, null, null)));
+        final Map<String, Object> expectedTimers = new LinkedHashMap<>();
+        expectedTimers.put("timerA", values(
+                sample(3, "millisecond", null),
+                sample((short) 4, null, null),
+                sample((byte) 5, null, null),
+                sample(new BigDecimal("1.25E+3"), null, null),
+                sample(new BigInteger("123456789012345678901234567890"), null, null),
+                sample(new AtomicLong(6), null, null),
+                sample(null, null, null)));
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("version", "2f");
+        expected.put("annotations", annotations);
+        expected.put("counters", expectedCounters);
+        expected.put("gauges", expectedGauges);
+        expected.put("timers", expectedTimers);
+
+        assertEncoding(expected, new TsdEvent(annotations, timers, counters, gauges));
+    }
+
+    @Test
+    public void testExcludedAnnotations() throws IOException {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_host", "MyHost");
+        annotations.put("_service", "MyService");
+        annotations.put("_id", "123");
+        // CHECKSTYLE.OFF: IllegalInstantiation - No Guava
+        final EventEncoder encoder = new EventEncoder(
+                new UnitCache(10),
+                new HashSet<>(Arrays.asList("_host", "_id")));
+        // CHECKSTYLE.ON: IllegalInstantiation
+
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            encoder.encode(
+                    new TsdEvent(annotations, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap()),
+                    jsonGenerator);
+        }
+        Assert.assertEquals("{\"version\":\"2f\",\"annotations\":{\"_service\":\"MyService\"}}", writer.toString());
+        Assert.assertEquals(3, annotations.size());
+    }
+
+    private static void assertEncoding(final Map<String, Object> expected, final Event event) throws IOException {
+        final EventEncoder encoder = new EventEncoder(new UnitCache(10));
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(outputStream)) {
+            encoder.encode(event, jsonGenerator);
+        }
+        final String expectedJson = decode(OBJECT_MAPPER.writeValueAsBytes(expected));
+        Assert.assertEquals(expectedJson, decode(outputStream.toByteArray()));
+
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            encoder.encode(event, jsonGenerator);
+        }
+        Assert.assertEquals(OBJECT_MAPPER.writeValueAsString(expected), writer.toString());
+    }
+
+    private static Map<String, Object> values(final Object... samples) {
+        return Collections.singletonMap("values", Arrays.asList(samples));
+    }
+
+    private static Map<String, Object> sample(final Number value, final String numerator, final String denominator) {
+        final Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("value", value);
+        if (numerator != null) {
+            sample.put("unitNumerators", Collections.singletonList(numerator));
+        }
+        if (denominator != null) {
+            sample.put("unitDenominators", Collections.singletonList(denominator));
+        }
+        return sample;
+    }
+
+    private static String decode(final byte[] bytes) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+}
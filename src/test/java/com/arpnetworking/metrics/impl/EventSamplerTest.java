@@ -0,0 +1,148 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for <code>EventSampler</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class EventSamplerTest {
+
+    @Test
+    public void testNoSampling() {
+        final EventSampler sampler = new EventSampler(1.0, null, 0);
+        final Event event = createEvent("1");
+        Assert.assertSame(event, sampler.sample(event));
+        Assert.assertEquals(0, sampler.getDropped());
+    }
+
+    @Test
+    public void testRandomSampling() {
+        final Iterator<Double> random = Arrays.asList(0.1, 0.25, 0.3).iterator();
+        final EventSampler sampler = new EventSampler(0.25, null, 0, () -> 0L, random::next);
+        final Event event = createEvent("1");
+
+        final Event sampled = sampler.sample(event);
+        Assert.assertNotNull(sampled);
+        Assert.assertEquals("0.25", sampled.getAnnotations().get("_sampleRate"));
+        Assert.assertEquals("1", sampled.getAnnotations().get("_id"));
+        Assert.assertEquals(event.getTimerSamples(), sampled.getTimerSamples());
+        Assert.assertEquals(event.getCounterSamples(), sampled.getCounterSamples());
+        Assert.assertEquals(event.getGaugeSamples(), sampled.getGaugeSamples());
+        Assert.assertNull(sampler.sample(event));
+        Assert.assertNull(sampler.sample(event));
+        Assert.assertEquals(2, sampler.getDropped());
+    }
+
+    @Test
+    public void testAnnotationSampling() {
+        final EventSampler sampler = new EventSampler(0.5, "_id", 0, () -> 0L, () -> 0.0);
+        int selected = 0;
+        for (int i = 0; i < 1000; ++i) {
+            final Event event = createEvent(String.valueOf(i));
+            final boolean first = sampler.sample(event) != null;
+            Assert.assertEquals(first, sampler.sample(event) != null);
+            if (first) {
+                ++selected;
+            }
+        }
+        Assert.assertTrue(selected > 400 && selected < 600);
+
+        // NOTE: Events without the annotation are selected at random
+        Assert.assertNotNull(sampler.sample(new TsdEvent(
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap())));
+    }
+
+    @Test
+    public void testRateLimit() {
+        final AtomicLong now = new AtomicLong();
+        final EventSampler sampler = new EventSampler(1.0, null, 10, now::get, () -> 0.2);
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertNotNull(sampler.sample(createEvent("1")));
+        }
+        for (int i = 0; i < 30; ++i) {
+            Assert.assertNull(sampler.sample(createEvent("1")));
+        }
+        Assert.assertEquals(30, sampler.getDropped());
+
+        // NOTE: Forty events were offered in the first second against a limit of ten
+        now.set(1_000_000_000L);
+        final Event throttled = sampler.sample(createEvent("1"));
+        Assert.assertNotNull(throttled);
+        Assert.assertEquals("0.25", throttled.getAnnotations().get("_sampleRate"));
+
+        // NOTE: One event over two seconds is well within the limit
+        now.set(3_000_000_000L);
+        final Event unthrottled = sampler.sample(createEvent("1"));
+        Assert.assertNotNull(unthrottled);
+        Assert.assertNull(unthrottled.getAnnotations().get("_sampleRate"));
+    }
+
+    @Test
+    public void testRateLimitThrottlesSelection() {
+        final AtomicLong now = new AtomicLong();
+        final EventSampler sampler = new EventSampler(0.5, null, 10, now::get, () -> 0.2);
+        for (int i = 0; i < 100; ++i) {
+            sampler.sample(createEvent("1"));
+        }
+
+        // NOTE: Fifty of the hundred events offered were selected against a limit of ten
+        now.set(1_000_000_000L);
+        Assert.assertNull(sampler.sample(createEvent("1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSampleRate() {
+        new EventSampler(0.0, null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLargeSampleRate() {
+        new EventSampler(1.5, null, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxEventsPerSecond() {
+        new EventSampler(1.0, null, -1);
+    }
+
+    private static Event createEvent(final String id) {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", id);
+        annotations.put("_host", "host");
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "timer",
+                Collections.singletonList(TsdQuantity.newInstance(1L, null)));
+        return new TsdEvent(annotations, timers, Collections.emptyMap(), Collections.emptyMap());
+    }
+}
@@ -16,11 +16,11 @@
 package com.arpnetworking.metrics.impl;
 
 import com.arpnetworking.metrics.ComplexCompoundUnit;
+import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Quantity;
 import com.arpnetworking.metrics.Sink;
 import com.arpnetworking.metrics.Units;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jackson.JacksonUtils;
@@ -35,6 +35,7 @@ import org.mockito.Mockito;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -43,11 +44,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for <code>TsdMetrics</code>.
@@ -57,25 +60,56 @@ import java.util.UUID;
 public class FileSinkTest {
 
     @Test
-    public void testObjectMapperIOException() throws IOException {
+    public void testJsonFactoryIOException() throws IOException {
         final org.slf4j.Logger logger = createSlf4jLoggerMock();
-        final ObjectMapper objectMapper = Mockito.spy(new ObjectMapper());
+        final JsonFactory jsonFactory = Mockito.spy(new JsonFactory());
         final Sink sink = new FileSink(
                 new FileSink.Builder()
                         .setDirectory(createDirectory("./target/FileSinkTest"))
-                        .setName("testObjectMapperIOException-Query"),
-                objectMapper,
+                        .setName("testJsonFactoryIOException-Query"),
+                jsonFactory,
                 logger);
 
-        Mockito.doThrow(new JsonMappingException(Mockito.mock(JsonParser.class), "JsonMappingException"))
-                .when(objectMapper)
-                .writeValueAsString(Mockito.any());
+        Mockito.doThrow(new IOException("IOException"))
+                .when(jsonFactory)
+                .createGenerator(Mockito.any(OutputStream.class));
         recordEmpty(sink);
         Mockito.verify(logger).warn(
                 Mockito.any(String.class),
                 Mockito.any(Throwable.class));
     }
 
+    @Test
+    public void testJsonFactoryIOExceptionDirectEncoding() throws IOException {
+        final org.slf4j.Logger logger = createSlf4jLoggerMock();
+        final JsonFactory jsonFactory = Mockito.spy(new JsonFactory());
+        final Sink sink = new FileSink(
+                new FileSink.Builder()
+                        .setDirectory(createDirectory("./target/FileSinkTest"))
+                        .setName("testJsonFactoryIOExceptionDirectEncoding-Query")
+                        .setDirectEncoding(true),
+                jsonFactory,
+                logger);
+
+        Mockito.doThrow(new IOException("IOException"))
+                .when(jsonFactory)
+                .createGenerator(Mockito.any(OutputStream.class));
+        recordEmpty(sink);
+        Mockito.verify(logger).warn(
+                Mockito.any(String.class),
+                Mockito.any(Throwable.class));
+    }
+
+    @Test
+    public void testBuilderWithNullDirectEncoding() throws IOException {
+        final Sink sink = new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testBuilderWithNullDirectEncoding-Query")
+                .setDirectEncoding(null)
+                .build();
+        Assert.assertTrue(sink instanceof FileSink);
+    }
+
     @Test
     public void testEmptySerialization() throws IOException, InterruptedException {
         final File actualFile = new File("./target/FileSinkTest/testEmptySerialization-Query.log");
@@ -141,6 +175,85 @@ public class FileSinkTest {
         final JsonNode actual = OBJECT_MAPPER.readTree(actualComparableJson);
         final JsonNode expected = OBJECT_MAPPER.readTree(EXPECTED_METRICS_JSON);
 
+        Assert.assertEquals(
+                "expectedJson=" + OBJECT_MAPPER.writeValueAsString(expected)
+                        + " vs actualJson=" + OBJECT_MAPPER.writeValueAsString(actual),
+                expected,
+                actual);
+        final CacheStatistics unitCacheStatistics = ((FileSink) sink).getUnitCacheStatistics();
+        Assert.assertTrue(unitCacheStatistics.getHits() > 0);
+        Assert.assertTrue(unitCacheStatistics.getSize() > 0);
+    }
+
+    @Test
+    public void testSerializationFileChannel() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/FileSinkTest/testSerializationFileChannel-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final Sink sink = new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testSerializationFileChannel-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+
+        final Map<String, String> annotations = new LinkedHashMap<>(ANNOTATIONS);
+        annotations.put("foo", "bar");
+        sink.record(new TsdEvent(
+                annotations,
+                TEST_SERIALIZATION_TIMERS,
+                TEST_SERIALIZATION_COUNTERS,
+                TEST_SERIALIZATION_GAUGES));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        final String actualOriginalJson = fileToString(actualFile);
+        assertMatchesJsonSchema(actualOriginalJson);
+        final String actualComparableJson = actualOriginalJson
+                .replaceAll("\"_host\":\"[^\"]*\"", "\"_host\":\"<HOST>\"")
+                .replaceAll("\"_id\":\"[^\"]*\"", "\"_id\":\"<ID>\"");
+        final JsonNode actual = OBJECT_MAPPER.readTree(actualComparableJson);
+        final JsonNode expected = OBJECT_MAPPER.readTree(EXPECTED_METRICS_JSON);
+
+        Assert.assertEquals(
+                "expectedJson=" + OBJECT_MAPPER.writeValueAsString(expected)
+                        + " vs actualJson=" + OBJECT_MAPPER.writeValueAsString(actual),
+                expected,
+                actual);
+    }
+
+    @Test
+    public void testSerializationDirectEncoding() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/FileSinkTest/testSerializationDirectEncoding-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final Sink sink = new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testSerializationDirectEncoding-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setDirectEncoding(true)
+                .build();
+
+        final Map<String, String> annotations = new LinkedHashMap<>(ANNOTATIONS);
+        annotations.put("foo", "bar");
+        sink.record(new TsdEvent(
+                annotations,
+                TEST_SERIALIZATION_TIMERS,
+                TEST_SERIALIZATION_COUNTERS,
+                TEST_SERIALIZATION_GAUGES));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        final String actualOriginalJson = fileToString(actualFile);
+        assertMatchesJsonSchema(actualOriginalJson);
+        final String actualComparableJson = actualOriginalJson
+                .replaceAll("\"_host\":\"[^\"]*\"", "\"_host\":\"<HOST>\"")
+                .replaceAll("\"_id\":\"[^\"]*\"", "\"_id\":\"<ID>\"");
+        final JsonNode actual = OBJECT_MAPPER.readTree(actualComparableJson);
+        final JsonNode expected = OBJECT_MAPPER.readTree(EXPECTED_METRICS_JSON);
+
         Assert.assertEquals(
                 "expectedJson=" + OBJECT_MAPPER.writeValueAsString(expected)
                         + " vs actualJson=" + OBJECT_MAPPER.writeValueAsString(actual),
@@ -167,12 +280,104 @@ public class FileSinkTest {
         return map;
     }
 
+    @Test
+    public void testSampler() throws IOException {
+        final File actualFile = new File("./target/FileSinkTest/testSampler-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final Iterator<Double> random = Arrays.asList(0.25, 0.75).iterator();
+        final Sink sink = new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testSampler-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .setSampler(new EventSampler(0.5, null, 0, System::nanoTime, random::next))
+                .build();
+        recordEmpty(sink);
+        recordEmpty(sink);
+
+        final String actualJson = fileToString(actualFile);
+        Assert.assertEquals(1, actualJson.split("\n").length);
+        Assert.assertEquals("0.5", OBJECT_MAPPER.readTree(actualJson).get("annotations").get("_sampleRate").asText());
+    }
+
+    @Test
+    public void testTryRecord() throws IOException {
+        final File actualFile = new File("./target/FileSinkTest/testTryRecord-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final FileSink sink = (FileSink) new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testTryRecord-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(createEmptyEvent()));
+        Assert.assertEquals(1, fileToString(actualFile).split("\n").length);
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+
+        final FileSink spy = Mockito.spy(sink);
+        Mockito.doReturn(false).when(spy).tryWrite(Mockito.any(byte[].class), Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Mockito.doReturn(false).when(spy).awaitCapacity(Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+    }
+
+    @Test
+    public void testTryRecordLogback() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/FileSinkTest/testTryRecordLogback-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final FileSink sink = (FileSink) new FileSink.Builder()
+                .setDirectory(createDirectory("./target/FileSinkTest"))
+                .setName("testTryRecordLogback-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(createEmptyEvent(), 1, TimeUnit.SECONDS));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        Assert.assertEquals(1, fileToString(actualFile).split("\n").length);
+        final FileSink spy = Mockito.spy(sink);
+        Mockito.doReturn(false).when(spy).tryLog(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+        Mockito.doReturn(false).when(spy).awaitCapacity(Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+    }
+
+    @Test
+    public void testTryRecordIOException() throws IOException {
+        final org.slf4j.Logger logger = createSlf4jLoggerMock();
+        final JsonFactory jsonFactory = Mockito.spy(new JsonFactory());
+        final FileSink sink = new FileSink(
+                new FileSink.Builder()
+                        .setDirectory(createDirectory("./target/FileSinkTest"))
+                        .setName("testTryRecordIOException-Query"),
+                jsonFactory,
+                logger);
+
+        Mockito.doThrow(new IOException("IOException"))
+                .when(jsonFactory)
+                .createGenerator(Mockito.any(OutputStream.class));
+        Assert.assertEquals(RecordOutcome.DROPPED, sink.tryRecord(createEmptyEvent()));
+        Mockito.verify(logger).warn(
+                Mockito.any(String.class),
+                Mockito.any(Throwable.class));
+    }
+
     private void recordEmpty(final Sink sink) {
-        sink.record(new TsdEvent(
+        sink.record(createEmptyEvent());
+    }
+
+    private static Event createEmptyEvent() {
+        return new TsdEvent(
                 Collections.<String, String>emptyMap(),
                 Collections.<String, List<Quantity>>emptyMap(),
                 Collections.<String, List<Quantity>>emptyMap(),
-                Collections.<String, List<Quantity>>emptyMap()));
+                Collections.<String, List<Quantity>>emptyMap());
     }
 
     private org.slf4j.Logger createSlf4jLoggerMock() {
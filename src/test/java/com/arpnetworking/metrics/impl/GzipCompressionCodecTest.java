@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for <code>GzipCompressionCodec</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class GzipCompressionCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final CompressionCodec codec = new GzipCompressionCodec(1);
+        final byte[] compressed = compress(codec, DATA);
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void testLevels() throws IOException {
+        Assert.assertTrue(compress(new GzipCompressionCodec(0), DATA).length > compress(new GzipCompressionCodec(9), DATA).length);
+    }
+
+    @Test
+    public void testConcatenated() throws IOException {
+        final CompressionCodec codec = new GzipCompressionCodec();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(compress(codec, DATA));
+        outputStream.write(compress(codec, DATA));
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            Assert.assertEquals(2 * DATA.length, readAll(inputStream).length);
+        }
+        Assert.assertTrue(codec.isConcatenable());
+    }
+
+    @Test
+    public void testAccessors() {
+        final GzipCompressionCodec codec = new GzipCompressionCodec(3);
+        Assert.assertEquals(".gz", codec.getExtension());
+        Assert.assertEquals(3, codec.getLevel());
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, new GzipCompressionCodec().getLevel());
+        Assert.assertEquals("GzipCompressionCodec{Level=3}", codec.toString());
+    }
+
+    @Test
+    public void testEquals() {
+        final GzipCompressionCodec codec = new GzipCompressionCodec(3);
+        Assert.assertTrue(codec.equals(codec));
+        Assert.assertTrue(codec.equals(new GzipCompressionCodec(3)));
+        Assert.assertFalse(codec.equals(new GzipCompressionCodec(4)));
+        Assert.assertFalse(codec.equals(new DeflateCompressionCodec(3, null)));
+        Assert.assertEquals(codec.hashCode(), new GzipCompressionCodec(3).hashCode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooLow() {
+        new GzipCompressionCodec(-2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooHigh() {
+        new GzipCompressionCodec(10);
+    }
+
+    private static byte[] compress(final CompressionCodec codec, final byte[] data) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream compressedOutputStream = codec.compress(outputStream)) {
+            compressedOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read = inputStream.read(buffer);
+        while (read >= 0) {
+            outputStream.write(buffer, 0, read);
+            read = inputStream.read(buffer);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final byte[] DATA = ("{\"version\":\"2f\",\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\"},"
+            + "\"timers\":{\"latency\":{\"values\":[{\"value\":1.5,\"unitNumerators\":[\"second\"]}]}}}\n")
+            .getBytes(StandardCharsets.UTF_8);
+}
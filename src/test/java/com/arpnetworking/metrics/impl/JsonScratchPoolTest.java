@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for <code>JsonScratchPool</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class JsonScratchPoolTest {
+
+    @Test
+    public void testReuse() throws IOException {
+        final JsonScratchPool pool = new JsonScratchPool(new JsonFactory(), 2);
+        Assert.assertEquals(0, pool.getIdle());
+
+        final JsonScratch scratch = pool.acquire();
+        pool.release(scratch);
+        Assert.assertEquals(1, pool.getIdle());
+        Assert.assertSame(scratch, pool.acquire());
+        Assert.assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void testBounded() throws IOException {
+        final JsonScratchPool pool = new JsonScratchPool(new JsonFactory(), 2);
+        final JsonScratch scratchA = pool.acquire();
+        final JsonScratch scratchB = pool.acquire();
+        final JsonScratch scratchC = pool.acquire();
+        Assert.assertNotSame(scratchA, scratchB);
+        Assert.assertNotSame(scratchB, scratchC);
+
+        pool.release(scratchA);
+        pool.release(scratchB);
+        pool.release(scratchC);
+        Assert.assertEquals(2, pool.getIdle());
+
+        final JsonScratch reusedA = pool.acquire();
+        final JsonScratch reusedB = pool.acquire();
+        Assert.assertNotSame(reusedA, reusedB);
+        Assert.assertNotSame(scratchC, reusedA);
+        Assert.assertNotSame(scratchC, reusedB);
+        Assert.assertEquals(0, pool.getIdle());
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException, ExecutionException {
+        final JsonScratchPool pool = new JsonScratchPool(new JsonFactory(), 4);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                final String value = "value-" + i;
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; ++j) {
+                        final JsonScratch scratch = pool.acquire();
+                        scratch.getGenerator().writeString(value);
+                        Assert.assertEquals("\"" + value + "\"", scratch.toUtf8String());
+                        pool.release(scratch);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(pool.getIdle() <= 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new JsonScratchPool(new JsonFactory(), 0);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tests for <code>JsonScratch</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class JsonScratchTest {
+
+    @Test
+    public void testConsecutiveRecords() throws IOException {
+        final JsonScratch scratch = new JsonScratch(new JsonFactory());
+        final JsonGenerator jsonGenerator = scratch.getGenerator();
+
+        writeRecord(jsonGenerator, "a", "b");
+        Assert.assertEquals("{\"a\":\"b\"}", decode(scratch.toByteArray()));
+
+        writeRecord(jsonGenerator, "c", "é");
+        Assert.assertEquals("{\"c\":\"é\"}", scratch.toUtf8String());
+
+        writeRecord(jsonGenerator, "d", "e");
+        jsonGenerator.writeRaw('\n');
+        Assert.assertEquals("{\"d\":\"e\"}\n", decode(scratch.toByteArray()));
+        Assert.assertSame(jsonGenerator, scratch.getGenerator());
+        Assert.assertEquals(JsonScratch.INITIAL_CAPACITY, scratch.getCapacity());
+    }
+
+    @Test
+    public void testGrowthRetained() throws IOException {
+        final JsonScratch scratch = new JsonScratch(new JsonFactory());
+        final String value = createString(JsonScratch.INITIAL_CAPACITY * 2);
+
+        writeRecord(scratch.getGenerator(), "a", value);
+        Assert.assertEquals("{\"a\":\"" + value + "\"}", scratch.toUtf8String());
+        final int capacity = scratch.getCapacity();
+        Assert.assertTrue(capacity > JsonScratch.INITIAL_CAPACITY);
+
+        writeRecord(scratch.getGenerator(), "b", "c");
+        Assert.assertEquals("{\"b\":\"c\"}", decode(scratch.toByteArray()));
+        Assert.assertEquals(capacity, scratch.getCapacity());
+    }
+
+    @Test
+    public void testLargeBufferReleased() throws IOException {
+        final JsonScratch scratch = new JsonScratch(new JsonFactory());
+        final String value = createString(JsonScratch.MAX_RETAINED_BYTES);
+
+        writeRecord(scratch.getGenerator(), "a", value);
+        Assert.assertEquals(JsonScratch.MAX_RETAINED_BYTES + 8, scratch.toByteArray().length);
+        Assert.assertEquals(JsonScratch.INITIAL_CAPACITY, scratch.getCapacity());
+
+        writeRecord(scratch.getGenerator(), "b", "c");
+        Assert.assertEquals("{\"b\":\"c\"}", scratch.toUtf8String());
+    }
+
+    private static void writeRecord(final JsonGenerator jsonGenerator, final String key, final String value) throws IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeStringField(key, value);
+        jsonGenerator.writeEndObject();
+    }
+
+    private static String createString(final int length) {
+        final char[] characters = new char[length];
+        Arrays.fill(characters, 'x');
+        return String.valueOf(characters);
+    }
+
+    private static String decode(final byte[] bytes) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+}
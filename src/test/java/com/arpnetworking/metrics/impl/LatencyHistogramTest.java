@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>LatencyHistogram</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketIndex() {
+        for (int i = 0; i < 8; ++i) {
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(i));
+            Assert.assertEquals(i, LatencyHistogram.highestValue(i));
+        }
+        Assert.assertEquals(8, LatencyHistogram.bucketIndex(8));
+        Assert.assertEquals(15, LatencyHistogram.bucketIndex(15));
+        Assert.assertEquals(16, LatencyHistogram.bucketIndex(16));
+        Assert.assertEquals(16, LatencyHistogram.bucketIndex(17));
+        Assert.assertEquals(17, LatencyHistogram.bucketIndex(18));
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        for (int i = 1; i < LatencyHistogram.BUCKET_COUNT; ++i) {
+            final long highest = LatencyHistogram.highestValue(i);
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(highest));
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(LatencyHistogram.highestValue(i - 1) + 1));
+        }
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void testRecord() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(10);
+        histogram.record(1000);
+        final LatencyStatistics statistics = histogram.snapshot();
+        Assert.assertEquals(3, statistics.getCount());
+        Assert.assertEquals(1010, statistics.getTotalInNanos());
+        Assert.assertEquals(1000, statistics.getMaxInNanos());
+        Assert.assertEquals(0, statistics.getValueAtPercentile(0.0));
+        Assert.assertEquals(10, statistics.getValueAtPercentile(50.0));
+        Assert.assertEquals(1000, statistics.getValueAtPercentile(100.0));
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>LatencyStatistics</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class LatencyStatisticsTest {
+
+    @Test
+    public void testEmpty() {
+        final LatencyStatistics statistics = new LatencyHistogram().snapshot();
+        Assert.assertEquals(0, statistics.getCount());
+        Assert.assertEquals(0, statistics.getTotalInNanos());
+        Assert.assertEquals(0, statistics.getMaxInNanos());
+        Assert.assertEquals(0, statistics.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i * 1000L);
+        }
+        final LatencyStatistics statistics = histogram.snapshot();
+        Assert.assertEquals(100, statistics.getCount());
+        Assert.assertEquals(5050000, statistics.getTotalInNanos());
+        Assert.assertEquals(100000, statistics.getMaxInNanos());
+        assertWithin(50000, statistics.getValueAtPercentile(50.0));
+        assertWithin(99000, statistics.getValueAtPercentile(99.0));
+        Assert.assertEquals(100000, statistics.getValueAtPercentile(100.0));
+        Assert.assertEquals(100000, statistics.getValueAtPercentile(150.0));
+        Assert.assertEquals(statistics.getValueAtPercentile(0.0), statistics.getValueAtPercentile(-1.0));
+    }
+
+    @Test
+    public void testToString() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        Assert.assertEquals(
+                "LatencyStatistics{Count=1, TotalInNanos=5, MaxInNanos=5, P50=5, P99=5, P999=5}",
+                histogram.snapshot().toString());
+    }
+
+    private static void assertWithin(final long expected, final long actual) {
+        Assert.assertTrue(String.valueOf(actual), actual >= expected && actual <= expected * 1.125);
+    }
+}
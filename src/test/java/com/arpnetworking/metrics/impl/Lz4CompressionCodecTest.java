@@ -0,0 +1,114 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for <code>Lz4CompressionCodec</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class Lz4CompressionCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (final CompressionCodec codec : new CompressionCodec[] {new Lz4CompressionCodec(), new Lz4CompressionCodec(9)}) {
+            try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compress(codec, DATA)))) {
+                Assert.assertArrayEquals(DATA, readAll(inputStream));
+            }
+        }
+    }
+
+    @Test
+    public void testFlush() throws IOException {
+        final CompressionCodec codec = new Lz4CompressionCodec();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final OutputStream compressedOutputStream = codec.compress(outputStream);
+        compressedOutputStream.write(DATA);
+        compressedOutputStream.flush();
+        final byte[] flushed = outputStream.toByteArray();
+        try (DataInputStream inputStream = new DataInputStream(codec.decompress(new ByteArrayInputStream(flushed)))) {
+            final byte[] buffer = new byte[DATA.length];
+            inputStream.readFully(buffer);
+            Assert.assertArrayEquals(DATA, buffer);
+        }
+        compressedOutputStream.close();
+    }
+
+    @Test
+    public void testConcatenated() throws IOException {
+        final CompressionCodec codec = new Lz4CompressionCodec();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(compress(codec, DATA));
+        outputStream.write(compress(codec, DATA));
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            Assert.assertEquals(2 * DATA.length, readAll(inputStream).length);
+        }
+        Assert.assertTrue(codec.isConcatenable());
+    }
+
+    @Test
+    public void testAccessors() {
+        final Lz4CompressionCodec codec = new Lz4CompressionCodec(3);
+        Assert.assertEquals(".lz4", codec.getExtension());
+        Assert.assertEquals(3, codec.getLevel());
+        Assert.assertEquals(0, new Lz4CompressionCodec().getLevel());
+        Assert.assertEquals("Lz4CompressionCodec{Level=3}", codec.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooLow() {
+        new Lz4CompressionCodec(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooHigh() {
+        new Lz4CompressionCodec(18);
+    }
+
+    private static byte[] compress(final CompressionCodec codec, final byte[] data) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream compressedOutputStream = codec.compress(outputStream)) {
+            compressedOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read = inputStream.read(buffer);
+        while (read >= 0) {
+            outputStream.write(buffer, 0, read);
+            read = inputStream.read(buffer);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final byte[] DATA = ("{\"version\":\"2f\",\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\"},"
+            + "\"timers\":{\"latency\":{\"values\":[{\"value\":1.5,\"unitNumerators\":[\"second\"]}]}}}\n")
+            .getBytes(StandardCharsets.UTF_8);
+}
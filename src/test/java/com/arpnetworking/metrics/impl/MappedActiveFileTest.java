@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Tests for <code>MappedActiveFile</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class MappedActiveFileTest {
+
+    @Test
+    public void testAppend() throws IOException {
+        final Path file = createFile("testAppend");
+        final ActiveFile activeFile = MappedActiveFile.open(file, 8);
+        Assert.assertEquals(0, activeFile.size());
+        activeFile.append(bytes("foo\n"));
+        activeFile.flush();
+        Assert.assertEquals(4, activeFile.size());
+        Assert.assertEquals("foo\n\0\0\0\0", read(file));
+        activeFile.append(bytes("0123456789\n"));
+        activeFile.force();
+        Assert.assertEquals(15, activeFile.size());
+        Assert.assertEquals("foo\n0123456789\n", read(file));
+        activeFile.close();
+        Assert.assertEquals("foo\n0123456789\n", read(file));
+    }
+
+    @Test
+    public void testRecover() throws IOException {
+        final Path file = createFile("testRecover");
+        Files.write(file, bytes("foo\n"));
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(3 * 1024 * 1024);
+        }
+        final ActiveFile activeFile = MappedActiveFile.open(file, 16);
+        Assert.assertEquals(4, activeFile.size());
+        activeFile.append(bytes("bar\n"));
+        activeFile.close();
+        Assert.assertEquals("foo\nbar\n", read(file));
+    }
+
+    @Test
+    public void testRecoverEmpty() throws IOException {
+        final Path file = createFile("testRecoverEmpty");
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            randomAccessFile.setLength(2 * 1024 * 1024);
+        }
+        final ActiveFile activeFile = MappedActiveFile.open(file, 16);
+        Assert.assertEquals(0, activeFile.size());
+        activeFile.close();
+        Assert.assertEquals(0, Files.size(file));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenFailure() throws IOException {
+        final Path deviceFull = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.exists(deviceFull));
+        MappedActiveFile.open(deviceFull, 16);
+    }
+
+    private static Path createFile(final String name) throws IOException {
+        final Path directory = Paths.get("./target/MappedActiveFileTest");
+        Files.createDirectories(directory);
+        final Path file = directory.resolve(name + ".log");
+        Files.deleteIfExists(file);
+        return file;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(final Path path) throws IOException {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(path))).toString();
+    }
+}
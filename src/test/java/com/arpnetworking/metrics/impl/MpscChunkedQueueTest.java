@@ -0,0 +1,121 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for <code>MpscChunkedQueue</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class MpscChunkedQueueTest {
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(1, new MpscChunkedQueue<>(0, 4).capacity());
+        Assert.assertEquals(3, new MpscChunkedQueue<>(3, 4).capacity());
+        Assert.assertEquals(1 << 24, new MpscChunkedQueue<>(1 << 24, 4).capacity());
+        Assert.assertEquals(2, new MpscChunkedQueue<>(8, 0).getChunkSize());
+        Assert.assertEquals(4, new MpscChunkedQueue<>(8, 3).getChunkSize());
+        Assert.assertEquals(1024, new MpscChunkedQueue<>(8, 1000).getChunkSize());
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        final MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<>(5, 2);
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(0, queue.size());
+        for (int lap = 0; lap < 3; ++lap) {
+            for (int i = 0; i < 5; ++i) {
+                Assert.assertTrue(queue.offer(i));
+            }
+            Assert.assertFalse(queue.offer(5));
+            Assert.assertEquals(5, queue.size());
+            for (int i = 0; i < 5; ++i) {
+                Assert.assertEquals(Integer.valueOf(i), queue.poll());
+            }
+            Assert.assertNull(queue.poll());
+            Assert.assertEquals(0, queue.size());
+        }
+        Assert.assertEquals(15, queue.getOfferedCount());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        assertConcurrentProducers(16, 4, 4, 10000);
+    }
+
+    @Test
+    public void testContendedProducers() throws InterruptedException {
+        // NOTE: Many producers on two slots contend for every claim and chunk
+        assertConcurrentProducers(2, 2, 8, 10000);
+    }
+
+    @Test
+    public void testLargeCapacity() throws InterruptedException {
+        // NOTE: The capacity is only allocated as elements are queued
+        assertConcurrentProducers(Integer.MAX_VALUE, 64, 4, 10000);
+    }
+
+    private static void assertConcurrentProducers(
+            final int capacity,
+            final int chunkSize,
+            final int producerCount,
+            final int elementsPerProducer)
+            throws InterruptedException {
+        final MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<>(capacity, chunkSize);
+        final List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; ++p) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < elementsPerProducer; ++i) {
+                    while (!queue.offer(producer * elementsPerProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        final int[] lastSeen = new int[producerCount];
+        Arrays.fill(lastSeen, -1);
+        int received = 0;
+        while (received < producerCount * elementsPerProducer) {
+            final Integer element = queue.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            final int producer = element / elementsPerProducer;
+            final int sequence = element % elementsPerProducer;
+            Assert.assertEquals(lastSeen[producer] + 1, sequence);
+            lastSeen[producer] = sequence;
+            ++received;
+        }
+        for (final Thread thread : producers) {
+            thread.join();
+        }
+        Assert.assertNull(queue.poll());
+        Assert.assertEquals(producerCount * elementsPerProducer, queue.getOfferedCount());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for <code>MpscRingBuffer</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class MpscRingBufferTest {
+
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(2, new MpscRingBuffer<>(0).capacity());
+        Assert.assertEquals(2, new MpscRingBuffer<>(1).capacity());
+        Assert.assertEquals(2, new MpscRingBuffer<>(2).capacity());
+        Assert.assertEquals(4, new MpscRingBuffer<>(3).capacity());
+        Assert.assertEquals(4, new MpscRingBuffer<>(4).capacity());
+        Assert.assertEquals(512, new MpscRingBuffer<>(500).capacity());
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        final MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(4);
+        Assert.assertNull(ringBuffer.poll());
+        Assert.assertEquals(0, ringBuffer.size());
+        for (int lap = 0; lap < 3; ++lap) {
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertTrue(ringBuffer.offer(i));
+            }
+            Assert.assertFalse(ringBuffer.offer(4));
+            Assert.assertEquals(4, ringBuffer.size());
+            for (int i = 0; i < 4; ++i) {
+                Assert.assertEquals(Integer.valueOf(i), ringBuffer.poll());
+            }
+            Assert.assertNull(ringBuffer.poll());
+            Assert.assertEquals(0, ringBuffer.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        assertConcurrentProducers(16, 4, 10000);
+    }
+
+    @Test
+    public void testContendedProducers() throws InterruptedException {
+        // NOTE: Many producers on two slots contend for every claim
+        assertConcurrentProducers(2, 8, 10000);
+    }
+
+    private static void assertConcurrentProducers(
+            final int capacity,
+            final int producerCount,
+            final int elementsPerProducer)
+            throws InterruptedException {
+        final MpscRingBuffer<Integer> ringBuffer = new MpscRingBuffer<>(capacity);
+        final List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; ++p) {
+            final int producer = p;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < elementsPerProducer; ++i) {
+                    while (!ringBuffer.offer(producer * elementsPerProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        final int[] lastSeen = new int[producerCount];
+        Arrays.fill(lastSeen, -1);
+        int received = 0;
+        while (received < producerCount * elementsPerProducer) {
+            final Integer element = ringBuffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            final int producer = element / elementsPerProducer;
+            final int sequence = element % elementsPerProducer;
+            Assert.assertEquals(lastSeen[producer] + 1, sequence);
+            lastSeen[producer] = sequence;
+            ++received;
+        }
+        for (final Thread thread : producers) {
+            thread.join();
+        }
+        Assert.assertNull(ringBuffer.poll());
+    }
+}
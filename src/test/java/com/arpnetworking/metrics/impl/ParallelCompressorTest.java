@@ -0,0 +1,123 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for <code>ParallelCompressor</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class ParallelCompressorTest {
+
+    @After
+    public void tearDown() {
+        _executor.shutdown();
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        final byte[] data = new byte[100000];
+        _random.nextBytes(data);
+        Assert.assertArrayEquals(data, roundTrip("testCompress", data, 4096));
+    }
+
+    @Test
+    public void testCompressBlockMultiple() throws IOException {
+        final byte[] data = new byte[4096 * 3];
+        _random.nextBytes(data);
+        Assert.assertArrayEquals(data, roundTrip("testCompressBlockMultiple", data, 4096));
+    }
+
+    @Test
+    public void testCompressEmpty() throws IOException {
+        Assert.assertArrayEquals(new byte[0], roundTrip("testCompressEmpty", new byte[0], 4096));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCompressFailure() throws IOException {
+        final ExecutorService executor = Mockito.mock(ExecutorService.class);
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        future.completeExceptionally(new IOException("Test"));
+        Mockito.doReturn(future).when(executor).submit(Mockito.<Callable<byte[]>>any());
+        final Path directory = createDirectory("testCompressFailure");
+        final Path source = Files.write(directory.resolve("source"), new byte[] {1, 2, 3});
+        new ParallelCompressor(CODEC, executor, 1, 4096).compress(source, directory.resolve("target.gz"));
+    }
+
+    @Test
+    public void testCompressInterrupted() throws IOException {
+        final ExecutorService executor = Mockito.mock(ExecutorService.class);
+        Mockito.doAnswer(invocation -> {
+            Thread.currentThread().interrupt();
+            return new CompletableFuture<byte[]>();
+        }).when(executor).submit(Mockito.<Callable<byte[]>>any());
+        final Path directory = createDirectory("testCompressInterrupted");
+        final Path source = Files.write(directory.resolve("source"), new byte[] {1, 2, 3});
+        try {
+            new ParallelCompressor(CODEC, executor, 1, 4096).compress(source, directory.resolve("target.gz"));
+            Assert.fail("Expected exception");
+        } catch (final InterruptedIOException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+    private byte[] roundTrip(final String name, final byte[] data, final int blockSize) throws IOException {
+        final Path directory = createDirectory(name);
+        final Path source = Files.write(directory.resolve("source"), data);
+        final Path target = directory.resolve("target.gz");
+        new ParallelCompressor(CODEC, _executor, 2, blockSize).compress(source, target);
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(target))) {
+            final byte[] buffer = new byte[8192];
+            int read = inputStream.read(buffer);
+            while (read >= 0) {
+                outputStream.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Path createDirectory(final String name) throws IOException {
+        final Path directory = Paths.get("./target/ParallelCompressorTest/" + name);
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    private final ExecutorService _executor = Executors.newFixedThreadPool(2);
+    private final Random _random = new Random(1);
+
+    private static final CompressionCodec CODEC = new GzipCompressionCodec(1);
+}
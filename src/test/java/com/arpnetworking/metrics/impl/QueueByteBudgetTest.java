@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>QueueByteBudget</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class QueueByteBudgetTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        final QueueByteBudget budget = new QueueByteBudget(100);
+        Assert.assertTrue(budget.hasCapacity());
+        Assert.assertTrue(budget.tryAcquire(60));
+        Assert.assertTrue(budget.tryAcquire(40));
+        Assert.assertEquals(100, budget.getQueuedBytes());
+        Assert.assertFalse(budget.hasCapacity());
+        Assert.assertFalse(budget.tryAcquire(1));
+        Assert.assertEquals(100, budget.getQueuedBytes());
+
+        budget.release(60);
+        Assert.assertTrue(budget.hasCapacity());
+        Assert.assertFalse(budget.tryAcquire(61));
+        Assert.assertTrue(budget.tryAcquire(60));
+        budget.release(100);
+        Assert.assertEquals(0, budget.getQueuedBytes());
+    }
+
+    @Test
+    public void testOversizedRecord() {
+        final QueueByteBudget budget = new QueueByteBudget(100);
+        Assert.assertTrue(budget.tryAcquire(1));
+        Assert.assertFalse(budget.tryAcquire(200));
+        budget.release(1);
+
+        // NOTE: A record larger than the budget fits an empty queue
+        Assert.assertTrue(budget.tryAcquire(200));
+        Assert.assertEquals(200, budget.getQueuedBytes());
+        Assert.assertFalse(budget.tryAcquire(0));
+        budget.release(200);
+        Assert.assertTrue(budget.tryAcquire(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxBytes() {
+        new QueueByteBudget(0);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.CoreConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for <code>RawBytesEncoder</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class RawBytesEncoderTest {
+
+    @Test
+    public void testEncodeRecord() {
+        final byte[] record = "{\"foo\":\"bar\"}\n".getBytes(StandardCharsets.UTF_8);
+        final RawBytesEncoder encoder = new RawBytesEncoder();
+        Assert.assertEquals(0, encoder.headerBytes().length);
+        Assert.assertEquals(0, encoder.footerBytes().length);
+        Assert.assertSame(record, encoder.encode(createEvent(null, record)));
+    }
+
+    @Test
+    public void testEncodeMessage() {
+        final RawBytesEncoder encoder = new RawBytesEncoder();
+        Assert.assertArrayEquals(
+                ("foo" + CoreConstants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8),
+                encoder.encode(createEvent("foo")));
+        Assert.assertArrayEquals(
+                ("foo bar" + CoreConstants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8),
+                encoder.encode(createEvent("foo {}", "bar")));
+        Assert.assertArrayEquals(
+                ("foo bar baz" + CoreConstants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8),
+                encoder.encode(createEvent("foo {} {}", "bar", "baz")));
+    }
+
+    private static LoggingEvent createEvent(final String message, final Object... arguments) {
+        return new LoggingEvent(
+                RawBytesEncoderTest.class.getName(),
+                LOGGER,
+                Level.INFO,
+                message,
+                null,
+                arguments.length == 0 ? null : arguments);
+    }
+
+    private static final Logger LOGGER = new LoggerContext().getLogger(Logger.ROOT_LOGGER_NAME);
+}
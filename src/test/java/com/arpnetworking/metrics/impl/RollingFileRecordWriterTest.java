@@ -0,0 +1,817 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for <code>RollingFileRecordWriter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class RollingFileRecordWriterTest {
+
+    @Before
+    public void setUp() {
+        _clock = Mockito.mock(Clock.class);
+        Mockito.doReturn(ZoneOffset.UTC).when(_clock).getZone();
+        setTime("2019-01-01T10:30:00Z");
+    }
+
+    @Test
+    public void testWrite() throws IOException {
+        final Path directory = createDirectory("testWrite");
+        final RecordWriter writer = createWriter(directory, 24, 1000, false, true);
+        Assert.assertTrue(writer.write(bytes("foo\n")));
+        Assert.assertTrue(writer.write(bytes("bar\n")));
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.log")));
+        writer.close();
+        Assert.assertFalse(writer.write(bytes("baz\n")));
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testBuffered() throws IOException {
+        final Path directory = createDirectory("testBuffered");
+        final RecordWriter writer = createWriter(directory, 24, 100000, false, false);
+        final byte[] large = new byte[20000];
+        Arrays.fill(large, (byte) 'x');
+        large[large.length - 1] = '\n';
+        writer.write(bytes("foo\n"));
+        Assert.assertEquals("", read(directory.resolve("query.log")));
+        writer.write(large);
+        writer.close();
+        Assert.assertEquals("foo\n" + decode(large), read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testBatchWrite() throws IOException {
+        final Path directory = createDirectory("testBatchWrite");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, false);
+        Assert.assertEquals(3, writer.write(Arrays.asList(bytes("0123456789\n"), bytes("foo\n"), bytes("bar\n"))));
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.log")));
+        writer.close();
+        Assert.assertEquals(0, writer.write(Collections.singletonList(bytes("baz\n"))));
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testBatchWriteFailure() throws IOException {
+        final Path directory = createDirectory("testBatchWriteFailure").resolve("missing");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, false);
+        writer.write(Collections.singletonList(bytes("foo\n")));
+        Assert.assertFalse(writer.write(bytes("foo\n")));
+        Files.createDirectories(directory);
+        writer.write(Collections.singletonList(bytes("bar\n")));
+        writer.close();
+        Assert.assertEquals("bar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testGroupCommitBytes() throws IOException {
+        final Path directory = createDirectory("testGroupCommitBytes");
+        final RecordWriter writer = createCommitWriter(directory, 3600000, 8);
+        writer.write(bytes("foo\n"));
+        Assert.assertEquals(0, writer.getCommitStatistics().getCommits());
+        writer.write(Arrays.asList(bytes("bar\n"), bytes("baz\n")));
+        writer.awaitDurable();
+        final CommitStatistics statistics = writer.getCommitStatistics();
+        Assert.assertEquals(1, statistics.getCommits());
+        Assert.assertEquals(0, statistics.getFailures());
+        Assert.assertEquals(3, statistics.getTotalRecords());
+        Assert.assertEquals(3, statistics.getMaxRecords());
+        Assert.assertEquals(12, statistics.getTotalBytes());
+        Assert.assertEquals(12, statistics.getMaxBytes());
+        Assert.assertTrue(statistics.getTotalLatencyInNanos() >= statistics.getMaxLatencyInNanos());
+        writer.close();
+        Assert.assertEquals(1, writer.getCommitStatistics().getCommits());
+        Assert.assertEquals("foo\nbar\nbaz\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testGroupCommitInterval() throws IOException {
+        final Path directory = createDirectory("testGroupCommitInterval");
+        final RecordWriter writer = createCommitWriter(directory, 10, Long.MAX_VALUE);
+        writer.write(bytes("foo\n"));
+        writer.awaitDurable();
+        Assert.assertEquals(1, writer.getCommitStatistics().getCommits());
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+        writer.close();
+        Assert.assertEquals(1, writer.getCommitStatistics().getCommits());
+    }
+
+    @Test
+    public void testGroupCommitRollAndClose() throws IOException {
+        final Path directory = createDirectory("testGroupCommitRollAndClose");
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setCommitIntervalInMillis(3600000)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        Assert.assertEquals(1, writer.getCommitStatistics().getCommits());
+        writer.close();
+        Assert.assertEquals(2, writer.getCommitStatistics().getCommits());
+        Assert.assertEquals(2, writer.getCommitStatistics().getTotalRecords());
+        writer.awaitDurable();
+    }
+
+    @Test
+    public void testGroupCommitFailure() throws IOException {
+        final Path deviceFull = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.exists(deviceFull));
+        final Path directory = createDirectory("testGroupCommitFailure");
+        Files.createSymbolicLink(directory.resolve("query.log"), deviceFull);
+        final RecordWriter writer = createCommitWriter(directory, 3600000, 8);
+        writer.write(bytes("foo\n"));
+        writer.write(bytes("bar\n"));
+        writer.awaitDurable();
+        Assert.assertEquals(1, writer.getCommitStatistics().getFailures());
+        writer.write(bytes("baz\n"));
+        writer.close();
+        Assert.assertEquals(2, writer.getCommitStatistics().getFailures());
+        Assert.assertEquals(0, writer.getCommitStatistics().getCommits());
+    }
+
+    @Test
+    public void testGroupCommitNeverOpened() throws IOException {
+        final Path directory = createDirectory("testGroupCommitNeverOpened").resolve("missing");
+        final RecordWriter writer = createCommitWriter(directory, 3600000, 8);
+        writer.write(bytes("foo\n"));
+        writer.awaitDurable();
+        writer.close();
+        Assert.assertEquals(0, writer.getCommitStatistics().getCommits());
+        Assert.assertEquals(0, writer.getCommitStatistics().getFailures());
+    }
+
+    @Test
+    public void testAwaitDurableWithoutGroupCommit() throws IOException {
+        final Path directory = createDirectory("testAwaitDurableWithoutGroupCommit");
+        final RecordWriter writer = createWriter(directory, 24, 1000, false, false);
+        writer.write(bytes("foo\n"));
+        writer.awaitDurable();
+        Assert.assertEquals(0, writer.getCommitStatistics().getCommits());
+        writer.close();
+    }
+
+    @Test
+    public void testAwaitDurableClosed() throws IOException, InterruptedException {
+        final Path directory = createDirectory("testAwaitDurableClosed");
+        final RecordWriter writer = createCommitWriter(directory, 3600000, Long.MAX_VALUE);
+        writer.write(bytes("foo\n"));
+        final Thread waiter = new Thread(writer::awaitDurable);
+        waiter.start();
+        Thread.sleep(100);
+        Assert.assertTrue(waiter.isAlive());
+        writer.close();
+        waiter.join(1000);
+        Assert.assertFalse(waiter.isAlive());
+    }
+
+    @Test
+    public void testAwaitDurableInterrupted() throws IOException {
+        final Path directory = createDirectory("testAwaitDurableInterrupted");
+        final RecordWriter writer = createCommitWriter(directory, 3600000, Long.MAX_VALUE);
+        writer.write(bytes("foo\n"));
+        Thread.currentThread().interrupt();
+        writer.awaitDurable();
+        Assert.assertTrue(Thread.interrupted());
+        writer.close();
+    }
+
+    @Test
+    public void testSizeRoll() throws IOException {
+        final Path directory = createDirectory("testSizeRoll");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        writer.write(bytes("bar\n"));
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("baz\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("foo\nbar\n0123456789\n", read(directory.resolve("query.2019-01-01-10.1.log")));
+        Assert.assertEquals("baz\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final Path directory = createDirectory("testDictionary");
+        final FileDictionary dictionary = new OncePerFileDictionary();
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setImmediateFlush(true)
+                .setDictionary(dictionary)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+        writer.write(bytes("0123456789\n"));
+        writer.write(Arrays.asList(bytes("foo\n"), bytes("bar\n")));
+        writer.close();
+        Assert.assertEquals("dict\n0123456789\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("dict\nfoo\nbar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testMemoryMappedSizeRoll() throws IOException {
+        final Path directory = createDirectory("testMemoryMappedSizeRoll");
+        final RecordWriter writer = createMappedWriter(directory, 10);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        Assert.assertEquals(10, Files.size(directory.resolve("query.log")));
+        writer.write(Arrays.asList(bytes("bar\n"), bytes("0123456789\n"), bytes("baz\n")));
+        writer.close();
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("foo\nbar\n0123456789\n", read(directory.resolve("query.2019-01-01-10.1.log")));
+        Assert.assertEquals("baz\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testMemoryMappedResume() throws IOException {
+        final Path directory = createDirectory("testMemoryMappedResume");
+        Files.write(directory.resolve("query.log"), Arrays.copyOf(bytes("foo\n"), 100));
+        Files.setLastModifiedTime(directory.resolve("query.log"), FileTime.from(Instant.parse("2019-01-01T10:15:00Z")));
+        final RecordWriter writer = createMappedWriter(directory, 1000);
+        writer.write(bytes("bar\n"));
+        writer.close();
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testTimeRoll() throws IOException {
+        final Path directory = createDirectory("testTimeRoll");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        setTime("2019-01-01T11:00:00.999Z");
+        writer.write(bytes("bar\n"));
+        setTime("2019-01-01T11:00:01Z");
+        writer.write(bytes("baz\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("foo\nbar\n", read(directory.resolve("query.2019-01-01-10.1.log")));
+        Assert.assertEquals("baz\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testCompress() throws IOException {
+        final Path directory = createDirectory("testCompress");
+        final RecordWriter writer = createWriter(directory, 24, 10, true, true);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", readCompressed(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+        Assert.assertEquals(2, Files.list(directory).count());
+    }
+
+    @Test
+    public void testParallelCompress() throws IOException {
+        final Path directory = createDirectory("testParallelCompress");
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setCompress(true)
+                .setCompressionThreads(2)
+                .setCompressionBlockSize(4)
+                .setImmediateFlush(true)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", readCompressed(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+        Assert.assertEquals(2, Files.list(directory).count());
+        Assert.assertEquals(0, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(0, writer.getCompressionBacklogBytes());
+    }
+
+    @Test
+    public void testCompressionCodec() throws IOException {
+        final Path directory = createDirectory("testCompressionCodec");
+        final CompressionCodec codec = new DeflateCompressionCodec(1, bytes("0123"));
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setCompress(true)
+                .setCompressionCodec(codec)
+                .setCompressionThreads(2)
+                .setImmediateFlush(true)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        try (InputStream inputStream = codec.decompress(Files.newInputStream(directory.resolve("query.2019-01-01-10.0.log.zz")))) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read = inputStream.read(buffer);
+            while (read >= 0) {
+                outputStream.write(buffer, 0, read);
+                read = inputStream.read(buffer);
+            }
+            Assert.assertEquals("0123456789\n", decode(outputStream.toByteArray()));
+        }
+        Assert.assertEquals(2, Files.list(directory).count());
+    }
+
+    @Test
+    public void testCompressCodecFailure() throws IOException {
+        final Path directory = createDirectory("testCompressCodecFailure");
+        final CompressionCodec codec = Mockito.mock(CompressionCodec.class);
+        Mockito.doReturn(".gz").when(codec).getExtension();
+        Mockito.doThrow(new IOException("Test")).when(codec).compress(Mockito.any());
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setCompress(true)
+                .setCompressionCodec(codec)
+                .setImmediateFlush(true)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertFalse(Files.exists(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(
+                    1,
+                    files.filter(path -> path.getFileName().toString().matches("query\\.2019-01-01-10\\.0\\.log\\.\\d+\\.tmp"))
+                            .count());
+        }
+        Assert.assertEquals(0, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(0, writer.getCompressionBacklogBytes());
+    }
+
+    @Test
+    public void testRecoverTemporaries() throws IOException {
+        final Path directory = createDirectory("testRecoverTemporaries");
+        Files.write(directory.resolve("query.2019-01-01-10.0.log.123.tmp"), bytes("foo\n"));
+        Files.write(directory.resolve("query.2019-01-01-09.0.log.456.tmp"), bytes("bar\n"));
+        final RecordWriter writer = createWriter(directory, 24, 10, true, true);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("baz\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", readCompressed(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        Assert.assertEquals("bar\n", readCompressed(directory.resolve("query.2019-01-01-09.0.log.gz")));
+        Assert.assertEquals("0123456789\n", readCompressed(directory.resolve("query.2019-01-01-10.1.log.gz")));
+        Assert.assertEquals("baz\n", read(directory.resolve("query.log")));
+        Assert.assertEquals(4, Files.list(directory).count());
+    }
+
+    @Test
+    public void testRecoverTemporariesUncompressed() throws IOException {
+        final Path directory = createDirectory("testRecoverTemporariesUncompressed");
+        Files.write(directory.resolve("query.2019-01-01-10.0.log.123.tmp"), bytes("foo\n"));
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("bar\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.1.log")));
+        Assert.assertEquals("bar\n", read(directory.resolve("query.log")));
+        Assert.assertEquals(3, Files.list(directory).count());
+    }
+
+    @Test
+    public void testStreamingCompression() throws IOException {
+        final Path directory = createDirectory("testStreamingCompression");
+        final RecordWriter writer = createStreamingWriter(directory, true);
+        writer.write(bytes("0123456789\n"));
+        Assert.assertTrue(Files.size(directory.resolve("query.log.gz")) >= 10);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", readCompressed(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        Assert.assertEquals("foo\n", readCompressed(directory.resolve("query.log.gz")));
+        Assert.assertEquals(2, Files.list(directory).count());
+        Assert.assertEquals(0, writer.getCompressionBacklogFiles());
+    }
+
+    @Test
+    public void testStreamingCompressionTruncated() throws IOException {
+        final Path directory = createDirectory("testStreamingCompressionTruncated");
+        final Path file = directory.resolve("query.log.gz");
+        RecordWriter writer = createStreamingWriter(directory, true);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        final byte[] member = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(member, member.length - 4));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2019-01-01T10:15:00Z")));
+
+        writer = createStreamingWriter(directory, true);
+        writer.write(bytes("bar\n"));
+        writer.close();
+        Assert.assertEquals("bar\n", readCompressed(file));
+        Assert.assertTrue(Files.exists(directory.resolve("query.2019-01-01-10.0.log.gz")));
+        Assert.assertEquals(2, Files.list(directory).count());
+    }
+
+    @Test
+    public void testStreamingCompressionDisabled() throws IOException {
+        final Path directory = createDirectory("testStreamingCompressionDisabled");
+        final RecordWriter writer = createStreamingWriter(directory, false);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testCompressionBacklog() throws IOException, InterruptedException {
+        final Path directory = createDirectory("testCompressionBacklog");
+        final ExecutorService archiver = Mockito.mock(ExecutorService.class);
+        final RecordWriter writer = createWriter(directory, 24, 10, true, true, archiver);
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("foo\n"));
+        Assert.assertEquals(1, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(11, writer.getCompressionBacklogBytes());
+        writer.close();
+    }
+
+    @Test
+    public void testCompressFailure() throws IOException {
+        final Path directory = createDirectory("testCompressFailure");
+        final RecordWriter writer = createWriter(directory, 24, 10, true, true);
+        writer.write(bytes("0123456789\n"));
+        Files.createDirectories(directory.resolve("query.2019-01-01-10.0.log.gz").resolve("foo"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+        Assert.assertEquals(3, Files.list(directory).count());
+    }
+
+    @Test
+    public void testRollFailure() throws IOException {
+        final Path directory = createDirectory("testRollFailure");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("0123456789\n"));
+        Files.createDirectories(directory.resolve("query.2019-01-01-10.0.log").resolve("foo"));
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\nfoo\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testRollRetried() throws IOException {
+        final Path directory = createDirectory("testRollRetried");
+        Files.write(directory.resolve("query.2019-01-01-11.0.log"), bytes("x\n"));
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("0123456789\n"));
+        final Path blocker = directory.resolve("query.2019-01-01-10.0.log");
+        Files.createDirectories(blocker.resolve("foo"));
+        writer.write(bytes("foo\n"));
+        Files.delete(blocker.resolve("foo"));
+        Files.deleteIfExists(blocker);
+
+        // NOTE: The failed roll keeps the period so the records are archived under it
+        setTime("2019-01-01T11:00:01Z");
+        writer.write(bytes("bar\n"));
+        writer.write(bytes("0123456789\n"));
+        writer.write(bytes("baz\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\nfoo\n", read(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertEquals("x\n", read(directory.resolve("query.2019-01-01-11.0.log")));
+        Assert.assertEquals("bar\n0123456789\n", read(directory.resolve("query.2019-01-01-11.1.log")));
+        Assert.assertEquals("baz\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        final Path directory = createDirectory("testResume");
+        Files.write(directory.resolve("query.2019-01-01-10.0.log"), bytes("a\n"));
+        Files.write(directory.resolve("query.2019-01-01-10.1.log.gz"), bytes("b\n"));
+        Files.write(directory.resolve("query.2019-01-01-09.7.log"), bytes("c\n"));
+        Files.write(directory.resolve("query.log"), bytes("0123456789\n"));
+        Files.setLastModifiedTime(directory.resolve("query.log"), FileTime.from(Instant.parse("2019-01-01T10:15:00Z")));
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("0123456789\n", read(directory.resolve("query.2019-01-01-10.2.log")));
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testResumeExpired() throws IOException {
+        final Path directory = createDirectory("testResumeExpired");
+        Files.write(directory.resolve("query.log"), bytes("foo\n"));
+        Files.setLastModifiedTime(directory.resolve("query.log"), FileTime.from(Instant.parse("2019-01-01T08:15:00Z")));
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("bar\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.2019-01-01-08.0.log")));
+        Assert.assertEquals("bar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testRemoveHistory() throws IOException {
+        final Path directory = createDirectory("testRemoveHistory");
+        Files.write(directory.resolve("query.2019-01-01-07.0.log"), bytes("a\n"));
+        Files.write(directory.resolve("query.2019-01-01-08.0.log.gz"), bytes("b\n"));
+        Files.write(directory.resolve("query.2019-01-01-09.0.log"), bytes("c\n"));
+        Files.write(directory.resolve("other.2019-01-01-07.0.log"), bytes("d\n"));
+        final RecordWriter writer = createWriter(directory, 2, 10, false, true);
+        writer.close();
+        Assert.assertFalse(Files.exists(directory.resolve("query.2019-01-01-07.0.log")));
+        Assert.assertTrue(Files.exists(directory.resolve("query.2019-01-01-08.0.log.gz")));
+        Assert.assertTrue(Files.exists(directory.resolve("query.2019-01-01-09.0.log")));
+        Assert.assertTrue(Files.exists(directory.resolve("other.2019-01-01-07.0.log")));
+    }
+
+    @Test
+    public void testRemoveHistoryTotalSizeCap() throws IOException {
+        final Path directory = createDirectory("testRemoveHistoryTotalSizeCap");
+        Files.write(directory.resolve("query.2019-01-01-09.0.log"), bytes("c\n"));
+        final RecordWriter writer = createWriter(directory, 2, 10, false, true);
+        for (int i = 0; i < 4; ++i) {
+            writer.write(bytes("012345678\n"));
+        }
+        writer.close();
+        Assert.assertFalse(Files.exists(directory.resolve("query.2019-01-01-09.0.log")));
+        Assert.assertFalse(Files.exists(directory.resolve("query.2019-01-01-10.0.log")));
+        Assert.assertTrue(Files.exists(directory.resolve("query.2019-01-01-10.1.log")));
+        Assert.assertTrue(Files.exists(directory.resolve("query.2019-01-01-10.2.log")));
+        Assert.assertTrue(Files.exists(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testRemoveHistoryFailure() throws IOException {
+        final Path directory = createDirectory("testRemoveHistoryFailure");
+        Files.createSymbolicLink(directory.resolve("query.2019-01-01-07.0.log"), directory.resolve("missing"));
+        final RecordWriter writer = createWriter(directory, 2, 10, false, true);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testMissingDirectory() throws IOException {
+        final Path directory = createDirectory("testMissingDirectory").resolve("missing");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.write(bytes("foo\n"));
+        Files.createDirectories(directory);
+        writer.write(bytes("bar\n"));
+        writer.close();
+        Assert.assertEquals("bar\n", read(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testCloseFailure() throws IOException {
+        final Path deviceFull = Paths.get("/dev/full");
+        Assume.assumeTrue(Files.exists(deviceFull));
+        final Path directory = createDirectory("testCloseFailure");
+        Files.createSymbolicLink(directory.resolve("query.log"), deviceFull);
+        final RecordWriter writer = createWriter(directory, 24, 1000, false, false);
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertTrue(Files.isSymbolicLink(directory.resolve("query.log")));
+    }
+
+    @Test
+    public void testCloseNeverOpened() throws IOException {
+        final Path directory = createDirectory("testCloseNeverOpened").resolve("missing");
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true);
+        writer.close();
+        Assert.assertFalse(Files.exists(directory));
+    }
+
+    @Test
+    public void testCloseTimeout() throws IOException, InterruptedException {
+        final Path directory = createDirectory("testCloseTimeout");
+        final ExecutorService archiver = Mockito.mock(ExecutorService.class);
+        Mockito.doReturn(false).when(archiver).awaitTermination(Mockito.anyLong(), Mockito.any());
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true, archiver);
+        writer.close();
+        Mockito.verify(archiver).shutdown();
+        writer.close();
+        Mockito.verify(archiver).shutdown();
+    }
+
+    @Test
+    public void testCloseInterrupted() throws IOException, InterruptedException {
+        final Path directory = createDirectory("testCloseInterrupted");
+        final ExecutorService archiver = Mockito.mock(ExecutorService.class);
+        Mockito.doThrow(new InterruptedException()).when(archiver).awaitTermination(Mockito.anyLong(), Mockito.any());
+        final RecordWriter writer = createWriter(directory, 24, 10, false, true, archiver);
+        writer.close();
+        Assert.assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void testDefaults() throws IOException {
+        final Path directory = createDirectory("testDefaults");
+        final RecordWriter writer = new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(1000)
+                .setImmediateFlush(true)
+                .build();
+        writer.write(bytes("foo\n"));
+        writer.close();
+        Assert.assertEquals("foo\n", read(directory.resolve("query.log")));
+    }
+
+    private RecordWriter createWriter(
+            final Path directory,
+            final int maxHistory,
+            final long maxFileSize,
+            final boolean compress,
+            final boolean immediateFlush) {
+        return createWriter(
+                directory,
+                maxHistory,
+                maxFileSize,
+                compress,
+                immediateFlush,
+                Executors.newSingleThreadExecutor());
+    }
+
+    private RecordWriter createWriter(
+            final Path directory,
+            final int maxHistory,
+            final long maxFileSize,
+            final boolean compress,
+            final boolean immediateFlush,
+            final ExecutorService archiver) {
+        return new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(maxHistory)
+                .setMaxFileSize(maxFileSize)
+                .setCompress(compress)
+                .setImmediateFlush(immediateFlush)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .setArchiver(archiver)
+                .build();
+    }
+
+    private RecordWriter createStreamingWriter(final Path directory, final boolean compress) {
+        return new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(10)
+                .setCompress(compress)
+                .setStreamingCompression(true)
+                .setCompressionThreads(2)
+                .setImmediateFlush(true)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+    }
+
+    private RecordWriter createCommitWriter(
+            final Path directory,
+            final long commitIntervalInMillis,
+            final long commitBytes) {
+        return new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(1000)
+                .setCommitIntervalInMillis(commitIntervalInMillis)
+                .setCommitBytes(commitBytes)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+    }
+
+    private RecordWriter createMappedWriter(final Path directory, final long maxFileSize) {
+        return new RollingFileRecordWriter.Builder()
+                .setDirectory(directory)
+                .setName("query")
+                .setExtension(".log")
+                .setMaxHistory(24)
+                .setMaxFileSize(maxFileSize)
+                .setMemoryMapped(true)
+                .setRandomOffsetInMillis(RANDOM_OFFSET_IN_MILLIS)
+                .setClock(_clock)
+                .build();
+    }
+
+    private void setTime(final String time) {
+        Mockito.doReturn(Instant.parse(time).toEpochMilli()).when(_clock).millis();
+    }
+
+    private static Path createDirectory(final String name) throws IOException {
+        final Path directory = Paths.get("./target/RollingFileRecordWriterTest").resolve(name);
+        if (Files.exists(directory)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+            }
+        }
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(final Path path) throws IOException {
+        return decode(Files.readAllBytes(path));
+    }
+
+    private static String decode(final byte[] bytes) {
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes)).toString();
+    }
+
+    private static String readCompressed(final Path path) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(Files.newInputStream(path))) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
+            }
+            return decode(outputStream.toByteArray());
+        }
+    }
+
+    private Clock _clock;
+
+    private static final int RANDOM_OFFSET_IN_MILLIS = 1000;
+
+    private static final class OncePerFileDictionary implements FileDictionary {
+
+        @Override
+        public void reset() {
+            _defined = false;
+        }
+
+        @Override
+        public byte[] define(final byte[] record) {
+            if (_defined) {
+                return new byte[0];
+            }
+            _defined = true;
+            return bytes("dict\n");
+        }
+
+        private boolean _defined;
+    }
+}
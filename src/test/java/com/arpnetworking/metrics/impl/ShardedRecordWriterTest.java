@@ -0,0 +1,183 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for <code>ShardedRecordWriter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class ShardedRecordWriterTest {
+
+    @Test
+    public void testRoundRobin() {
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.ROUND_ROBIN);
+        final byte[] a = new byte[] {'a'};
+        final byte[] b = new byte[] {'b'};
+        final List<byte[]> batch = Arrays.asList(new byte[] {'c'}, new byte[] {'d'});
+        writer.write(a);
+        writer.write(b);
+        writer.write(batch);
+        Mockito.verify(first).write(a);
+        Mockito.verify(second).write(b);
+        Mockito.verify(first).write(batch);
+        Mockito.verifyNoMoreInteractions(first, second);
+
+        writer.awaitDurable();
+        Mockito.verify(first).awaitDurable();
+        Mockito.verify(second).awaitDurable();
+        Assert.assertEquals(2, writer.getShardCount());
+    }
+
+    @Test
+    public void testThread() throws InterruptedException {
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.THREAD);
+        final byte[] a = new byte[] {'a'};
+        final byte[] b = new byte[] {'b'};
+        final byte[] c = new byte[] {'c'};
+        writer.write(a);
+        final Thread thread = new Thread(() -> {
+            writer.write(b);
+            writer.awaitDurable();
+        });
+        thread.start();
+        thread.join();
+        writer.write(c);
+        writer.awaitDurable();
+        Mockito.verify(first).write(a);
+        Mockito.verify(first).write(c);
+        Mockito.verify(first).awaitDurable();
+        Mockito.verify(second).write(b);
+        Mockito.verify(second).awaitDurable();
+        Mockito.verifyNoMoreInteractions(first, second);
+    }
+
+    @Test
+    public void testThreadWriter() throws InterruptedException {
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.THREAD);
+        final RecordWriter[] threadWriter = new RecordWriter[1];
+        Assert.assertSame(first, writer.getThreadWriter());
+        final Thread thread = new Thread(() -> threadWriter[0] = writer.getThreadWriter());
+        thread.start();
+        thread.join();
+        Assert.assertSame(second, threadWriter[0]);
+        Assert.assertSame(first, writer.getThreadWriter());
+
+        final ShardedRecordWriter roundRobinWriter =
+                new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.ROUND_ROBIN);
+        Assert.assertSame(roundRobinWriter, roundRobinWriter.getThreadWriter());
+    }
+
+    @Test
+    public void testCapacityRoundRobin() {
+        final RecordWriter first = Mockito.mock(RecordWriter.class, Mockito.CALLS_REAL_METHODS);
+        Mockito.doReturn(true).when(first).write(Mockito.any(byte[].class));
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(false).when(second).tryWrite(Mockito.any(byte[].class), Mockito.anyLong());
+        Mockito.doReturn(false).when(second).awaitCapacity(Mockito.anyLong());
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.ROUND_ROBIN);
+        final byte[] a = new byte[] {'a'};
+        Assert.assertTrue(writer.awaitCapacity(0));
+        Assert.assertTrue(writer.tryWrite(a, 0));
+        Assert.assertFalse(writer.awaitCapacity(0));
+        Assert.assertFalse(writer.tryWrite(a, 0));
+        Mockito.verify(first).write(a);
+
+        final Runnable callback = Mockito.mock(Runnable.class);
+        Mockito.doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(second).onCapacityAvailable(Mockito.any(Runnable.class));
+        writer.onCapacityAvailable(callback);
+        Mockito.verify(callback).run();
+    }
+
+    @Test
+    public void testCapacityThread() {
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(true).when(first).tryWrite(Mockito.any(byte[].class), Mockito.anyLong());
+        Mockito.doReturn(true).when(first).awaitCapacity(Mockito.anyLong());
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Collections.singletonList(first), ShardSelection.THREAD);
+        final byte[] a = new byte[] {'a'};
+        final Runnable callback = Mockito.mock(Runnable.class);
+        Assert.assertTrue(writer.awaitCapacity(1));
+        Assert.assertTrue(writer.tryWrite(a, 2));
+        writer.onCapacityAvailable(callback);
+        Mockito.verify(first).awaitCapacity(1);
+        Mockito.verify(first).tryWrite(a, 2);
+        Mockito.verify(first).onCapacityAvailable(callback);
+    }
+
+    @Test
+    public void testStatistics() {
+        final CommitStatistics.Accumulator accumulator = new CommitStatistics.Accumulator();
+        accumulator.recordCommit(100, 2, 20);
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(accumulator.snapshot()).when(first).getCommitStatistics();
+        Mockito.doReturn(1L).when(first).getDropped();
+        Mockito.doReturn(2).when(first).getQueueDepth();
+        Mockito.doReturn(8).when(first).getQueueCapacity();
+        Mockito.doReturn(1L).when(first).getCompressionBacklogFiles();
+        Mockito.doReturn(100L).when(first).getCompressionBacklogBytes();
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(accumulator.snapshot()).when(second).getCommitStatistics();
+        Mockito.doReturn(3L).when(second).getDropped();
+        Mockito.doReturn(4).when(second).getQueueDepth();
+        Mockito.doReturn(8).when(second).getQueueCapacity();
+        Mockito.doReturn(2L).when(second).getCompressionBacklogFiles();
+        Mockito.doReturn(200L).when(second).getCompressionBacklogBytes();
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.THREAD);
+
+        final CommitStatistics statistics = writer.getCommitStatistics();
+        Assert.assertEquals(2, statistics.getCommits());
+        Assert.assertEquals(4, statistics.getTotalRecords());
+        Assert.assertEquals(2, statistics.getMaxRecords());
+        Assert.assertEquals(4, writer.getDropped());
+        Assert.assertEquals(6, writer.getQueueDepth());
+        Assert.assertEquals(16, writer.getQueueCapacity());
+        Assert.assertEquals(3, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(300, writer.getCompressionBacklogBytes());
+    }
+
+    @Test
+    public void testClose() {
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        final ShardedRecordWriter writer = new ShardedRecordWriter(Arrays.asList(first, second), ShardSelection.THREAD);
+        writer.close();
+        Mockito.verify(first).close();
+        Mockito.verify(second).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoShards() {
+        new ShardedRecordWriter(Collections.emptyList(), ShardSelection.THREAD);
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tests for <code>SinkInstrumentation</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class SinkInstrumentationTest {
+
+    @Test
+    public void testStatistics() {
+        final RecordWriter writer = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(3L).when(writer).getDropped();
+        Mockito.doReturn(4).when(writer).getQueueDepth();
+        Mockito.doReturn(5).when(writer).getQueueCapacity();
+        Mockito.doReturn(8L).when(writer).getCompressionBacklogFiles();
+        Mockito.doReturn(9L).when(writer).getCompressionBacklogBytes();
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(writer);
+        instrumentation.recordSerialization(6);
+        instrumentation.recordWrite(7, 100);
+        instrumentation.recordWrite(7, 28);
+
+        final SinkStatistics statistics = instrumentation.snapshot();
+        Assert.assertEquals(2, statistics.getRecords());
+        Assert.assertEquals(128, statistics.getBytes());
+        Assert.assertEquals(3, statistics.getDropped());
+        Assert.assertEquals(4, statistics.getQueueDepth());
+        Assert.assertEquals(5, statistics.getQueueCapacity());
+        Assert.assertEquals(8, statistics.getCompressionBacklogFiles());
+        Assert.assertEquals(9, statistics.getCompressionBacklogBytes());
+        Assert.assertEquals(1, statistics.getSerializationLatency().getCount());
+        Assert.assertEquals(2, statistics.getWriteLatency().getCount());
+    }
+
+    @Test
+    public void testMXBean() {
+        final RecordWriter writer = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(3L).when(writer).getDropped();
+        Mockito.doReturn(4).when(writer).getQueueDepth();
+        Mockito.doReturn(5).when(writer).getQueueCapacity();
+        Mockito.doReturn(8L).when(writer).getCompressionBacklogFiles();
+        Mockito.doReturn(9L).when(writer).getCompressionBacklogBytes();
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(writer);
+        instrumentation.recordSerialization(6);
+        instrumentation.recordWrite(7, 100);
+
+        final SinkStatisticsMXBean bean = instrumentation;
+        Assert.assertEquals(1, bean.getRecords());
+        Assert.assertEquals(100, bean.getBytes());
+        Assert.assertEquals(3, bean.getDropped());
+        Assert.assertEquals(4, bean.getQueueDepth());
+        Assert.assertEquals(5, bean.getQueueCapacity());
+        Assert.assertEquals(8, bean.getCompressionBacklogFiles());
+        Assert.assertEquals(9, bean.getCompressionBacklogBytes());
+        Assert.assertEquals(6, bean.getSerializationLatencyP50());
+        Assert.assertEquals(6, bean.getSerializationLatencyP99());
+        Assert.assertEquals(6, bean.getSerializationLatencyMax());
+        Assert.assertEquals(7, bean.getWriteLatencyP50());
+        Assert.assertEquals(7, bean.getWriteLatencyP99());
+        Assert.assertEquals(7, bean.getWriteLatencyMax());
+    }
+
+    @Test
+    public void testCloseUnregistersBean() throws Exception {
+        final SinkInstrumentation instrumentation = new SinkInstrumentation(Mockito.mock(RecordWriter.class));
+        instrumentation.registerBean("SinkInstrumentationTest", "testCloseUnregistersBean.log");
+        instrumentation.startReporter(statistics -> { }, 60000);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(
+                "com.arpnetworking.metrics.impl:type=SinkInstrumentationTest,name="
+                        + ObjectName.quote("testCloseUnregistersBean.log"));
+        Assert.assertTrue(server.isRegistered(name));
+
+        instrumentation.close();
+        Assert.assertFalse(server.isRegistered(name));
+        instrumentation.close();
+    }
+}
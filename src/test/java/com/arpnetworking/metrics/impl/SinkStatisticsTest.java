@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>SinkStatistics</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class SinkStatisticsTest {
+
+    @Test
+    public void testAccessors() {
+        final LatencyStatistics serialization = new LatencyHistogram().snapshot();
+        final LatencyStatistics write = new LatencyHistogram().snapshot();
+        final SinkStatistics statistics = createStatistics(serialization, write);
+        Assert.assertEquals(1, statistics.getRecords());
+        Assert.assertEquals(2, statistics.getBytes());
+        Assert.assertEquals(3, statistics.getDropped());
+        Assert.assertEquals(4, statistics.getQueueDepth());
+        Assert.assertEquals(5, statistics.getQueueCapacity());
+        Assert.assertEquals(6, statistics.getCompressionBacklogFiles());
+        Assert.assertEquals(7, statistics.getCompressionBacklogBytes());
+        Assert.assertSame(serialization, statistics.getSerializationLatency());
+        Assert.assertSame(write, statistics.getWriteLatency());
+    }
+
+    @Test
+    public void testToString() {
+        final LatencyStatistics latency = new LatencyHistogram().snapshot();
+        Assert.assertEquals(
+                "SinkStatistics{Records=1, Bytes=2, Dropped=3, QueueDepth=4, QueueCapacity=5, "
+                        + "CompressionBacklogFiles=6, CompressionBacklogBytes=7, "
+                        + "SerializationLatency=" + latency + ", WriteLatency=" + latency + "}",
+                createStatistics(latency, latency).toString());
+    }
+
+    @Test
+    public void testDefaults() {
+        final SinkStatistics statistics = new SinkStatistics.Builder().build();
+        Assert.assertEquals(0, statistics.getRecords());
+        Assert.assertEquals(0, statistics.getCompressionBacklogFiles());
+        Assert.assertEquals(0, statistics.getSerializationLatency().getCount());
+        Assert.assertEquals(0, statistics.getWriteLatency().getCount());
+    }
+
+    private static SinkStatistics createStatistics(
+            final LatencyStatistics serialization,
+            final LatencyStatistics write) {
+        return new SinkStatistics.Builder()
+                .setRecords(1)
+                .setBytes(2)
+                .setDropped(3)
+                .setQueueDepth(4)
+                .setQueueCapacity(5)
+                .setCompressionBacklogFiles(6)
+                .setCompressionBacklogBytes(7)
+                .setSerializationLatency(serialization)
+                .setWriteLatency(write)
+                .build();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+
+/**
+ * Tests for <code>SparseHistogram</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class SparseHistogramTest {
+
+    @Test
+    public void testBucket() {
+        Assert.assertEquals(Double.doubleToLongBits(1.0), SparseHistogram.bucket(1.0));
+        Assert.assertEquals(SparseHistogram.bucket(1.0), SparseHistogram.bucket(1.0 + 1.0 / 256));
+        Assert.assertEquals(Double.doubleToLongBits(1.0 + 1.0 / 128), SparseHistogram.bucket(1.0 + 1.0 / 128));
+        Assert.assertEquals(Double.doubleToLongBits(1.5), SparseHistogram.bucket(1.5 + 1.0 / 256));
+        Assert.assertEquals(Double.doubleToLongBits(1024.0), SparseHistogram.bucket(1031.0));
+        Assert.assertEquals(Double.doubleToLongBits(1032.0), SparseHistogram.bucket(1032.0));
+        Assert.assertEquals(Double.doubleToLongBits(-1.0), SparseHistogram.bucket(-1.0 - 1.0 / 256));
+        Assert.assertEquals(SparseHistogram.bucket(0.0), SparseHistogram.bucket(-0.0));
+    }
+
+    @Test
+    public void testRelativeError() {
+        for (final double value : Arrays.asList(0.001, 0.3, 1.0, 7.77, 123.456, 1e9, 3.5e200)) {
+            final double lowest = Double.longBitsToDouble(SparseHistogram.bucket(value));
+            Assert.assertTrue(lowest <= value);
+            Assert.assertTrue((value - lowest) / value < 1.0 / 128);
+        }
+    }
+
+    @Test
+    public void testRecord() {
+        final SparseHistogram histogram = new SparseHistogram();
+        Assert.assertTrue(histogram.getBuckets().isEmpty());
+        histogram.record(2.0);
+        histogram.record(1.0);
+        histogram.record(1.001);
+        histogram.record(-3.0);
+        histogram.record(0.0);
+        histogram.record(-0.0);
+
+        final SortedMap<Double, Long> buckets = histogram.getBuckets();
+        Assert.assertEquals(Arrays.asList(-3.0, 0.0, 1.0, 2.0), Arrays.asList(buckets.keySet().toArray()));
+        Assert.assertEquals(Arrays.asList(1L, 2L, 2L, 1L), Arrays.asList(buckets.values().toArray()));
+    }
+
+    @Test
+    public void testRecordWeighted() {
+        final SparseHistogram histogram = new SparseHistogram();
+        histogram.record(1.0, 2.5);
+        histogram.record(1.0, 1.0);
+        histogram.record(2.0, 4.0);
+
+        final SortedMap<Double, Long> buckets = histogram.getBuckets();
+        Assert.assertEquals(Arrays.asList(1.0, 2.0), Arrays.asList(buckets.keySet().toArray()));
+        Assert.assertEquals(Arrays.asList(4L, 4L), Arrays.asList(buckets.values().toArray()));
+    }
+}
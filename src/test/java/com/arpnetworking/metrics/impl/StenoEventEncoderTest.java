@@ -0,0 +1,96 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tests for <code>StenoEventEncoder</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class StenoEventEncoderTest {
+
+    @Test
+    public void testEncode() throws IOException {
+        final StenoEventEncoder encoder = new StenoEventEncoder(
+                new EventEncoder(new UnitCache(10), Collections.singleton("_id")),
+                "my\"host",
+                "1234",
+                Clock.fixed(Instant.parse("1997-07-16T19:20:30.045Z"), ZoneOffset.UTC));
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", "MyId");
+        annotations.put("_service", "MyService");
+        final Map<String, List<Quantity>> counters = new LinkedHashMap<>();
+        counters.put("counterA", Collections.singletonList(TsdQuantity.newInstance(1L, Units.BYTE)));
+
+        final String record = encode(
+                encoder,
+                new TsdEvent(annotations, Collections.emptyMap(), counters, Collections.emptyMap()));
+
+        final String id = record.substring(record.indexOf("\"id\":\"") + 6, record.indexOf("\",\"version\""));
+        Assert.assertEquals(id, UUID.fromString(id).toString());
+        Assert.assertEquals(
+                "{\"time\":\"1997-07-16T19:20:30.045Z\",\"name\":\"aint.metrics\",\"level\":\"info\","
+                        + "\"data\":{\"version\":\"2f\",\"annotations\":{\"_service\":\"MyService\"},"
+                        + "\"counters\":{\"counterA\":{\"values\":[{\"value\":1,\"unitNumerators\":[\"byte\"]}]}}},"
+                        + "\"context\":{\"host\":\"my\\\"host\",\"processId\":\"1234\",\"threadId\":\""
+                        + Thread.currentThread().getName() + "\"},"
+                        + "\"id\":\"" + id + "\",\"version\":\"0\"}\n",
+                record);
+    }
+
+    @Test
+    public void testUniqueIds() throws IOException {
+        final StenoEventEncoder encoder = new StenoEventEncoder(
+                new EventEncoder(new UnitCache(10)),
+                "MyHost",
+                "1234",
+                Clock.systemUTC());
+        final TsdEvent event = new TsdEvent(
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+        Assert.assertNotEquals(encode(encoder, event), encode(encoder, event));
+    }
+
+    private static String encode(final StenoEventEncoder encoder, final TsdEvent event) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            encoder.encode(event, jsonGenerator);
+        }
+        return writer.toString();
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+}
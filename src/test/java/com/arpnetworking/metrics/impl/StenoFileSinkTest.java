@@ -16,9 +16,11 @@
 package com.arpnetworking.metrics.impl;
 
 import com.arpnetworking.metrics.ComplexCompoundUnit;
+import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Quantity;
 import com.arpnetworking.metrics.Sink;
 import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -36,18 +38,22 @@ import org.mockito.Mockito;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Tests for <code>StenoFileSink</code>.
@@ -73,7 +79,7 @@ public class StenoFileSinkTest {
 
         Mockito.doThrow(new JsonMappingException(Mockito.mock(JsonParser.class), "JsonMappingException"))
                 .when(objectMapper)
-                .writeValueAsString(Mockito.any());
+                .writeValue(Mockito.any(JsonGenerator.class), Mockito.any());
         recordEmpty(sink);
         Mockito.verify(logger).warn(
                 Mockito.any(String.class),
@@ -81,6 +87,119 @@ public class StenoFileSinkTest {
         Mockito.verifyNoMoreInteractions(logger);
     }
 
+    @Test
+    public void testFileChannelWriterEngine() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/StenoFileSinkTest/testFileChannelWriterEngine-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final Sink sink = new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testFileChannelWriterEngine-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+        Assert.assertTrue(sink instanceof StenoFileSink);
+
+        final Map<String, String> annotations = new LinkedHashMap<>(ANNOTATIONS);
+        annotations.put("foo", "bar");
+        sink.record(new TsdEvent(
+                annotations,
+                TEST_SERIALIZATION_TIMERS,
+                TEST_SERIALIZATION_COUNTERS,
+                TEST_SERIALIZATION_GAUGES));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        assertSerialization(EXPECTED_METRICS_JSON, fileToString(actualFile));
+    }
+
+    @Test
+    public void testBuilderWithNullDirectEncoding() throws IOException {
+        final Sink sink = new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testBuilderWithNullDirectEncoding-Query")
+                .setDirectEncoding(null)
+                .build();
+        Assert.assertTrue(sink instanceof StenoFileSink);
+    }
+
+    @Test
+    public void testDirectEncodingMatchesStenoEncoder() throws IOException, InterruptedException {
+        final File stenoFile = new File("./target/StenoFileSinkTest/testDirectEncodingMatchesStenoEncoder-Steno.log");
+        final File directFile = new File("./target/StenoFileSinkTest/testDirectEncodingMatchesStenoEncoder-Direct.log");
+        Files.deleteIfExists(stenoFile.toPath());
+        Files.deleteIfExists(directFile.toPath());
+        final Sink stenoSink = new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testDirectEncodingMatchesStenoEncoder-Steno")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .build();
+        final Sink directSink = new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testDirectEncodingMatchesStenoEncoder-Direct")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setDirectEncoding(true)
+                .build();
+
+        // NOTE: The Steno encoder path copies annotations into a hash map which does not preserve their order
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_host", "MyHost");
+        annotations.put("foo", "bar\u00e9\"");
+        annotations.put("_id", "MyId");
+        final TsdEvent event = new TsdEvent(
+                annotations,
+                TEST_SERIALIZATION_TIMERS,
+                TEST_SERIALIZATION_COUNTERS,
+                TEST_SERIALIZATION_GAUGES);
+        stenoSink.record(event);
+        directSink.record(event);
+        Assert.assertEquals("MyHost", annotations.get("_host"));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        final String stenoRecord = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(stenoFile.toPath()))).toString();
+        final String directRecord = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(Files.readAllBytes(directFile.toPath()))).toString();
+        assertMatchesJsonSchema(directRecord);
+        Assert.assertTrue(directRecord.endsWith("}\n"));
+        Assert.assertFalse(directRecord.contains("MyHost"));
+        Assert.assertFalse(directRecord.contains("MyId"));
+        Assert.assertEquals(
+                stenoRecord.replaceAll("\"(time|id)\":\"[^\"]*\"", "\"$1\":\"<$1>\""),
+                directRecord.replaceAll("\"(time|id)\":\"[^\"]*\"", "\"$1\":\"<$1>\""));
+    }
+
+    @Test
+    public void testSampler() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/StenoFileSinkTest/testSampler-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final Iterator<Double> random = Arrays.asList(0.25, 0.75).iterator();
+        final Sink sink = new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testSampler-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setSampler(new EventSampler(0.5, null, 0, System::nanoTime, random::next))
+                .build();
+        for (int i = 0; i < 2; ++i) {
+            sink.record(new TsdEvent(
+                    ANNOTATIONS,
+                    TEST_EMPTY_SERIALIZATION_TIMERS,
+                    TEST_EMPTY_SERIALIZATION_COUNTERS,
+                    TEST_EMPTY_SERIALIZATION_GAUGES));
+        }
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        final String actualJson = fileToString(actualFile);
+        Assert.assertEquals(1, actualJson.split("\\n").length);
+        Assert.assertTrue(actualJson.contains("\"_sampleRate\":\"0.5\""));
+    }
+
     @Test
     public void testEmptySerialization() throws IOException, InterruptedException {
         final File actualFile = new File("./target/StenoFileSinkTest/testEmptySerialization-Query.log");
@@ -152,6 +271,27 @@ public class StenoFileSinkTest {
         final JsonNode actual = OBJECT_MAPPER.readTree(actualComparableJson);
         final JsonNode expected = OBJECT_MAPPER.readTree(EXPECTED_METRICS_JSON);
 
+        Assert.assertEquals(
+                "expectedJson=" + OBJECT_MAPPER.writeValueAsString(expected)
+                        + " vs actualJson=" + OBJECT_MAPPER.writeValueAsString(actual),
+                expected,
+                actual);
+        final CacheStatistics unitCacheStatistics = ((StenoFileSink) sink).getUnitCacheStatistics();
+        Assert.assertTrue(unitCacheStatistics.getHits() > 0);
+        Assert.assertTrue(unitCacheStatistics.getSize() > 0);
+    }
+
+    private void assertSerialization(final String expectedJson, final String actualOriginalJson) throws IOException {
+        assertMatchesJsonSchema(actualOriginalJson);
+        final String actualComparableJson = actualOriginalJson
+                .replaceAll("\"time\":\"[^\"]*\"", "\"time\":\"<TIME>\"")
+                .replaceAll("\"threadId\":\"[^\"]*\"", "\"threadId\":\"<THREADID>\"")
+                .replaceAll("\"processId\":\"[^\"]*\"", "\"processId\":\"<PROCESSID>\"")
+                .replaceAll("\"host\":\"[^\"]*\"", "\"host\":\"<HOST>\"")
+                .replaceAll("\"id\":\"[^\"]*\"", "\"id\":\"<ID>\"");
+        final JsonNode actual = OBJECT_MAPPER.readTree(actualComparableJson);
+        final JsonNode expected = OBJECT_MAPPER.readTree(expectedJson);
+
         Assert.assertEquals(
                 "expectedJson=" + OBJECT_MAPPER.writeValueAsString(expected)
                         + " vs actualJson=" + OBJECT_MAPPER.writeValueAsString(actual),
@@ -177,12 +317,80 @@ public class StenoFileSinkTest {
         return map;
     }
 
+    @Test
+    public void testTryRecord() throws IOException {
+        final File actualFile = new File("./target/StenoFileSinkTest/testTryRecord-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final StenoFileSink sink = (StenoFileSink) new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testTryRecord-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .setWriterEngine(WriterEngine.FILE_CHANNEL)
+                .build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(createEmptyEvent()));
+        assertMatchesJsonSchema(fileToString(actualFile));
+
+        final StenoFileSink spy = Mockito.spy(sink);
+        Mockito.doReturn(false).when(spy).tryWrite(Mockito.any(byte[].class), Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Mockito.doReturn(false).when(spy).awaitCapacity(Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+    }
+
+    @Test
+    public void testTryRecordLogback() throws IOException, InterruptedException {
+        final File actualFile = new File("./target/StenoFileSinkTest/testTryRecordLogback-Query.log");
+        Files.deleteIfExists(actualFile.toPath());
+        final StenoFileSink sink = (StenoFileSink) new StenoFileSink.Builder()
+                .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                .setName("testTryRecordLogback-Query")
+                .setImmediateFlush(Boolean.TRUE)
+                .setAsync(false)
+                .build();
+        Assert.assertEquals(RecordOutcome.ACCEPTED, sink.tryRecord(createEmptyEvent(), 1, TimeUnit.SECONDS));
+
+        // TODO(vkoskela): Add protected option to disable async [MAI-181].
+        Thread.sleep(100);
+
+        assertMatchesJsonSchema(fileToString(actualFile));
+        final StenoFileSink spy = Mockito.spy(sink);
+        Mockito.doReturn(false).when(spy).tryLog(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyLong());
+        Assert.assertEquals(RecordOutcome.REJECTED, spy.tryRecord(createEmptyEvent()));
+        Assert.assertEquals(1, sink.getStatistics().getRecords());
+    }
+
+    @Test
+    public void testTryRecordIOException() throws IOException {
+        final org.slf4j.Logger logger = createSlf4jLoggerMock();
+        final ObjectMapper objectMapper = Mockito.spy(new ObjectMapper());
+        final StenoFileSink sink = new StenoFileSink(
+                new StenoFileSink.Builder()
+                        .setDirectory(createDirectory("./target/StenoFileSinkTest"))
+                        .setName("testTryRecordIOException-Query"),
+                objectMapper,
+                logger);
+
+        Mockito.doThrow(new JsonMappingException(Mockito.mock(JsonParser.class), "JsonMappingException"))
+                .when(objectMapper)
+                .writeValue(Mockito.any(JsonGenerator.class), Mockito.any());
+        Assert.assertEquals(RecordOutcome.DROPPED, sink.tryRecord(createEmptyEvent()));
+        Mockito.verify(logger).warn(
+                Mockito.any(String.class),
+                Mockito.any(Throwable.class));
+    }
+
     private void recordEmpty(final Sink sink) {
-        sink.record(new TsdEvent(
+        sink.record(createEmptyEvent());
+    }
+
+    private static Event createEmptyEvent() {
+        return new TsdEvent(
                 Collections.<String, String>emptyMap(),
                 Collections.<String, List<Quantity>>emptyMap(),
                 Collections.<String, List<Quantity>>emptyMap(),
-                Collections.<String, List<Quantity>>emptyMap()));
+                Collections.<String, List<Quantity>>emptyMap());
     }
 
     private org.slf4j.Logger createSlf4jLoggerMock() {
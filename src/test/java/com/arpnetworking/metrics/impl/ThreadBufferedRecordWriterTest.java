@@ -0,0 +1,177 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.AdditionalMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for <code>ThreadBufferedRecordWriter</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class ThreadBufferedRecordWriterTest {
+
+    @Test
+    public void testChunks() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 8, LINGER_IN_MILLIS);
+        writer.write(bytes("abc"));
+        writer.write(bytes("def"));
+        Mockito.verifyZeroInteractions(delegate);
+
+        writer.write(bytes("gh"));
+        writer.write(bytes("ijk"));
+        writer.write(bytes("lmnopq"));
+        writer.write(bytes("0123456789"));
+        final InOrder inOrder = Mockito.inOrder(delegate);
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("abcdefgh")));
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("ijk")));
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("lmnopq")));
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("0123456789")));
+        Mockito.verifyNoMoreInteractions(delegate);
+        writer.close();
+    }
+
+    @Test
+    public void testFlush() throws InterruptedException {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, LINGER_IN_MILLIS);
+        writer.write(bytes("a"));
+        final Thread thread = new Thread(() -> writer.write(bytes("b")));
+        thread.start();
+        thread.join();
+        Assert.assertEquals(2, writer.getBufferCount());
+
+        writer.flush();
+        Mockito.verify(delegate).write(AdditionalMatchers.aryEq(bytes("a")));
+        Mockito.verify(delegate).write(AdditionalMatchers.aryEq(bytes("b")));
+        Assert.assertEquals(1, writer.getBufferCount());
+
+        writer.flush();
+        Mockito.verifyNoMoreInteractions(delegate);
+        writer.close();
+    }
+
+    @Test
+    public void testThreadWriters() throws InterruptedException {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final RecordWriter first = Mockito.mock(RecordWriter.class);
+        final RecordWriter second = Mockito.mock(RecordWriter.class);
+        final Thread main = Thread.currentThread();
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(
+                delegate,
+                () -> Thread.currentThread() == main ? first : second,
+                1024,
+                LINGER_IN_MILLIS);
+        writer.write(bytes("a"));
+        final Thread thread = new Thread(() -> writer.write(bytes("b")));
+        thread.start();
+        thread.join();
+
+        // NOTE: Handed off by this thread yet written for the owner thread
+        writer.flush();
+        Mockito.verify(first).write(AdditionalMatchers.aryEq(bytes("a")));
+        Mockito.verify(second).write(AdditionalMatchers.aryEq(bytes("b")));
+        Mockito.verifyNoMoreInteractions(first, second);
+        Mockito.verifyZeroInteractions(delegate);
+        writer.close();
+        Mockito.verify(delegate).close();
+    }
+
+    @Test
+    public void testLinger() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, 10);
+        writer.write(bytes("a"));
+        Mockito.verify(delegate, Mockito.timeout(10000)).write(AdditionalMatchers.aryEq(bytes("a")));
+        writer.close();
+    }
+
+    @Test
+    public void testCapacity() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(false).when(delegate).awaitCapacity(1);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, LINGER_IN_MILLIS);
+        final Runnable callback = Mockito.mock(Runnable.class);
+        Assert.assertFalse(writer.tryWrite(bytes("a"), 1));
+        writer.onCapacityAvailable(callback);
+        Mockito.verify(delegate).awaitCapacity(1);
+        Mockito.verify(delegate).onCapacityAvailable(callback);
+        Assert.assertEquals(0, writer.getBufferCount());
+        writer.close();
+    }
+
+    @Test
+    public void testAwaitDurable() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, LINGER_IN_MILLIS);
+        writer.write(bytes("a"));
+        writer.awaitDurable();
+        final InOrder inOrder = Mockito.inOrder(delegate);
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("a")));
+        inOrder.verify(delegate).awaitDurable();
+        writer.close();
+    }
+
+    @Test
+    public void testClose() {
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, LINGER_IN_MILLIS);
+        writer.write(bytes("a"));
+        writer.close();
+        final InOrder inOrder = Mockito.inOrder(delegate);
+        inOrder.verify(delegate).write(AdditionalMatchers.aryEq(bytes("a")));
+        inOrder.verify(delegate).close();
+    }
+
+    @Test
+    public void testStatistics() {
+        final CommitStatistics statistics = new CommitStatistics.Accumulator().snapshot();
+        final RecordWriter delegate = Mockito.mock(RecordWriter.class);
+        Mockito.doReturn(statistics).when(delegate).getCommitStatistics();
+        Mockito.doReturn(1L).when(delegate).getDropped();
+        Mockito.doReturn(2).when(delegate).getQueueDepth();
+        Mockito.doReturn(3).when(delegate).getQueueCapacity();
+        Mockito.doReturn(4L).when(delegate).getCompressionBacklogFiles();
+        Mockito.doReturn(5L).when(delegate).getCompressionBacklogBytes();
+        final ThreadBufferedRecordWriter writer = new ThreadBufferedRecordWriter(delegate, 1024, LINGER_IN_MILLIS);
+        Assert.assertSame(statistics, writer.getCommitStatistics());
+        Assert.assertEquals(1, writer.getDropped());
+        Assert.assertEquals(2, writer.getQueueDepth());
+        Assert.assertEquals(3, writer.getQueueCapacity());
+        Assert.assertEquals(4, writer.getCompressionBacklogFiles());
+        Assert.assertEquals(5, writer.getCompressionBacklogBytes());
+        writer.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBufferSize() {
+        new ThreadBufferedRecordWriter(Mockito.mock(RecordWriter.class), 0, LINGER_IN_MILLIS);
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final long LINGER_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for <code>TokenBucket</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstAndRefill() {
+        final TokenBucket bucket = new TokenBucket(4, START);
+        for (int i = 0; i < 4; ++i) {
+            Assert.assertTrue(bucket.tryAcquire(START));
+        }
+        Assert.assertFalse(bucket.tryAcquire(START));
+        Assert.assertFalse(bucket.tryAcquire(START + 249_999_999L));
+        Assert.assertTrue(bucket.tryAcquire(START + 250_000_000L));
+        Assert.assertFalse(bucket.tryAcquire(START + 250_000_000L));
+
+        // NOTE: An idle bucket refills to its capacity and no further
+        final long later = START + 10_000_000_000L;
+        for (int i = 0; i < 4; ++i) {
+            Assert.assertTrue(bucket.tryAcquire(later));
+        }
+        Assert.assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    public void testHighRate() {
+        final TokenBucket bucket = new TokenBucket(Long.MAX_VALUE, START);
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertTrue(bucket.tryAcquire(START));
+        }
+    }
+
+    private static final long START = -5_000_000_000L;
+}
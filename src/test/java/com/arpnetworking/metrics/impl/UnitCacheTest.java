@@ -0,0 +1,147 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for <code>UnitCache</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class UnitCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        final UnitCache unitCache = new UnitCache(10);
+        final UnitCache.SerializedUnit first = unitCache.get(Units.SECOND);
+        Assert.assertSame(first, unitCache.get(Units.SECOND));
+        Assert.assertSame(first, unitCache.get(Units.SECOND));
+        unitCache.get(Units.BYTE);
+        final CacheStatistics statistics = unitCache.getStatistics();
+        Assert.assertEquals(2, statistics.getHits());
+        Assert.assertEquals(2, statistics.getMisses());
+        Assert.assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void testBounded() {
+        final UnitCache unitCache = new UnitCache(1);
+        unitCache.get(Units.SECOND);
+        final UnitCache.SerializedUnit uncached = unitCache.get(Units.BYTE);
+        Assert.assertNotSame(uncached, unitCache.get(Units.BYTE));
+        final CacheStatistics statistics = unitCache.getStatistics();
+        Assert.assertEquals(0, statistics.getHits());
+        Assert.assertEquals(3, statistics.getMisses());
+        Assert.assertEquals(1, statistics.getSize());
+    }
+
+    @Test
+    public void testIdentitySlots() {
+        final UnitCache unitCache = new UnitCache(10, 1);
+        final UnitCache.SerializedUnit second = unitCache.get(Units.SECOND);
+        final UnitCache.SerializedUnit byteUnit = unitCache.get(Units.BYTE);
+        Assert.assertSame(second, unitCache.get(Units.SECOND));
+        Assert.assertSame(second, unitCache.get(Units.SECOND));
+        Assert.assertSame(byteUnit, unitCache.get(Units.BYTE));
+        final CacheStatistics statistics = unitCache.getStatistics();
+        Assert.assertEquals(3, statistics.getHits());
+        Assert.assertEquals(2, statistics.getMisses());
+        Assert.assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void testSerializeSimpleUnit() throws IOException {
+        Assert.assertEquals("{\"unitNumerators\":[\"second\"]}", serialize(Units.SECOND));
+    }
+
+    @Test
+    public void testSerializeCompoundUnit() throws IOException {
+        final Unit unit = new TsdCompoundUnit.Builder()
+                .addNumeratorUnit(Units.KILOBYTE)
+                .addNumeratorUnit(Units.BYTE)
+                .addDenominatorUnit(Units.MILLISECOND)
+                .build();
+        Assert.assertEquals(
+                "{\"unitNumerators\":[\"byte\",\"kilobyte\"],\"unitDenominators\":[\"millisecond\"]}",
+                serialize(unit));
+    }
+
+    @Test
+    public void testSerializeDenominatorOnly() throws IOException {
+        final Unit unit = new TsdCompoundUnit.Builder()
+                .addDenominatorUnit(Units.SECOND)
+                .build();
+        Assert.assertEquals("{\"unitDenominators\":[\"second\"]}", serialize(unit));
+    }
+
+    @Test
+    public void testSerializeCancelledUnit() throws IOException {
+        final Unit unit = Mockito.mock(CompoundUnit.class);
+        Assert.assertEquals("{}", serialize(unit));
+    }
+
+    @Test
+    public void testSerializeEscapedName() throws IOException {
+        final Unit unit = Mockito.mock(Unit.class);
+        Mockito.doReturn("a\"b").when(unit).getName();
+        Assert.assertEquals("{\"unitNumerators\":[\"a\\\"b\"]}", serialize(unit));
+    }
+
+    @Test
+    public void testNames() {
+        final Unit unit = new TsdCompoundUnit.Builder()
+                .addNumeratorUnit(Units.KILOBYTE)
+                .addNumeratorUnit(Units.BYTE)
+                .addDenominatorUnit(Units.MILLISECOND)
+                .build();
+        final UnitCache.SerializedUnit serializedUnit = new UnitCache(1).get(unit);
+        Assert.assertEquals(Arrays.asList("byte", "kilobyte"), serializedUnit.getNumeratorNames());
+        Assert.assertEquals(Collections.singletonList("millisecond"), serializedUnit.getDenominatorNames());
+
+        final UnitCache.SerializedUnit simpleUnit = new UnitCache(1).get(Units.SECOND);
+        Assert.assertEquals(Collections.singletonList("second"), simpleUnit.getNumeratorNames());
+        Assert.assertEquals(Collections.emptyList(), simpleUnit.getDenominatorNames());
+
+        final UnitCache.SerializedUnit cancelledUnit = new UnitCache(1).get(Mockito.mock(CompoundUnit.class));
+        Assert.assertEquals(Collections.emptyList(), cancelledUnit.getNumeratorNames());
+        Assert.assertEquals(Collections.emptyList(), cancelledUnit.getDenominatorNames());
+    }
+
+    private static String serialize(final Unit unit) throws IOException {
+        final StringWriter writer = new StringWriter();
+        try (JsonGenerator jsonGenerator = JSON_FACTORY.createGenerator(writer)) {
+            jsonGenerator.writeStartObject();
+            new UnitCache(1).get(unit).serialize(jsonGenerator);
+            jsonGenerator.writeEndObject();
+        }
+        return writer.toString();
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+}
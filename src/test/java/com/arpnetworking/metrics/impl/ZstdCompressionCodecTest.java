@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 Inscope Metrics, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for <code>ZstdCompressionCodec</code>.
+ *
+ * @author Ville Koskela (ville dot koskela at inscopemetrics dot com)
+ */
+public class ZstdCompressionCodecTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final CompressionCodec codec = new ZstdCompressionCodec(1, null);
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compress(codec, DATA)))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void testDictionary() throws IOException {
+        final byte[] dictionary = ZstdCompressionCodec.trainDictionary(createSamples(), 1024);
+        Assert.assertTrue(dictionary.length > 0);
+        Assert.assertTrue(dictionary.length <= 1024);
+        final byte[] copy = dictionary.clone();
+        final CompressionCodec codec = new ZstdCompressionCodec(3, dictionary);
+        dictionary[dictionary.length - 1] ^= 1;
+        final byte[] compressed = compress(codec, DATA);
+        Assert.assertTrue(compressed.length < compress(new ZstdCompressionCodec(3, null), DATA).length);
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+        try (InputStream inputStream = new ZstdCompressionCodec(3, copy).decompress(new ByteArrayInputStream(compressed))) {
+            Assert.assertArrayEquals(DATA, readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void testConcatenated() throws IOException {
+        final CompressionCodec codec = new ZstdCompressionCodec();
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(compress(codec, DATA));
+        outputStream.write(compress(codec, DATA));
+        try (InputStream inputStream = codec.decompress(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            Assert.assertEquals(2 * DATA.length, readAll(inputStream).length);
+        }
+        Assert.assertTrue(codec.isConcatenable());
+    }
+
+    @Test
+    public void testAccessors() {
+        final ZstdCompressionCodec codec = new ZstdCompressionCodec(5, new byte[] {1, 2});
+        Assert.assertEquals(".zst", codec.getExtension());
+        Assert.assertEquals(5, codec.getLevel());
+        Assert.assertEquals(3, new ZstdCompressionCodec().getLevel());
+        Assert.assertEquals("ZstdCompressionCodec{Level=5, DictionarySize=2}", codec.toString());
+        Assert.assertEquals("ZstdCompressionCodec{Level=3, DictionarySize=0}", new ZstdCompressionCodec().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooLow() {
+        new ZstdCompressionCodec(0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLevelTooHigh() {
+        new ZstdCompressionCodec(23, null);
+    }
+
+    private static List<byte[]> createSamples() {
+        final List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            samples.add(("{\"version\":\"2f\",\"annotations\":{\"_start\":\"2019-01-01T00:00:" + (i % 60) + "Z\",\"_id\":\"" + i
+                    + "\"},\"timers\":{\"latency\":{\"values\":[{\"value\":" + i + ",\"unitNumerators\":[\"second\"]}]}}}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return samples;
+    }
+
+    private static byte[] compress(final CompressionCodec codec, final byte[] data) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (OutputStream compressedOutputStream = codec.compress(outputStream)) {
+            compressedOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read = inputStream.read(buffer);
+        while (read >= 0) {
+            outputStream.write(buffer, 0, read);
+            read = inputStream.read(buffer);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static final byte[] DATA = ("{\"version\":\"2f\",\"annotations\":{\"_start\":\"2019-01-01T00:00:00Z\"},"
+            + "\"timers\":{\"latency\":{\"values\":[{\"value\":1.5,\"unitNumerators\":[\"second\"]}]}}}\n")
+            .getBytes(StandardCharsets.UTF_8);
+}